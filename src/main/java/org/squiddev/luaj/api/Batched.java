@@ -0,0 +1,22 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Add a batch form of a function to the API's {@code batch} table, which calls it once for each element of a list.
+ *
+ * {@code api.batch.move({{1, 2}, {3, 4}})} is equivalent to {@code {api.move(1, 2), api.move(3, 4)}}, but the loop
+ * runs in Java rather than crossing between Lua and Java for each call. The number of results is stored in the
+ * {@code n} field, so results which are {@code nil} can be told apart from the end of the list.
+ *
+ * This can be applied to a class or method.
+ *
+ * @see LuaBatch
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batched {
+}
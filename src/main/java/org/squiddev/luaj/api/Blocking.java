@@ -0,0 +1,25 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run a function on another thread, as it may block. The calling coroutine yields until the function
+ * has finished, and the main thread waits for it. Arguments are validated and converted before the call is
+ * submitted, so only the Java method runs on the other thread.
+ *
+ * Each API has a limited number of functions running at once, and a limited queue of waiting calls.
+ * Calls are rejected with a {@link org.luaj.vm2.LuaError} when the queue is full.
+ *
+ * This can be applied to a class or method. Blocking functions cannot use {@link Context} arguments, or
+ * functional interface arguments which would call Lua from the other thread.
+ *
+ * @see org.squiddev.luaj.api.builder.BuilderSettings#blockingExecutor
+ * @see BlockingExecutor
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Blocking {
+}
@@ -0,0 +1,181 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.squiddev.luaj.api.builder.BuilderSettings;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link Blocking} functions for one API, limiting how many run at once and how many may wait.
+ *
+ * @see Blocking
+ */
+public class BlockingExecutor {
+	private static final String REJECTED = "Too many blocking calls, try again later";
+
+	private static Executor defaultExecutor;
+
+	/**
+	 * The executor to run functions on
+	 */
+	protected final Executor executor;
+
+	/**
+	 * The maximum number of functions running at once
+	 */
+	protected final int concurrency;
+
+	/**
+	 * The maximum number of functions waiting to run
+	 */
+	protected final int queueDepth;
+
+	private final Queue<Task> queue = new ArrayDeque<>();
+	private int running = 0;
+
+	public BlockingExecutor(Executor executor, int concurrency, int queueDepth) {
+		if (concurrency <= 0) throw new IllegalArgumentException("concurrency must be positive");
+		if (queueDepth < 0) throw new IllegalArgumentException("queueDepth cannot be negative");
+
+		this.executor = executor;
+		this.concurrency = concurrency;
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Create an executor from a loader's settings
+	 *
+	 * @param settings The settings to use
+	 * @return The created executor
+	 * @see BuilderSettings#blockingExecutor
+	 */
+	public static BlockingExecutor create(BuilderSettings settings) {
+		Executor executor = settings.blockingExecutor;
+		if (executor == null) executor = getDefaultExecutor();
+		return new BlockingExecutor(executor, settings.blockingConcurrency, settings.blockingQueue);
+	}
+
+	/**
+	 * Get the executor used when none is set: a shared pool of daemon threads, created when first used
+	 *
+	 * @return The default executor
+	 */
+	public static synchronized Executor getDefaultExecutor() {
+		Executor executor = defaultExecutor;
+		if (executor == null) {
+			executor = defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "luaj-blocking-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return executor;
+	}
+
+	/**
+	 * Make a Java call on the executor
+	 *
+	 * @param call The call to make
+	 * @return The result of the call, which completes exceptionally if the call throws
+	 * @throws LuaError If too many calls are waiting
+	 */
+	public CompletableFuture<Object> submit(JavaCall call) {
+		Task task = new Task(call);
+
+		synchronized (this) {
+			if (running >= concurrency) {
+				if (queue.size() >= queueDepth) throw new LuaError(REJECTED);
+				queue.add(task);
+				return task.future;
+			}
+
+			running++;
+		}
+
+		execute(task);
+		return task.future;
+	}
+
+	/**
+	 * Wrap a function so it is called on this executor.
+	 *
+	 * Arguments are validated and converted on the calling thread, so only the Java method runs on the executor.
+	 * Any exception it throws is converted to a {@link LuaError} once the calling thread resumes.
+	 *
+	 * @param function The function to wrap
+	 * @param target   The API the function belongs to
+	 * @return The wrapped function
+	 * @see JavaCall#capture(LuaValue, JavaCall.Target, Varargs)
+	 * @see LuaFutures#await(CompletionStage)
+	 */
+	public LuaValue wrap(final LuaValue function, final JavaCall.Target target) {
+		return new VarArgFunction() {
+			@Override
+			public Varargs invoke(Varargs args) {
+				JavaCall call = JavaCall.capture(function, target, args);
+				return call.result(LuaFutures.await(submit(call)));
+			}
+		};
+	}
+
+	/**
+	 * Start the next waiting task, or release its slot
+	 */
+	private void finished() {
+		Task next;
+		synchronized (this) {
+			next = queue.poll();
+			if (next == null) {
+				running--;
+				return;
+			}
+		}
+
+		execute(next);
+	}
+
+	private void execute(Task task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			// This may be run on the executor, so the error is converted when the caller resumes
+			task.future.completeExceptionally(new RejectedExecutionException(REJECTED));
+			finished();
+		}
+	}
+
+	/**
+	 * A Java call, completing a future with its result
+	 */
+	private final class Task implements Runnable {
+		private final JavaCall call;
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		private Task(JavaCall call) {
+			this.call = call;
+		}
+
+		@Override
+		public void run() {
+			try {
+				future.complete(call.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			} finally {
+				finished();
+			}
+		}
+	}
+}
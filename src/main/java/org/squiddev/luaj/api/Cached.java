@@ -0,0 +1,42 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Remember the results of a function, returning them when it is called with the same arguments again.
+ *
+ * Arguments are compared with Lua's raw equality, so tables are compared by identity. Results are shared
+ * between callers, so returned tables should not be modified. Errors are not cached.
+ *
+ * Cached functions must return a value and cannot use {@link Context} arguments.
+ *
+ * @see LuaCache
+ * @see LuaObject#invalidate()
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+	/**
+	 * The maximum number of results to keep. The least recently used result is removed first.
+	 *
+	 * @return The size of the cache
+	 */
+	int size() default 128;
+
+	/**
+	 * How long results are kept for, in milliseconds. If 0, results never expire.
+	 *
+	 * @return The lifetime of each result
+	 */
+	long ttl() default 0;
+
+	/**
+	 * Share one cache between every instance of this API, rather than having one per instance.
+	 *
+	 * @return If the cache is shared
+	 */
+	boolean shared() default false;
+}
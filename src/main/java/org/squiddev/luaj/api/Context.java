@@ -0,0 +1,22 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Provide this argument from the calling Lua state, rather than from the function's arguments.
+ *
+ * This allows one API instance and table to be shared between many Lua states.
+ * The argument depends on its type:
+ * - {@link org.luaj.vm2.LuaValue} or {@link org.luaj.vm2.LuaTable}: The environment of the calling function
+ * - {@link org.luaj.vm2.LuaThread}: The running coroutine
+ * - Anything else: The object registered for that type with {@link LuaContext#set(org.luaj.vm2.LuaTable, Class, Object)}
+ *
+ * @see LuaContext
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Context {
+}
@@ -0,0 +1,22 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The value of a primitive or {@link String} argument when it is {@code nil} or not given.
+ *
+ * The value is parsed when generating, and loaded as a constant.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Default {
+	/**
+	 * The default value
+	 *
+	 * @return The value, as it would be written in Java
+	 */
+	String value();
+}
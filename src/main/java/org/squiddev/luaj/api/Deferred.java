@@ -0,0 +1,33 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defer a void function until the host calls {@link LuaObject#flush()}, such as at the end of each tick.
+ *
+ * Arguments are validated and converted when the function is called, and then buffered, so changing a table after
+ * passing it does not affect the call. The function returns immediately. When flushed, the calls to every deferred
+ * function of the API are applied in the order they were made.
+ *
+ * Deferred functions cannot be overloaded, blocking, run on the main thread, or use {@link Context} arguments.
+ *
+ * @see DeferredCalls
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Deferred {
+	/**
+	 * The name of a method to apply all buffered calls at once.
+	 *
+	 * This takes an array for each argument, so {@code set(int x, int y, String block)} would be
+	 * batched by {@code setAll(int[] x, int[] y, String[] block)}. Each run of consecutive calls is passed
+	 * to the batch method together, so calls to other functions stay in order. If empty, each call is
+	 * applied individually.
+	 *
+	 * @return The name of the batch method
+	 */
+	String batch() default "";
+}
@@ -0,0 +1,106 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffers calls to the {@link Deferred} functions of one API until they are flushed.
+ *
+ * Arguments are converted to Java values when the function is called, so later changes to the Lua values
+ * (such as tables) do not affect the buffered call. Every function of the API shares one log, so calls are
+ * applied in the order they were made, even when made from different coroutines or threads.
+ *
+ * @see LuaObject#flush()
+ */
+public final class DeferredCalls {
+	/**
+	 * Applies buffered calls to the Java methods. This is implemented by the generated class.
+	 */
+	public interface Target extends JavaCall.Target {
+		/**
+		 * Apply several consecutive calls to a function with a batch method
+		 *
+		 * @param function The index of the function
+		 * @param calls    The converted arguments of each call
+		 * @see Deferred#batch()
+		 */
+		void applyBatch(int function, List<Object[]> calls);
+	}
+
+	private final Target target;
+	private List<Call> calls = new ArrayList<>();
+
+	public DeferredCalls(Target target) {
+		this.target = target;
+	}
+
+	/**
+	 * Wrap a function so calls to it are validated and buffered
+	 *
+	 * @param function The function to wrap. This is captured to validate and convert the arguments.
+	 * @param batched  If consecutive calls should be applied with {@link Target#applyBatch(int, List)}
+	 * @return The wrapped function
+	 * @see JavaCall#capture(LuaValue, JavaCall.Target, Varargs)
+	 */
+	public LuaValue wrap(final LuaValue function, final boolean batched) {
+		return new VarArgFunction() {
+			@Override
+			public Varargs invoke(Varargs args) {
+				Call call = new Call(JavaCall.capture(function, target, args), batched);
+				synchronized (DeferredCalls.this) {
+					calls.add(call);
+				}
+
+				return NONE;
+			}
+		};
+	}
+
+	/**
+	 * Apply every buffered call in order. Consecutive calls to a function with a batch method are
+	 * applied together. Calls made while flushing are left for the next flush.
+	 */
+	public void flush() {
+		List<Call> calls;
+		synchronized (this) {
+			calls = this.calls;
+			if (calls.isEmpty()) return;
+			this.calls = new ArrayList<>();
+		}
+
+		int size = calls.size();
+		int i = 0;
+		while (i < size) {
+			Call call = calls.get(i++);
+			if (!call.batched) {
+				call.call.call();
+				continue;
+			}
+
+			int function = call.call.getFunction();
+			List<Object[]> batch = new ArrayList<>();
+			batch.add(call.call.getArguments());
+			while (i < size && calls.get(i).batched && calls.get(i).call.getFunction() == function) {
+				batch.add(calls.get(i++).call.getArguments());
+			}
+			target.applyBatch(function, batch);
+		}
+	}
+
+	/**
+	 * A single buffered call
+	 */
+	private static final class Call {
+		private final JavaCall call;
+		private final boolean batched;
+
+		private Call(JavaCall call, boolean batched) {
+			this.call = call;
+			this.batched = batched;
+		}
+	}
+}
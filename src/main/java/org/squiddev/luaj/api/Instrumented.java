@@ -0,0 +1,33 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Record the number of calls, errors and the latency of a function. Latency only covers the Java method,
+ * not converting its arguments and result.
+ *
+ * This can be applied to a class or method, or to every API with
+ * {@link org.squiddev.luaj.api.builder.BuilderSettings#instrument}. Functions which are not instrumented have no
+ * additional overhead, as this is decided when the wrapper is generated.
+ *
+ * The memory allocated by a function can also be recorded, see {@link #allocations()}.
+ *
+ * @see org.squiddev.luaj.api.builder.BuilderSettings#metrics
+ * @see org.squiddev.luaj.api.metrics.MetricsRegistry
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Instrumented {
+	/**
+	 * Also record the bytes allocated by this function, split into the cost of converting arguments and results
+	 * and the cost of the Java method itself. Only a sample of calls are measured.
+	 *
+	 * @return If allocations should be recorded
+	 * @see org.squiddev.luaj.api.builder.BuilderSettings#allocationSampling
+	 * @see org.squiddev.luaj.api.metrics.AllocationProbe
+	 */
+	boolean allocations() default false;
+}
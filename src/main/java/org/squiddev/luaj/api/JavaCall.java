@@ -0,0 +1,208 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+/**
+ * A call to a Java method whose arguments have already been validated and converted.
+ *
+ * Functions which call their method somewhere else, such as on another thread, later or while holding a lock,
+ * first {@link #capture(LuaValue, Target, Varargs)} the call on the Lua thread. Validating arguments reads Lua
+ * values and may create {@link org.luaj.vm2.LuaError}s, which call the running thread's error handler, so only
+ * {@link #call()} may be run elsewhere. Its result is converted back with {@link #result(Object)} on the Lua thread.
+ *
+ * A wrapper may capture the function it wraps and extend the call, such as to hold a lock around it. If the
+ * wrapper is being captured itself it passes the extended call on with {@link #record()}, otherwise it makes the
+ * call with {@link #invoke()}.
+ */
+public class JavaCall {
+	/**
+	 * Calls an API's Java methods and converts their results. This is implemented by the generated class.
+	 */
+	public interface Target {
+		/**
+		 * Call a Java method
+		 *
+		 * @param function The index of the method
+		 * @param args     The converted arguments
+		 * @return The method's result, boxed if it is primitive, or {@code null} if it returns void
+		 */
+		Object call(int function, Object[] args);
+
+		/**
+		 * Convert the result of a Java method
+		 *
+		 * @param function The index of the method
+		 * @param result   The value returned by {@link #call(int, Object[])}
+		 * @return The converted result
+		 */
+		Varargs result(int function, Object result);
+	}
+
+	private static final ThreadLocal<Capture> captures = new ThreadLocal<Capture>() {
+		@Override
+		protected Capture initialValue() {
+			return new Capture();
+		}
+	};
+
+	private final Target target;
+	private final int function;
+	private final Object[] args;
+	private final JavaCall parent;
+
+	public JavaCall(Target target, int function, Object[] args) {
+		this.target = target;
+		this.function = function;
+		this.args = args;
+		this.parent = null;
+	}
+
+	/**
+	 * Extend another call. Subclasses should call the parent's methods through {@code super}.
+	 *
+	 * @param parent The call to extend
+	 */
+	protected JavaCall(JavaCall parent) {
+		this.target = parent.target;
+		this.function = parent.function;
+		this.args = parent.args;
+		this.parent = parent;
+	}
+
+	/**
+	 * Get the index of the method being called
+	 *
+	 * @return The method's index
+	 * @see Target#call(int, Object[])
+	 */
+	public int getFunction() {
+		return function;
+	}
+
+	/**
+	 * Get the converted arguments. These should not be modified.
+	 *
+	 * @return The converted arguments
+	 */
+	public Object[] getArguments() {
+		return args;
+	}
+
+	/**
+	 * Call the Java method. This does not touch any Lua state, so may be run on any thread.
+	 *
+	 * @return The method's result
+	 * @see Target#call(int, Object[])
+	 */
+	public Object call() {
+		return parent == null ? target.call(function, args) : parent.call();
+	}
+
+	/**
+	 * Convert the method's result. This must be run on the Lua thread.
+	 *
+	 * @param result The value returned by {@link #call()}
+	 * @return The converted result
+	 */
+	public Varargs result(Object result) {
+		return parent == null ? target.result(function, result) : parent.result(result);
+	}
+
+	/**
+	 * Call the method and convert its result
+	 *
+	 * @return The converted result
+	 */
+	public Varargs invoke() {
+		return result(call());
+	}
+
+	/**
+	 * Pass this call to the function capturing the current one
+	 *
+	 * @return {@link LuaValue#NONE}, which the capturing function ignores
+	 * @see #isCapturing()
+	 */
+	public Varargs record() {
+		captures.get().call = this;
+		return LuaValue.NONE;
+	}
+
+	/**
+	 * Validate and convert the arguments to a function, without calling it
+	 *
+	 * @param function The function to capture. This must be a generated function, or a wrapper which supports
+	 *                 being captured.
+	 * @param target   The API the function belongs to
+	 * @param args     The arguments to the function
+	 * @return The captured call
+	 * @throws org.luaj.vm2.LuaError If the arguments are invalid
+	 */
+	public static JavaCall capture(LuaValue function, Target target, Varargs args) {
+		Capture capture = captures.get();
+		JavaCall call;
+		Object[] converted;
+		int index;
+		boolean ignored;
+
+		capture.capturing = true;
+		try {
+			function.invoke(args);
+		} finally {
+			ignored = capture.capturing;
+			call = capture.call;
+			converted = capture.args;
+			index = capture.function;
+
+			capture.capturing = false;
+			capture.call = null;
+			capture.args = null;
+		}
+
+		if (ignored) throw new IllegalStateException("Function cannot be captured");
+		if (call != null) return call;
+		if (converted == null) throw new IllegalStateException("Function did not record its call");
+		return new JavaCall(target, index, converted);
+	}
+
+	/**
+	 * Check if the current function is being captured, rather than called. This must be checked before the
+	 * function does anything else, as it clears the flag so any functions it calls are run normally.
+	 *
+	 * If this is true, generated functions pass their converted arguments to {@link #record(int, Object[])}, and
+	 * wrappers pass their call to {@link #record()}. Both then return without calling the method.
+	 *
+	 * @return If the current call should be captured
+	 */
+	public static boolean isCapturing() {
+		Capture capture = captures.get();
+		if (!capture.capturing) return false;
+
+		capture.capturing = false;
+		return true;
+	}
+
+	/**
+	 * Store the converted arguments of the function being captured
+	 *
+	 * @param function The index of the method
+	 * @param args     The converted arguments
+	 * @see #isCapturing()
+	 */
+	public static void record(int function, Object[] args) {
+		Capture capture = captures.get();
+		capture.function = function;
+		capture.args = args;
+	}
+
+	/**
+	 * The state of the capture being made on a thread
+	 */
+	private static final class Capture {
+		private boolean capturing;
+		private JavaCall call;
+		private int function;
+		private Object[] args;
+	}
+}
@@ -0,0 +1,134 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.OneArgFunction;
+
+import java.util.Arrays;
+
+/**
+ * Creates the batch forms of {@link Batched} functions
+ */
+public final class LuaBatch {
+	/**
+	 * The key of the table holding batch functions
+	 */
+	public static final String TABLE = "batch";
+
+	/**
+	 * The key holding the number of results
+	 */
+	static final LuaValue COUNT = LuaValue.valueOf("n");
+
+	private LuaBatch() {
+	}
+
+	/**
+	 * Wrap a function so it is called once for each element of a list.
+	 *
+	 * Each element is a table of arguments, or a single argument which is not a table. The result is a list
+	 * of the first value returned by each call. As calls may return {@code nil}, the number of results is
+	 * stored in the {@code n} field, like {@code table.pack}.
+	 *
+	 * Every call in a batch reuses the same arguments, so the function must not keep them after it returns.
+	 *
+	 * @param function The function to wrap
+	 * @return The batch function
+	 */
+	public static LuaValue wrap(final LuaValue function) {
+		return new OneArgFunction() {
+			@Override
+			public LuaValue call(LuaValue arg) {
+				LuaTable calls = arg.checktable();
+				int length = calls.length();
+				LuaTable results = new LuaTable(length, 1);
+
+				Arguments arguments = new Arguments();
+				for (int i = 1; i <= length; i++) {
+					Varargs args = arguments.read(calls.rawget(i));
+
+					Varargs result;
+					try {
+						result = function.invoke(args);
+					} catch (LuaError e) {
+						throw getError(i, e);
+					}
+
+					results.rawset(i, result.arg1());
+				}
+				results.rawset(COUNT, LuaValue.valueOf(length));
+
+				return results;
+			}
+		};
+	}
+
+	/**
+	 * Add the index of the failing call to an error
+	 *
+	 * @param index The index of the call
+	 * @param error The error thrown by the call
+	 * @return The error to throw
+	 */
+	static LuaError getError(int index, LuaError error) {
+		return new LuaError("Bad call #" + index + ": " + error.getMessage());
+	}
+
+	/**
+	 * Arguments read from the elements of a batch, reusing one array for every call. Like the arguments LuaJ
+	 * passes from its stack, these are only valid until the function returns.
+	 */
+	static final class Arguments extends Varargs {
+		private LuaValue[] values = new LuaValue[4];
+		private int count;
+
+		/**
+		 * Read the arguments for one call
+		 *
+		 * @param call A table of arguments, or a single argument
+		 * @return The arguments to pass, which may be this object
+		 */
+		Varargs read(LuaValue call) {
+			if (!call.istable()) return call;
+
+			LuaTable table = (LuaTable) call;
+			int length = table.length();
+			switch (length) {
+				case 0:
+					return LuaValue.NONE;
+				case 1:
+					return table.rawget(1);
+				default:
+					if (values.length < length) values = new LuaValue[length];
+					for (int i = 0; i < length; i++) values[i] = table.rawget(i + 1);
+					count = length;
+					return this;
+			}
+		}
+
+		@Override
+		public LuaValue arg(int i) {
+			return i >= 1 && i <= count ? values[i - 1] : LuaValue.NIL;
+		}
+
+		@Override
+		public int narg() {
+			return count;
+		}
+
+		@Override
+		public LuaValue arg1() {
+			return count > 0 ? values[0] : LuaValue.NIL;
+		}
+
+		@Override
+		public Varargs subargs(int start) {
+			// Copy the values, so the result is not changed by the next call
+			if (start > count) return LuaValue.NONE;
+			if (start == count) return values[count - 1];
+			return LuaValue.varargsOf(Arrays.copyOfRange(values, start - 1, count));
+		}
+	}
+}
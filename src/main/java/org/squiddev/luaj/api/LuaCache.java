@@ -0,0 +1,176 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A least recently used cache of the results of a {@link Cached} function.
+ *
+ * Keys are the arguments passed from Lua, before they are converted.
+ */
+public final class LuaCache {
+	private final int size;
+	private final long ttl;
+	private final LinkedHashMap<Object, Result> entries;
+
+	/**
+	 * Create a new cache
+	 *
+	 * @param size The maximum number of results to store
+	 * @param ttl  How long results are kept for in milliseconds, or 0 to keep them forever
+	 */
+	public LuaCache(final int size, long ttl) {
+		if (size <= 0) throw new IllegalArgumentException("size must be positive");
+		if (ttl < 0) throw new IllegalArgumentException("ttl must not be negative");
+
+		this.size = size;
+		this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+		entries = new LinkedHashMap<Object, Result>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Result> eldest) {
+				return size() > LuaCache.this.size;
+			}
+		};
+	}
+
+	/**
+	 * Wrap a function so its results are stored in this cache.
+	 *
+	 * If the wrapper is captured, such as by a parallel function, hits are recorded as a call which returns the
+	 * cached value, and misses store the result once it has been converted.
+	 *
+	 * @param function The function to wrap
+	 * @param target   The API the function belongs to
+	 * @return The wrapped function
+	 * @see JavaCall#capture(LuaValue, JavaCall.Target, Varargs)
+	 */
+	public LuaValue wrap(final LuaValue function, final JavaCall.Target target) {
+		return new VarArgFunction() {
+			@Override
+			public Varargs invoke(Varargs args) {
+				boolean capturing = JavaCall.isCapturing();
+				final Object key = getKey(args);
+				final Varargs cached = lookup(key);
+
+				if (capturing) {
+					JavaCall call;
+					if (cached != null) {
+						// Hits do not call the method, so need no arguments
+						call = new JavaCall(target, -1, null) {
+							@Override
+							public Object call() {
+								return null;
+							}
+
+							@Override
+							public Varargs result(Object result) {
+								return cached;
+							}
+						};
+					} else {
+						call = new JavaCall(JavaCall.capture(function, target, args)) {
+							@Override
+							public Varargs result(Object result) {
+								Varargs converted = super.result(result);
+								store(key, converted);
+								return converted;
+							}
+						};
+					}
+
+					return call.record();
+				}
+
+				if (cached != null) return cached;
+
+				Varargs result = function.invoke(args);
+				store(key, result);
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Remove every result from the cache
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Get the number of stored results, including those which have expired
+	 *
+	 * @return The number of results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private synchronized Varargs lookup(Object key) {
+		Result entry = entries.get(key);
+		if (entry == null) return null;
+
+		if (ttl > 0 && System.nanoTime() - entry.created > ttl) {
+			entries.remove(key);
+			return null;
+		}
+
+		return entry.value;
+	}
+
+	private synchronized void store(Object key, Varargs value) {
+		entries.put(key, new Result(value, ttl > 0 ? System.nanoTime() : 0));
+	}
+
+	/**
+	 * Get the key for some arguments. A single argument is used directly.
+	 *
+	 * @param args The arguments
+	 * @return The key for these arguments
+	 */
+	private static Object getKey(Varargs args) {
+		int count = args.narg();
+		if (count == 0) return LuaValue.NONE;
+		if (count == 1) return args.arg1();
+
+		LuaValue[] values = new LuaValue[count];
+		for (int i = 0; i < count; i++) values[i] = args.arg(i + 1);
+		return new Key(values);
+	}
+
+	private static final class Result {
+		private final Varargs value;
+		private final long created;
+
+		private Result(Varargs value, long created) {
+			this.value = value;
+			this.created = created;
+		}
+	}
+
+	private static final class Key {
+		private final LuaValue[] values;
+		private final int hash;
+
+		private Key(LuaValue[] values) {
+			this.values = values;
+			hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return this == other || (other instanceof Key && Arrays.equals(values, ((Key) other).values));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores objects in a Lua environment, so they can be passed to {@link Context} arguments.
+ *
+ * Each type is stored under its own userdata key in the environment table. The environment is found
+ * from the nearest Lua function on the call stack, so one API can be shared between several environments.
+ *
+ * As LuaJ removes functions from the call stack before making a tail call, the environment of a tail call
+ * is that of the function which called the function making the tail call. If there is no Lua function on the
+ * call stack, such as a tail call from a chunk or a call from Java, there is no environment. We do not fall
+ * back to {@link LuaThread#getGlobals()}, as that is shared by the whole JVM and so may be another environment.
+ */
+public final class LuaContext {
+	/**
+	 * The keys for each type
+	 */
+	private static final ConcurrentHashMap<Class<?>, LuaValue> KEYS = new ConcurrentHashMap<>();
+
+	private LuaContext() {
+	}
+
+	/**
+	 * Get the key a type is stored under
+	 *
+	 * @param type The type of the context
+	 * @return The key to store it under
+	 */
+	public static LuaValue getKey(Class<?> type) {
+		LuaValue key = KEYS.get(type);
+		if (key == null) {
+			key = LuaValue.userdataOf(type);
+			LuaValue existing = KEYS.putIfAbsent(type, key);
+			if (existing != null) key = existing;
+		}
+
+		return key;
+	}
+
+	/**
+	 * Store a context object in an environment
+	 *
+	 * @param env   The environment to store it in
+	 * @param type  The type of the context, as used by {@link Context} arguments
+	 * @param value The value to store
+	 * @param <T>   The type of the context
+	 */
+	public static <T> void set(LuaTable env, Class<T> type, T value) {
+		env.rawset(getKey(type), value == null ? LuaValue.NIL : LuaValue.userdataOf(value));
+	}
+
+	/**
+	 * Get the environment of the nearest Lua function on the call stack
+	 *
+	 * @return The calling environment
+	 * @throws LuaError If there is no Lua function on the call stack
+	 */
+	public static LuaValue getEnvironment() {
+		LuaValue env = findEnvironment();
+		if (env == null) {
+			throw new LuaError("Cannot find the calling environment. This function cannot be tail called or called from Java");
+		}
+		return env;
+	}
+
+	/**
+	 * Find the environment of the nearest Lua function on the call stack
+	 *
+	 * @return The calling environment, or {@code null} if there is no Lua function on the call stack
+	 */
+	private static LuaValue findEnvironment() {
+		for (int level = 1; ; level++) {
+			org.luaj.vm2.LuaFunction function = LuaThread.getCallstackFunction(level);
+			if (function == null) return null;
+			if (function instanceof LuaClosure) return function.getfenv();
+		}
+	}
+
+	/**
+	 * Get a context object from the calling environment
+	 *
+	 * @param key The key it is stored under
+	 * @return The context object
+	 * @throws LuaError If there is no context object, or no calling environment
+	 * @see #getKey(Class)
+	 */
+	public static Object get(LuaValue key) {
+		LuaValue value = getEnvironment().rawget(key);
+		if (value.isnil()) throw new LuaError("No " + ((Class<?>) key.touserdata()).getName() + " context for this environment");
+		return value.touserdata();
+	}
+
+	/**
+	 * Get a context object from the calling environment
+	 *
+	 * @param type The type of the context
+	 * @param <T>  The type of the context
+	 * @return The context object
+	 * @throws LuaError If there is no context object, or no calling environment
+	 */
+	public static <T> T get(Class<T> type) {
+		return type.cast(get(getKey(type)));
+	}
+
+	/**
+	 * Get a context object from the calling environment, if there is one
+	 *
+	 * @param type The type of the context
+	 * @param <T>  The type of the context
+	 * @return The context object, or {@code null} if there is none or there is no calling environment
+	 */
+	public static <T> T opt(Class<T> type) {
+		LuaValue env = findEnvironment();
+		if (env == null) return null;
+
+		LuaValue value = env.rawget(getKey(type));
+		return value.isnil() ? null : type.cast(value.touserdata());
+	}
+}
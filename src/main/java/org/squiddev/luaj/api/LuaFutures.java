@@ -0,0 +1,88 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaThread;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+/**
+ * Waits for {@link CompletionStage}s returned by {@link LuaFunction}s
+ *
+ * Coroutines yield {@link #WAITING} until the future has completed, and will yield it again if resumed early.
+ * The {@link ResumeScheduler} of the calling environment is notified when the future completes, so a host which
+ * resumes coroutines through it never sees these yields. Anything else resuming the coroutine, such as a plain
+ * {@code coroutine.resume} or a {@code coroutine.wrap} iterator, receives {@link #WAITING} as a spurious yielded
+ * value, and should check for it with {@link #isWaiting(Varargs)}.
+ *
+ * This does not block other coroutines, but LuaJ runs each coroutine on its own Java thread, so the waiting
+ * coroutine's thread remains parked until it is resumed. As the main thread cannot yield, it blocks instead.
+ */
+public final class LuaFutures {
+	/**
+	 * The value yielded by a coroutine waiting on a future
+	 */
+	public static final LuaValue WAITING = LuaValue.userdataOf(new Object() {
+		@Override
+		public String toString() {
+			return "waiting";
+		}
+	});
+
+	private LuaFutures() {
+	}
+
+	/**
+	 * Check if the values yielded by a coroutine mean it is waiting for a future. The coroutine should not be
+	 * resumed until its {@link ResumeScheduler} is notified.
+	 *
+	 * @param yielded The values yielded by the coroutine, excluding the success flag returned by
+	 *                {@link LuaThread#resume(Varargs)}
+	 * @return If the coroutine is waiting for a future
+	 */
+	public static boolean isWaiting(Varargs yielded) {
+		return yielded.narg() == 1 && yielded.arg1() == WAITING;
+	}
+
+	/**
+	 * Wait for a future to complete
+	 *
+	 * @param stage The future to wait for
+	 * @return The result of the future
+	 * @throws LuaError If the future completed exceptionally or was cancelled
+	 */
+	public static Object await(CompletionStage<?> stage) {
+		CompletableFuture<?> future = stage.toCompletableFuture();
+		if (!future.isDone()) {
+			final LuaThread thread = LuaThread.getRunning();
+			if (!LuaThread.isMainThread(thread)) {
+				final ResumeScheduler scheduler = LuaContext.opt(ResumeScheduler.class);
+				if (scheduler != null) {
+					future.whenComplete(new BiConsumer<Object, Throwable>() {
+						@Override
+						public void accept(Object result, Throwable error) {
+							scheduler.schedule(thread);
+						}
+					});
+				}
+
+				while (!future.isDone()) LuaThread.yield(WAITING);
+			}
+		}
+
+		try {
+			return future.join();
+		} catch (CancellationException e) {
+			throw new LuaError("Cancelled");
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause() == null ? e : e.getCause();
+			if (cause instanceof LuaError) throw (LuaError) cause;
+			throw new LuaError(cause.getMessage() == null ? cause.toString() : cause.getMessage());
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Wraps functions so they are called while holding a lock.
+ *
+ * Locks belong to the wrapped instance (or the API class, for static APIs), so every {@link LuaObject} wrapping
+ * the same instance shares them, even across loaders. Read/write locks are not reentrant, so a {@link Writes}
+ * function must not call back into the same API.
+ *
+ * @see Synchronized
+ * @see ReadOnly
+ * @see Writes
+ */
+public final class LuaLocks {
+	private static final Map<Owner, Locks> owners = new HashMap<>();
+	private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+	private LuaLocks() {
+	}
+
+	/**
+	 * Get the object which owns an API's locks
+	 *
+	 * @param instance The wrapped instance, or {@code null} for static APIs
+	 * @param api      The API's class
+	 * @return The object to lock
+	 */
+	public static Object owner(Object instance, Class<?> api) {
+		return instance == null ? api : instance;
+	}
+
+	/**
+	 * Get the read/write lock of an object, creating it if needed
+	 *
+	 * @param owner The object which owns the lock
+	 * @return The lock
+	 * @see #owner(Object, Class)
+	 */
+	public static StampedLock readWrite(Object owner) {
+		return getLocks(owner).lock;
+	}
+
+	/**
+	 * Get the monitors used by striped functions of an object, creating them if needed
+	 *
+	 * @param owner The object which owns the stripes
+	 * @param count The number of stripes. This is rounded up to a power of two, and ignored if the
+	 *              stripes already exist.
+	 * @return The stripes
+	 * @see #owner(Object, Class)
+	 */
+	public static Object[] stripes(Object owner, int count) {
+		Locks locks = getLocks(owner);
+		synchronized (locks) {
+			Object[] stripes = locks.stripes;
+			if (stripes == null) {
+				int size = count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+				stripes = locks.stripes = new Object[size];
+				for (int i = 0; i < size; i++) stripes[i] = new Object();
+			}
+
+			return stripes;
+		}
+	}
+
+	private static Locks getLocks(Object owner) {
+		synchronized (owners) {
+			// Remove the locks of collected objects
+			Reference<?> reference;
+			while ((reference = collected.poll()) != null) owners.remove(reference);
+
+			Locks locks = owners.get(new Owner(owner, null));
+			if (locks == null) owners.put(new Owner(owner, collected), locks = new Locks());
+			return locks;
+		}
+	}
+
+	/**
+	 * Wrap a function so only one thread can call it at once
+	 *
+	 * @param function The function to wrap
+	 * @param target   The API the function belongs to
+	 * @param monitor  The object to lock
+	 * @return The wrapped function
+	 */
+	public static LuaValue synchronize(LuaValue function, JavaCall.Target target, final Object monitor) {
+		return new LockedFunction(function, target) {
+			@Override
+			protected JavaCall lock(JavaCall call, Varargs args) {
+				return new JavaCall(call) {
+					@Override
+					public Object call() {
+						synchronized (monitor) {
+							return super.call();
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Wrap a function so only one thread can call it at once with the same key
+	 *
+	 * @param function The function to wrap
+	 * @param target   The API the function belongs to
+	 * @param stripes  The monitors to choose from
+	 * @param argument The argument to choose the monitor with
+	 * @return The wrapped function
+	 * @see #stripes(Object, int)
+	 */
+	public static LuaValue striped(LuaValue function, JavaCall.Target target, final Object[] stripes, final int argument) {
+		return new LockedFunction(function, target) {
+			@Override
+			protected JavaCall lock(JavaCall call, Varargs args) {
+				int hash = args.arg(argument).hashCode();
+				hash ^= hash >>> 16;
+
+				final Object monitor = stripes[hash & (stripes.length - 1)];
+				return new JavaCall(call) {
+					@Override
+					public Object call() {
+						synchronized (monitor) {
+							return super.call();
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Wrap a function so it holds the read lock while called
+	 *
+	 * @param function   The function to wrap
+	 * @param target     The API the function belongs to
+	 * @param lock       The lock to use
+	 * @param optimistic Call the Java method without taking the lock first, calling it again under the lock if a
+	 *                   write happened. The method must be pure and idempotent.
+	 * @return The wrapped function
+	 * @see ReadOnly#optimistic()
+	 */
+	public static LuaValue read(LuaValue function, JavaCall.Target target, final StampedLock lock, final boolean optimistic) {
+		return new LockedFunction(function, target) {
+			@Override
+			protected JavaCall lock(JavaCall call, Varargs args) {
+				return new JavaCall(call) {
+					@Override
+					public Object call() {
+						if (optimistic) {
+							long stamp = lock.tryOptimisticRead();
+							if (stamp != 0) {
+								try {
+									Object result = super.call();
+									if (lock.validate(stamp)) return result;
+								} catch (RuntimeException e) {
+									// The error may have been caused by a concurrent write
+									if (lock.validate(stamp)) throw e;
+								}
+							}
+						}
+
+						long stamp = lock.readLock();
+						try {
+							return super.call();
+						} finally {
+							lock.unlockRead(stamp);
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Wrap a function so it holds the write lock while called
+	 *
+	 * @param function The function to wrap
+	 * @param target   The API the function belongs to
+	 * @param lock     The lock to use
+	 * @return The wrapped function
+	 */
+	public static LuaValue write(LuaValue function, JavaCall.Target target, final StampedLock lock) {
+		return new LockedFunction(function, target) {
+			@Override
+			protected JavaCall lock(JavaCall call, Varargs args) {
+				return new JavaCall(call) {
+					@Override
+					public Object call() {
+						long stamp = lock.writeLock();
+						try {
+							return super.call();
+						} finally {
+							lock.unlockWrite(stamp);
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * A function which captures the function it wraps, and holds a lock around the Java call. Arguments are
+	 * converted before the lock is taken, and if this function is captured itself, such as by a
+	 * {@link Blocking} function, the lock is held wherever the call is made.
+	 */
+	private abstract static class LockedFunction extends VarArgFunction {
+		private final LuaValue function;
+		private final JavaCall.Target target;
+
+		private LockedFunction(LuaValue function, JavaCall.Target target) {
+			this.function = function;
+			this.target = target;
+		}
+
+		/**
+		 * Extend a call so it holds the lock
+		 *
+		 * @param call The captured call
+		 * @param args The arguments the function was called with
+		 * @return The locked call
+		 */
+		protected abstract JavaCall lock(JavaCall call, Varargs args);
+
+		@Override
+		public Varargs invoke(Varargs args) {
+			boolean capturing = JavaCall.isCapturing();
+			JavaCall call = lock(JavaCall.capture(function, target, args), args);
+			return capturing ? call.record() : call.invoke();
+		}
+	}
+
+	/**
+	 * A weak reference to an object which owns locks, compared by identity
+	 */
+	private static final class Owner extends WeakReference<Object> {
+		private final int hash;
+
+		private Owner(Object owner, ReferenceQueue<Object> queue) {
+			super(owner, queue);
+			hash = System.identityHashCode(owner);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (other == this) return true;
+			if (!(other instanceof Owner)) return false;
+
+			Object owner = get();
+			return owner != null && owner == ((Owner) other).get();
+		}
+	}
+
+	/**
+	 * The locks of a single object
+	 */
+	private static final class Locks {
+		private final StampedLock lock = new StampedLock();
+		private Object[] stripes;
+	}
+}
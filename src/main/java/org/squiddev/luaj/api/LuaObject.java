@@ -48,6 +48,19 @@ public abstract class LuaObject {
 	protected void setup() {
 	}
 
+	/**
+	 * Apply any calls to {@link Deferred} functions made since the last flush.
+	 * This should be called by the host, such as at the end of each tick.
+	 */
+	public void flush() {
+	}
+
+	/**
+	 * Remove every result stored by this API's {@link Cached} functions. This also clears shared caches.
+	 */
+	public void invalidate() {
+	}
+
 	/**
 	 * Get or create the API's function table
 	 *
@@ -63,6 +76,18 @@ public abstract class LuaObject {
 		return table;
 	}
 
+	/**
+	 * Replace this API's table with a read only copy, so it can be shared between Lua states
+	 *
+	 * @return The read only table
+	 * @see ReadOnlyTable
+	 */
+	public LuaTable makeReadOnly() {
+		LuaTable table = getTable();
+		if (!(table instanceof ReadOnlyTable)) table = this.table = new ReadOnlyTable(table);
+		return table;
+	}
+
 	/**
 	 * Bind this API to an environment
 	 *
@@ -0,0 +1,135 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.squiddev.luaj.api.builder.BuilderSettings;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Creates the parallel forms of {@link Parallel} functions
+ */
+public final class LuaParallel {
+	/**
+	 * The key of the table holding parallel functions
+	 */
+	public static final String TABLE = "parallel";
+
+	/**
+	 * Split work into this many tasks for each thread in the pool, so threads which finish early can steal more
+	 */
+	private static final int TASKS_PER_THREAD = 4;
+
+	private LuaParallel() {
+	}
+
+	/**
+	 * Wrap a function so it is called once for each element of a list, using several threads.
+	 *
+	 * Every call is validated and converted on the calling thread, and only the Java methods are run on the pool.
+	 * Their results are converted on the calling thread too. If any call fails, the first failure is thrown once
+	 * every call has finished. As with batch functions, the number of results is stored in the {@code n} field.
+	 *
+	 * @param function The function to wrap. This is captured for each element, so its Java method must be safe to
+	 *                 call from any thread.
+	 * @param settings The settings to read the pool from when called
+	 * @param target   The API the function belongs to
+	 * @return The parallel function
+	 * @see LuaBatch#wrap(LuaValue)
+	 * @see JavaCall#capture(LuaValue, JavaCall.Target, Varargs)
+	 * @see BuilderSettings#parallelPool
+	 */
+	public static LuaValue wrap(final LuaValue function, final BuilderSettings settings, final JavaCall.Target target) {
+		return new OneArgFunction() {
+			@Override
+			public LuaValue call(LuaValue arg) {
+				ForkJoinPool pool = settings.parallelPool;
+				ForkJoinPool executor = pool == null ? ForkJoinPool.commonPool() : pool;
+
+				LuaTable table = arg.checktable();
+				int length = table.length();
+
+				JavaCall[] calls = new JavaCall[length];
+				LuaBatch.Arguments arguments = new LuaBatch.Arguments();
+				for (int i = 0; i < length; i++) {
+					try {
+						calls[i] = JavaCall.capture(function, target, arguments.read(table.rawget(i + 1)));
+					} catch (LuaError e) {
+						throw LuaBatch.getError(i + 1, e);
+					}
+				}
+
+				Object[] results = new Object[length];
+				Throwable[] errors = new Throwable[length];
+				int threshold = Math.max(1, length / (executor.getParallelism() * TASKS_PER_THREAD));
+				executor.invoke(new Task(calls, results, errors, 0, length, threshold));
+
+				LuaTable result = new LuaTable(length, 1);
+				for (int i = 0; i < length; i++) {
+					Throwable error = errors[i];
+					if (error instanceof LuaError) throw LuaBatch.getError(i + 1, (LuaError) error);
+					if (error instanceof RuntimeException) throw (RuntimeException) error;
+					if (error instanceof Error) throw (Error) error;
+					if (error != null) throw new LuaError("Bad call #" + (i + 1) + ": " + error);
+
+					Varargs converted;
+					try {
+						converted = calls[i].result(results[i]);
+					} catch (LuaError e) {
+						throw LuaBatch.getError(i + 1, e);
+					}
+					result.rawset(i + 1, converted.arg1());
+				}
+				result.rawset(LuaBatch.COUNT, LuaValue.valueOf(length));
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Makes the Java calls over a range, splitting the range until it is below the threshold
+	 */
+	private static final class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final JavaCall[] calls;
+		private final Object[] results;
+		private final Throwable[] errors;
+		private final int start;
+		private final int end;
+		private final int threshold;
+
+		private Task(JavaCall[] calls, Object[] results, Throwable[] errors, int start, int end, int threshold) {
+			this.calls = calls;
+			this.results = results;
+			this.errors = errors;
+			this.start = start;
+			this.end = end;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= threshold) {
+				for (int i = start; i < end; i++) {
+					try {
+						results[i] = calls[i].call();
+					} catch (Throwable e) {
+						errors[i] = e;
+					}
+				}
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(
+					new Task(calls, results, errors, start, middle, threshold),
+					new Task(calls, results, errors, middle, end, threshold)
+				);
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Convert this class to and from a table, rather than wrapping it as an API.
+ *
+ * Every public, non-static, non-transient field is stored in the table under its name.
+ * Converting from a table requires a public constructor with no arguments:
+ * final fields are not read and fields missing from the table keep their default value.
+ *
+ * @see org.squiddev.luaj.api.conversion.StructConverter
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LuaStruct {
+}
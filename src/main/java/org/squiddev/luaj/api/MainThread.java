@@ -0,0 +1,22 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run a function on the main (or owner) thread, rather than the thread running Lua. Calls are queued on
+ * {@link org.squiddev.luaj.api.builder.BuilderSettings#mainThreadExecutor}. The calling coroutine yields until
+ * the function has run, and the main Lua thread waits for it. Arguments are validated and converted before the
+ * call is queued, so only the Java method runs on the main thread.
+ *
+ * This can be applied to a class or method. Main thread functions cannot use {@link Context} arguments, or
+ * functional interface arguments which would call Lua from the main thread.
+ *
+ * @see MainThreadQueue
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MainThread {
+}
@@ -0,0 +1,105 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Queues calls to {@link MainThread} functions, so they can be run in one batch each tick.
+ *
+ * Calls made from the thread draining the queue are run immediately, rather than waiting for the next tick.
+ *
+ * @see org.squiddev.luaj.api.builder.BuilderSettings#mainThreadExecutor
+ */
+public class MainThreadQueue implements Executor {
+	private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+	private volatile Thread owner;
+
+	@Override
+	public void execute(Runnable task) {
+		if (task == null) throw new NullPointerException("task");
+		queue.add(task);
+	}
+
+	/**
+	 * Run every call queued before this method was called. This should be called once per tick on the main thread.
+	 *
+	 * @return The number of calls run
+	 */
+	public int drain() {
+		owner = Thread.currentThread();
+
+		// Don't run anything queued while draining, so one tick cannot run forever
+		int count = queue.size();
+		int ran = 0;
+		for (; ran < count; ran++) {
+			Runnable task = queue.poll();
+			if (task == null) break;
+			task.run();
+		}
+
+		return ran;
+	}
+
+	/**
+	 * Get the number of calls waiting to be run
+	 *
+	 * @return The number of queued calls
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Check if the current thread is the main thread: the last thread which drained this queue
+	 *
+	 * @return If this is the main thread
+	 */
+	public boolean isMainThread() {
+		return owner == Thread.currentThread();
+	}
+
+	/**
+	 * Wrap a function so it is called on an executor.
+	 *
+	 * Arguments are validated and converted on the calling thread, so only the Java method is queued. Any
+	 * exception it throws is converted to a {@link org.luaj.vm2.LuaError} once the calling thread resumes.
+	 *
+	 * @param function The function to wrap
+	 * @param executor The executor to call the function on. If this is a {@link MainThreadQueue}, calls
+	 *                 from its main thread run immediately.
+	 * @param target   The API the function belongs to
+	 * @return The wrapped function
+	 * @see JavaCall#capture(LuaValue, JavaCall.Target, Varargs)
+	 * @see LuaFutures#await(java.util.concurrent.CompletionStage)
+	 */
+	public static LuaValue wrap(final LuaValue function, final Executor executor, final JavaCall.Target target) {
+		return new VarArgFunction() {
+			@Override
+			public Varargs invoke(Varargs args) {
+				final JavaCall call = JavaCall.capture(function, target, args);
+				if (executor instanceof MainThreadQueue && ((MainThreadQueue) executor).isMainThread()) {
+					return call.invoke();
+				}
+
+				final CompletableFuture<Object> future = new CompletableFuture<>();
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							future.complete(call.call());
+						} catch (Throwable e) {
+							future.completeExceptionally(e);
+						}
+					}
+				});
+
+				return call.result(LuaFutures.await(future));
+			}
+		};
+	}
+}
@@ -0,0 +1,23 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Functions are called with method call syntax ({@code api:function(a, b)}), so the first argument is skipped.
+ *
+ * Arguments are read directly from their offset position, rather than copying them with {@link org.luaj.vm2.Varargs#subargs(int)}.
+ * This can be used on a class or a single method.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MethodCall {
+	/**
+	 * Check the first argument is a table
+	 *
+	 * @return If the first argument should be validated
+	 */
+	boolean validate() default true;
+}
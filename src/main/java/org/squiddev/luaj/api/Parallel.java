@@ -0,0 +1,25 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Mark a function as safe to call from several threads at once, adding a parallel form of it to the API's
+ * {@code parallel} table.
+ *
+ * {@code api.parallel.noise({{1, 2}, {3, 4}})} returns the same as {@code {api.noise(1, 2), api.noise(3, 4)}}, but
+ * the calls are split across a {@link java.util.concurrent.ForkJoinPool}. Arguments and results are converted on
+ * the calling thread, so only the Java method runs on the pool. The calling thread waits for them all to finish.
+ *
+ * This can be applied to a class or method. Parallel functions cannot be blocking, deferred, run on the main
+ * thread or use {@link Context} arguments.
+ *
+ * @see LuaParallel
+ * @see org.squiddev.luaj.api.builder.BuilderSettings#parallelPool
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Parallel {
+}
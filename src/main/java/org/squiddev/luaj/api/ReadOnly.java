@@ -0,0 +1,27 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Allow any number of threads to call this function at once, as long as no {@link Writes} function is running.
+ *
+ * @see LuaLocks#read(org.luaj.vm2.LuaValue, JavaCall.Target, java.util.concurrent.locks.StampedLock, boolean)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadOnly {
+	/**
+	 * Call the Java method without taking the lock, and call it again under the lock if a write happened meanwhile.
+	 *
+	 * This avoids all contention, but the method may run twice for one call, and the first run may observe a write
+	 * in progress. Only use this for pure, idempotent methods that read a few fields: they must have no side
+	 * effects, and must not loop or fail in ways other than throwing an exception when their fields are
+	 * inconsistent. Arguments are only converted once. Optimistic functions must return a value.
+	 *
+	 * @return If reads should be optimistic
+	 */
+	boolean optimistic() default false;
+}
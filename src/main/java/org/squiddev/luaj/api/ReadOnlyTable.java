@@ -0,0 +1,94 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+/**
+ * A copy of a table which cannot be modified, allowing it to be shared between Lua states.
+ *
+ * Its metatable is also copied and cannot be modified or replaced.
+ */
+public class ReadOnlyTable extends LuaTable {
+	private boolean frozen = false;
+
+	public ReadOnlyTable(LuaTable source) {
+		super();
+
+		LuaValue key = LuaValue.NIL;
+		while (true) {
+			Varargs next = source.next(key);
+			key = next.arg1();
+			if (key.isnil()) break;
+
+			super.rawset(key, next.arg(2));
+		}
+
+		LuaValue meta = source.getmetatable();
+		if (meta != null) super.setmetatable(meta instanceof ReadOnlyTable ? meta : new ReadOnlyTable(meta.checktable()));
+
+		frozen = true;
+	}
+
+	/**
+	 * Throw an error if this table has been frozen
+	 */
+	private void checkWritable() {
+		if (frozen) throw new LuaError("table is read only");
+	}
+
+	@Override
+	public LuaValue setmetatable(LuaValue metatable) {
+		checkWritable();
+		return super.setmetatable(metatable);
+	}
+
+	@Override
+	public void set(int key, LuaValue value) {
+		checkWritable();
+		super.set(key, value);
+	}
+
+	@Override
+	public void set(LuaValue key, LuaValue value) {
+		checkWritable();
+		super.set(key, value);
+	}
+
+	@Override
+	public void rawset(int key, LuaValue value) {
+		checkWritable();
+		super.rawset(key, value);
+	}
+
+	@Override
+	public void rawset(LuaValue key, LuaValue value) {
+		checkWritable();
+		super.rawset(key, value);
+	}
+
+	@Override
+	public void hashset(LuaValue key, LuaValue value) {
+		checkWritable();
+		super.hashset(key, value);
+	}
+
+	@Override
+	public LuaValue remove(int pos) {
+		checkWritable();
+		return super.remove(pos);
+	}
+
+	@Override
+	public void insert(int pos, LuaValue value) {
+		checkWritable();
+		super.insert(pos, value);
+	}
+
+	@Override
+	public void sort(LuaValue comparator) {
+		checkWritable();
+		super.sort(comparator);
+	}
+}
@@ -0,0 +1,24 @@
+package org.squiddev.luaj.api;
+
+import org.luaj.vm2.LuaThread;
+
+/**
+ * Resumes coroutines waiting on a {@link java.util.concurrent.CompletionStage} returned by a {@link LuaFunction}.
+ *
+ * Set a scheduler for an environment with {@link LuaContext#set(org.luaj.vm2.LuaTable, Class, Object)}.
+ * Without one, waiting coroutines must be resumed by whatever resumes them normally, which will see them yield
+ * {@link LuaFutures#WAITING} until the future completes.
+ *
+ * @see LuaFutures#await(java.util.concurrent.CompletionStage)
+ */
+public interface ResumeScheduler {
+	/**
+	 * Called when a future a coroutine is waiting on completes.
+	 *
+	 * This is called on the Java thread which completed the future, so should queue the coroutine
+	 * to be resumed with {@link LuaThread#resume(org.luaj.vm2.Varargs)} on the thread which owns the Lua state.
+	 *
+	 * @param coroutine The coroutine to resume
+	 */
+	void schedule(LuaThread coroutine);
+}
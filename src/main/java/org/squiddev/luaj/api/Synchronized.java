@@ -0,0 +1,29 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Only allow one thread to call a function at once. This locks the API's instance (or its class, for static
+ * APIs), so also excludes Java methods which are {@code synchronized}.
+ *
+ * This can be applied to a class or method. It cannot be used in the same API as {@link ReadOnly} or {@link Writes}.
+ *
+ * @see LuaLocks#synchronize(org.luaj.vm2.LuaValue, JavaCall.Target, Object)
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Synchronized {
+	/**
+	 * The Lua argument (starting at 1) which chooses a lock stripe, such as a key or position.
+	 *
+	 * Calls with different keys may then run at the same time. Striped functions only exclude
+	 * other striped functions in the same API. If 0, the whole instance is locked.
+	 *
+	 * @return The argument to choose a stripe from
+	 * @see org.squiddev.luaj.api.builder.BuilderSettings#lockStripes
+	 */
+	int stripe() default 0;
+}
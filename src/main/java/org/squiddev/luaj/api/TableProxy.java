@@ -0,0 +1,20 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Return a live proxy table for a {@link java.util.List} or {@link java.util.Map}, rather than copying it.
+ *
+ * Reads and writes to the table go straight through to the underlying collection.
+ * This is useful for large collections which Lua only looks at part of.
+ *
+ * @see org.squiddev.luaj.api.conversion.ListProxy
+ * @see org.squiddev.luaj.api.conversion.MapProxy
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TableProxy {
+}
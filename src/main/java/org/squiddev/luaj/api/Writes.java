@@ -0,0 +1,16 @@
+package org.squiddev.luaj.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Only allow one thread to call this function at once, and no {@link ReadOnly} functions while it is running.
+ *
+ * @see LuaLocks#write(org.luaj.vm2.LuaValue, java.util.concurrent.locks.StampedLock)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Writes {
+}
@@ -0,0 +1,88 @@
+package org.squiddev.luaj.api.builder;
+
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.conversion.FunctionAdapter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds an API from lambdas and method references rather than an annotated class
+ *
+ * <pre>
+ * LuaTable vector = new APIBuilder(loader)
+ *     .function("dist", (DoubleBinaryOperator) Vec::dist)
+ *     .build();
+ * </pre>
+ *
+ * @see APIClassLoader#makeFunction(Class, Object)
+ */
+public class APIBuilder {
+	/**
+	 * The loader to generate wrappers with
+	 */
+	protected final APIClassLoader<?> loader;
+
+	/**
+	 * The functions added so far
+	 */
+	protected final Map<String, LuaValue> functions = new LinkedHashMap<>();
+
+	public APIBuilder(APIClassLoader<?> loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Add a function
+	 *
+	 * @param name     The name of the function
+	 * @param type     The functional interface to call the function with
+	 * @param function The implementation of the interface
+	 * @param <F>      The type of the interface
+	 * @return This builder
+	 */
+	public <F> APIBuilder function(String name, Class<F> type, F function) {
+		functions.put(name, loader.makeFunction(type, function));
+		return this;
+	}
+
+	/**
+	 * Add a function, using the functional interface it implements.
+	 * Lambdas should be cast to the interface, such as {@code (IntBinaryOperator) Math::max}.
+	 *
+	 * @param name     The name of the function
+	 * @param function The implementation of a functional interface
+	 * @return This builder
+	 */
+	@SuppressWarnings("unchecked")
+	public APIBuilder function(String name, Object function) {
+		Class<?> type = null;
+		for (Class<?> iface : function.getClass().getInterfaces()) {
+			if (FunctionAdapter.getFunctionalMethod(iface) == null) continue;
+			if (type != null) {
+				throw new BuilderException("Cannot add " + name + " as it implements " + type.getName() + " and " + iface.getName());
+			}
+
+			type = iface;
+		}
+
+		if (type == null) throw new BuilderException("Cannot add " + name + " as it does not implement a functional interface");
+
+		return function(name, (Class<Object>) type, function);
+	}
+
+	/**
+	 * Create a table containing every function
+	 *
+	 * @return The created table
+	 */
+	public LuaTable build() {
+		LuaTable table = new LuaTable(0, functions.size());
+		for (Map.Entry<String, LuaValue> function : functions.entrySet()) {
+			table.rawset(function.getKey(), function.getValue());
+		}
+
+		return table;
+	}
+}
@@ -1,15 +1,21 @@
 package org.squiddev.luaj.api.builder;
 
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.LuaAPI;
+import org.squiddev.luaj.api.LuaFunction;
 import org.squiddev.luaj.api.LuaObject;
 import org.squiddev.luaj.api.LuaObjectWrapper;
 import org.squiddev.luaj.api.builder.generator.ClassBuilder;
 import org.squiddev.luaj.api.builder.generator.JoinedClassBuilder;
+import org.squiddev.luaj.api.builder.generator.ProxyBuilder;
 import org.squiddev.luaj.api.builder.tree.LuaClass;
+import org.squiddev.luaj.api.conversion.FunctionAdapter;
 import org.squiddev.luaj.api.utils.AsmUtils;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
 
 /**
  * Handles loading and generating APIs
@@ -38,6 +44,27 @@ public class APIClassLoader<T extends LuaObject> extends ClassLoader {
 	 */
 	protected final Map<Object, T> instanceCache = new WeakHashMap<>();
 
+	/**
+	 * A cache of runtime classes to the type their wrapper is generated for
+	 *
+	 * @see #getAPIType(Class)
+	 */
+	protected final Map<Class<?>, Class<?>> apiTypeCache = new WeakHashMap<>();
+
+	/**
+	 * A cache for APIs with only static functions
+	 *
+	 * @see #makeStatic(Class)
+	 */
+	protected final Map<Class<?>, T> staticCache = new WeakHashMap<>();
+
+	/**
+	 * A cache of interfaces to the proxies implementing them
+	 *
+	 * @see #makeProxy(Class, LuaTable)
+	 */
+	protected final Map<Class<?>, Class<?>> proxyCache = new WeakHashMap<>();
+
 	/**
 	 * Make a class based off a {@link org.squiddev.luaj.api.LuaAPI} class
 	 * If it already exists in the cache then use that
@@ -49,7 +76,7 @@ public class APIClassLoader<T extends LuaObject> extends ClassLoader {
 	public Class<? extends T> makeClass(Class<?> rootClass) {
 		Class<? extends T> wrapper = cache.get(rootClass);
 		if (wrapper == null) {
-			wrapper = createClass(rootClass.getName() + settings.suffix, rootClass);
+			wrapper = createClass(getClassName(rootClass, settings.suffix), rootClass);
 			cache.put(rootClass, wrapper);
 		}
 		return wrapper;
@@ -70,6 +97,9 @@ public class APIClassLoader<T extends LuaObject> extends ClassLoader {
 	 * Create an API from the specified object
 	 * If the instance is in the cache then use that
 	 *
+	 * The wrapper is generated for the class, interface or abstract class annotated with {@link LuaAPI},
+	 * so one wrapper is shared between every implementation.
+	 *
 	 * @param rootInstance The class instance to base it off
 	 * @return The resulting instance
 	 * @see #instanceCache
@@ -80,7 +110,7 @@ public class APIClassLoader<T extends LuaObject> extends ClassLoader {
 		// Support loading from the cache
 		T instance = instanceCache.get(rootInstance);
 		if (instance == null) {
-			Class<?> rootClass = rootInstance.getClass();
+			Class<?> rootClass = getAPIType(rootInstance.getClass());
 			Class<?> wrapper = makeClass(rootClass);
 
 			try {
@@ -95,6 +125,161 @@ public class APIClassLoader<T extends LuaObject> extends ClassLoader {
 		return instance;
 	}
 
+	/**
+	 * Get the type a wrapper should be generated for
+	 *
+	 * @param type The runtime type of an object
+	 * @return The type which declares the API, or {@code type} if there is none
+	 * @see #findAPIType(Class)
+	 */
+	protected Class<?> getAPIType(Class<?> type) {
+		Class<?> apiType = apiTypeCache.get(type);
+		if (apiType == null) {
+			apiType = findAPIType(type);
+			if (apiType == null) apiType = type;
+			apiTypeCache.put(type, apiType);
+		}
+
+		return apiType;
+	}
+
+	/**
+	 * Find the type annotated with {@link LuaAPI}. This is the type itself, one of its
+	 * abstract superclasses, or one of its interfaces, checked in that order.
+	 *
+	 * Concrete superclasses are not used, as subclasses may add their own functions and fields.
+	 *
+	 * @param type The type to search from
+	 * @return The annotated type, or {@code null} if there is none
+	 */
+	public static Class<?> findAPIType(Class<?> type) {
+		if (type.isAnnotationPresent(LuaAPI.class)) return type;
+
+		Queue<Class<?>> interfaces = new ArrayDeque<>();
+		Collections.addAll(interfaces, type.getInterfaces());
+		for (Class<?> parent = type.getSuperclass(); parent != null; parent = parent.getSuperclass()) {
+			if (Modifier.isAbstract(parent.getModifiers()) && parent.isAnnotationPresent(LuaAPI.class)) return parent;
+			Collections.addAll(interfaces, parent.getInterfaces());
+		}
+
+		Set<Class<?>> visited = new HashSet<>();
+		while (!interfaces.isEmpty()) {
+			Class<?> iface = interfaces.remove();
+			if (!visited.add(iface)) continue;
+
+			if (iface.isAnnotationPresent(LuaAPI.class)) return iface;
+			Collections.addAll(interfaces, iface.getInterfaces());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Create an API from a class with only static functions.
+	 * Each class has one instance per loader, whose table is read only so it can be shared between Lua states.
+	 *
+	 * @param rootClass The class to base it off
+	 * @return The resulting instance
+	 * @see #staticCache
+	 * @see LuaObject#makeReadOnly()
+	 */
+	@SuppressWarnings("unchecked")
+	public T makeStatic(Class<?> rootClass) {
+		T instance = staticCache.get(rootClass);
+		if (instance == null) {
+			for (Method method : rootClass.getMethods()) {
+				if (method.isAnnotationPresent(LuaFunction.class) && !Modifier.isStatic(method.getModifiers())) {
+					throw new BuilderException(rootClass.getName() + ": Cannot create a static API as " + method.getName() + " is not static");
+				}
+			}
+
+			Class<?> wrapper = makeClass(rootClass);
+
+			try {
+				instance = (T) wrapper.getConstructor(rootClass).newInstance(new Object[]{null});
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException("Cannot create API", e);
+			}
+
+			instance.makeReadOnly();
+			staticCache.put(rootClass, instance);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Create an implementation of an interface which calls functions in a Lua table.
+	 *
+	 * Each method calls the function with the same name, converting arguments and results with
+	 * {@link BuilderSettings#converter}. Functions are looked up when the proxy is created, so
+	 * create a new proxy if the table's functions are replaced. Interfaces or methods annotated
+	 * with {@link org.squiddev.luaj.api.MethodCall} pass the table as the first argument.
+	 *
+	 * @param iface The interface to implement. This must be public
+	 * @param table The table to call functions from
+	 * @param <P>   The type of the interface
+	 * @return The created proxy
+	 * @see ProxyBuilder
+	 */
+	public <P> P makeProxy(Class<P> iface, LuaTable table) {
+		if (!iface.isInterface()) throw new BuilderException("Cannot create a proxy for " + iface.getName() + " as it is not an interface");
+
+		Class<?> proxy = proxyCache.get(iface);
+		if (proxy == null) {
+			String name = getClassName(iface, settings.suffix + "_Proxy").replace('.', '/');
+			ProxyBuilder builder = new ProxyBuilder(name, new LuaClass(name, iface, settings, false));
+			proxy = defineClass(name.replace('/', '.'), builder.writeClasses(byteCache));
+			proxyCache.put(iface, proxy);
+		}
+
+		try {
+			return iface.cast(proxy.getConstructor(LuaTable.class).newInstance(table));
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Cannot create proxy", e);
+		}
+	}
+
+	/**
+	 * Create a Lua function from an implementation of a functional interface, such as a lambda or method reference.
+	 *
+	 * The interface's method is converted and validated like any other {@link LuaFunction}. The wrapper class
+	 * is shared between every implementation of the interface. Type arguments are erased, so generic interfaces
+	 * such as {@link java.util.function.Function} receive {@link org.luaj.vm2.LuaValue}s.
+	 *
+	 * @param iface    The functional interface to call
+	 * @param function The implementation to call
+	 * @param <F>      The type of the interface
+	 * @return The Lua function
+	 * @see APIBuilder
+	 */
+	public <F> LuaValue makeFunction(Class<F> iface, F function) {
+		Method method = FunctionAdapter.getFunctionalMethod(iface);
+		if (method == null) throw new BuilderException(iface.getName() + " is not a functional interface");
+
+		Class<?> wrapper = makeClass(iface);
+		try {
+			LuaObject instance = (LuaObject) wrapper.getConstructor(iface).newInstance(function);
+			return instance.getTable().rawget(method.getName());
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Cannot create API", e);
+		}
+	}
+
+	/**
+	 * Get the name of a class generated for a type. Classes cannot be defined in
+	 * {@code java.} packages, so these are moved into a separate package.
+	 *
+	 * @param type   The type to generate for
+	 * @param suffix The suffix of the class
+	 * @return The name of the generated class
+	 */
+	protected static String getClassName(Class<?> type, String suffix) {
+		String name = type.getName();
+		if (name.startsWith("java.")) name = "org.squiddev.luaj.api.generated." + name;
+		return name + suffix;
+	}
+
 	/**
 	 * Make a new wrapper class
 	 *
@@ -121,6 +306,15 @@ public class APIClassLoader<T extends LuaObject> extends ClassLoader {
 		return new JoinedClassBuilder(name, klass);
 	}
 
+	/**
+	 * Get the settings used to generate classes
+	 *
+	 * @return This loader's settings
+	 */
+	public BuilderSettings getSettings() {
+		return settings;
+	}
+
 	/**
 	 * Define a class and verify it before loading
 	 *
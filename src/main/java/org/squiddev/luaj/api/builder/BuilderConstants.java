@@ -5,9 +5,30 @@ import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
 import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.BlockingExecutor;
+import org.squiddev.luaj.api.DeferredCalls;
+import org.squiddev.luaj.api.JavaCall;
+import org.squiddev.luaj.api.LuaBatch;
+import org.squiddev.luaj.api.LuaCache;
+import org.squiddev.luaj.api.LuaContext;
+import org.squiddev.luaj.api.LuaFutures;
+import org.squiddev.luaj.api.LuaLocks;
 import org.squiddev.luaj.api.LuaObject;
+import org.squiddev.luaj.api.LuaParallel;
+import org.squiddev.luaj.api.MainThreadQueue;
+import org.squiddev.luaj.api.metrics.AllocationProbe;
+import org.squiddev.luaj.api.metrics.FunctionMetrics;
+import org.squiddev.luaj.api.metrics.MetricsSink;
 import org.squiddev.luaj.api.utils.TinyMethod;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.StampedLock;
+
 import static org.objectweb.asm.Opcodes.ACC_PROTECTED;
 
 /**
@@ -29,6 +50,8 @@ public abstract class BuilderConstants {
 
 	public static final String INSTANCE = "instance";
 	public static final String LOADER = "LOADER";
+	public static final String DEFERRED = "deferred";
+	public static final String CACHES = "caches";
 
 	public static final String NAMES = "NAMES";
 	public static final String NAMES_SIGNATURE = "[Ljava/lang/String;";
@@ -48,6 +71,75 @@ public abstract class BuilderConstants {
 	public static final TinyMethod LIST_OF = new TinyMethod(LuaValue.class, "listOf", LuaValue[].class);
 	public static final TinyMethod TABLE_SET_STRING = new TinyMethod(LuaValue.class, "rawset", String.class, LuaValue.class);
 
+	public static final TinyMethod TABLE_RAWSET_INT = new TinyMethod(LuaTable.class, "rawset", int.class, LuaValue.class);
+	public static final TinyMethod TABLE_RAWSET = new TinyMethod(LuaTable.class, "rawset", LuaValue.class, LuaValue.class);
+	public static final TinyMethod TABLE_RAWGET = new TinyMethod(LuaTable.class, "rawget", LuaValue.class);
+	public static final TinyMethod TABLE_RAWGET_STRING = new TinyMethod(LuaTable.class, "rawget", String.class);
+	public static final TinyMethod TABLE_RAWGET_INT = new TinyMethod(LuaTable.class, "rawget", int.class);
+	public static final TinyMethod TABLE_LENGTH = new TinyMethod(LuaTable.class, "length");
+	public static final TinyMethod VALUE_ISNIL = new TinyMethod(LuaValue.class, "isnil");
+	public static final TinyMethod VALUE_CHECKTABLE = new TinyMethod(LuaValue.class, "checktable");
+
+	public static final TinyMethod COLLECTION_SIZE = new TinyMethod(Collection.class, "size");
+	public static final TinyMethod COLLECTION_ITERATOR = new TinyMethod(Collection.class, "iterator");
+	public static final TinyMethod COLLECTION_ADD = new TinyMethod(Collection.class, "add", Object.class);
+	public static final TinyMethod LIST_GET = new TinyMethod(List.class, "get", int.class);
+	public static final TinyMethod ITERATOR_HAS_NEXT = new TinyMethod(Iterator.class, "hasNext");
+	public static final TinyMethod ITERATOR_NEXT = new TinyMethod(Iterator.class, "next");
+	public static final TinyMethod MAP_SIZE = new TinyMethod(Map.class, "size");
+	public static final TinyMethod MAP_ENTRY_SET = new TinyMethod(Map.class, "entrySet");
+	public static final TinyMethod ENTRY_GET_KEY = new TinyMethod(Map.Entry.class, "getKey");
+	public static final TinyMethod ENTRY_GET_VALUE = new TinyMethod(Map.Entry.class, "getValue");
+
 	public static final TinyMethod API_MAKE_INSTANCE = new TinyMethod(APIClassLoader.class, "makeInstance", Object.class);
 	public static final TinyMethod API_GET_TABLE = new TinyMethod(LuaObject.class, "getTable");
+
+	public static final String CLASS_BLOCKING = Type.getDescriptor(BlockingExecutor.class);
+	public static final TinyMethod BLOCKING_CREATE = new TinyMethod(BlockingExecutor.class, "create", BuilderSettings.class);
+	public static final TinyMethod BLOCKING_WRAP = new TinyMethod(BlockingExecutor.class, "wrap", LuaValue.class, JavaCall.Target.class);
+	public static final String CLASS_EXECUTOR = Type.getDescriptor(Executor.class);
+	public static final TinyMethod MAIN_THREAD_WRAP = new TinyMethod(MainThreadQueue.class, "wrap", LuaValue.class, Executor.class, JavaCall.Target.class);
+	public static final TinyMethod LOADER_SETTINGS = new TinyMethod(APIClassLoader.class, "getSettings");
+
+	public static final String TYPE_DEFERRED = Type.getInternalName(DeferredCalls.class);
+	public static final String CLASS_DEFERRED = Type.getDescriptor(DeferredCalls.class);
+	public static final String TYPE_DEFERRED_TARGET = Type.getInternalName(DeferredCalls.Target.class);
+	public static final TinyMethod DEFERRED_WRAP = new TinyMethod(DeferredCalls.class, "wrap", LuaValue.class, boolean.class);
+	public static final TinyMethod DEFERRED_FLUSH = new TinyMethod(DeferredCalls.class, "flush");
+
+	public static final String TYPE_CALL_TARGET = Type.getInternalName(JavaCall.Target.class);
+	public static final TinyMethod CALL_CAPTURING = new TinyMethod(JavaCall.class, "isCapturing");
+	public static final TinyMethod CALL_RECORD = new TinyMethod(JavaCall.class, "record", int.class, Object[].class);
+
+	public static final TinyMethod BATCH_WRAP = new TinyMethod(LuaBatch.class, "wrap", LuaValue.class);
+	public static final TinyMethod PARALLEL_WRAP = new TinyMethod(LuaParallel.class, "wrap", LuaValue.class, BuilderSettings.class, JavaCall.Target.class);
+
+	public static final String TYPE_CACHE = Type.getInternalName(LuaCache.class);
+	public static final String CLASS_CACHE = Type.getDescriptor(LuaCache.class);
+	public static final TinyMethod CACHE_WRAP = new TinyMethod(LuaCache.class, "wrap", LuaValue.class, JavaCall.Target.class);
+	public static final TinyMethod CACHE_CLEAR = new TinyMethod(LuaCache.class, "clear");
+
+	public static final TinyMethod LOCKS_OWNER = new TinyMethod(LuaLocks.class, "owner", Object.class, Class.class);
+	public static final TinyMethod LOCKS_READ_WRITE = new TinyMethod(LuaLocks.class, "readWrite", Object.class);
+	public static final TinyMethod LOCKS_STRIPES = new TinyMethod(LuaLocks.class, "stripes", Object.class, int.class);
+	public static final TinyMethod LOCKS_SYNCHRONIZE = new TinyMethod(LuaLocks.class, "synchronize", LuaValue.class, JavaCall.Target.class, Object.class);
+	public static final TinyMethod LOCKS_STRIPED = new TinyMethod(LuaLocks.class, "striped", LuaValue.class, JavaCall.Target.class, Object[].class, int.class);
+	public static final TinyMethod LOCKS_READ = new TinyMethod(LuaLocks.class, "read", LuaValue.class, JavaCall.Target.class, StampedLock.class, boolean.class);
+	public static final TinyMethod LOCKS_WRITE = new TinyMethod(LuaLocks.class, "write", LuaValue.class, JavaCall.Target.class, StampedLock.class);
+
+	public static final String CLASS_METRICS = Type.getDescriptor(FunctionMetrics.class);
+	public static final TinyMethod METRICS_CREATE = new TinyMethod(MetricsSink.class, "create", Class.class, String.class);
+	public static final TinyMethod METRICS_SUCCESS = new TinyMethod(FunctionMetrics.class, "success", long.class);
+	public static final TinyMethod METRICS_FAILURE = new TinyMethod(FunctionMetrics.class, "failure");
+	public static final TinyMethod ALLOCATION_BEGIN = new TinyMethod(AllocationProbe.class, "begin", FunctionMetrics.class, int.class);
+	public static final TinyMethod ALLOCATION_CALL = new TinyMethod(AllocationProbe.class, "call");
+	public static final TinyMethod ALLOCATION_RETURNED = new TinyMethod(AllocationProbe.class, "returned");
+	public static final TinyMethod ALLOCATION_END = new TinyMethod(AllocationProbe.class, "end");
+	public static final TinyMethod ALLOCATION_ABORT = new TinyMethod(AllocationProbe.class, "abort");
+
+	public static final TinyMethod FUTURE_AWAIT = new TinyMethod(LuaFutures.class, "await", CompletionStage.class);
+
+	public static final TinyMethod CONTEXT_ENVIRONMENT = new TinyMethod(LuaContext.class, "getEnvironment");
+	public static final TinyMethod CONTEXT_KEY = new TinyMethod(LuaContext.class, "getKey", Class.class);
+	public static final TinyMethod CONTEXT_GET = new TinyMethod(LuaContext.class, "get", LuaValue.class);
 }
@@ -2,11 +2,16 @@ package org.squiddev.luaj.api.builder;
 
 import org.squiddev.luaj.api.LuaObject;
 import org.squiddev.luaj.api.conversion.Converter;
+import org.squiddev.luaj.api.metrics.MetricsRegistry;
+import org.squiddev.luaj.api.metrics.MetricsSink;
 import org.squiddev.luaj.api.transformer.DefaultTransformers;
 import org.squiddev.luaj.api.transformer.Transformer;
 import org.squiddev.luaj.api.validation.DefaultLuaValidator;
 import org.squiddev.luaj.api.validation.ILuaValidator;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Settings for the builder
  */
@@ -40,4 +45,56 @@ public class BuilderSettings {
 	 * Default validator
 	 */
 	public Class<? extends ILuaValidator> validator = DefaultLuaValidator.class;
+
+	/**
+	 * The executor to run {@link org.squiddev.luaj.api.Blocking} functions on.
+	 * If {@code null}, a shared pool of daemon threads is used.
+	 */
+	public Executor blockingExecutor = null;
+
+	/**
+	 * The maximum number of blocking functions running at once for each API
+	 */
+	public int blockingConcurrency = 16;
+
+	/**
+	 * The maximum number of blocking calls waiting to run for each API, before calls are rejected
+	 */
+	public int blockingQueue = 256;
+
+	/**
+	 * The number of lock stripes for each API with {@link org.squiddev.luaj.api.Synchronized#stripe()} functions
+	 */
+	public int lockStripes = 16;
+
+	/**
+	 * The pool to run {@link org.squiddev.luaj.api.Parallel} functions on. This is read on each call.
+	 * If {@code null}, the {@link java.util.concurrent.ForkJoinPool#commonPool()} is used.
+	 */
+	public ForkJoinPool parallelPool = null;
+
+	/**
+	 * The executor to run {@link org.squiddev.luaj.api.MainThread} functions on. This is normally a
+	 * {@link org.squiddev.luaj.api.MainThreadQueue} which is drained once per tick.
+	 */
+	public Executor mainThreadExecutor = null;
+
+	/**
+	 * Instrument every function, as if it were annotated with {@link org.squiddev.luaj.api.Instrumented}.
+	 * This only affects classes generated after it is set.
+	 */
+	public boolean instrument = false;
+
+	/**
+	 * Creates the metrics for {@link org.squiddev.luaj.api.Instrumented} functions. By default this is a
+	 * {@link MetricsRegistry}, which can be used to export them.
+	 */
+	public MetricsSink metrics = new MetricsRegistry();
+
+	/**
+	 * Measure the allocations of one in this many calls to functions with
+	 * {@link org.squiddev.luaj.api.Instrumented#allocations()}. Set to 1 to measure every call, or 0 to disable
+	 * measuring. This only affects classes loaded after it is set.
+	 */
+	public int allocationSampling = 64;
 }
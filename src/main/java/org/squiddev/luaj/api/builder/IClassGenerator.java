@@ -0,0 +1,19 @@
+package org.squiddev.luaj.api.builder;
+
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+
+/**
+ * Generates an additional class alongside an API wrapper
+ *
+ * @see LuaClass#getExtraClass(String, String, IClassGenerator)
+ */
+public interface IClassGenerator {
+	/**
+	 * Generate the class
+	 *
+	 * @param name  The internal name of the class to generate
+	 * @param klass The API class this is generated for
+	 * @return The bytes of the generated class
+	 */
+	byte[] generate(String name, LuaClass klass);
+}
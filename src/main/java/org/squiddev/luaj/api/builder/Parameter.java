@@ -3,6 +3,7 @@ package org.squiddev.luaj.api.builder;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 
 /**
  * Port of 1.8's Parameter class for 1.7
@@ -10,15 +11,21 @@ import java.lang.reflect.Method;
 public class Parameter implements AnnotatedElement {
 	public final Annotation[] annotations;
 	public final Class<?> type;
+	public final Type genericType;
 
 	public final Method method;
 
-	public Parameter(Annotation[] annotations, Class<?> type, Method method) {
+	public Parameter(Annotation[] annotations, Class<?> type, Type genericType, Method method) {
 		this.annotations = annotations;
 		this.type = type;
+		this.genericType = genericType;
 		this.method = method;
 	}
 
+	public Parameter(Annotation[] annotations, Class<?> type, Method method) {
+		this(annotations, type, type, method);
+	}
+
 	/**
 	 * Get the type of this parameter
 	 *
@@ -28,6 +35,15 @@ public class Parameter implements AnnotatedElement {
 		return type;
 	}
 
+	/**
+	 * Get the generic type of this parameter
+	 *
+	 * @return The parameterized type of this parameter, or {@link #getType()} if it has no generic information
+	 */
+	public Type getParameterizedType() {
+		return genericType;
+	}
+
 	/**
 	 * Get an array of parameters for a method
 	 *
@@ -36,13 +52,16 @@ public class Parameter implements AnnotatedElement {
 	 */
 	public static Parameter[] getParameters(Method m) {
 		Class<?>[] types = m.getParameterTypes();
+		Type[] genericTypes = m.getGenericParameterTypes();
 		Annotation[][] annotations = m.getParameterAnnotations();
 
 		int length = types.length;
 		Parameter[] parameters = new Parameter[length];
 
 		for (int i = 0; i < length; i++) {
-			parameters[i] = new Parameter(annotations[i], types[i], m);
+			// The generic types may not line up with the actual ones for synthetic parameters
+			Type generic = genericTypes.length == length ? genericTypes[i] : types[i];
+			parameters[i] = new Parameter(annotations[i], types[i], generic, m);
 		}
 
 		return parameters;
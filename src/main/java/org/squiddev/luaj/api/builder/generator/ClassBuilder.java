@@ -1,15 +1,34 @@
 package org.squiddev.luaj.api.builder.generator;
 
+import org.luaj.vm2.Varargs;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.BlockingExecutor;
+import org.squiddev.luaj.api.LuaBatch;
 import org.squiddev.luaj.api.LuaObject;
+import org.squiddev.luaj.api.LuaParallel;
+import org.squiddev.luaj.api.builder.BuilderException;
 import org.squiddev.luaj.api.builder.BuilderSettings;
 import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaArgument;
 import org.squiddev.luaj.api.builder.tree.LuaClass;
 import org.squiddev.luaj.api.builder.tree.LuaField;
 import org.squiddev.luaj.api.builder.tree.LuaMethod;
-
+import org.squiddev.luaj.api.conversion.FunctionAdapter;
+import org.squiddev.luaj.api.utils.AsmUtils;
+import org.squiddev.luaj.api.utils.TinyMethod;
+import org.squiddev.luaj.api.utils.TypeUtils;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,6 +73,28 @@ public abstract class ClassBuilder {
 	 */
 	public final LuaClass klass;
 
+	/**
+	 * Methods whose calls are buffered until the API is flushed
+	 *
+	 * @see org.squiddev.luaj.api.Deferred
+	 */
+	protected final List<LuaMethod> deferred = new ArrayList<>();
+
+	/**
+	 * Methods whose results are cached
+	 *
+	 * @see org.squiddev.luaj.api.Cached
+	 */
+	protected final List<LuaMethod> cached = new ArrayList<>();
+
+	/**
+	 * Methods and overloads which can be called through {@link org.squiddev.luaj.api.JavaCall}, indexed by their
+	 * position in this list
+	 *
+	 * @see #isCaptured(LuaMethod)
+	 */
+	protected final List<LuaMethod> calls = new ArrayList<>();
+
 	/**
 	 * Create a new {@link ClassBuilder}
 	 *
@@ -77,8 +118,23 @@ public abstract class ClassBuilder {
 	 * Write everything!
 	 */
 	protected void write() {
-		// Declare class name
-		writer.visit(V1_6, ACC_PUBLIC + ACC_SUPER, className, null, Type.getInternalName(settings.parentClass), null);
+		for (LuaMethod method : klass.methods) {
+			if (isDeferred(method)) {
+				checkDeferred(method);
+				deferred.add(method);
+			}
+
+			if (isCaptured(method)) calls.addAll(getOverloads(method));
+		}
+
+		// Declare class name. Captured calls are made through JavaCall.Target, and deferred ones applied through DeferredCalls.Target
+		String[] interfaces = null;
+		if (deferred.size() > 0) {
+			interfaces = new String[]{TYPE_DEFERRED_TARGET};
+		} else if (calls.size() > 0) {
+			interfaces = new String[]{TYPE_CALL_TARGET};
+		}
+		writer.visit(V1_6, ACC_PUBLIC + ACC_SUPER, className, null, Type.getInternalName(settings.parentClass), interfaces);
 
 		// Declare METHOD_NAMES
 		writer.visitField(ACC_PUBLIC | ACC_FINAL | ACC_STATIC, METHOD_NAMES, METHOD_NAMES_SIGNATURE, null, null).visitEnd();
@@ -91,12 +147,30 @@ public abstract class ClassBuilder {
 
 		writer.visitField(ACC_PRIVATE | ACC_FINAL, INSTANCE, originalWhole, null, null).visitEnd();
 
+		if (deferred.size() > 0) writer.visitField(ACC_PRIVATE | ACC_FINAL, DEFERRED, CLASS_DEFERRED, null, null).visitEnd();
+
+		for (LuaMethod method : klass.methods) {
+			if (method.cacheSize > 0) {
+				checkCached(method);
+				cached.add(method);
+			}
+		}
+		if (cached.size() > 0) writer.visitField(ACC_PRIVATE | ACC_FINAL, CACHES, "[" + CLASS_CACHE, null, null).visitEnd();
+
 		writeInit();
-		writeStaticInit();
 		writeGetters();
 
 		writeSetup();
+		writeFlush();
+		writeInvalidate();
 		writeInvoke();
+		writeCalls();
+
+		// Must be after the above as any of them may require helpers
+		writeHelpers();
+
+		// Must be last as any of the above may require static fields
+		writeStaticInit();
 
 		writer.visitEnd();
 	}
@@ -105,6 +179,7 @@ public abstract class ClassBuilder {
 	 * Write the static constructor
 	 *
 	 * This constructs the array of names, array of array method names and also sets up the class loader
+	 * and any static fields
 	 */
 	protected void writeStaticInit() {
 		MethodVisitor mv = writer.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
@@ -169,6 +244,14 @@ public abstract class ClassBuilder {
 		mv.visitTypeInsn(CHECKCAST, TYPE_LOADER);
 		mv.visitFieldInsn(PUTSTATIC, className, LOADER, CLASS_LOADER);
 
+		// Setup any fields required by conversions
+		for (LuaClass.StaticField field : klass.staticFields) {
+			writer.visitField(ACC_PUBLIC | ACC_FINAL | ACC_STATIC, field.name, field.descriptor, null, null).visitEnd();
+
+			field.init.inject(mv, klass);
+			mv.visitFieldInsn(PUTSTATIC, className, field.name, field.descriptor);
+		}
+
 		mv.visitInsn(RETURN);
 
 		mv.visitMaxs(0, 0);
@@ -192,6 +275,30 @@ public abstract class ClassBuilder {
 		mv.visitVarInsn(ALOAD, 1);
 		mv.visitFieldInsn(PUTFIELD, className, INSTANCE, originalWhole);
 
+		if (deferred.size() > 0) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitTypeInsn(NEW, TYPE_DEFERRED);
+			mv.visitInsn(DUP);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, TYPE_DEFERRED, "<init>", "(L" + TYPE_DEFERRED_TARGET + ";)V", false);
+			mv.visitFieldInsn(PUTFIELD, className, DEFERRED, CLASS_DEFERRED);
+		}
+
+		if (cached.size() > 0) {
+			mv.visitVarInsn(ALOAD, 0);
+			constantOpcode(mv, cached.size());
+			mv.visitTypeInsn(ANEWARRAY, TYPE_CACHE);
+
+			for (int i = 0; i < cached.size(); i++) {
+				mv.visitInsn(DUP);
+				constantOpcode(mv, i);
+				writeCache(mv, cached.get(i));
+				mv.visitInsn(AASTORE);
+			}
+
+			mv.visitFieldInsn(PUTFIELD, className, CACHES, "[" + CLASS_CACHE);
+		}
+
 		writeInitBody(mv);
 
 		// And return
@@ -256,7 +363,38 @@ public abstract class ClassBuilder {
 	 */
 	protected void writeSetup() {
 		Set<LuaField> fields = klass.fields;
-		if (fields.size() == 0) return;
+		List<LuaMethod> dispatched = new ArrayList<>();
+		List<LuaMethod> locked = new ArrayList<>();
+		List<LuaMethod> batched = new ArrayList<>();
+		List<LuaMethod> parallel = new ArrayList<>();
+		boolean monitor = false, readWrite = false, striped = false;
+		for (LuaMethod method : klass.methods) {
+			if (isBlocking(method) || isMainThread(method)) dispatched.add(method);
+			if (isBatched(method)) batched.add(method);
+			if (isParallel(method)) {
+				checkParallel(method);
+				parallel.add(method);
+			}
+
+			LuaMethod.Locking locking = getLocking(method);
+			if (locking != LuaMethod.Locking.NONE) {
+				locked.add(method);
+				if (locking == LuaMethod.Locking.MONITOR) {
+					monitor = true;
+					if (method.stripe > 0) striped = true;
+				} else {
+					readWrite = true;
+				}
+			}
+		}
+
+		if (monitor && readWrite) {
+			throw new BuilderException("Cannot use @Synchronized with @ReadOnly or @Writes in the same API", klass);
+		}
+
+		if (fields.size() == 0 && klass.setup.size() == 0 && dispatched.size() == 0 && deferred.size() == 0 && locked.size() == 0 && cached.size() == 0 && batched.size() == 0 && parallel.size() == 0) {
+			return;
+		}
 
 		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "setup", "()V", null, null);
 		mv.visitCode();
@@ -282,6 +420,79 @@ public abstract class ClassBuilder {
 			setup.inject(mv, klass);
 		}
 
+		// Locks are taken around the Java call, which dispatched and deferred functions capture, so must be added first
+		if (readWrite) {
+			writeLockOwner(mv);
+			LOCKS_READ_WRITE.inject(mv);
+			mv.visitVarInsn(ASTORE, 2);
+		}
+		if (striped) {
+			writeLockOwner(mv);
+			mv.visitFieldInsn(GETSTATIC, className, LOADER, CLASS_LOADER);
+			LOADER_SETTINGS.inject(mv);
+			mv.visitFieldInsn(GETFIELD, Type.getInternalName(BuilderSettings.class), "lockStripes", "I");
+			LOCKS_STRIPES.inject(mv);
+			mv.visitVarInsn(ASTORE, 3);
+		}
+		for (LuaMethod method : locked) {
+			writeLocking(mv, method);
+		}
+
+		for (LuaMethod method : dispatched) {
+			writeDispatch(mv, method);
+		}
+
+		// Functions are indexed in the order they are wrapped
+		for (LuaMethod method : deferred) {
+			writeDeferred(mv, method);
+		}
+
+		// Caches are checked first, so hits skip any locks or dispatch
+		for (int i = 0; i < cached.size(); i++) {
+			LuaMethod method = cached.get(i);
+
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, CACHES, "[" + CLASS_CACHE);
+			constantOpcode(mv, i);
+			mv.visitInsn(AALOAD);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+			mv.visitLdcInsn(method.names.iterator().next());
+			TABLE_RAWGET_STRING.inject(mv);
+			mv.visitVarInsn(ALOAD, 0);
+			CACHE_WRAP.inject(mv);
+			mv.visitVarInsn(ASTORE, 1);
+
+			for (String name : method.names) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+				mv.visitLdcInsn(name);
+				mv.visitVarInsn(ALOAD, 1);
+				TABLE_SET_STRING.inject(mv);
+			}
+		}
+
+		// Batch and parallel forms call the final function, so must be last
+		if (batched.size() > 0) {
+			writeForms(mv, batched, LuaBatch.TABLE, new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					BATCH_WRAP.inject(mv);
+				}
+			});
+		}
+		if (parallel.size() > 0) {
+			writeForms(mv, parallel, LuaParallel.TABLE, new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					mv.visitFieldInsn(GETSTATIC, className, LOADER, CLASS_LOADER);
+					LOADER_SETTINGS.inject(mv);
+					mv.visitVarInsn(ALOAD, 0);
+					PARALLEL_WRAP.inject(mv);
+				}
+			});
+		}
+
 		// And return
 		mv.visitInsn(RETURN);
 		mv.visitMaxs(0, 0);
@@ -289,6 +500,743 @@ public abstract class ClassBuilder {
 
 	}
 
+	/**
+	 * Check if a function should be run on another thread
+	 *
+	 * @param method The method to check
+	 * @return If this method or any of its overloads are blocking
+	 * @see org.squiddev.luaj.api.Blocking
+	 */
+	protected static boolean isBlocking(LuaMethod method) {
+		if (method.blocking) return true;
+		for (LuaMethod overload : method.overloads) {
+			if (overload.blocking) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check if a function should be run on the main thread
+	 *
+	 * @param method The method to check
+	 * @return If this method or any of its overloads must run on the main thread
+	 * @see org.squiddev.luaj.api.MainThread
+	 */
+	protected static boolean isMainThread(LuaMethod method) {
+		if (method.mainThread) return true;
+		for (LuaMethod overload : method.overloads) {
+			if (overload.mainThread) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Replace a function in the table with one that runs on this API's {@link BlockingExecutor},
+	 * or on the main thread.
+	 *
+	 * @param mv     The setup method's visitor
+	 * @param method The blocking or main thread method
+	 */
+	protected void writeDispatch(MethodVisitor mv, LuaMethod method) {
+		boolean blocking = isBlocking(method);
+		if (blocking && isMainThread(method)) {
+			throw new BuilderException("Functions cannot be both blocking and run on the main thread", method);
+		}
+		if (!blocking && settings.mainThreadExecutor == null) {
+			throw new BuilderException("Main thread functions require BuilderSettings.mainThreadExecutor to be set", method);
+		}
+
+		for (LuaMethod overload : getOverloads(method)) {
+			for (LuaArgument argument : overload.arguments) {
+				if (argument.context) {
+					throw new BuilderException("Cannot use @Context arguments in " + (blocking ? "blocking" : "main thread") + " functions", overload);
+				}
+				if (callsLua(argument.parameter.getParameterizedType())) {
+					throw new BuilderException("Cannot use functional interface arguments in " + (blocking ? "blocking" : "main thread") + " functions", argument);
+				}
+			}
+		}
+
+		String executor;
+		String descriptor;
+		if (blocking) {
+			descriptor = CLASS_BLOCKING;
+			executor = klass.getStaticField("blocking", "blocking", descriptor, new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					mv.visitFieldInsn(GETSTATIC, klass.name, LOADER, CLASS_LOADER);
+					LOADER_SETTINGS.inject(mv);
+					BLOCKING_CREATE.inject(mv);
+				}
+			});
+		} else {
+			descriptor = CLASS_EXECUTOR;
+			executor = klass.getStaticField("mainThread", "mainThread", descriptor, new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					mv.visitFieldInsn(GETSTATIC, klass.name, LOADER, CLASS_LOADER);
+					LOADER_SETTINGS.inject(mv);
+					mv.visitFieldInsn(GETFIELD, Type.getInternalName(BuilderSettings.class), "mainThreadExecutor", CLASS_EXECUTOR);
+				}
+			});
+		}
+
+		for (String name : method.names) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+			mv.visitLdcInsn(name);
+
+			if (blocking) mv.visitFieldInsn(GETSTATIC, className, executor, descriptor);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+			mv.visitLdcInsn(name);
+			TABLE_RAWGET_STRING.inject(mv);
+
+			if (blocking) {
+				mv.visitVarInsn(ALOAD, 0);
+				BLOCKING_WRAP.inject(mv);
+			} else {
+				mv.visitFieldInsn(GETSTATIC, className, executor, descriptor);
+				mv.visitVarInsn(ALOAD, 0);
+				MAIN_THREAD_WRAP.inject(mv);
+			}
+
+			TABLE_SET_STRING.inject(mv);
+		}
+	}
+
+	/**
+	 * Get the lock to hold when calling a function
+	 *
+	 * @param method The method to check
+	 * @return The lock used by this method, which must be the same for all its overloads
+	 * @see LuaMethod#locking
+	 */
+	protected static LuaMethod.Locking getLocking(LuaMethod method) {
+		for (LuaMethod overload : method.overloads) {
+			if (overload.locking != method.locking || overload.stripe != method.stripe) {
+				throw new BuilderException("Overloads must use the same lock", overload);
+			}
+		}
+
+		return method.locking;
+	}
+
+	/**
+	 * Replace a function in the table with one that holds a lock while its Java method is called.
+	 *
+	 * The read/write lock of the API's instance is stored in local 2, and its stripes in local 3.
+	 *
+	 * @param mv     The setup method's visitor
+	 * @param method The locked method
+	 * @see org.squiddev.luaj.api.LuaLocks
+	 */
+	protected void writeLocking(MethodVisitor mv, LuaMethod method) {
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+		mv.visitLdcInsn(method.names.iterator().next());
+		TABLE_RAWGET_STRING.inject(mv);
+		mv.visitVarInsn(ALOAD, 0);
+
+		switch (method.locking) {
+			case MONITOR:
+				if (method.stripe > 0) {
+					for (LuaMethod overload : getOverloads(method)) {
+						if (method.stripe > overload.luaArguments.length || overload.luaArguments[method.stripe - 1].isVarargs()) {
+							throw new BuilderException("Cannot choose a lock stripe from argument " + method.stripe, overload);
+						}
+					}
+
+					mv.visitVarInsn(ALOAD, 3);
+					constantOpcode(mv, method.stripe + method.getArgumentOffset());
+					LOCKS_STRIPED.inject(mv);
+				} else {
+					writeLockOwner(mv);
+					LOCKS_SYNCHRONIZE.inject(mv);
+				}
+				break;
+			case OPTIMISTIC:
+				for (LuaMethod overload : getOverloads(method)) {
+					if (overload.method.getReturnType().equals(void.class)) {
+						throw new BuilderException("Optimistic read functions must return a value", overload);
+					}
+				}
+			case READ:
+				mv.visitVarInsn(ALOAD, 2);
+				mv.visitInsn(method.locking == LuaMethod.Locking.OPTIMISTIC ? ICONST_1 : ICONST_0);
+				LOCKS_READ.inject(mv);
+				break;
+			case WRITE:
+				mv.visitVarInsn(ALOAD, 2);
+				LOCKS_WRITE.inject(mv);
+				break;
+			default:
+				throw new IllegalStateException("Unknown lock " + method.locking);
+		}
+
+		mv.visitVarInsn(ASTORE, 1);
+		for (String name : method.names) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+			mv.visitLdcInsn(name);
+			mv.visitVarInsn(ALOAD, 1);
+			TABLE_SET_STRING.inject(mv);
+		}
+	}
+
+	/**
+	 * Load the object which owns this API's locks: the instance, or the API's class for static APIs
+	 *
+	 * @param mv The setup method's visitor
+	 * @see org.squiddev.luaj.api.LuaLocks#owner(Object, Class)
+	 */
+	protected void writeLockOwner(MethodVisitor mv) {
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, INSTANCE, originalWhole);
+		mv.visitLdcInsn(Type.getType(klass.klass));
+		LOCKS_OWNER.inject(mv);
+	}
+
+	/**
+	 * Get a method and all of its overloads
+	 *
+	 * @param method The method
+	 * @return The method, followed by its overloads
+	 */
+	protected static List<LuaMethod> getOverloads(LuaMethod method) {
+		List<LuaMethod> methods = new ArrayList<>(method.overloads.size() + 1);
+		methods.add(method);
+		methods.addAll(method.overloads);
+		return methods;
+	}
+
+	/**
+	 * Check if a function should have a batch form
+	 *
+	 * @param method The method to check
+	 * @return If this method or any of its overloads are batched
+	 * @see org.squiddev.luaj.api.Batched
+	 */
+	protected static boolean isBatched(LuaMethod method) {
+		if (method.batched) return true;
+		for (LuaMethod overload : method.overloads) {
+			if (overload.batched) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check if a function can be called from several threads
+	 *
+	 * @param method The method to check
+	 * @return If this method or any of its overloads are parallel
+	 * @see org.squiddev.luaj.api.Parallel
+	 */
+	protected static boolean isParallel(LuaMethod method) {
+		if (method.parallel) return true;
+		for (LuaMethod overload : method.overloads) {
+			if (overload.parallel) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Ensure a function can be called from several threads
+	 *
+	 * @param method The parallel method
+	 */
+	protected void checkParallel(LuaMethod method) {
+		if (isBlocking(method) || isMainThread(method) || isDeferred(method)) {
+			throw new BuilderException("Parallel functions cannot be blocking, deferred or run on the main thread", method);
+		}
+
+		for (LuaMethod overload : getOverloads(method)) {
+			for (LuaArgument argument : overload.arguments) {
+				if (argument.context) throw new BuilderException("Cannot use @Context arguments in parallel functions", overload);
+				if (callsLua(argument.parameter.getParameterizedType())) {
+					throw new BuilderException("Cannot use functional interface arguments in parallel functions", argument);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if an argument is converted to an adapter which calls back into Lua, such as a functional interface
+	 * or a list of them. These cannot be used off the Lua thread.
+	 *
+	 * @param type The type of the argument
+	 * @return If values of this type may call Lua functions
+	 * @see org.squiddev.luaj.api.conversion.FunctionAdapter
+	 */
+	protected static boolean callsLua(java.lang.reflect.Type type) {
+		if (type instanceof ParameterizedType) {
+			for (java.lang.reflect.Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				if (callsLua(argument)) return true;
+			}
+		} else if (type instanceof GenericArrayType) {
+			return callsLua(((GenericArrayType) type).getGenericComponentType());
+		}
+
+		Class<?> raw = TypeUtils.getRawType(type);
+		if (raw.isArray()) return callsLua(raw.getComponentType());
+		return FunctionAdapter.getFunctionalMethod(raw) != null;
+	}
+
+	/**
+	 * Create a table of alternative forms of functions, such as batch functions
+	 *
+	 * @param mv      The setup method's visitor
+	 * @param methods The methods to add
+	 * @param table   The key to store the table under
+	 * @param wrap    Wraps the function on the top of the stack
+	 * @see org.squiddev.luaj.api.LuaBatch
+	 * @see org.squiddev.luaj.api.LuaParallel
+	 */
+	protected void writeForms(MethodVisitor mv, List<LuaMethod> methods, String table, IInjector<LuaClass> wrap) {
+		for (LuaMethod method : klass.methods) {
+			if (method.names.contains(table)) {
+				throw new BuilderException("Cannot add " + table + " functions as '" + table + "' is already a function", method);
+			}
+		}
+
+		mv.visitTypeInsn(NEW, TYPE_LUATABLE);
+		mv.visitInsn(DUP);
+		mv.visitMethodInsn(INVOKESPECIAL, TYPE_LUATABLE, "<init>", "()V", false);
+		mv.visitVarInsn(ASTORE, 4);
+
+		for (LuaMethod method : methods) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+			mv.visitLdcInsn(method.names.iterator().next());
+			TABLE_RAWGET_STRING.inject(mv);
+			wrap.inject(mv, klass);
+			mv.visitVarInsn(ASTORE, 1);
+
+			for (String name : method.names) {
+				mv.visitVarInsn(ALOAD, 4);
+				mv.visitLdcInsn(name);
+				mv.visitVarInsn(ALOAD, 1);
+				TABLE_SET_STRING.inject(mv);
+			}
+		}
+
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+		mv.visitLdcInsn(table);
+		mv.visitVarInsn(ALOAD, 4);
+		TABLE_SET_STRING.inject(mv);
+	}
+
+	/**
+	 * Ensure a function's results can be cached
+	 *
+	 * @param method The cached method
+	 */
+	protected void checkCached(LuaMethod method) {
+		for (LuaMethod overload : getOverloads(method)) {
+			if (overload.method.getReturnType().equals(void.class)) {
+				throw new BuilderException("Cached functions must return a value", overload);
+			}
+
+			for (LuaArgument argument : overload.arguments) {
+				if (argument.context) throw new BuilderException("Cannot use @Context arguments in cached functions", overload);
+			}
+		}
+	}
+
+	/**
+	 * Load the cache for a function. Shared caches are stored in a static field
+	 *
+	 * @param mv     The constructor's visitor
+	 * @param method The cached method
+	 */
+	protected void writeCache(MethodVisitor mv, final LuaMethod method) {
+		IInjector<LuaClass> create = new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				mv.visitTypeInsn(NEW, TYPE_CACHE);
+				mv.visitInsn(DUP);
+				constantOpcode(mv, method.cacheSize);
+				mv.visitLdcInsn(method.cacheTtl);
+				mv.visitMethodInsn(INVOKESPECIAL, TYPE_CACHE, "<init>", "(IJ)V", false);
+			}
+		};
+
+		if (method.cacheShared) {
+			String field = klass.getStaticField("cache:" + method.method, "cache", CLASS_CACHE, create);
+			mv.visitFieldInsn(GETSTATIC, className, field, CLASS_CACHE);
+		} else {
+			create.inject(mv, klass);
+		}
+	}
+
+	/**
+	 * Write an override to the {@link LuaObject#invalidate()} method, clearing every cache
+	 */
+	protected void writeInvalidate() {
+		if (cached.size() == 0) return;
+
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "invalidate", "()V", null, null);
+		mv.visitCode();
+
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(settings.parentClass), "invalidate", "()V", false);
+
+		for (int i = 0; i < cached.size(); i++) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, CACHES, "[" + CLASS_CACHE);
+			constantOpcode(mv, i);
+			mv.visitInsn(AALOAD);
+			CACHE_CLEAR.inject(mv);
+		}
+
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Check if calls to a function should be buffered
+	 *
+	 * @param method The method to check
+	 * @return If this method or any of its overloads are deferred
+	 * @see org.squiddev.luaj.api.Deferred
+	 */
+	protected static boolean isDeferred(LuaMethod method) {
+		if (method.deferred) return true;
+		for (LuaMethod overload : method.overloads) {
+			if (overload.deferred) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Ensure a deferred function can be buffered
+	 *
+	 * @param method The deferred method
+	 */
+	protected void checkDeferred(LuaMethod method) {
+		if (method.overloads.size() > 0) throw new BuilderException("Deferred functions cannot be overloaded", method);
+		if (!method.method.getReturnType().equals(void.class)) throw new BuilderException("Deferred functions must return void", method);
+		if (isBlocking(method) || isMainThread(method)) {
+			throw new BuilderException("Deferred functions cannot be blocking or run on the main thread", method);
+		}
+
+		for (LuaArgument argument : method.arguments) {
+			if (argument.context) throw new BuilderException("Cannot use @Context arguments in deferred functions", method);
+		}
+
+		if (method.batch != null) {
+			if (method.locking != LuaMethod.Locking.NONE) throw new BuilderException("Batched functions cannot be locked", method);
+			getBatchMethod(method);
+		}
+	}
+
+	/**
+	 * Find the method which applies a deferred function's calls in bulk
+	 *
+	 * @param method The deferred method
+	 * @return The batch method, taking an array for each argument
+	 * @see org.squiddev.luaj.api.Deferred#batch()
+	 */
+	protected Method getBatchMethod(LuaMethod method) {
+		Class<?>[] types = new Class<?>[method.luaArguments.length];
+		for (int i = 0; i < types.length; i++) {
+			LuaArgument argument = method.luaArguments[i];
+			if (argument.isVarargs() || argument.optional || argument.nullable || argument.defaultValue != null) {
+				throw new BuilderException("Batched functions cannot take optional or variable arguments", argument);
+			}
+
+			types[i] = Array.newInstance(argument.parameter.getType(), 0).getClass();
+		}
+
+		Method batch;
+		try {
+			batch = klass.klass.getMethod(method.batch, types);
+		} catch (NoSuchMethodException e) {
+			throw new BuilderException("Cannot find batch method " + method.batch + Arrays.toString(types), method);
+		}
+
+		if (!batch.getReturnType().equals(void.class)) throw new BuilderException("Batch methods must return void", method);
+		return batch;
+	}
+
+	/**
+	 * Replace a function in the table with one that buffers its calls
+	 *
+	 * @param mv     The setup method's visitor
+	 * @param method The deferred method
+	 */
+	protected void writeDeferred(MethodVisitor mv, LuaMethod method) {
+		// Every name shares one wrapper, and so one index
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, DEFERRED, CLASS_DEFERRED);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+		mv.visitLdcInsn(method.names.iterator().next());
+		TABLE_RAWGET_STRING.inject(mv);
+		mv.visitInsn(method.batch == null ? ICONST_0 : ICONST_1);
+		DEFERRED_WRAP.inject(mv);
+		mv.visitVarInsn(ASTORE, 1);
+
+		for (String name : method.names) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "table", CLASS_LUATABLE);
+			mv.visitLdcInsn(name);
+			mv.visitVarInsn(ALOAD, 1);
+			TABLE_SET_STRING.inject(mv);
+		}
+	}
+
+	/**
+	 * Write an override to the {@link LuaObject#flush()} method, and the method of
+	 * {@link org.squiddev.luaj.api.DeferredCalls.Target} which applies batched calls
+	 */
+	protected void writeFlush() {
+		if (deferred.size() == 0) return;
+
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "flush", "()V", null, null);
+			mv.visitCode();
+
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(settings.parentClass), "flush", "()V", false);
+
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, DEFERRED, CLASS_DEFERRED);
+			DEFERRED_FLUSH.inject(mv);
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			// switch(function) { case i: batch(instance, calls); }
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "applyBatch", "(ILjava/util/List;)V", null, null);
+			mv.visitCode();
+
+			Label finish = new Label();
+			Label[] cases = new Label[calls.size()];
+			Arrays.fill(cases, finish);
+			for (LuaMethod method : deferred) {
+				if (method.batch != null) cases[calls.indexOf(method)] = new Label();
+			}
+
+			mv.visitVarInsn(ILOAD, 1);
+			mv.visitTableSwitchInsn(0, cases.length - 1, finish, cases);
+
+			for (final LuaMethod method : deferred) {
+				if (method.batch == null) continue;
+
+				mv.visitLabel(cases[calls.indexOf(method)]);
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitFieldInsn(GETFIELD, className, INSTANCE, originalWhole);
+				mv.visitVarInsn(ALOAD, 2);
+				klass.getHelper("batch:" + method.method, "batch", "(" + originalWhole + "Ljava/util/List;)V", new IInjector<LuaClass>() {
+					@Override
+					public void inject(MethodVisitor mv, LuaClass klass) {
+						writeBatch(mv, method);
+					}
+				}).inject(mv);
+				mv.visitInsn(RETURN);
+			}
+
+			mv.visitLabel(finish);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+	}
+
+	/**
+	 * Write a helper which unpacks a list of buffered calls into an array for each argument,
+	 * and passes them to the batch method.
+	 *
+	 * @param mv     The helper's visitor
+	 * @param method The deferred method
+	 * @see #getBatchMethod(LuaMethod)
+	 */
+	protected void writeBatch(MethodVisitor mv, LuaMethod method) {
+		Method batch = getBatchMethod(method);
+		LuaArgument[] arguments = method.luaArguments;
+		int arrays = 3, index = 3 + arguments.length, args = index + 1;
+
+		// int size = calls.size(); if(size == 0) return;
+		Label notEmpty = new Label();
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "size", "()I", true);
+		mv.visitInsn(DUP);
+		mv.visitVarInsn(ISTORE, 2);
+		mv.visitJumpInsn(IFNE, notEmpty);
+		mv.visitInsn(RETURN);
+		mv.visitLabel(notEmpty);
+
+		for (int i = 0; i < arguments.length; i++) {
+			mv.visitVarInsn(ILOAD, 2);
+			AsmUtils.newArray(mv, arguments[i].parameter.getType());
+			mv.visitVarInsn(ASTORE, arrays + i);
+		}
+
+		Label loop = new Label();
+		Label finish = new Label();
+		mv.visitInsn(ICONST_0);
+		mv.visitVarInsn(ISTORE, index);
+
+		// Object[] args = (Object[]) calls.get(i);
+		mv.visitLabel(loop);
+		mv.visitVarInsn(ILOAD, index);
+		mv.visitVarInsn(ILOAD, 2);
+		mv.visitJumpInsn(IF_ICMPGE, finish);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitVarInsn(ILOAD, index);
+		mv.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "get", "(I)Ljava/lang/Object;", true);
+		mv.visitTypeInsn(CHECKCAST, "[Ljava/lang/Object;");
+		mv.visitVarInsn(ASTORE, args);
+
+		// array[i] = (T) args[n];
+		for (int i = 0; i < arguments.length; i++) {
+			Class<?> type = arguments[i].parameter.getType();
+
+			mv.visitVarInsn(ALOAD, arrays + i);
+			mv.visitVarInsn(ILOAD, index);
+			mv.visitVarInsn(ALOAD, args);
+			constantOpcode(mv, i);
+			mv.visitInsn(AALOAD);
+			AsmUtils.unbox(mv, type);
+			mv.visitInsn(Type.getType(type).getOpcode(IASTORE));
+		}
+
+		mv.visitIincInsn(index, 1);
+		mv.visitJumpInsn(GOTO, loop);
+
+		mv.visitLabel(finish);
+		if (!Modifier.isStatic(batch.getModifiers())) mv.visitVarInsn(ALOAD, 0);
+		for (int i = 0; i < arguments.length; i++) mv.visitVarInsn(ALOAD, arrays + i);
+		new TinyMethod(batch).inject(mv);
+		mv.visitInsn(RETURN);
+	}
+
+	/**
+	 * Check if calls to a function may be captured, so its Java method is called somewhere else
+	 *
+	 * @param method The method to check
+	 * @return If this method is deferred, dispatched, parallel or locked
+	 * @see org.squiddev.luaj.api.JavaCall
+	 */
+	protected boolean isCaptured(LuaMethod method) {
+		return isDeferred(method) || isBlocking(method) || isMainThread(method) || isParallel(method) || getLocking(method) != LuaMethod.Locking.NONE;
+	}
+
+	/**
+	 * Get the index a captured method is called with
+	 *
+	 * @param method The method or overload
+	 * @return The index passed to {@link org.squiddev.luaj.api.JavaCall.Target}
+	 */
+	protected int getCallIndex(LuaMethod method) {
+		int index = calls.indexOf(method);
+		if (index < 0) throw new IllegalStateException(method + " is not captured");
+		return index;
+	}
+
+	/**
+	 * Write the methods of {@link org.squiddev.luaj.api.JavaCall.Target}, which call each captured method and
+	 * convert its result
+	 */
+	protected void writeCalls() {
+		if (calls.size() == 0) return;
+
+		Label[] cases = new Label[calls.size()];
+
+		{
+			// switch(function) { case i: return box(instance.method((T) args[0], ...)); }
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "call", "(I[Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+			mv.visitCode();
+
+			Label finish = new Label();
+			for (int i = 0; i < cases.length; i++) cases[i] = new Label();
+
+			mv.visitVarInsn(ILOAD, 1);
+			mv.visitTableSwitchInsn(0, cases.length - 1, finish, cases);
+
+			for (LuaMethod method : klass.methods) {
+				if (!isCaptured(method)) continue;
+
+				// Overloads share the metrics of the main method
+				MethodBuilder builder = new JoinedMethodBuilder(method, this, mv);
+				for (LuaMethod target : getOverloads(method)) {
+					mv.visitLabel(cases[getCallIndex(target)]);
+					mv.visitFrame(F_SAME, 0, null, 0, null);
+					builder.writeCall(target, true);
+				}
+			}
+
+			mv.visitLabel(finish);
+			mv.visitFrame(F_SAME, 0, null, 0, null);
+			mv.visitInsn(ACONST_NULL);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			// switch(function) { case i: return toLua((T) result); }
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "result", "(ILjava/lang/Object;)" + CLASS_VARARGS, null, null);
+			mv.visitCode();
+
+			Label finish = new Label();
+			for (int i = 0; i < cases.length; i++) cases[i] = new Label();
+
+			mv.visitVarInsn(ILOAD, 1);
+			mv.visitTableSwitchInsn(0, cases.length - 1, finish, cases);
+
+			for (int i = 0; i < cases.length; i++) {
+				LuaMethod target = calls.get(i);
+				Class<?> returns = target.method.getReturnType();
+
+				mv.visitLabel(cases[i]);
+				mv.visitFrame(F_SAME, 0, null, 0, null);
+				if (!returns.equals(void.class)) {
+					mv.visitVarInsn(ALOAD, 2);
+					AsmUtils.unbox(mv, returns);
+				}
+				new JoinedMethodBuilder(target, this, mv).writeReturn(target);
+			}
+
+			mv.visitLabel(finish);
+			mv.visitFrame(F_SAME, 0, null, 0, null);
+			mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NONE", CLASS_LUAVALUE);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+	}
+
+	/**
+	 * Write the static helper methods requested by conversions
+	 *
+	 * @see LuaClass#getHelper(String, String, String, IInjector)
+	 */
+	protected void writeHelpers() {
+		// Helpers may require other helpers, so we cannot use an iterator
+		List<LuaClass.Helper> helpers = klass.helpers;
+		for (int i = 0; i < helpers.size(); i++) {
+			LuaClass.Helper helper = helpers.get(i);
+
+			MethodVisitor mv = helper.method.create(writer);
+			mv.visitCode();
+			helper.body.inject(mv, klass);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+	}
+
 	/**
 	 * Write the invoke function
 	 */
@@ -309,6 +1257,7 @@ public abstract class ClassBuilder {
 	 * @return The current bytes
 	 */
 	public byte[] writeClasses(Map<String, byte[]> extras) {
+		extras.putAll(klass.extraClasses);
 		return writer.toByteArray();
 	}
 }
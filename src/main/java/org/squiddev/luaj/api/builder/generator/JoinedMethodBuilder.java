@@ -48,6 +48,19 @@ public class JoinedMethodBuilder extends MethodBuilder {
 		mv.visitJumpInsn(IF_ICMPLT, onError);
 	}
 
+	/**
+	 * Load the number of arguments
+	 *
+	 * @see org.luaj.vm2.Varargs#narg()
+	 */
+	@Override
+	protected void loadArgCount() {
+		MethodVisitor mv = getInvokeVisitor();
+
+		mv.visitVarInsn(ALOAD, 1);
+		VARARGS_NARGS.inject(mv);
+	}
+
 	/**
 	 * Load an argument
 	 *
@@ -1,27 +1,53 @@
 package org.squiddev.luaj.api.builder.generator;
 
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaThread;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 import org.squiddev.luaj.api.builder.BuilderException;
+import org.squiddev.luaj.api.builder.BuilderSettings;
 import org.squiddev.luaj.api.builder.IInjector;
 import org.squiddev.luaj.api.builder.tree.LuaArgument;
 import org.squiddev.luaj.api.builder.tree.LuaClass;
 import org.squiddev.luaj.api.builder.tree.LuaMethod;
-import org.squiddev.luaj.api.validation.ILuaValidator;
+import org.squiddev.luaj.api.metrics.MetricsSink;
+import org.squiddev.luaj.api.utils.AsmUtils;
+import org.squiddev.luaj.api.utils.TypeUtils;
+import org.squiddev.luaj.api.validation.*;
+
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.CompletionStage;
 
 import static org.objectweb.asm.Opcodes.*;
 import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+import static org.squiddev.luaj.api.utils.AsmUtils.constantOpcode;
 
 /**
  * Used to write individual methods
  */
 public abstract class MethodBuilder {
+	/**
+	 * The local storing the time spent in an instrumented method. This is after the arguments of every
+	 * generated invoke method.
+	 *
+	 * @see #writeInvoke(LuaMethod, String, boolean)
+	 */
+	protected static final int ELAPSED_LOCAL = 4;
+
 	public final LuaMethod method;
 	public final ClassBuilder builder;
 
+	/**
+	 * If we are writing the body which records a captured call, rather than making it
+	 *
+	 * @see #writeRecord(LuaMethod)
+	 */
+	protected boolean capturing;
+
 	/**
 	 * Create a MethodBuilder
 	 *
@@ -53,25 +79,492 @@ public abstract class MethodBuilder {
 	 * Write the method
 	 */
 	public void write() {
+		if (builder.isCaptured(method)) {
+			// Captured functions only convert their arguments, so the Java call can be made elsewhere
+			MethodVisitor mv = getInvokeVisitor();
+			Label call = new Label();
+
+			CALL_CAPTURING.inject(mv);
+			mv.visitJumpInsn(IFEQ, call);
+			capturing = true;
+			writeBody();
+			capturing = false;
+
+			mv.visitLabel(call);
+			mv.visitFrame(F_SAME, 0, null, 0, null);
+		}
+
+		writeBody();
+	}
+
+	/**
+	 * Validate the arguments, and call the method or choose an overload
+	 */
+	protected void writeBody() {
+		if (method.methodCall && method.validateSelf) writeSelfValidation();
+
+		if (method.overloads.isEmpty()) {
+			// Validate the arguments
+			writeValidation();
+			writeCall(method);
+		} else {
+			writeOverloads();
+		}
+	}
+
+	/**
+	 * Check the first argument of a method call is a table
+	 *
+	 * @see LuaMethod#validateSelf
+	 */
+	protected void writeSelfValidation() {
+		MethodVisitor mv = getInvokeVisitor();
+		Label valid = new Label();
+
+		loadArgument(1);
+		mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "istable", "()Z", false);
+		mv.visitJumpInsn(IFNE, valid);
+		ValidationHelpers.throwError(mv, "Expected table for self, use ':' to call this function");
+
+		mv.visitLabel(valid);
+		mv.visitFrame(F_SAME, 0, null, 0, null);
+	}
+
+	/**
+	 * Convert the arguments and pass them to the function capturing this one, without calling the method
+	 *
+	 * @param target The method being called
+	 * @see org.squiddev.luaj.api.JavaCall#record(int, Object[])
+	 */
+	protected void writeRecord(LuaMethod target) {
 		MethodVisitor mv = getInvokeVisitor();
 
-		// Validate the arguments
-		writeValidation();
+		// JavaCall.record(index, new Object[] { args... })
+		constantOpcode(mv, builder.getCallIndex(target));
+		writeArgumentConversions(target);
+		final Class<?>[] types = target.method.getParameterTypes();
+		method.klass.getHelper("pack:" + target.method, "pack", Type.getMethodDescriptor(Type.getType(Object[].class), Type.getArgumentTypes(target.method)), new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				constantOpcode(mv, types.length);
+				mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+
+				int slot = 0;
+				for (int i = 0; i < types.length; i++) {
+					Type type = Type.getType(types[i]);
+					mv.visitInsn(DUP);
+					constantOpcode(mv, i);
+					mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+					AsmUtils.box(mv, types[i]);
+					mv.visitInsn(AASTORE);
+					slot += type.getSize();
+				}
+
+				mv.visitInsn(ARETURN);
+			}
+		}).inject(mv);
+		CALL_RECORD.inject(mv);
+
+		mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NONE", CLASS_LUAVALUE);
+		mv.visitInsn(ARETURN);
+	}
+
+	/**
+	 * Convert the arguments, call the method and return its result. If this function is being captured, the
+	 * arguments are recorded instead.
+	 *
+	 * @param target The method to call. This is either {@link #method} or one of its overloads
+	 */
+	protected void writeCall(LuaMethod target) {
+		if (capturing) {
+			writeRecord(target);
+		} else {
+			writeCall(target, false);
+		}
+	}
+
+	/**
+	 * Call the method and return its result
+	 *
+	 * @param target The method to call. This is either {@link #method} or one of its overloads
+	 * @param packed If the arguments have already been converted and packed into an array in local 2, and the
+	 *               result should be boxed rather than converted. This implements
+	 *               {@link org.squiddev.luaj.api.JavaCall.Target#call(int, Object[])}.
+	 */
+	protected void writeCall(LuaMethod target, boolean packed) {
+		MethodVisitor mv = getInvokeVisitor();
+		boolean isStatic = Modifier.isStatic(target.method.getModifiers());
+
+		// Record calls, counting any exceptions
+		String metrics = method.instrumented ? getMetrics() : null;
+		boolean allocations = metrics != null && method.allocations;
+		Label tryStart = new Label(), tryEnd = new Label(), handler = new Label();
+		if (metrics != null) {
+			if (allocations) {
+				mv.visitFieldInsn(GETSTATIC, method.klass.name, metrics, CLASS_METRICS);
+				mv.visitFieldInsn(GETSTATIC, method.klass.name, getAllocationSampling(), "I");
+				ALLOCATION_BEGIN.inject(mv);
+			}
+
+			mv.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/Throwable");
+			mv.visitLabel(tryStart);
+		}
 
 		// Load the instance and validate its type
-		mv.visitVarInsn(ALOAD, 0);
-		mv.visitFieldInsn(GETFIELD, getClassName(), INSTANCE, builder.originalWhole);
+		if (!isStatic) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, getClassName(), INSTANCE, builder.originalWhole);
+		}
 
-		// Convert the arguments
-		writeArgumentConversions();
+		// Convert or unpack the arguments
+		if (packed) {
+			Class<?>[] types = target.method.getParameterTypes();
+			for (int i = 0; i < types.length; i++) {
+				mv.visitVarInsn(ALOAD, 2);
+				constantOpcode(mv, i);
+				mv.visitInsn(AALOAD);
+				AsmUtils.unbox(mv, types[i]);
+			}
+		} else {
+			writeArgumentConversions(target);
+		}
 
 		// And call the method
-		mv.visitMethodInsn(INVOKEVIRTUAL, builder.originalName, method.method.getName(), Type.getMethodDescriptor(method.method), false);
+		writeInvoke(target, metrics, allocations);
 
 		// And return
-		writeReturn();
+		if (!packed) {
+			writeResult(target);
+		} else if (target.method.getReturnType().equals(void.class)) {
+			mv.visitInsn(ACONST_NULL);
+		} else {
+			AsmUtils.box(mv, target.method.getReturnType());
+		}
+
+		if (metrics != null) {
+			mv.visitLabel(tryEnd);
+			if (allocations) ALLOCATION_END.inject(mv);
+
+			mv.visitFieldInsn(GETSTATIC, method.klass.name, metrics, CLASS_METRICS);
+			mv.visitVarInsn(LLOAD, ELAPSED_LOCAL);
+			METRICS_SUCCESS.inject(mv);
+			mv.visitInsn(ARETURN);
+
+			mv.visitLabel(handler);
+			mv.visitFrame(F_SAME1, 0, null, 1, new Object[]{"java/lang/Throwable"});
+			if (allocations) ALLOCATION_ABORT.inject(mv);
+			mv.visitFieldInsn(GETSTATIC, method.klass.name, metrics, CLASS_METRICS);
+			METRICS_FAILURE.inject(mv);
+			mv.visitInsn(ATHROW);
+		} else {
+			mv.visitInsn(ARETURN);
+		}
+	}
+
+	/**
+	 * Call the Java method, with the instance and converted arguments on the stack.
+	 *
+	 * When instrumented, the time spent in the method is stored in {@link #ELAPSED_LOCAL}, so conversion
+	 * is not included in the latency.
+	 *
+	 * @param target      The method to call
+	 * @param metrics     The field storing this function's metrics, or {@code null} if it is not instrumented
+	 * @param allocations If the allocation probe should be told when the method is called
+	 */
+	protected void writeInvoke(LuaMethod target, String metrics, boolean allocations) {
+		MethodVisitor mv = getInvokeVisitor();
+		boolean isStatic = Modifier.isStatic(target.method.getModifiers());
+
+		// Interfaces are called with INVOKEINTERFACE so one wrapper serves every implementation
+		boolean isInterface = builder.klass.klass.isInterface();
+		if (isStatic && isInterface) throw new BuilderException("Cannot call static interface methods", target);
+
+		if (metrics != null) {
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+			mv.visitVarInsn(LSTORE, ELAPSED_LOCAL);
+		}
+
+		int opcode = isStatic ? INVOKESTATIC : (isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL);
+		if (allocations) ALLOCATION_CALL.inject(mv);
+		mv.visitMethodInsn(opcode, builder.originalName, target.method.getName(), Type.getMethodDescriptor(target.method), isInterface);
+		if (allocations) ALLOCATION_RETURNED.inject(mv);
+
+		if (metrics != null) {
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+			mv.visitVarInsn(LLOAD, ELAPSED_LOCAL);
+			mv.visitInsn(LSUB);
+			mv.visitVarInsn(LSTORE, ELAPSED_LOCAL);
+		}
+	}
+
+	/**
+	 * Get the static field storing this function's metrics. Overloads share the same metrics.
+	 *
+	 * @return The name of the field
+	 * @see org.squiddev.luaj.api.Instrumented
+	 */
+	protected String getMetrics() {
+		final String name = Collections.min(method.names);
+		return method.klass.getStaticField("metrics:" + name, "metrics", CLASS_METRICS, new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				mv.visitFieldInsn(GETSTATIC, klass.name, LOADER, CLASS_LOADER);
+				LOADER_SETTINGS.inject(mv);
+				mv.visitFieldInsn(GETFIELD, Type.getInternalName(BuilderSettings.class), "metrics", Type.getDescriptor(MetricsSink.class));
+				mv.visitLdcInsn(Type.getType(klass.klass));
+				mv.visitLdcInsn(name);
+				METRICS_CREATE.inject(mv);
+			}
+		});
+	}
+
+	/**
+	 * Get the static field storing how often allocations should be measured
+	 *
+	 * @return The name of the field
+	 * @see BuilderSettings#allocationSampling
+	 */
+	protected String getAllocationSampling() {
+		return method.klass.getStaticField("allocationSampling", "allocationSampling", "I", new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				mv.visitFieldInsn(GETSTATIC, klass.name, LOADER, CLASS_LOADER);
+				LOADER_SETTINGS.inject(mv);
+				mv.visitFieldInsn(GETFIELD, Type.getInternalName(BuilderSettings.class), "allocationSampling", "I");
+			}
+		});
+	}
+
+	/**
+	 * Choose between this method and its overloads.
+	 *
+	 * We switch on the number of arguments, then check each candidate accepting that many
+	 * arguments in turn, using the same validators as for a single method. The more specific
+	 * candidates (such as numbers before strings) are checked first.
+	 *
+	 * @see LuaMethod#overloads
+	 */
+	protected void writeOverloads() {
+		MethodVisitor mv = getInvokeVisitor();
+
+		List<LuaMethod> candidates = new ArrayList<>(method.overloads.size() + 1);
+		candidates.add(method);
+		candidates.addAll(method.overloads);
+		Collections.sort(candidates, OVERLOAD_ORDER);
+
+		Map<LuaMethod, Label> bodies = new HashMap<>();
+		int maxArgs = 0;
+		for (LuaMethod candidate : candidates) {
+			bodies.put(candidate, new Label());
+			maxArgs = Math.max(maxArgs, getFixedLength(candidate));
+		}
+
+		// Method calls have an additional argument, which we treat as an error if it is missing
+		int offset = method.getArgumentOffset();
+		Label error = new Label();
+		Label overflow = new Label();
+		Label[] cases = new Label[maxArgs + offset + 1];
+		for (int i = 0; i < cases.length; i++) cases[i] = i < offset ? error : new Label();
+
+		// switch(args.narg())
+		loadArgCount();
+		mv.visitTableSwitchInsn(0, maxArgs + offset, overflow, cases);
+
+		for (int count = 0; count <= maxArgs; count++) {
+			mv.visitLabel(cases[count + offset]);
+			mv.visitFrame(F_SAME, 0, null, 0, null);
+
+			// Prefer overloads without varargs, as they are more specific
+			for (LuaMethod candidate : candidates) {
+				if (!hasVarargs(candidate) && accepts(candidate, count)) writeOverloadCheck(candidate, count, bodies.get(candidate));
+			}
+			for (LuaMethod candidate : candidates) {
+				if (hasVarargs(candidate) && accepts(candidate, count)) writeOverloadCheck(candidate, count, bodies.get(candidate));
+			}
+
+			mv.visitJumpInsn(GOTO, error);
+		}
+
+		// More arguments than any overload declares: prefer ones with varargs, otherwise extra arguments are ignored
+		mv.visitLabel(overflow);
+		mv.visitFrame(F_SAME, 0, null, 0, null);
+		for (LuaMethod candidate : candidates) {
+			if (hasVarargs(candidate)) writeOverloadCheck(candidate, maxArgs, bodies.get(candidate));
+		}
+		for (LuaMethod candidate : candidates) {
+			if (!hasVarargs(candidate)) writeOverloadCheck(candidate, maxArgs, bodies.get(candidate));
+		}
+
+		// No overload matched
+		mv.visitLabel(error);
+		mv.visitFrame(F_SAME, 0, null, 0, null);
+		ValidationHelpers.throwError(mv, getOverloadError(candidates));
+
+		for (LuaMethod candidate : candidates) {
+			mv.visitLabel(bodies.get(candidate));
+			mv.visitFrame(F_SAME, 0, null, 0, null);
+			writeCall(candidate);
+		}
+	}
+
+	/**
+	 * Check if the arguments match an overload, and jump to it if so
+	 *
+	 * @param candidate The overload to check
+	 * @param count     The number of arguments passed
+	 * @param target    The label to jump to if the arguments match
+	 */
+	protected void writeOverloadCheck(LuaMethod candidate, int count, Label target) {
+		MethodVisitor mv = getInvokeVisitor();
+		Label next = new Label();
+
+		int length = Math.min(count, getFixedLength(candidate));
+		for (int i = 0; i < length; i++) {
+			LuaArgument arg = candidate.luaArguments[i];
+			Class<?> type = arg.getValidationType();
+			ILuaValidator validator = getOverloadValidator(arg);
+			if (!validator.shouldValidate(type)) continue;
+
+			loadArgument(i + 1 + candidate.getArgumentOffset());
+
+			Label isNil = null;
+			if (arg.nullable || arg.optional) {
+				isNil = new Label();
+				mv.visitInsn(DUP);
+				VALUE_ISNIL.inject(mv);
+				mv.visitJumpInsn(IFNE, isNil);
+			}
+
+			if (!validator.addValidation(mv, type)) {
+				throw new BuilderException("Validator " + validator.getClass().getName() + " cannot be used to choose an overload", candidate);
+			}
+			mv.visitJumpInsn(IFEQ, next);
+
+			if (isNil != null) {
+				Label done = new Label();
+				mv.visitJumpInsn(GOTO, done);
+
+				mv.visitLabel(isNil);
+				mv.visitFrame(F_SAME1, 0, null, 1, new Object[]{TYPE_LUAVALUE});
+				mv.visitInsn(POP);
+
+				mv.visitLabel(done);
+				mv.visitFrame(F_SAME, 0, null, 0, null);
+			}
+		}
+
+		mv.visitJumpInsn(GOTO, target);
+		mv.visitLabel(next);
+		mv.visitFrame(F_SAME, 0, null, 0, null);
+	}
+
+	/**
+	 * Get the validator used to choose between overloads. This must leave a boolean on the stack,
+	 * so validators which throw errors themselves use the default validator instead.
+	 *
+	 * @param arg The argument to validate
+	 * @return The validator to use
+	 */
+	protected ILuaValidator getOverloadValidator(LuaArgument arg) {
+		ILuaValidator validator = arg.getValidator();
+		if (validator instanceof ArgErrorValidation) return ValidatorCache.getValidator(DefaultLuaValidator.class);
+		return validator;
+	}
+
+	/**
+	 * Get the error thrown when no overload matches
+	 *
+	 * @param candidates The overloads
+	 * @return The error message
+	 */
+	protected static String getOverloadError(List<LuaMethod> candidates) {
+		for (LuaMethod candidate : candidates) {
+			if (candidate.errorMessage != null) return candidate.errorMessage;
+		}
+
+		StringBuilder builder = new StringBuilder("Expected ");
+		boolean first = true;
+		for (LuaMethod candidate : candidates) {
+			if (!first) builder.append(" or ");
+			first = false;
+
+			builder.append("(");
+			for (int i = 0; i < getFixedLength(candidate); i++) {
+				LuaArgument arg = candidate.luaArguments[i];
+				if (i > 0) builder.append(", ");
+				builder.append(arg.getValidator().getName(arg.getValidationType()));
+			}
+			builder.append(")");
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Get the number of arguments a method takes, excluding a trailing {@link Varargs}
+	 *
+	 * @param method The method to check
+	 * @return The number of arguments
+	 */
+	private static int getFixedLength(LuaMethod method) {
+		return hasVarargs(method) ? method.luaArguments.length - 1 : method.luaArguments.length;
 	}
 
+	/**
+	 * Check if a method can be called with a number of arguments
+	 *
+	 * @param method The method to check
+	 * @param count  The number of arguments
+	 * @return If the method accepts this many arguments
+	 */
+	private static boolean accepts(LuaMethod method, int count) {
+		return count >= method.validationIterator().requiredLength() && (count <= getFixedLength(method) || hasVarargs(method));
+	}
+
+	/**
+	 * Check if a method takes a trailing {@link Varargs}
+	 *
+	 * @param method The method to check
+	 * @return If the last argument is {@link Varargs}
+	 */
+	private static boolean hasVarargs(LuaMethod method) {
+		int length = method.luaArguments.length;
+		return length > 0 && method.luaArguments[length - 1].isVarargs();
+	}
+
+	/**
+	 * Get how specific an argument's type is. Lower values are checked first, so that
+	 * integers are preferred over other numbers, and numbers over strings.
+	 *
+	 * @param arg The argument to check
+	 * @return The argument's rank
+	 */
+	private static int getRank(LuaArgument arg) {
+		Class<?> type = arg.getValidationType();
+		if (arg.isVarargs() || !arg.getValidator().shouldValidate(type)) return 4;
+		if (type.equals(String.class) || type.isEnum()) return 3;
+		if (type.equals(float.class) || type.equals(double.class)) return 2;
+		if (type.equals(long.class)) return 1;
+		return 0;
+	}
+
+	/**
+	 * Orders overloads by how specific their arguments are
+	 */
+	private static final Comparator<LuaMethod> OVERLOAD_ORDER = new Comparator<LuaMethod>() {
+		@Override
+		public int compare(LuaMethod a, LuaMethod b) {
+			int length = Math.min(a.luaArguments.length, b.luaArguments.length);
+			for (int i = 0; i < length; i++) {
+				int difference = getRank(a.luaArguments[i]) - getRank(b.luaArguments[i]);
+				if (difference != 0) return difference;
+			}
+
+			if (a.luaArguments.length != b.luaArguments.length) return b.luaArguments.length - a.luaArguments.length;
+			return Type.getMethodDescriptor(a.method).compareTo(Type.getMethodDescriptor(b.method));
+		}
+	};
+
 	/**
 	 * Validate arguments
 	 */
@@ -87,12 +580,12 @@ public abstract class MethodBuilder {
 
 		// If we should validate then assert how many values there are
 		if (needsValidation && iterator.requiredLength() > 0) {
-			validateArgLength(iterator.requiredLength(), doException);
+			validateArgLength(iterator.requiredLength() + method.getArgumentOffset(), doException);
 		}
 
-		int index = 1;
+		int index = 1 + method.getArgumentOffset();
 		for (LuaArgument arg : method) {
-			Class<?> type = arg.parameter.getType();
+			Class<?> type = arg.getValidationType();
 			ILuaValidator validator = arg.getValidator();
 
 			// If the item is a varargs then we shouldn't give it a name. Varargs will always be the last item
@@ -100,10 +593,32 @@ public abstract class MethodBuilder {
 
 			if (validator.shouldValidate(type)) {
 				loadArgument(index);
+
+				// Skip validation if the argument can be nil
+				Label isNil = null;
+				if (arg.nullable || arg.optional) {
+					isNil = new Label();
+					mv.visitInsn(DUP);
+					VALUE_ISNIL.inject(mv);
+					mv.visitJumpInsn(IFNE, isNil);
+				}
+
 				if (validator.addValidation(mv, type)) {
 					// If (condition) is false (== 0) then go to exception, else continue
 					mv.visitJumpInsn(IFEQ, doException);
 				}
+
+				if (isNil != null) {
+					Label next = new Label();
+					mv.visitJumpInsn(GOTO, next);
+
+					mv.visitLabel(isNil);
+					mv.visitFrame(F_SAME1, 0, null, 1, new Object[]{TYPE_LUAVALUE});
+					mv.visitInsn(POP);
+
+					mv.visitLabel(next);
+					mv.visitFrame(F_SAME, 0, null, 0, null);
+				}
 			}
 
 			++index;
@@ -136,20 +651,33 @@ public abstract class MethodBuilder {
 
 	/**
 	 * Load the arguments and convert them
+	 *
+	 * @param method The method whose arguments we are converting
 	 */
-	protected void writeArgumentConversions() {
+	protected void writeArgumentConversions(LuaMethod method) {
 		MethodVisitor mv = getInvokeVisitor();
-		int argCounter = 1;
+		int argCounter = 1 + method.getArgumentOffset();
 
-		for (LuaArgument arg : method.validationIterator()) {
+		for (LuaArgument arg : method.arguments) {
 			Class<?> argType = arg.parameter.getType();
-			if (argType.equals(Varargs.class)) {
+			if (arg.context) {
+				// Context arguments do not take up an argument slot
+				writeContext(arg);
+				continue;
+			} else if (argType.equals(Varargs.class)) {
 				loadVarArg(argCounter);
 			} else {
 				loadArgument(argCounter);
 
-				IInjector<LuaClass> type = builder.settings.converter.getFromLua(argType);
-				if (type == null) throw new BuilderException("Cannot convert LuaValue to " + argType, method);
+				if (arg.defaultValue != null) {
+					writeDefault(arg);
+					++argCounter;
+					continue;
+				}
+
+				java.lang.reflect.Type generic = arg.parameter.getParameterizedType();
+				IInjector<LuaClass> type = builder.settings.converter.getFromLua(generic);
+				if (type == null) throw new BuilderException("Cannot convert LuaValue to " + TypeUtils.getName(generic), method);
 				type.inject(mv, method.klass);
 			}
 
@@ -158,22 +686,130 @@ public abstract class MethodBuilder {
 	}
 
 	/**
-	 * Convert the returned variable to a {@link org.luaj.vm2.Varargs}
+	 * Load a context argument from the calling Lua state
+	 *
+	 * @param arg The argument to load
+	 * @see org.squiddev.luaj.api.Context
 	 */
-	protected void writeReturn() {
+	protected void writeContext(LuaArgument arg) {
+		MethodVisitor mv = getInvokeVisitor();
+		final Class<?> type = arg.parameter.getType();
+
+		if (type.equals(LuaThread.class)) {
+			mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(LuaThread.class), "getRunning", "()" + Type.getDescriptor(LuaThread.class), false);
+		} else if (type.equals(LuaValue.class) || type.equals(LuaTable.class)) {
+			CONTEXT_ENVIRONMENT.inject(mv);
+			if (type.equals(LuaTable.class)) VALUE_CHECKTABLE.inject(mv);
+		} else if (!type.isPrimitive()) {
+			// Cache the key on the generated class
+			String key = method.klass.getStaticField("context:" + type.getName(), "context", CLASS_LUAVALUE, new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					mv.visitLdcInsn(Type.getType(type));
+					CONTEXT_KEY.inject(mv);
+				}
+			});
+
+			mv.visitFieldInsn(GETSTATIC, method.klass.name, key, CLASS_LUAVALUE);
+			CONTEXT_GET.inject(mv);
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+		} else {
+			throw new BuilderException("Cannot use " + type.getName() + " as a context", arg);
+		}
+	}
+
+	/**
+	 * Convert the argument on the stack, using its default value if it is nil
+	 *
+	 * @param arg The argument to convert
+	 * @see LuaArgument#defaultValue
+	 */
+	protected void writeDefault(LuaArgument arg) {
+		MethodVisitor mv = getInvokeVisitor();
+		Class<?> type = arg.parameter.getType();
+		Object value = arg.defaultValue;
+
+		if (type.equals(String.class)) {
+			mv.visitLdcInsn(value);
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "optjstring", "(Ljava/lang/String;)Ljava/lang/String;", false);
+		} else if (type.equals(boolean.class)) {
+			mv.visitInsn((Boolean) value ? ICONST_1 : ICONST_0);
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "optboolean", "(Z)Z", false);
+		} else if (type.equals(long.class)) {
+			mv.visitLdcInsn(value);
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "optlong", "(J)J", false);
+		} else if (type.equals(float.class) || type.equals(double.class)) {
+			constantOpcode(mv, ((Number) value).doubleValue());
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "optdouble", "(D)D", false);
+			if (type.equals(float.class)) mv.visitInsn(D2F);
+		} else {
+			constantOpcode(mv, value instanceof Character ? (Character) value : ((Number) value).intValue());
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "optint", "(I)I", false);
+
+			if (type.equals(byte.class)) {
+				mv.visitInsn(I2B);
+			} else if (type.equals(short.class)) {
+				mv.visitInsn(I2S);
+			} else if (type.equals(char.class)) {
+				mv.visitInsn(I2C);
+			}
+		}
+	}
+
+	/**
+	 * Convert the returned variable to a {@link org.luaj.vm2.Varargs} and return it
+	 *
+	 * @param method The method whose result we are converting
+	 */
+	protected void writeReturn(LuaMethod method) {
+		writeResult(method);
+		getInvokeVisitor().visitInsn(ARETURN);
+	}
+
+	/**
+	 * Convert the returned variable to a {@link org.luaj.vm2.Varargs}, leaving it on the stack
+	 *
+	 * @param method The method whose result we are converting
+	 */
+	protected void writeResult(LuaMethod method) {
 		MethodVisitor mv = getInvokeVisitor();
 		Class<?> returns = method.method.getReturnType();
 
 		if (returns.equals(Void.TYPE)) {
 			// If no result, return None
 			mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NONE", CLASS_LUAVALUE);
+		} else if (CompletionStage.class.isAssignableFrom(returns)) {
+			// Wait for the future, yielding if we are in a coroutine
+			java.lang.reflect.Type result = TypeUtils.resolveArgument(method.method.getGenericReturnType(), CompletionStage.class, 0);
+			FUTURE_AWAIT.inject(mv);
+
+			if (TypeUtils.getRawType(result).equals(Void.class)) {
+				mv.visitInsn(POP);
+				mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NONE", CLASS_LUAVALUE);
+			} else {
+				IInjector<LuaClass> type = builder.settings.converter.getObjectToLua(result);
+				if (type == null) {
+					throw new BuilderException("Cannot convert " + TypeUtils.getName(result) + " to LuaValue", method);
+				}
+
+				type.inject(mv, method.klass);
+			}
+		} else if (method.returnsProxy) {
+			java.lang.reflect.Type generic = method.method.getGenericReturnType();
+			IInjector<LuaClass> type = builder.settings.converter.getProxyToLua(generic);
+			if (type == null) {
+				throw new BuilderException("Cannot create proxy table for " + TypeUtils.getName(generic), method);
+			}
+
+			type.inject(mv, method.klass);
 		} else if (!Varargs.class.isAssignableFrom(returns)) { // Don't need to convert if returning a LuaValue
 			// If it isn't an array or if it is and the array type isn't a subclass of LuaValue
 			if (!returns.isArray() || !LuaValue.class.isAssignableFrom(returns.getComponentType())) {
-				// Check if we have a converter
-				IInjector<LuaClass> type = builder.settings.converter.getToLua(returns);
+				// Check if we have a converter. We use the generic type so collections can be converted
+				java.lang.reflect.Type generic = method.method.getGenericReturnType();
+				IInjector<LuaClass> type = builder.settings.converter.getToLua(generic);
 				if (type == null) {
-					throw new BuilderException("Cannot convert " + returns.getName() + " to LuaValue for ", method);
+					throw new BuilderException("Cannot convert " + TypeUtils.getName(generic) + " to LuaValue for ", method);
 				}
 
 				type.inject(mv, method.klass);
@@ -188,8 +824,6 @@ public abstract class MethodBuilder {
 				}
 			}
 		}
-
-		mv.visitInsn(ARETURN);
 	}
 
 	/**
@@ -200,6 +834,13 @@ public abstract class MethodBuilder {
 	 */
 	protected abstract void validateArgLength(int nArgs, Label onError);
 
+	/**
+	 * Load the number of arguments
+	 *
+	 * @see org.luaj.vm2.Varargs#narg()
+	 */
+	protected abstract void loadArgCount();
+
 	/**
 	 * Load an argument
 	 *
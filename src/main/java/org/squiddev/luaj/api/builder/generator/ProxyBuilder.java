@@ -0,0 +1,219 @@
+package org.squiddev.luaj.api.builder.generator;
+
+import org.luaj.vm2.LuaString;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.MethodCall;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+import org.squiddev.luaj.api.conversion.FunctionAdapter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+
+/**
+ * Builds a class implementing a Java interface by calling functions in a {@link org.luaj.vm2.LuaTable}
+ *
+ * Each abstract method calls the function with the same name. Functions are looked up once,
+ * when the proxy is created, and their keys are interned in static fields.
+ *
+ * @see org.squiddev.luaj.api.builder.APIClassLoader#makeProxy(Class, org.luaj.vm2.LuaTable)
+ */
+public class ProxyBuilder {
+	private static final String TABLE = "table";
+	private static final String FUNCTION = "function$";
+	private static final String CLASS_LUASTRING = Type.getDescriptor(LuaString.class);
+
+	/**
+	 * The {@link ClassWriter} for the proxy class
+	 */
+	protected final ClassWriter writer;
+
+	/**
+	 * The name of the generated class
+	 */
+	public final String className;
+
+	/**
+	 * Data about the interface, used for helpers and static fields
+	 */
+	public final LuaClass klass;
+
+	/**
+	 * The methods to implement
+	 */
+	protected final List<Method> methods = new ArrayList<>();
+
+	/**
+	 * Writes calls and conversions
+	 */
+	protected final FunctionAdapter adapter;
+
+	/**
+	 * Create a new {@link ProxyBuilder}
+	 *
+	 * @param name  The name of the generated class
+	 * @param klass The interface to implement
+	 */
+	public ProxyBuilder(String name, LuaClass klass) {
+		this.klass = klass;
+		className = name;
+		adapter = new FunctionAdapter(klass.klass, klass.settings.converter);
+
+		for (Method method : klass.klass.getMethods()) {
+			if (Modifier.isAbstract(method.getModifiers()) && !FunctionAdapter.isObjectMethod(method)) methods.add(method);
+		}
+
+		writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		write();
+	}
+
+	/**
+	 * Write everything!
+	 */
+	protected void write() {
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER, className, null, "java/lang/Object", new String[]{Type.getInternalName(klass.klass)});
+
+		// LOADER is required by some conversions
+		writer.visitField(ACC_PUBLIC | ACC_FINAL | ACC_STATIC, LOADER, CLASS_LOADER, null, null).visitEnd();
+
+		writer.visitField(ACC_PRIVATE | ACC_FINAL, TABLE, CLASS_LUATABLE, null, null).visitEnd();
+		for (int i = 0; i < methods.size(); i++) {
+			writer.visitField(ACC_PRIVATE | ACC_FINAL, FUNCTION + i, CLASS_LUAVALUE, null, null).visitEnd();
+		}
+
+		writeInit();
+		for (int i = 0; i < methods.size(); i++) {
+			writeMethod(i, methods.get(i));
+		}
+
+		writeHelpers();
+		writeStaticInit();
+
+		writer.visitEnd();
+	}
+
+	/**
+	 * Write the constructor. This stores the table and looks up every function.
+	 */
+	protected void writeInit() {
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "(" + CLASS_LUATABLE + ")V", null, null);
+		mv.visitCode();
+
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitFieldInsn(PUTFIELD, className, TABLE, CLASS_LUATABLE);
+
+		for (int i = 0; i < methods.size(); i++) {
+			final String name = methods.get(i).getName();
+			String key = klass.getStaticField("proxy:" + name, "KEY", CLASS_LUASTRING, new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass object) {
+					mv.visitLdcInsn(name);
+					mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(LuaString.class), "valueOf", "(Ljava/lang/String;)" + CLASS_LUASTRING, false);
+				}
+			});
+
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitFieldInsn(GETSTATIC, className, key, CLASS_LUASTRING);
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUATABLE, "get", "(" + CLASS_LUAVALUE + ")" + CLASS_LUAVALUE, false);
+			mv.visitFieldInsn(PUTFIELD, className, FUNCTION + i, CLASS_LUAVALUE);
+		}
+
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Write an implementation of an interface method
+	 *
+	 * @param index  The index of the method
+	 * @param method The method to implement
+	 */
+	protected void writeMethod(int index, Method method) {
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method), null, null);
+		mv.visitCode();
+
+		boolean self = klass.methodCall || method.isAnnotationPresent(MethodCall.class);
+		if (self) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, TABLE, CLASS_LUATABLE);
+		}
+
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, FUNCTION + index, CLASS_LUAVALUE);
+		if (self) mv.visitInsn(SWAP);
+
+		adapter.writeCall(mv, method, self, method.getName(), klass);
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Write the static helper methods requested by conversions
+	 *
+	 * @see LuaClass#getHelper(String, String, String, IInjector)
+	 */
+	protected void writeHelpers() {
+		// Helpers may require other helpers, so we cannot use an iterator
+		List<LuaClass.Helper> helpers = klass.helpers;
+		for (int i = 0; i < helpers.size(); i++) {
+			LuaClass.Helper helper = helpers.get(i);
+
+			MethodVisitor mv = helper.method.create(writer);
+			mv.visitCode();
+			helper.body.inject(mv, klass);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+	}
+
+	/**
+	 * Write the static constructor, setting up the class loader and any static fields
+	 */
+	protected void writeStaticInit() {
+		MethodVisitor mv = writer.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+		mv.visitCode();
+
+		mv.visitLdcInsn(Type.getType("L" + className + ";"));
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;", false);
+		mv.visitTypeInsn(CHECKCAST, TYPE_LOADER);
+		mv.visitFieldInsn(PUTSTATIC, className, LOADER, CLASS_LOADER);
+
+		for (LuaClass.StaticField field : klass.staticFields) {
+			writer.visitField(ACC_PUBLIC | ACC_FINAL | ACC_STATIC, field.name, field.descriptor, null, null).visitEnd();
+
+			field.init.inject(mv, klass);
+			mv.visitFieldInsn(PUTSTATIC, className, field.name, field.descriptor);
+		}
+
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Write this class and any additional classes required
+	 *
+	 * @param extras Extra classes to populate with
+	 * @return The current bytes
+	 */
+	public byte[] writeClasses(Map<String, byte[]> extras) {
+		extras.putAll(klass.extraClasses);
+		return writer.toByteArray();
+	}
+}
@@ -113,14 +113,18 @@ public class SplitClassBuilder extends ClassBuilder {
 	@Override
 	public SplitMethodBuilder createBuilder(LuaMethod method) {
 		String name = names.get(method);
-		int length = method.arguments.length;
+		int length = method.luaArguments.length;
 
+		// Method calls also take the self argument
+		int count = length + method.getArgumentOffset();
+
+		// Overloads need the number of arguments, which only varargs functions have
 		if (
-			method.returnsVarags || method.method.getReturnType().equals(Varargs.class) ||
-				(length > 0 && method.arguments[length - 1].isVarargs()) || length > 3
+			!method.overloads.isEmpty() || method.returnsVarags || method.method.getReturnType().equals(Varargs.class) ||
+				(length > 0 && method.luaArguments[length - 1].isVarargs()) || count > 3
 			) {
 			return new SplitMethodBuilder.VarArgBuilder(method, this, name);
-		} else if (length == 0) {
+		} else if (count == 0) {
 			return new SplitMethodBuilder.ZeroArgBuilder(method, this, name);
 		}
 
@@ -107,13 +107,18 @@ public abstract class SplitMethodBuilder extends MethodBuilder {
 		}
 
 		public FiniteArgBuilder(LuaMethod method, ClassBuilder builder, String name) {
-			super(method, builder, name, ARG_LENGTHS[method.arguments.length - 1]);
+			super(method, builder, name, ARG_LENGTHS[method.luaArguments.length + method.getArgumentOffset() - 1]);
 		}
 
 		@Override
 		protected void validateArgLength(int nArgs, Label onError) {
 		}
 
+		@Override
+		protected void loadArgCount() {
+			throw new BuilderException("Cannot load argument count for finite arg function", method);
+		}
+
 		@Override
 		protected void loadArgument(int arg) {
 			getInvokeVisitor().visitVarInsn(ALOAD, arg);
@@ -155,6 +160,14 @@ public abstract class SplitMethodBuilder extends MethodBuilder {
 			mv.visitJumpInsn(IF_ICMPLT, onError);
 		}
 
+		@Override
+		protected void loadArgCount() {
+			MethodVisitor mv = getInvokeVisitor();
+
+			mv.visitVarInsn(ALOAD, 1);
+			VARARGS_NARGS.inject(mv);
+		}
+
 		@Override
 		protected void loadArgument(int arg) {
 			MethodVisitor mv = getInvokeVisitor();
@@ -2,6 +2,7 @@ package org.squiddev.luaj.api.builder.tree;
 
 import org.luaj.vm2.Varargs;
 import org.squiddev.luaj.api.builder.Parameter;
+import org.squiddev.luaj.api.utils.TypeUtils;
 import org.squiddev.luaj.api.validation.ILuaValidator;
 import org.squiddev.luaj.api.validation.ValidatorCache;
 
@@ -30,6 +31,27 @@ public class LuaArgument {
 	 */
 	public boolean optional = false;
 
+	/**
+	 * Can this argument be {@code nil}. Nullable arguments are not validated if they are {@code nil}.
+	 * If all arguments after this one are nullable then this will also be {@link #optional}
+	 */
+	public boolean nullable = false;
+
+	/**
+	 * Is this argument provided by the generated code rather than Lua.
+	 * Context arguments are not validated, and do not count towards the Lua argument indexes.
+	 *
+	 * @see org.squiddev.luaj.api.Context
+	 */
+	public boolean context = false;
+
+	/**
+	 * The constant to use if this argument is {@code nil}, or {@code null} if there is no default
+	 *
+	 * @see org.squiddev.luaj.api.Default
+	 */
+	public Object defaultValue;
+
 	public LuaArgument(LuaMethod method, Parameter parameter) {
 		this.parameter = parameter;
 
@@ -39,6 +61,9 @@ public class LuaArgument {
 		// Varargs should allow null
 		if (parameter.getType().equals(Varargs.class)) optional = true;
 
+		// Boxed primitives and Optionals are converted to null or empty
+		if (TypeUtils.isBoxed(parameter.getType())) nullable = true;
+
 		// Run transformers on this argument
 		if (method.klass.settings.transformer != null) method.klass.settings.transformer.transform(this);
 	}
@@ -47,6 +72,16 @@ public class LuaArgument {
 		return ValidatorCache.getValidator(validator);
 	}
 
+	/**
+	 * Get the type this argument should be validated as
+	 *
+	 * @return The argument's type, or the primitive type if it is boxed
+	 * @see TypeUtils#unbox(Class)
+	 */
+	public Class<?> getValidationType() {
+		return TypeUtils.unbox(parameter.getType());
+	}
+
 	public boolean isVarargs() {
 		return parameter.getType().equals(Varargs.class);
 	}
@@ -4,16 +4,19 @@ import org.squiddev.luaj.api.LuaAPI;
 import org.squiddev.luaj.api.LuaFunction;
 import org.squiddev.luaj.api.builder.BuilderException;
 import org.squiddev.luaj.api.builder.BuilderSettings;
+import org.squiddev.luaj.api.builder.IClassGenerator;
 import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.conversion.FunctionAdapter;
 import org.squiddev.luaj.api.transformer.Transformer;
+import org.squiddev.luaj.api.utils.TinyMethod;
 import org.squiddev.luaj.api.validation.ILuaValidator;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
 
 /**
  * Data about the class we are generating data about
@@ -56,12 +59,124 @@ public class LuaClass {
 	 */
 	public Class<? extends ILuaValidator> validator;
 
+	/**
+	 * If functions skip the first argument
+	 *
+	 * @see org.squiddev.luaj.api.MethodCall
+	 */
+	public boolean methodCall;
+
+	/**
+	 * If functions should be run on another thread
+	 *
+	 * @see org.squiddev.luaj.api.Blocking
+	 */
+	public boolean blocking;
+
+	/**
+	 * If functions must run on the main thread
+	 *
+	 * @see org.squiddev.luaj.api.MainThread
+	 */
+	public boolean mainThread;
+
+	/**
+	 * If only one thread should call functions at once
+	 *
+	 * @see org.squiddev.luaj.api.Synchronized
+	 */
+	public boolean synchronize;
+
+	/**
+	 * If functions should have a batch form
+	 *
+	 * @see org.squiddev.luaj.api.Batched
+	 */
+	public boolean batched;
+
+	/**
+	 * If functions can be called from several threads at once
+	 *
+	 * @see org.squiddev.luaj.api.Parallel
+	 */
+	public boolean parallel;
+
+	/**
+	 * If calls to functions should be recorded
+	 *
+	 * @see org.squiddev.luaj.api.Instrumented
+	 */
+	public boolean instrumented;
+
+	/**
+	 * If the memory allocated by functions should be recorded
+	 *
+	 * @see org.squiddev.luaj.api.Instrumented#allocations()
+	 */
+	public boolean allocations;
+
+	/**
+	 * If the first argument of a method call should be validated as a table
+	 *
+	 * @see org.squiddev.luaj.api.MethodCall#validate()
+	 */
+	public boolean validateSelf;
+
 	/**
 	 * Called when the table is created
 	 */
 	public List<IInjector<LuaClass>> setup = new ArrayList<>();
 
+	/**
+	 * Static helper methods to write into the generated class
+	 *
+	 * @see #getHelper(String, String, String, IInjector)
+	 */
+	public final List<Helper> helpers = new ArrayList<>();
+
+	/**
+	 * Lookup of helper keys to helpers
+	 */
+	private final Map<String, Helper> helperLookup = new HashMap<>();
+
+	/**
+	 * Static fields to write into the generated class
+	 *
+	 * @see #getStaticField(String, String, String, IInjector)
+	 */
+	public final List<StaticField> staticFields = new ArrayList<>();
+
+	/**
+	 * Lookup of static field keys to fields
+	 */
+	private final Map<String, StaticField> staticFieldLookup = new HashMap<>();
+
+	/**
+	 * Additional classes generated alongside the wrapper, from internal name to bytes
+	 *
+	 * @see #getExtraClass(String, String, IClassGenerator)
+	 */
+	public final Map<String, byte[]> extraClasses = new HashMap<>();
+
+	/**
+	 * Lookup of extra class keys to class names
+	 */
+	private final Map<String, String> extraClassLookup = new HashMap<>();
+
 	public LuaClass(String name, Class<?> klass, BuilderSettings settings) {
+		this(name, klass, settings, true);
+	}
+
+	/**
+	 * Create a new class
+	 *
+	 * @param name     The name of the generated class
+	 * @param klass    The class we are generating from
+	 * @param settings The settings to generate with
+	 * @param wrapper  If this is a wrapper, and so should gather {@link LuaFunction} methods and fields.
+	 *                 Proxies only use the class's helpers, static fields and extra classes.
+	 */
+	public LuaClass(String name, Class<?> klass, BuilderSettings settings, boolean wrapper) {
 		this.name = name;
 		this.klass = klass;
 		this.validator = settings.validator;
@@ -70,12 +185,36 @@ public class LuaClass {
 		this.settings = settings;
 		Transformer transformer = settings.transformer;
 		if (transformer != null) transformer.transform(this);
+		if (!wrapper) return;
 
-		// Gather methods
+		// Unannotated functional interfaces expose their single method
+		Method functional = klass.isAnnotationPresent(LuaAPI.class) ? null : FunctionAdapter.getFunctionalMethod(klass);
+
+		// Gather methods, grouping overloads which share a name
 		Set<LuaMethod> methods = this.methods;
+		Map<String, LuaMethod> byName = new HashMap<>();
 		for (Method method : klass.getMethods()) {
-			if (method.isAnnotationPresent(LuaFunction.class)) {
-				methods.add(new LuaMethod(this, method));
+			if (method.isBridge() || !(method.isAnnotationPresent(LuaFunction.class) || method.equals(functional))) continue;
+
+			LuaMethod luaMethod = new LuaMethod(this, method);
+
+			LuaMethod existing = null;
+			for (String methodName : luaMethod.names) {
+				existing = byName.get(methodName);
+				if (existing != null) break;
+			}
+
+			if (existing == null) {
+				methods.add(luaMethod);
+				for (String methodName : luaMethod.names) {
+					byName.put(methodName, luaMethod);
+				}
+			} else if (existing.methodCall != luaMethod.methodCall) {
+				throw new BuilderException("Overloads must all use method calls or none of them", luaMethod);
+			} else if (existing.names.equals(luaMethod.names)) {
+				existing.overloads.add(luaMethod);
+			} else {
+				throw new BuilderException("Overloads must have the same names as " + existing.method.getName(), luaMethod);
 			}
 		}
 
@@ -86,4 +225,121 @@ public class LuaClass {
 			fields.add(new LuaField(this, field));
 		}
 	}
+
+	/**
+	 * Get or create a static helper method on the generated class.
+	 *
+	 * This is used for conversions that need their own local variables or loops,
+	 * which cannot be safely inlined into the invoke method.
+	 *
+	 * @param key       A unique key for this helper. Helpers with the same key are only written once
+	 * @param name      The prefix of the helper's name
+	 * @param signature The signature of the helper method
+	 * @param body      Writes the body of the method, including the return instruction
+	 * @return The method to call
+	 */
+	public TinyMethod getHelper(String key, String name, String signature, IInjector<LuaClass> body) {
+		Helper helper = helperLookup.get(key);
+		if (helper == null) {
+			TinyMethod method = new TinyMethod(this.name, name + "$" + helpers.size(), signature, true, ACC_PUBLIC | ACC_STATIC);
+			helper = new Helper(method, body);
+
+			helpers.add(helper);
+			helperLookup.put(key, helper);
+		} else if (!helper.method.signature.equals(signature)) {
+			throw new BuilderException("Helper " + key + " has conflicting signatures", this);
+		}
+
+		return helper.method;
+	}
+
+	/**
+	 * Get or create a static field on the generated class.
+	 *
+	 * Fields are initialised in the static constructor, after the class's loader has been set.
+	 *
+	 * @param key        A unique key for this field. Fields with the same key are only written once
+	 * @param name       The prefix of the field's name
+	 * @param descriptor The type descriptor of the field
+	 * @param init       Pushes the initial value of the field onto the stack
+	 * @return The name of the field
+	 */
+	public String getStaticField(String key, String name, String descriptor, IInjector<LuaClass> init) {
+		StaticField field = staticFieldLookup.get(key);
+		if (field == null) {
+			field = new StaticField(name + "$" + staticFields.size(), descriptor, init);
+
+			staticFields.add(field);
+			staticFieldLookup.put(key, field);
+		} else if (!field.descriptor.equals(descriptor)) {
+			throw new BuilderException("Static field " + key + " has conflicting types", this);
+		}
+
+		return field.name;
+	}
+
+	/**
+	 * Get or create an additional class for this API
+	 *
+	 * @param key       A unique key for this class. Classes with the same key are only generated once
+	 * @param suffix    The suffix of the class's name
+	 * @param generator Generates the class
+	 * @return The internal name of the class
+	 */
+	public String getExtraClass(String key, String suffix, IClassGenerator generator) {
+		String className = extraClassLookup.get(key);
+		if (className == null) {
+			className = name + "$" + suffix + extraClassLookup.size();
+			extraClassLookup.put(key, className);
+			extraClasses.put(className, generator.generate(className, this));
+		}
+
+		return className;
+	}
+
+	/**
+	 * A static method written into the generated class
+	 */
+	public static final class Helper {
+		/**
+		 * The method to generate
+		 */
+		public final TinyMethod method;
+
+		/**
+		 * Writes the body of the method
+		 */
+		public final IInjector<LuaClass> body;
+
+		public Helper(TinyMethod method, IInjector<LuaClass> body) {
+			this.method = method;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * A static field written into the generated class
+	 */
+	public static final class StaticField {
+		/**
+		 * The name of the field
+		 */
+		public final String name;
+
+		/**
+		 * The field's type descriptor
+		 */
+		public final String descriptor;
+
+		/**
+		 * Pushes the initial value of the field
+		 */
+		public final IInjector<LuaClass> init;
+
+		public StaticField(String name, String descriptor, IInjector<LuaClass> init) {
+			this.name = name;
+			this.descriptor = descriptor;
+			this.init = init;
+		}
+	}
 }
@@ -6,10 +6,7 @@ import org.squiddev.luaj.api.builder.Parameter;
 import org.squiddev.luaj.api.validation.ILuaValidator;
 
 import java.lang.reflect.Method;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Stores all data associated with a Lua function
@@ -30,6 +27,119 @@ public class LuaMethod implements Iterable<LuaArgument> {
 	 */
 	public boolean returnsVarags;
 
+	/**
+	 * If this method's {@link java.util.List} or {@link java.util.Map} result should be
+	 * returned as a live proxy rather than copied
+	 *
+	 * @see org.squiddev.luaj.api.TableProxy
+	 */
+	public boolean returnsProxy;
+
+	/**
+	 * If this function is called with method call syntax, and so skips the first argument
+	 *
+	 * @see org.squiddev.luaj.api.MethodCall
+	 */
+	public boolean methodCall;
+
+	/**
+	 * If this function should be run on another thread
+	 *
+	 * @see org.squiddev.luaj.api.Blocking
+	 */
+	public boolean blocking;
+
+	/**
+	 * If this function must run on the main thread
+	 *
+	 * @see org.squiddev.luaj.api.MainThread
+	 */
+	public boolean mainThread;
+
+	/**
+	 * If calls to this function are buffered until the API is flushed
+	 *
+	 * @see org.squiddev.luaj.api.Deferred
+	 */
+	public boolean deferred;
+
+	/**
+	 * The method which applies buffered calls in bulk, or null to apply them individually
+	 *
+	 * @see org.squiddev.luaj.api.Deferred#batch()
+	 */
+	public String batch;
+
+	/**
+	 * The lock held while calling this function
+	 *
+	 * @see org.squiddev.luaj.api.LuaLocks
+	 */
+	public Locking locking;
+
+	/**
+	 * The Lua argument (starting at 1) which chooses a lock stripe, or 0 to lock the whole instance
+	 *
+	 * @see org.squiddev.luaj.api.Synchronized#stripe()
+	 */
+	public int stripe;
+
+	/**
+	 * The maximum number of results to cache, or 0 if results are not cached
+	 *
+	 * @see org.squiddev.luaj.api.Cached
+	 */
+	public int cacheSize;
+
+	/**
+	 * How long cached results are kept for in milliseconds, or 0 to keep them forever
+	 *
+	 * @see org.squiddev.luaj.api.Cached#ttl()
+	 */
+	public long cacheTtl;
+
+	/**
+	 * If one cache is shared between every instance
+	 *
+	 * @see org.squiddev.luaj.api.Cached#shared()
+	 */
+	public boolean cacheShared;
+
+	/**
+	 * If this function has a batch form
+	 *
+	 * @see org.squiddev.luaj.api.Batched
+	 */
+	public boolean batched;
+
+	/**
+	 * If this function can be called from several threads at once, and so has a parallel form
+	 *
+	 * @see org.squiddev.luaj.api.Parallel
+	 */
+	public boolean parallel;
+
+	/**
+	 * If calls to this function should be recorded
+	 *
+	 * @see org.squiddev.luaj.api.Instrumented
+	 */
+	public boolean instrumented;
+
+	/**
+	 * If the memory allocated by this function should be recorded. This requires {@link #instrumented}
+	 *
+	 * @see org.squiddev.luaj.api.Instrumented#allocations()
+	 */
+	public boolean allocations;
+
+	/**
+	 * If the first argument of a method call should be validated as a table
+	 *
+	 * @see org.squiddev.luaj.api.MethodCall#validate()
+	 */
+	public boolean validateSelf;
+
 	/**
 	 * The error message this function should produce
 	 * Null if it should be generated automatically
@@ -41,6 +151,11 @@ public class LuaMethod implements Iterable<LuaArgument> {
 	 */
 	public final LuaArgument[] arguments;
 
+	/**
+	 * The arguments which are passed from Lua. This excludes {@link LuaArgument#context} arguments
+	 */
+	public final LuaArgument[] luaArguments;
+
 	/**
 	 * The names used to call this function
 	 */
@@ -51,23 +166,39 @@ public class LuaMethod implements Iterable<LuaArgument> {
 	 */
 	public Class<? extends ILuaValidator> validator;
 
+	/**
+	 * Other methods bound to the same names. The method called is chosen from
+	 * the number and types of the arguments
+	 */
+	public final List<LuaMethod> overloads = new ArrayList<>();
+
 	public LuaMethod(LuaClass klass, Method method) {
 		this.klass = klass;
 		this.method = method;
 
 		this.validator = klass.validator;
+		this.methodCall = klass.methodCall;
+		this.blocking = klass.blocking;
+		this.mainThread = klass.mainThread;
+		this.locking = klass.synchronize ? Locking.MONITOR : Locking.NONE;
+		this.batched = klass.batched;
+		this.parallel = klass.parallel;
+		this.instrumented = klass.instrumented || klass.settings.instrument;
+		this.allocations = klass.allocations;
+		this.validateSelf = klass.validateSelf;
 
+		// This may be null for the method of a functional interface
 		LuaFunction function = method.getAnnotation(LuaFunction.class);
 
 		// Get default isVarArgs
-		returnsVarags = function.isVarArgs();
+		returnsVarags = function != null && function.isVarArgs();
 
 		// Get default error message
-		String errorMessage = function.error();
+		String errorMessage = function == null ? null : function.error();
 		this.errorMessage = errorMessage != null && errorMessage.isEmpty() ? null : errorMessage;
 
 		// Create the names of this function
-		String[] luaName = function.value();
+		String[] luaName = function == null ? null : function.value();
 		if (luaName == null || luaName.length == 0 || (luaName.length == 1 && luaName[0].isEmpty())) {
 			names.add(method.getName());
 		} else {
@@ -83,6 +214,65 @@ public class LuaMethod implements Iterable<LuaArgument> {
 		for (int i = 0; i < params.length; i++) {
 			arguments[i] = new LuaArgument(this, params[i]);
 		}
+
+		// Context arguments are provided by the generated code rather than Lua
+		List<LuaArgument> luaArguments = new ArrayList<>(arguments.length);
+		for (LuaArgument argument : arguments) {
+			if (!argument.context) luaArguments.add(argument);
+		}
+		LuaArgument[] luaArgs = this.luaArguments = luaArguments.toArray(new LuaArgument[luaArguments.size()]);
+
+		// Trailing nullable arguments can be omitted
+		for (int i = luaArgs.length - 1; i >= 0 && luaArgs[i].nullable; i--) {
+			luaArgs[i].optional = true;
+		}
+	}
+
+	/**
+	 * The kinds of lock a function can hold
+	 */
+	public enum Locking {
+		/**
+		 * No lock is held
+		 */
+		NONE,
+
+		/**
+		 * The instance's monitor, or one of the API's stripes
+		 *
+		 * @see org.squiddev.luaj.api.Synchronized
+		 */
+		MONITOR,
+
+		/**
+		 * The API's read lock
+		 *
+		 * @see org.squiddev.luaj.api.ReadOnly
+		 */
+		READ,
+
+		/**
+		 * An optimistic read, falling back to the read lock
+		 *
+		 * @see org.squiddev.luaj.api.ReadOnly#optimistic()
+		 */
+		OPTIMISTIC,
+
+		/**
+		 * The API's write lock
+		 *
+		 * @see org.squiddev.luaj.api.Writes
+		 */
+		WRITE,
+	}
+
+	/**
+	 * Get the number of arguments skipped before this function's own arguments
+	 *
+	 * @return {@code 1} if this is a method call, {@code 0} otherwise
+	 */
+	public int getArgumentOffset() {
+		return methodCall ? 1 : 0;
 	}
 
 	@Override
@@ -109,12 +299,12 @@ public class LuaMethod implements Iterable<LuaArgument> {
 		private final int length;
 
 		public ValidationIterator() {
-			items = arguments;
+			items = luaArguments;
 
 			// Calculate the non-optional argument length
 			int length = 0;
 			boolean hasOptional = false;
-			for (LuaArgument argument : arguments) {
+			for (LuaArgument argument : luaArguments) {
 				if (argument.optional) {
 					hasOptional = true;
 				} else if (hasOptional) {
@@ -135,7 +325,7 @@ public class LuaMethod implements Iterable<LuaArgument> {
 			LuaArgument[] items = this.items;
 			for (int i = index; i < items.length; i++) {
 				LuaArgument arg = items[i];
-				if (arg.getValidator().shouldValidate(arg.parameter.getType())) return true;
+				if (arg.getValidator().shouldValidate(arg.getValidationType())) return true;
 			}
 
 			return false;
@@ -0,0 +1,155 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+
+/**
+ * Converts a {@link java.util.Collection} into a {@link org.luaj.vm2.LuaTable}.
+ *
+ * The element converter is picked when generating, and the table's array part is presized.
+ * {@link java.util.RandomAccess} lists are indexed directly rather than using an iterator.
+ */
+public class CollectionToLua implements IInjector<LuaClass> {
+	/**
+	 * If this collection is a list, and so may be {@link java.util.RandomAccess}
+	 */
+	protected final boolean isList;
+
+	/**
+	 * The element type of this collection
+	 */
+	protected final Type element;
+
+	/**
+	 * Converts an element to a {@link org.luaj.vm2.LuaValue}
+	 *
+	 * @see Converter#getObjectToLua(Type)
+	 */
+	protected final IInjector<LuaClass> converter;
+
+	public CollectionToLua(Class<?> type, Type element, IInjector<LuaClass> converter) {
+		this.isList = List.class.isAssignableFrom(type);
+		this.element = element;
+		this.converter = converter;
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		String type = isList ? "java/util/List" : "java/util/Collection";
+		klass.getHelper(
+			"toLua:" + type + "<" + element + ">", "toLua",
+			"(L" + type + ";)" + CLASS_LUAVALUE,
+			new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					writeHelper(mv, klass);
+				}
+			}
+		).inject(mv);
+	}
+
+	/**
+	 * Write the body of the conversion method
+	 *
+	 * @param mv    The visitor to write to
+	 * @param klass The class we are generating
+	 */
+	protected void writeHelper(MethodVisitor mv, LuaClass klass) {
+		Label notNull = new Label();
+		Label iterator = new Label();
+		Label finish = new Label();
+
+		// if(collection == null) return LuaValue.NIL;
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitJumpInsn(IFNONNULL, notNull);
+		mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NIL", CLASS_LUAVALUE);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(notNull);
+
+		// int size = collection.size();
+		mv.visitVarInsn(ALOAD, 0);
+		COLLECTION_SIZE.inject(mv);
+		mv.visitVarInsn(ISTORE, 1);
+
+		// LuaTable table = new LuaTable(size, 0);
+		mv.visitTypeInsn(NEW, TYPE_LUATABLE);
+		mv.visitInsn(DUP);
+		mv.visitVarInsn(ILOAD, 1);
+		mv.visitInsn(ICONST_0);
+		mv.visitMethodInsn(INVOKESPECIAL, TYPE_LUATABLE, "<init>", "(II)V", false);
+		mv.visitVarInsn(ASTORE, 2);
+
+		if (isList) {
+			Label loop = new Label();
+
+			// if(collection instanceof RandomAccess)
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitTypeInsn(INSTANCEOF, "java/util/RandomAccess");
+			mv.visitJumpInsn(IFEQ, iterator);
+
+			// for(int i = 0; i < size; i++)
+			mv.visitInsn(ICONST_0);
+			mv.visitVarInsn(ISTORE, 3);
+
+			mv.visitLabel(loop);
+			mv.visitVarInsn(ILOAD, 3);
+			mv.visitVarInsn(ILOAD, 1);
+			mv.visitJumpInsn(IF_ICMPGE, finish);
+
+			// table.rawset(i + 1, convert(list.get(i)))
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitVarInsn(ILOAD, 3);
+			mv.visitInsn(ICONST_1);
+			mv.visitInsn(IADD);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ILOAD, 3);
+			LIST_GET.inject(mv);
+			converter.inject(mv, klass);
+			TABLE_RAWSET_INT.inject(mv);
+
+			mv.visitIincInsn(3, 1);
+			mv.visitJumpInsn(GOTO, loop);
+		}
+
+		mv.visitLabel(iterator);
+		{
+			Label loop = new Label();
+
+			// int i = 1; Iterator iterator = collection.iterator();
+			mv.visitInsn(ICONST_1);
+			mv.visitVarInsn(ISTORE, 3);
+			mv.visitVarInsn(ALOAD, 0);
+			COLLECTION_ITERATOR.inject(mv);
+			mv.visitVarInsn(ASTORE, 4);
+
+			// while(iterator.hasNext())
+			mv.visitLabel(loop);
+			mv.visitVarInsn(ALOAD, 4);
+			ITERATOR_HAS_NEXT.inject(mv);
+			mv.visitJumpInsn(IFEQ, finish);
+
+			// table.rawset(i, convert(iterator.next()))
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitVarInsn(ILOAD, 3);
+			mv.visitVarInsn(ALOAD, 4);
+			ITERATOR_NEXT.inject(mv);
+			converter.inject(mv, klass);
+			TABLE_RAWSET_INT.inject(mv);
+
+			mv.visitIincInsn(3, 1);
+			mv.visitJumpInsn(GOTO, loop);
+		}
+
+		mv.visitLabel(finish);
+		mv.visitVarInsn(ALOAD, 2);
+		mv.visitInsn(ARETURN);
+	}
+}
@@ -0,0 +1,113 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+/**
+ * A small polymorphic cache of classes to converters, used when converting values whose
+ * type is only known at runtime.
+ *
+ * Entries are compared by exact class and kept ordered by how often they are hit, so the most common
+ * types are checked first. Hit counts are halved once one reaches {@link #MAX_HITS}, so they cannot overflow
+ * and recent hits count for more than old ones. When the cache is full the least used entry is replaced.
+ *
+ * Misses are looked up in the {@link DynamicConverter}.
+ *
+ * @see DynamicToLua
+ */
+public final class ConversionCache {
+	/**
+	 * The maximum number of classes to cache
+	 */
+	public static final int SIZE = 4;
+
+	/**
+	 * The number of hits at which every entry's count is halved
+	 */
+	private static final int MAX_HITS = 1 << 16;
+
+	private final APIClassLoader<?> loader;
+	private final DynamicConverter converter;
+
+	/**
+	 * The cached entries. This may be read and written from multiple threads without synchronization.
+	 * Entries are only ever replaced whole, and their type and converter never change. Their hit counts may
+	 * lose updates when several threads hit at once, but these only choose the order entries are checked in,
+	 * so the worst case is a slower lookup or an additional miss.
+	 */
+	private final Entry[] entries = new Entry[SIZE];
+
+	public ConversionCache(APIClassLoader<?> loader) {
+		this.loader = loader;
+		this.converter = loader.getSettings().converter.getDynamic();
+	}
+
+	/**
+	 * Convert a value to Lua
+	 *
+	 * @param value The value to convert
+	 * @return The converted value
+	 * @throws LuaError If the value cannot be converted
+	 */
+	public LuaValue toLua(Object value) {
+		if (value == null) return LuaValue.NIL;
+
+		Class<?> type = value.getClass();
+		Entry[] entries = this.entries;
+		for (int i = 0; i < SIZE; i++) {
+			Entry entry = entries[i];
+			if (entry == null) break;
+
+			if (entry.type == type) {
+				// Move frequently hit entries towards the front
+				int hits = entry.hits + 1;
+				if (hits >= MAX_HITS) {
+					for (Entry other : entries) {
+						if (other != null) other.hits >>>= 1;
+					}
+					hits = entry.hits + 1;
+				}
+				entry.hits = hits;
+				if (i > 0) {
+					Entry previous = entries[i - 1];
+					if (previous != null && hits > previous.hits) {
+						entries[i - 1] = entry;
+						entries[i] = previous;
+					}
+				}
+
+				return entry.converter.toLua(value, loader);
+			}
+		}
+
+		if (value instanceof LuaValue) return (LuaValue) value;
+
+		IDynamicToLua found = converter.get(type);
+		if (found == null) throw new LuaError("Cannot convert " + type.getName() + " to a Lua value");
+
+		// Insert into the first free slot, or replace the last (and least used) one
+		Entry entry = new Entry(type, found);
+		int index = SIZE - 1;
+		for (int i = 0; i < SIZE; i++) {
+			if (entries[i] == null) {
+				index = i;
+				break;
+			}
+		}
+		entries[index] = entry;
+
+		return found.toLua(value, loader);
+	}
+
+	private static final class Entry {
+		private final Class<?> type;
+		private final IDynamicToLua converter;
+		private int hits;
+
+		private Entry(Class<?> type, IDynamicToLua converter) {
+			this.type = type;
+			this.converter = converter;
+		}
+	}
+}
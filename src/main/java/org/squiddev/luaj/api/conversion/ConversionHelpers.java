@@ -2,10 +2,32 @@ package org.squiddev.luaj.api.conversion;
 
 import org.luaj.vm2.*;
 
+import java.lang.reflect.Field;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
 /**
  * Helper conversions
  */
 public class ConversionHelpers {
+	/**
+	 * {@link LuaTable}'s array part. This is protected, so we access it through reflection
+	 */
+	private static final Field TABLE_ARRAY;
+
+	static {
+		Field array;
+		try {
+			array = LuaTable.class.getDeclaredField("array");
+			array.setAccessible(true);
+		} catch (Exception e) {
+			array = null;
+		}
+
+		TABLE_ARRAY = array;
+	}
+
 	/**
 	 * Convert a string to a LuaValue. Supports nulls
 	 *
@@ -17,6 +39,94 @@ public class ConversionHelpers {
 		return LuaString.valueOf(value);
 	}
 
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Boolean value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaBoolean.valueOf(value.booleanValue());
+	}
+
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Byte value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaInteger.valueOf(value.byteValue());
+	}
+
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Short value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaInteger.valueOf(value.shortValue());
+	}
+
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Character value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaInteger.valueOf(value.charValue());
+	}
+
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Integer value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaInteger.valueOf(value.intValue());
+	}
+
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Long value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaInteger.valueOf(value.longValue());
+	}
+
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Float value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaDouble.valueOf(value.floatValue());
+	}
+
+	/**
+	 * Convert a boxed value to a LuaValue. Supports nulls
+	 *
+	 * @param value The value to convert
+	 * @return The resulting LuaValue
+	 */
+	public static LuaValue valueOf(Double value) {
+		if (value == null) return LuaValue.NIL;
+		return LuaDouble.valueOf(value.doubleValue());
+	}
+
 	/**
 	 * Convert an array of values to LuaValues
 	 *
@@ -169,4 +279,158 @@ public class ConversionHelpers {
 
 		return result;
 	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Boolean toBoolean(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.toboolean();
+	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Byte toByte(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.tobyte();
+	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Short toShort(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.toshort();
+	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Character toCharacter(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.tochar();
+	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Integer toInteger(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.toint();
+	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Long toLong(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.tolong();
+	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Float toFloat(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.tofloat();
+	}
+
+	/**
+	 * Convert a LuaValue to a boxed value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@code null} if {@code nil}
+	 */
+	public static Double toDouble(LuaValue value) {
+		if (value.isnil()) return null;
+		return value.todouble();
+	}
+
+	/**
+	 * Convert a LuaValue to an optional value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@link OptionalInt#empty()} if {@code nil}
+	 */
+	public static OptionalInt toOptionalInt(LuaValue value) {
+		if (value.isnil()) return OptionalInt.empty();
+		return OptionalInt.of(value.toint());
+	}
+
+	/**
+	 * Convert a LuaValue to an optional value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@link OptionalLong#empty()} if {@code nil}
+	 */
+	public static OptionalLong toOptionalLong(LuaValue value) {
+		if (value.isnil()) return OptionalLong.empty();
+		return OptionalLong.of(value.tolong());
+	}
+
+	/**
+	 * Convert a LuaValue to an optional value. Supports nil
+	 *
+	 * @param value The value to convert
+	 * @return The resulting value or {@link OptionalDouble#empty()} if {@code nil}
+	 */
+	public static OptionalDouble toOptionalDouble(LuaValue value) {
+		if (value.isnil()) return OptionalDouble.empty();
+		return OptionalDouble.of(value.todouble());
+	}
+
+	/**
+	 * Get the array part of a table, if it contains the first {@code length} elements.
+	 *
+	 * This allows copying directly from the array rather than calling {@link LuaTable#rawget(int)}.
+	 * Elements may be {@code null} if the table has holes in it.
+	 *
+	 * @param table  The table to get the array part of
+	 * @param length The number of elements we require
+	 * @return The array part or {@code null} if it is not available.
+	 */
+	public static LuaValue[] getArrayPart(LuaTable table, int length) {
+		// Subclasses may not store their elements in the array
+		if (TABLE_ARRAY == null || table.getClass() != LuaTable.class) return null;
+
+		try {
+			LuaValue[] array = (LuaValue[]) TABLE_ARRAY.get(table);
+			return array.length >= length ? array : null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Create an error for an invalid element of a table
+	 *
+	 * @param expected The expected type of the element
+	 * @param index    The index of the element
+	 * @return The error to throw
+	 */
+	public static LuaError badElement(String expected, int index) {
+		return new LuaError("Expected " + expected + " at index " + index);
+	}
 }
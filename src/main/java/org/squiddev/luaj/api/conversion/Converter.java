@@ -6,14 +6,17 @@ import org.luaj.vm2.LuaInteger;
 import org.luaj.vm2.LuaValue;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
-import org.squiddev.luaj.api.LuaAPI;
 import org.squiddev.luaj.api.LuaObject;
+import org.squiddev.luaj.api.LuaStruct;
+import org.squiddev.luaj.api.builder.APIClassLoader;
 import org.squiddev.luaj.api.builder.IInjector;
 import org.squiddev.luaj.api.builder.tree.LuaClass;
 import org.squiddev.luaj.api.utils.TinyMethod;
+import org.squiddev.luaj.api.utils.TypeUtils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.*;
 
 import static org.objectweb.asm.Opcodes.*;
 import static org.squiddev.luaj.api.builder.BuilderConstants.*;
@@ -40,6 +43,11 @@ public class Converter {
 	 */
 	protected final Map<Class<?>, IInjector<LuaClass>> fromLua = new HashMap<>();
 
+	/**
+	 * Conversions used at runtime when the type is not known when generating
+	 */
+	protected final DynamicConverter dynamic = new DynamicConverter();
+
 	public Converter() {
 		initFromLua();
 		initToLua();
@@ -81,6 +89,14 @@ public class Converter {
 		// String
 		toLua(String.class, new TinyMethod(ConversionHelpers.class, "valueOf", String.class));
 		toLua(String[].class, new TinyMethod(ConversionHelpers.class, "valueOf", String[].class));
+
+		// Boxed primitives, normally found in collections
+		for (Class<?> boxed : new Class<?>[]{
+			Boolean.class, Byte.class, Short.class, Character.class,
+			Integer.class, Long.class, Float.class, Double.class,
+		}) {
+			toLua(boxed, new TinyMethod(ConversionHelpers.class, "valueOf", boxed));
+		}
 	}
 
 	/**
@@ -98,6 +114,21 @@ public class Converter {
 		fromLua(long.class, new TinyMethod(LuaValue.class, "tolong"));
 		fromLua(short.class, new TinyMethod(LuaValue.class, "toshort"));
 		fromLua(String.class, new TinyMethod(LuaValue.class, "tojstring"));
+
+		// Boxed primitives, nil is converted to null
+		fromLua(Boolean.class, new TinyMethod(ConversionHelpers.class, "toBoolean", LuaValue.class));
+		fromLua(Byte.class, new TinyMethod(ConversionHelpers.class, "toByte", LuaValue.class));
+		fromLua(Short.class, new TinyMethod(ConversionHelpers.class, "toShort", LuaValue.class));
+		fromLua(Character.class, new TinyMethod(ConversionHelpers.class, "toCharacter", LuaValue.class));
+		fromLua(Integer.class, new TinyMethod(ConversionHelpers.class, "toInteger", LuaValue.class));
+		fromLua(Long.class, new TinyMethod(ConversionHelpers.class, "toLong", LuaValue.class));
+		fromLua(Float.class, new TinyMethod(ConversionHelpers.class, "toFloat", LuaValue.class));
+		fromLua(Double.class, new TinyMethod(ConversionHelpers.class, "toDouble", LuaValue.class));
+
+		// Optionals, nil is converted to empty
+		fromLua(OptionalInt.class, new TinyMethod(ConversionHelpers.class, "toOptionalInt", LuaValue.class));
+		fromLua(OptionalLong.class, new TinyMethod(ConversionHelpers.class, "toOptionalLong", LuaValue.class));
+		fromLua(OptionalDouble.class, new TinyMethod(ConversionHelpers.class, "toOptionalDouble", LuaValue.class));
 	}
 
 	/**
@@ -155,6 +186,16 @@ public class Converter {
 		fromLua(type, wrapMethod(converter));
 	}
 
+	/**
+	 * Get the conversions used at runtime for values whose type is not final
+	 *
+	 * @return The runtime converter
+	 * @see DynamicToLua
+	 */
+	public DynamicConverter getDynamic() {
+		return dynamic;
+	}
+
 	/**
 	 * Get the default converter
 	 *
@@ -176,7 +217,7 @@ public class Converter {
 	 * @see #toLua
 	 */
 	public IInjector<LuaClass> getToLua(final Class<?> klass) {
-		if (klass.isAnnotationPresent(LuaAPI.class)) {
+		if (APIClassLoader.findAPIType(klass) != null) {
 			return new IInjector<LuaClass>() {
 				@Override
 				public void inject(MethodVisitor mv, LuaClass klass) {
@@ -192,7 +233,123 @@ public class Converter {
 			return wrapMethod(API_GET_TABLE);
 		}
 
-		return toLua.get(klass);
+		IInjector<LuaClass> converter = toLua.get(klass);
+		if (converter != null) return converter;
+
+		if (klass.isAnnotationPresent(LuaStruct.class)) return new StructConverter(klass, this, true);
+		if (klass.isEnum()) return new EnumConverter(klass, true);
+
+		// Raw collections: the element types are resolved from any generic parents
+		if (Collection.class.isAssignableFrom(klass) || Map.class.isAssignableFrom(klass)) {
+			return getCollectionToLua(klass, klass);
+		}
+
+		// Interfaces and other classes which may be subclassed are checked at runtime, if we know how to convert
+		// some of their values
+		if (!Modifier.isFinal(klass.getModifiers()) && dynamic.canConvert(klass)) return new DynamicToLua(klass, this);
+
+		return null;
+	}
+
+	/**
+	 * Get a converter to convert from Java to Lua, using generic information if available.
+	 *
+	 * This allows converting parameterised types such as {@code List<String>} or {@code Map<String, Integer>}
+	 *
+	 * @param type The type to convert
+	 * @return The converter to use or {@code null} if the type cannot be converted
+	 * @see #getToLua(Class)
+	 */
+	public IInjector<LuaClass> getToLua(java.lang.reflect.Type type) {
+		if (type instanceof Class) return getToLua((Class<?>) type);
+
+		Class<?> raw = TypeUtils.getRawType(type);
+		if (type instanceof ParameterizedType && (Collection.class.isAssignableFrom(raw) || Map.class.isAssignableFrom(raw))) {
+			return getCollectionToLua(raw, type);
+		}
+
+		return getToLua(raw);
+	}
+
+	/**
+	 * Get a converter for a collection or map type
+	 *
+	 * @param raw  The erasure of the type
+	 * @param type The generic type to convert
+	 * @return The converter to use or {@code null} if the elements cannot be converted
+	 */
+	protected IInjector<LuaClass> getCollectionToLua(Class<?> raw, java.lang.reflect.Type type) {
+		if (Map.class.isAssignableFrom(raw)) {
+			java.lang.reflect.Type key = TypeUtils.resolveArgument(type, Map.class, 0);
+			java.lang.reflect.Type value = TypeUtils.resolveArgument(type, Map.class, 1);
+
+			IInjector<LuaClass> keyConverter = getObjectToLua(key);
+			IInjector<LuaClass> valueConverter = getObjectToLua(value);
+			if (keyConverter == null || valueConverter == null) return null;
+
+			return new MapToLua(key, keyConverter, value, valueConverter);
+		} else {
+			java.lang.reflect.Type element = TypeUtils.resolveArgument(type, Collection.class, 0);
+
+			IInjector<LuaClass> converter = getObjectToLua(element);
+			if (converter == null) return null;
+
+			return new CollectionToLua(raw, element, converter);
+		}
+	}
+
+	/**
+	 * Get a converter that converts a value on the stack to a single {@link LuaValue}.
+	 *
+	 * Unlike {@link #getToLua(java.lang.reflect.Type)}, this converts arrays into tables and passes
+	 * {@link LuaValue}s through untouched.
+	 *
+	 * @param type The type of the value
+	 * @return The converter to use or {@code null} if the type cannot be converted
+	 */
+	public IInjector<LuaClass> getValueToLua(java.lang.reflect.Type type) {
+		Class<?> raw = TypeUtils.getRawType(type);
+		boolean isLuaArray = raw.isArray() && LuaValue.class.isAssignableFrom(raw.getComponentType());
+
+		final IInjector<LuaClass> converter;
+		if (LuaValue.class.isAssignableFrom(raw) || isLuaArray) {
+			converter = VOID;
+		} else {
+			converter = getToLua(type);
+			if (converter == null) return null;
+		}
+
+		if (!raw.isArray()) return converter;
+		return new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				converter.inject(mv, klass);
+				LIST_OF.inject(mv);
+			}
+		};
+	}
+
+	/**
+	 * Get a converter that converts an {@link Object} on the stack to a single {@link LuaValue}.
+	 *
+	 * This casts the object to the required type and then uses {@link #getValueToLua(java.lang.reflect.Type)}.
+	 * It is used for the elements of collections, where the type is only known through generics.
+	 *
+	 * @param type The type the object should be converted as
+	 * @return The converter to use or {@code null} if the type cannot be converted
+	 */
+	public IInjector<LuaClass> getObjectToLua(java.lang.reflect.Type type) {
+		final Class<?> raw = TypeUtils.getRawType(type);
+		final IInjector<LuaClass> converter = getValueToLua(type);
+		if (converter == null) return null;
+
+		return new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				if (!raw.equals(Object.class)) mv.visitTypeInsn(CHECKCAST, Type.getInternalName(raw));
+				converter.inject(mv, klass);
+			}
+		};
 	}
 
 	/**
@@ -218,6 +375,134 @@ public class Converter {
 			};
 		}
 
-		return fromLua.get(klass);
+		IInjector<LuaClass> converter = fromLua.get(klass);
+		if (converter != null) return converter;
+
+		if (klass.isAnnotationPresent(LuaStruct.class)) {
+			return StructConverter.canConstruct(klass) ? new StructConverter(klass, this, false) : null;
+		}
+
+		if (klass.isEnum()) return new EnumConverter(klass, false);
+
+		// Arrays and raw collections
+		if (klass.isArray() || Collection.class.isAssignableFrom(klass)) {
+			return getTableFromLua(klass, klass);
+		}
+
+		// Lua functions passed as Runnable, Function, etc...
+		if (FunctionAdapter.getFunctionalMethod(klass) != null) return new FunctionAdapter(klass, this);
+
+		return null;
+	}
+
+	/**
+	 * Get a converter to convert from Lua to Java, using generic information if available.
+	 *
+	 * This allows converting tables to parameterised types such as {@code List<Integer>}
+	 *
+	 * @param type The type to convert to
+	 * @return The converter to use or {@code null} if the type cannot be converted
+	 * @see #getFromLua(Class)
+	 */
+	public IInjector<LuaClass> getFromLua(java.lang.reflect.Type type) {
+		if (type instanceof Class) return getFromLua((Class<?>) type);
+
+		Class<?> raw = TypeUtils.getRawType(type);
+		if (type instanceof ParameterizedType && Collection.class.isAssignableFrom(raw)) {
+			return getTableFromLua(raw, type);
+		}
+
+		if (type instanceof ParameterizedType && FunctionAdapter.getFunctionalMethod(raw) != null) {
+			return new FunctionAdapter(type, this);
+		}
+
+		return getFromLua(raw);
+	}
+
+	/**
+	 * Get a converter from a table to an array or collection
+	 *
+	 * Lists and other collections are converted to an {@link ArrayList}, and sets to a {@link HashSet}.
+	 *
+	 * @param raw  The erasure of the type
+	 * @param type The generic type to convert to
+	 * @return The converter to use or {@code null} if the elements cannot be converted
+	 * @see TableFromLua
+	 */
+	protected IInjector<LuaClass> getTableFromLua(Class<?> raw, java.lang.reflect.Type type) {
+		if (raw.isArray()) {
+			Class<?> component = raw.getComponentType();
+			IInjector<LuaClass> converter = getFromLua(component);
+			if (converter == null) return null;
+
+			return new TableFromLua(raw, component, converter);
+		}
+
+		Class<?> target;
+		if (raw.isAssignableFrom(ArrayList.class)) {
+			target = ArrayList.class;
+		} else if (raw.isAssignableFrom(HashSet.class)) {
+			target = HashSet.class;
+		} else {
+			return null;
+		}
+
+		java.lang.reflect.Type element = TypeUtils.resolveArgument(type, Collection.class, 0);
+
+		IInjector<LuaClass> converter = getObjectFromLua(element);
+		if (converter == null) return null;
+
+		return new TableFromLua(target, element, converter);
+	}
+
+	/**
+	 * Get a converter that converts a {@link LuaValue} on the stack to an {@link Object} of the specified type.
+	 *
+	 * This is the reverse of {@link #getObjectToLua(java.lang.reflect.Type)}, and so only supports reference types.
+	 *
+	 * @param type The type to convert to
+	 * @return The converter to use or {@code null} if the type cannot be converted
+	 */
+	public IInjector<LuaClass> getObjectFromLua(java.lang.reflect.Type type) {
+		Class<?> raw = TypeUtils.getRawType(type);
+		if (raw.isPrimitive()) return null;
+		return getFromLua(raw);
+	}
+
+	/**
+	 * Get a converter which wraps a {@link List} or {@link Map} in a live proxy table,
+	 * rather than copying it.
+	 *
+	 * A proxy class is generated for each element type.
+	 *
+	 * @param type The type of the list or map
+	 * @return The converter to use or {@code null} if the type cannot be proxied
+	 * @see ListProxy
+	 * @see MapProxy
+	 * @see org.squiddev.luaj.api.TableProxy
+	 */
+	public IInjector<LuaClass> getProxyToLua(java.lang.reflect.Type type) {
+		Class<?> raw = TypeUtils.getRawType(type);
+
+		if (List.class.isAssignableFrom(raw)) {
+			java.lang.reflect.Type element = TypeUtils.resolveArgument(type, List.class, 0);
+
+			IInjector<LuaClass> toLua = getObjectToLua(element);
+			if (toLua == null) return null;
+
+			return new ProxyToLua(element, toLua, getObjectFromLua(element));
+		} else if (Map.class.isAssignableFrom(raw)) {
+			java.lang.reflect.Type key = TypeUtils.resolveArgument(type, Map.class, 0);
+			java.lang.reflect.Type value = TypeUtils.resolveArgument(type, Map.class, 1);
+
+			IInjector<LuaClass> keyToLua = getObjectToLua(key);
+			IInjector<LuaClass> keyFromLua = getObjectFromLua(key);
+			IInjector<LuaClass> valueToLua = getObjectToLua(value);
+			if (keyToLua == null || keyFromLua == null || valueToLua == null) return null;
+
+			return new ProxyToLua(key, keyToLua, keyFromLua, value, valueToLua, getObjectFromLua(value));
+		}
+
+		return null;
 	}
 }
@@ -0,0 +1,283 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.*;
+import org.squiddev.luaj.api.LuaAPI;
+import org.squiddev.luaj.api.LuaObject;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of conversions run when the type of an object is only known at runtime.
+ *
+ * Converters are looked up by the object's class, then its superclasses and then its interfaces.
+ * The result of each lookup is cached.
+ *
+ * This is the slow path of {@link ConversionCache}.
+ */
+public class DynamicConverter {
+	/**
+	 * Registered converters
+	 */
+	protected final Map<Class<?>, IDynamicToLua> converters = new HashMap<>();
+
+	/**
+	 * Cache of classes to their resolved converter
+	 */
+	protected final Map<Class<?>, IDynamicToLua> cache = new ConcurrentHashMap<>();
+
+	public DynamicConverter() {
+		init();
+	}
+
+	/**
+	 * Register the default converters
+	 */
+	protected void init() {
+		add(String.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return LuaString.valueOf((String) value);
+			}
+		});
+		add(Boolean.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return LuaBoolean.valueOf((Boolean) value);
+			}
+		});
+		add(Character.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return LuaInteger.valueOf((Character) value);
+			}
+		});
+
+		// Numbers
+		IDynamicToLua integer = new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return LuaInteger.valueOf(((Number) value).intValue());
+			}
+		};
+		add(Integer.class, integer);
+		add(Short.class, integer);
+		add(Byte.class, integer);
+		add(Long.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return LuaInteger.valueOf((Long) value);
+			}
+		});
+		add(Number.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return LuaDouble.valueOf(((Number) value).doubleValue());
+			}
+		});
+		add(CharSequence.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return LuaString.valueOf(value.toString());
+			}
+		});
+
+		// Tables
+		add(Object[].class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				Object[] array = (Object[]) value;
+				int length = array.length;
+
+				LuaValue[] result = new LuaValue[length];
+				for (int i = 0; i < length; i++) result[i] = DynamicConverter.this.toLua(array[i], loader);
+				return LuaValue.listOf(result);
+			}
+		});
+		add(Collection.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				Collection<?> collection = (Collection<?>) value;
+				LuaTable table = new LuaTable(collection.size(), 0);
+
+				int i = 0;
+				for (Object item : collection) table.rawset(++i, DynamicConverter.this.toLua(item, loader));
+				return table;
+			}
+		});
+		add(Map.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				Map<?, ?> map = (Map<?, ?>) value;
+				LuaTable table = new LuaTable(0, map.size());
+
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					Object key = entry.getKey();
+					if (key != null) {
+						table.rawset(DynamicConverter.this.toLua(key, loader), DynamicConverter.this.toLua(entry.getValue(), loader));
+					}
+				}
+				return table;
+			}
+		});
+
+		// APIs
+		add(LuaObject.class, new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				return ((LuaObject) value).getTable();
+			}
+		});
+	}
+
+	/**
+	 * Add a converter for a type. This will also be used for subclasses of this type
+	 *
+	 * @param type      The type to convert
+	 * @param converter The converter to use
+	 */
+	public void add(Class<?> type, IDynamicToLua converter) {
+		synchronized (converters) {
+			converters.put(type, converter);
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Check if values declared as a type may be converted at runtime. This is true if a converter is registered
+	 * for the type, one of its parents or one of its subtypes.
+	 *
+	 * @param type The declared type
+	 * @return If any values of this type can be converted
+	 */
+	public boolean canConvert(Class<?> type) {
+		if (type.isAnnotationPresent(LuaAPI.class)) return true;
+
+		synchronized (converters) {
+			for (Class<?> registered : converters.keySet()) {
+				if (type.isAssignableFrom(registered) || registered.isAssignableFrom(type)) return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Convert a value to Lua
+	 *
+	 * @param value  The value to convert
+	 * @param loader The loader of the class converting this value
+	 * @return The converted value
+	 * @throws LuaError If the value cannot be converted
+	 */
+	public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+		if (value == null) return LuaValue.NIL;
+		if (value instanceof LuaValue) return (LuaValue) value;
+
+		IDynamicToLua converter = get(value.getClass());
+		if (converter == null) throw new LuaError("Cannot convert " + value.getClass().getName() + " to a Lua value");
+		return converter.toLua(value, loader);
+	}
+
+	/**
+	 * Find the converter for a type
+	 *
+	 * @param type The type to find a converter for
+	 * @return The converter or {@code null} if none can be found
+	 */
+	public IDynamicToLua get(Class<?> type) {
+		IDynamicToLua converter = cache.get(type);
+		if (converter != null) return converter;
+
+		synchronized (converters) {
+			converter = resolve(type);
+		}
+
+		if (converter != null) cache.put(type, converter);
+		return converter;
+	}
+
+	/**
+	 * Find the converter for a type, searching its superclasses and then its interfaces
+	 *
+	 * @param type The type to find a converter for
+	 * @return The converter or {@code null} if none can be found
+	 */
+	protected IDynamicToLua resolve(Class<?> type) {
+		if (type.isArray()) {
+			Class<?> component = type.getComponentType();
+			if (component.isPrimitive()) return getPrimitiveArray(component);
+			return converters.get(Object[].class);
+		}
+
+		Queue<Class<?>> interfaces = new ArrayDeque<>();
+		for (Class<?> parent = type; parent != null; parent = parent.getSuperclass()) {
+			IDynamicToLua converter = converters.get(parent);
+			if (converter != null) return converter;
+
+			if (parent.isAnnotationPresent(LuaAPI.class)) return API;
+
+			Collections.addAll(interfaces, parent.getInterfaces());
+		}
+
+		Set<Class<?>> visited = new HashSet<>();
+		while (!interfaces.isEmpty()) {
+			Class<?> iface = interfaces.remove();
+			if (!visited.add(iface)) continue;
+
+			IDynamicToLua converter = converters.get(iface);
+			if (converter != null) return converter;
+
+			if (iface.isAnnotationPresent(LuaAPI.class)) return API;
+
+			Collections.addAll(interfaces, iface.getInterfaces());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Converts {@link LuaAPI} classes by wrapping them
+	 */
+	private static final IDynamicToLua API = new IDynamicToLua() {
+		@Override
+		public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+			return loader.makeInstance(value).getTable();
+		}
+	};
+
+	/**
+	 * Get a converter for an array of primitives
+	 *
+	 * @param component The primitive type
+	 * @return The converter for this array
+	 */
+	private static IDynamicToLua getPrimitiveArray(final Class<?> component) {
+		return new IDynamicToLua() {
+			@Override
+			public LuaValue toLua(Object value, APIClassLoader<?> loader) {
+				LuaValue[] result;
+				if (component == boolean.class) {
+					result = ConversionHelpers.valueOf((boolean[]) value);
+				} else if (component == byte.class) {
+					result = ConversionHelpers.valueOf((byte[]) value);
+				} else if (component == short.class) {
+					result = ConversionHelpers.valueOf((short[]) value);
+				} else if (component == char.class) {
+					result = ConversionHelpers.valueOf((char[]) value);
+				} else if (component == int.class) {
+					result = ConversionHelpers.valueOf((int[]) value);
+				} else if (component == long.class) {
+					result = ConversionHelpers.valueOf((long[]) value);
+				} else if (component == float.class) {
+					result = ConversionHelpers.valueOf((float[]) value);
+				} else {
+					result = ConversionHelpers.valueOf((double[]) value);
+				}
+
+				return LuaValue.listOf(result);
+			}
+		};
+	}
+}
@@ -0,0 +1,111 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaValue;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+
+/**
+ * Converts a value whose declared type is not final, such as {@link Object} or an interface.
+ *
+ * The generated helper checks the common final types with {@code instanceof} first, converting them inline.
+ * Anything else is passed to a {@link ConversionCache}, which caches the converters for the classes it sees.
+ */
+public class DynamicToLua implements IInjector<LuaClass> {
+	private static final String TYPE_CACHE = Type.getInternalName(ConversionCache.class);
+	private static final String CLASS_CACHE = Type.getDescriptor(ConversionCache.class);
+
+	/**
+	 * Types checked inline, in order
+	 */
+	private static final Class<?>[] INLINE = new Class<?>[]{String.class, Integer.class, Double.class, Boolean.class};
+
+	/**
+	 * The declared type of the value
+	 */
+	protected final Class<?> type;
+
+	/**
+	 * Used to find the inline converters
+	 */
+	protected final Converter converter;
+
+	public DynamicToLua(Class<?> type, Converter converter) {
+		this.type = type;
+		this.converter = converter;
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		klass.getHelper(
+			"toLua:dynamic:" + type.getName(), "toLua",
+			"(Ljava/lang/Object;)" + CLASS_LUAVALUE,
+			new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					writeHelper(mv, klass);
+				}
+			}
+		).inject(mv);
+	}
+
+	/**
+	 * Write the body of the conversion method
+	 *
+	 * @param mv    The visitor to write to
+	 * @param klass The class we are generating
+	 */
+	protected void writeHelper(MethodVisitor mv, LuaClass klass) {
+		// Values which are already Lua values
+		if (type.isAssignableFrom(LuaValue.class)) {
+			Label next = new Label();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitTypeInsn(INSTANCEOF, TYPE_LUAVALUE);
+			mv.visitJumpInsn(IFEQ, next);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitTypeInsn(CHECKCAST, TYPE_LUAVALUE);
+			mv.visitInsn(ARETURN);
+			mv.visitLabel(next);
+		}
+
+		// Common types which we can convert without a lookup
+		for (Class<?> inline : INLINE) {
+			if (!type.isAssignableFrom(inline)) continue;
+
+			IInjector<LuaClass> inlineConverter = converter.getToLua(inline);
+			if (inlineConverter == null) continue;
+
+			Label next = new Label();
+			String name = Type.getInternalName(inline);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitTypeInsn(INSTANCEOF, name);
+			mv.visitJumpInsn(IFEQ, next);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitTypeInsn(CHECKCAST, name);
+			inlineConverter.inject(mv, klass);
+			mv.visitInsn(ARETURN);
+			mv.visitLabel(next);
+		}
+
+		// Everything else goes through the cache
+		String cache = klass.getStaticField("cache:" + type.getName(), "cache", CLASS_CACHE, new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				mv.visitTypeInsn(NEW, TYPE_CACHE);
+				mv.visitInsn(DUP);
+				mv.visitFieldInsn(GETSTATIC, klass.name, LOADER, CLASS_LOADER);
+				mv.visitMethodInsn(INVOKESPECIAL, TYPE_CACHE, "<init>", "(" + CLASS_LOADER + ")V", false);
+			}
+		});
+
+		mv.visitFieldInsn(GETSTATIC, klass.name, cache, CLASS_CACHE);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_CACHE, "toLua", "(Ljava/lang/Object;)" + CLASS_LUAVALUE, false);
+		mv.visitInsn(ARETURN);
+	}
+}
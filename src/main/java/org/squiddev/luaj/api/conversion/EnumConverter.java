@@ -0,0 +1,277 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaValue;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+import org.squiddev.luaj.api.utils.TinyMethod;
+import org.squiddev.luaj.api.validation.ValidationHelpers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+import static org.squiddev.luaj.api.utils.AsmUtils.constantOpcode;
+
+/**
+ * Converts an {@link Enum} to and from its name.
+ *
+ * The names are stored in a static {@link LuaString} array on the generated class, indexed by ordinal.
+ * Converting from Lua switches on the string's length and then a byte which differs between each
+ * name of that length, before checking the whole string matches. This avoids creating a Java string.
+ */
+public class EnumConverter implements IInjector<LuaClass> {
+	private static final String TYPE_LUASTRING = Type.getInternalName(LuaString.class);
+	private static final String CLASS_LUASTRING = Type.getDescriptor(LuaString.class);
+	private static final TinyMethod STRING_VALUE_OF = new TinyMethod(LuaString.class, "valueOf", String.class);
+	private static final TinyMethod CHECK_STRING = new TinyMethod(LuaValue.class, "checkstring");
+
+	/**
+	 * The enum we are converting
+	 */
+	protected final Class<?> type;
+
+	/**
+	 * If we are converting to Lua rather than from it
+	 */
+	protected final boolean toLua;
+
+	public EnumConverter(Class<?> type, boolean toLua) {
+		this.type = type;
+		this.toLua = toLua;
+	}
+
+	/**
+	 * Get the names of an enum's constants, as used in error messages
+	 *
+	 * @param type The enum class
+	 * @return The names, separated by {@code |}
+	 */
+	public static String getNames(Class<?> type) {
+		StringBuilder builder = new StringBuilder();
+		for (Object constant : type.getEnumConstants()) {
+			if (builder.length() > 0) builder.append("|");
+			builder.append(((Enum<?>) constant).name());
+		}
+
+		return builder.toString();
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		String descriptor = Type.getDescriptor(type);
+		String key = (toLua ? "toLua:" : "fromLua:") + type.getName();
+		String signature = toLua ? "(" + descriptor + ")" + CLASS_LUAVALUE : "(" + CLASS_LUAVALUE + ")" + descriptor;
+
+		klass.getHelper(key, toLua ? "toLua" : "fromLua", signature, new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				if (toLua) {
+					writeToLua(mv, klass);
+				} else {
+					writeFromLua(mv, klass);
+				}
+			}
+		}).inject(mv);
+	}
+
+	/**
+	 * Get the static field containing each constant's name
+	 *
+	 * @param klass The class we are generating
+	 * @return The name of the field
+	 */
+	protected String getNamesField(LuaClass klass) {
+		return klass.getStaticField("enum:" + type.getName(), "enum", "[" + CLASS_LUASTRING, new IInjector<LuaClass>() {
+			@Override
+			public void inject(MethodVisitor mv, LuaClass klass) {
+				Object[] constants = type.getEnumConstants();
+
+				constantOpcode(mv, constants.length);
+				mv.visitTypeInsn(ANEWARRAY, TYPE_LUASTRING);
+				for (int i = 0; i < constants.length; i++) {
+					mv.visitInsn(DUP);
+					constantOpcode(mv, i);
+					mv.visitLdcInsn(((Enum<?>) constants[i]).name());
+					STRING_VALUE_OF.inject(mv);
+					mv.visitInsn(AASTORE);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write the body of the method converting to Lua
+	 *
+	 * @param mv    The visitor to write to
+	 * @param klass The class we are generating
+	 */
+	protected void writeToLua(MethodVisitor mv, LuaClass klass) {
+		String names = getNamesField(klass);
+
+		// if(value == null) return LuaValue.NIL;
+		Label notNull = new Label();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitJumpInsn(IFNONNULL, notNull);
+		mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NIL", CLASS_LUAVALUE);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(notNull);
+
+		// return names[value.ordinal()];
+		mv.visitFieldInsn(GETSTATIC, klass.name, names, "[" + CLASS_LUASTRING);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Enum", "ordinal", "()I", false);
+		mv.visitInsn(AALOAD);
+		mv.visitInsn(ARETURN);
+	}
+
+	/**
+	 * Write the body of the method converting from Lua
+	 *
+	 * @param mv    The visitor to write to
+	 * @param klass The class we are generating
+	 */
+	protected void writeFromLua(MethodVisitor mv, LuaClass klass) {
+		String names = getNamesField(klass);
+		Object[] constants = type.getEnumConstants();
+		Label error = new Label();
+
+		// if(value.isnil()) return null;
+		Label notNil = new Label();
+		mv.visitVarInsn(ALOAD, 0);
+		VALUE_ISNIL.inject(mv);
+		mv.visitJumpInsn(IFEQ, notNil);
+		mv.visitInsn(ACONST_NULL);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(notNil);
+
+		// LuaString string = value.checkstring();
+		mv.visitVarInsn(ALOAD, 0);
+		CHECK_STRING.inject(mv);
+		mv.visitVarInsn(ASTORE, 1);
+
+		// Group the constants by the length of their name
+		SortedMap<Integer, List<Integer>> byLength = new TreeMap<>();
+		List<byte[]> bytes = new ArrayList<>(constants.length);
+		for (int i = 0; i < constants.length; i++) {
+			byte[] name = ((Enum<?>) constants[i]).name().getBytes(StandardCharsets.UTF_8);
+			bytes.add(name);
+
+			List<Integer> group = byLength.get(name.length);
+			if (group == null) byLength.put(name.length, group = new ArrayList<>());
+			group.add(i);
+		}
+
+		// switch(string.m_length)
+		int[] lengths = new int[byLength.size()];
+		Label[] lengthLabels = new Label[byLength.size()];
+		int index = 0;
+		for (int length : byLength.keySet()) {
+			lengths[index] = length;
+			lengthLabels[index] = new Label();
+			index++;
+		}
+
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitFieldInsn(GETFIELD, TYPE_LUASTRING, "m_length", "I");
+		mv.visitLookupSwitchInsn(error, lengths, lengthLabels);
+
+		index = 0;
+		for (List<Integer> group : byLength.values()) {
+			mv.visitLabel(lengthLabels[index++]);
+
+			int position = findDiscriminator(group, bytes);
+			if (position < 0) {
+				// No single byte differs, so check each one in turn
+				for (int constant : group) writeMatch(mv, klass, names, constants[constant], constant, null);
+				mv.visitJumpInsn(GOTO, error);
+			} else {
+				// switch(string.m_bytes[string.m_offset + position])
+				SortedMap<Integer, Integer> byByte = new TreeMap<>();
+				for (int constant : group) byByte.put((int) bytes.get(constant)[position], constant);
+
+				int[] keys = new int[byByte.size()];
+				Label[] labels = new Label[byByte.size()];
+				int byteIndex = 0;
+				for (int key : byByte.keySet()) {
+					keys[byteIndex] = key;
+					labels[byteIndex] = new Label();
+					byteIndex++;
+				}
+
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitFieldInsn(GETFIELD, TYPE_LUASTRING, "m_bytes", "[B");
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitFieldInsn(GETFIELD, TYPE_LUASTRING, "m_offset", "I");
+				constantOpcode(mv, position);
+				mv.visitInsn(IADD);
+				mv.visitInsn(BALOAD);
+				mv.visitLookupSwitchInsn(error, keys, labels);
+
+				byteIndex = 0;
+				for (int constant : byByte.values()) {
+					mv.visitLabel(labels[byteIndex++]);
+					writeMatch(mv, klass, names, constants[constant], constant, error);
+				}
+			}
+		}
+
+		mv.visitLabel(error);
+		ValidationHelpers.throwError(mv, "Expected " + getNames(type));
+	}
+
+	/**
+	 * Check the string matches a constant's name and return it
+	 *
+	 * @param mv       The visitor to write to
+	 * @param klass    The class we are generating
+	 * @param names    The field containing the names
+	 * @param constant The constant to check
+	 * @param ordinal  The constant's ordinal
+	 * @param failure  Where to jump to if the names do not match, or {@code null} to fall through
+	 */
+	private void writeMatch(MethodVisitor mv, LuaClass klass, String names, Object constant, int ordinal, Label failure) {
+		Label next = failure == null ? new Label() : failure;
+
+		mv.visitFieldInsn(GETSTATIC, klass.name, names, "[" + CLASS_LUASTRING);
+		constantOpcode(mv, ordinal);
+		mv.visitInsn(AALOAD);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUASTRING, "raweq", "(" + CLASS_LUASTRING + ")Z", false);
+		mv.visitJumpInsn(IFEQ, next);
+
+		mv.visitFieldInsn(GETSTATIC, Type.getInternalName(type), ((Enum<?>) constant).name(), Type.getDescriptor(type));
+		mv.visitInsn(ARETURN);
+
+		if (failure == null) mv.visitLabel(next);
+	}
+
+	/**
+	 * Find a position where every name in this group has a different byte
+	 *
+	 * @param group The indexes of the names, all of which have the same length
+	 * @param bytes The bytes of every name
+	 * @return The position, or {@code -1} if there is none
+	 */
+	private static int findDiscriminator(List<Integer> group, List<byte[]> bytes) {
+		int length = bytes.get(group.get(0)).length;
+		for (int position = 0; position < length; position++) {
+			Set<Byte> seen = new HashSet<>();
+			boolean unique = true;
+			for (int constant : group) {
+				if (!seen.add(bytes.get(constant)[position])) {
+					unique = false;
+					break;
+				}
+			}
+
+			if (unique) return position;
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,287 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.builder.BuilderException;
+import org.squiddev.luaj.api.builder.IClassGenerator;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+import org.squiddev.luaj.api.utils.TypeUtils;
+import org.squiddev.luaj.api.validation.ILuaValidator;
+import org.squiddev.luaj.api.validation.ValidationHelpers;
+import org.squiddev.luaj.api.validation.ValidatorCache;
+
+import java.lang.reflect.*;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+import static org.squiddev.luaj.api.utils.AsmUtils.constantOpcode;
+
+/**
+ * Converts a Lua function to a functional interface, such as {@link Runnable} or {@link java.util.function.Function}.
+ *
+ * A class implementing the interface is generated for each interface (and set of generic arguments). This stores
+ * the function and calls it using {@link LuaValue#call(LuaValue, LuaValue)} and friends, converting the arguments
+ * and result with the {@link Converter}. Boolean results use Lua's truthiness rather than being validated.
+ */
+public class FunctionAdapter implements IInjector<LuaClass> {
+	private static final String FUNCTION = "function";
+
+	/**
+	 * The interface we are converting to, including its generic arguments
+	 */
+	protected final java.lang.reflect.Type type;
+
+	/**
+	 * The converter used for arguments and results
+	 */
+	protected final Converter converter;
+
+	public FunctionAdapter(java.lang.reflect.Type type, Converter converter) {
+		this.type = type;
+		this.converter = converter;
+	}
+
+	/**
+	 * Get the single abstract method of a functional interface
+	 *
+	 * @param type The type to check
+	 * @return The method to implement, or {@code null} if this is not a functional interface
+	 */
+	public static Method getFunctionalMethod(Class<?> type) {
+		if (!type.isInterface() || type.isAnnotation()) return null;
+
+		Method result = null;
+		for (Method method : type.getMethods()) {
+			if (!Modifier.isAbstract(method.getModifiers()) || isObjectMethod(method)) continue;
+			if (result != null) return null;
+			result = method;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Check if a method is declared on {@link Object}, such as {@link Object#equals(Object)}
+	 *
+	 * @param method The method to check
+	 * @return If {@link Object} has a public method with the same signature
+	 */
+	public static boolean isObjectMethod(Method method) {
+		try {
+			Object.class.getMethod(method.getName(), method.getParameterTypes());
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		final Class<?> raw = TypeUtils.getRawType(type);
+		final String name = klass.getExtraClass("function:" + type.toString(), "Function", new IClassGenerator() {
+			@Override
+			public byte[] generate(String name, LuaClass klass) {
+				return writeClass(name, raw, klass);
+			}
+		});
+
+		// value.isnil() ? null : new Adapter(value)
+		Label notNil = new Label();
+		Label finish = new Label();
+		mv.visitInsn(DUP);
+		VALUE_ISNIL.inject(mv);
+		mv.visitJumpInsn(IFEQ, notNil);
+		mv.visitInsn(POP);
+		mv.visitInsn(ACONST_NULL);
+		mv.visitJumpInsn(GOTO, finish);
+
+		mv.visitLabel(notNil);
+		mv.visitTypeInsn(NEW, name);
+		mv.visitInsn(DUP_X1);
+		mv.visitInsn(SWAP);
+		mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", "(" + CLASS_LUAVALUE + ")V", false);
+
+		mv.visitLabel(finish);
+	}
+
+	/**
+	 * Write the adapter class
+	 *
+	 * @param name  The name of the class
+	 * @param raw   The interface to implement
+	 * @param klass The class we are generating for
+	 * @return The class's bytes
+	 */
+	protected byte[] writeClass(String name, Class<?> raw, LuaClass klass) {
+		Method method = getFunctionalMethod(raw);
+		if (method == null) throw new BuilderException(raw.getName() + " is not a functional interface", klass);
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", new String[]{Type.getInternalName(raw)});
+		writer.visitField(ACC_PRIVATE | ACC_FINAL, FUNCTION, CLASS_LUAVALUE, null, null).visitEnd();
+
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "(" + CLASS_LUAVALUE + ")V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitFieldInsn(PUTFIELD, name, FUNCTION, CLASS_LUAVALUE);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		writeMethod(writer, name, method, klass);
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Write the implementation of the interface's method
+	 *
+	 * @param writer The class to write to
+	 * @param name   The name of the class
+	 * @param method The method to implement
+	 * @param klass  The class we are generating for
+	 */
+	protected void writeMethod(ClassWriter writer, String name, Method method, LuaClass klass) {
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method), null, null);
+		mv.visitCode();
+
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, name, FUNCTION, CLASS_LUAVALUE);
+		writeCall(mv, method, false, "callback", klass);
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Call the function on the top of the stack with a method's arguments, and return the converted result.
+	 *
+	 * Arguments are loaded from the method's local variables, starting at slot 1.
+	 *
+	 * @param mv     The method to write to
+	 * @param method The method being implemented
+	 * @param self   If the value below the function should be passed as the first argument
+	 * @param caller What to describe the function as in error messages
+	 * @param klass  The class we are generating for
+	 */
+	public void writeCall(MethodVisitor mv, Method method, boolean self, String caller, LuaClass klass) {
+		Type[] argTypes = Type.getArgumentTypes(method);
+		Class<?>[] params = method.getParameterTypes();
+		java.lang.reflect.Type[] generics = method.getGenericParameterTypes();
+		int offset = self ? 1 : 0;
+		int count = params.length + offset;
+
+		// More than 3 arguments must be passed as varargs
+		if (count > 3) {
+			constantOpcode(mv, count);
+			mv.visitTypeInsn(ANEWARRAY, TYPE_LUAVALUE);
+
+			if (self) {
+				// function, self, array -> function, array, array, 0, self
+				mv.visitInsn(DUP_X1);
+				mv.visitInsn(SWAP);
+				mv.visitInsn(ICONST_0);
+				mv.visitInsn(SWAP);
+				mv.visitInsn(AASTORE);
+			}
+		}
+
+		int slot = 1;
+		for (int i = 0; i < params.length; i++) {
+			if (count > 3) {
+				mv.visitInsn(DUP);
+				constantOpcode(mv, i + offset);
+			}
+
+			mv.visitVarInsn(argTypes[i].getOpcode(ILOAD), slot);
+			slot += argTypes[i].getSize();
+
+			java.lang.reflect.Type argType = resolve(generics[i], true);
+			IInjector<LuaClass> argConverter = params[i].isPrimitive() ? converter.getValueToLua(argType) : converter.getObjectToLua(argType);
+			if (argConverter == null) {
+				throw new BuilderException("Cannot convert " + TypeUtils.getName(argType) + " to LuaValue for " + method, klass);
+			}
+			argConverter.inject(mv, klass);
+
+			if (count > 3) mv.visitInsn(AASTORE);
+		}
+
+		if (count > 3) {
+			VARARGS_OF.inject(mv);
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "invoke", "(" + CLASS_VARARGS + ")" + CLASS_VARARGS, false);
+			mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Varargs.class), "arg1", "()" + CLASS_LUAVALUE, false);
+		} else {
+			StringBuilder descriptor = new StringBuilder("(");
+			for (int i = 0; i < count; i++) descriptor.append(CLASS_LUAVALUE);
+			descriptor.append(")").append(CLASS_LUAVALUE);
+			mv.visitMethodInsn(INVOKEVIRTUAL, TYPE_LUAVALUE, "call", descriptor.toString(), false);
+		}
+
+		Class<?> returns = method.getReturnType();
+		if (returns.equals(void.class)) {
+			mv.visitInsn(POP);
+			mv.visitInsn(RETURN);
+		} else {
+			java.lang.reflect.Type returnType = resolve(method.getGenericReturnType(), false);
+			Class<?> rawReturn = TypeUtils.getRawType(returnType);
+			IInjector<LuaClass> returnConverter = converter.getFromLua(returnType);
+			if (returnConverter == null) {
+				throw new BuilderException("Cannot convert LuaValue to " + TypeUtils.getName(returnType) + " for " + method, klass);
+			}
+
+			if (!rawReturn.equals(boolean.class) && !rawReturn.equals(Boolean.class)) {
+				ILuaValidator validator = ValidatorCache.getValidator(klass.validator);
+				if (ValidationHelpers.canValidate(validator, rawReturn)) {
+					String expected = validator.getName(TypeUtils.unbox(rawReturn));
+					ValidationHelpers.validate(mv, validator, rawReturn, "Expected " + expected + " from " + caller);
+				}
+			}
+
+			returnConverter.inject(mv, klass);
+			mv.visitInsn(Type.getType(returns).getOpcode(IRETURN));
+		}
+	}
+
+	/**
+	 * Resolve a type used in the interface's method, using the interface's generic arguments
+	 *
+	 * @param type      The type to resolve
+	 * @param parameter If this is a parameter, rather than the return type. Parameters prefer
+	 *                  the lower bound of wildcards, results the upper bound.
+	 * @return The resolved type
+	 */
+	protected java.lang.reflect.Type resolve(java.lang.reflect.Type type, boolean parameter) {
+		if (!(type instanceof TypeVariable)) return type;
+
+		TypeVariable<?> variable = (TypeVariable<?>) type;
+		if (this.type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) this.type;
+			TypeVariable<?>[] variables = TypeUtils.getRawType(parameterized).getTypeParameters();
+			for (int i = 0; i < variables.length; i++) {
+				if (!variables[i].equals(variable)) continue;
+
+				java.lang.reflect.Type argument = parameterized.getActualTypeArguments()[i];
+				if (argument instanceof WildcardType) {
+					WildcardType wildcard = (WildcardType) argument;
+					java.lang.reflect.Type[] lower = wildcard.getLowerBounds();
+					argument = parameter && lower.length > 0 ? lower[0] : wildcard.getUpperBounds()[0];
+				}
+
+				return argument instanceof TypeVariable ? Object.class : argument;
+			}
+		}
+
+		return TypeUtils.getRawType(variable);
+	}
+}
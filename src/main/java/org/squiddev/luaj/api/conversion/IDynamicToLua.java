@@ -0,0 +1,21 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+/**
+ * Converts a Java object to a {@link LuaValue} at runtime,
+ * used when the object's type is not known when generating
+ *
+ * @see DynamicConverter
+ */
+public interface IDynamicToLua {
+	/**
+	 * Convert a value to Lua
+	 *
+	 * @param value  The value to convert. This will never be {@code null}
+	 * @param loader The loader of the class converting this value
+	 * @return The converted value
+	 */
+	LuaValue toLua(Object value, APIClassLoader<?> loader);
+}
@@ -0,0 +1,168 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaInteger;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.util.List;
+
+/**
+ * A table which reads and writes through to a live {@link List}.
+ *
+ * Subclasses are generated for each element type, implementing {@link #toLua(Object)}
+ * and {@link #fromLua(LuaValue)} with the {@link Converter}'s injectors.
+ *
+ * Indexes start at 1. Setting the index after the last item appends to the list,
+ * and setting the last item to {@code nil} removes it. Other items cannot be set to {@code nil}, as
+ * this would leave a hole in the list. If the list contains {@code null}s anyway, iteration stops at the first.
+ *
+ * @see org.squiddev.luaj.api.TableProxy
+ */
+public abstract class ListProxy extends LuaTable {
+	/**
+	 * The list we are proxying
+	 */
+	protected final List<Object> list;
+
+	@SuppressWarnings("unchecked")
+	public ListProxy(List<?> list) {
+		this.list = (List<Object>) list;
+	}
+
+	/**
+	 * Convert an element of this list to a Lua value
+	 *
+	 * @param value The element to convert
+	 * @return The converted element
+	 */
+	protected abstract LuaValue toLua(Object value);
+
+	/**
+	 * Convert a Lua value to an element of this list
+	 *
+	 * @param value The value to convert. This will never be {@code nil}
+	 * @return The converted element
+	 * @throws LuaError If the value is not of the correct type
+	 */
+	protected abstract Object fromLua(LuaValue value);
+
+	/**
+	 * Get the underlying list
+	 *
+	 * @return The list this table proxies
+	 */
+	public List<Object> getList() {
+		return list;
+	}
+
+	@Override
+	public LuaValue rawget(int key) {
+		List<Object> list = this.list;
+		if (key < 1 || key > list.size()) return NIL;
+		return toLua(list.get(key - 1));
+	}
+
+	@Override
+	public LuaValue rawget(LuaValue key) {
+		if (isIndex(key)) return rawget(key.toint());
+		return NIL;
+	}
+
+	@Override
+	public void rawset(int key, LuaValue value) {
+		List<Object> list = this.list;
+		int size = list.size();
+
+		if (value.isnil()) {
+			if (key >= 1 && key == size) {
+				list.remove(size - 1);
+			} else if (key >= 1 && key < size) {
+				throw new LuaError("cannot set index " + key + " to nil, use table.remove instead");
+			}
+		} else if (key >= 1 && key <= size) {
+			list.set(key - 1, fromLua(value));
+		} else if (key == size + 1) {
+			list.add(fromLua(value));
+		} else {
+			throw new LuaError("index " + key + " out of range");
+		}
+	}
+
+	@Override
+	public void rawset(LuaValue key, LuaValue value) {
+		if (!isIndex(key)) throw new LuaError("index expected, got " + key.typename());
+		rawset(key.toint(), value);
+	}
+
+	@Override
+	public void insert(int pos, LuaValue value) {
+		if (pos == 0) {
+			list.add(fromLua(value));
+		} else {
+			list.add(pos - 1, fromLua(value));
+		}
+	}
+
+	@Override
+	public LuaValue remove(int pos) {
+		List<Object> list = this.list;
+		int size = list.size();
+		if (pos == 0) pos = size;
+		if (pos < 1 || pos > size) return NONE;
+
+		return toLua(list.remove(pos - 1));
+	}
+
+	@Override
+	public int length() {
+		return list.size();
+	}
+
+	@Override
+	public int maxn() {
+		return list.size();
+	}
+
+	@Override
+	public int keyCount() {
+		return list.size();
+	}
+
+	@Override
+	public Varargs next(LuaValue key) {
+		int index = key.isnil() ? 1 : key.checkint() + 1;
+
+		List<Object> list = this.list;
+		if (index < 1 || index > list.size()) return NIL;
+
+		Object value = list.get(index - 1);
+		if (value == null) return NIL;
+		return varargsOf(LuaInteger.valueOf(index), toLua(value));
+	}
+
+	/**
+	 * Check if a key is an integer index.
+	 *
+	 * Unlike {@link LuaValue#isint()}, this does not accept strings
+	 *
+	 * @param key The key to check
+	 * @return If this key can be used to index the list
+	 */
+	protected static boolean isIndex(LuaValue key) {
+		return key.type() == TNUMBER && key.isint();
+	}
+
+	@Override
+	public Varargs inext(LuaValue key) {
+		int index = key.checkint() + 1;
+
+		List<Object> list = this.list;
+		if (index < 1 || index > list.size()) return NONE;
+
+		Object value = list.get(index - 1);
+		if (value == null) return NONE;
+		return varargsOf(LuaInteger.valueOf(index), toLua(value));
+	}
+}
@@ -0,0 +1,211 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaInteger;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A table which reads and writes through to a live {@link Map}.
+ *
+ * Subclasses are generated for each key and value type, implementing the conversion
+ * methods with the {@link Converter}'s injectors.
+ *
+ * Setting a key to {@code nil} removes it from the map. The length of this table is the size of the map.
+ *
+ * Iterating with {@code next} continues the map's own iterator, which is kept for each recent traversal
+ * and found by the last key it returned. This means nested traversals do not interfere, and a {@code pairs}
+ * loop does not need to copy or search the map. As with normal tables, fields may be cleared during
+ * iteration: clearing the current key removes it through the iterator. If the map is changed in any other way,
+ * the traversal searches for its last key to continue.
+ *
+ * @see org.squiddev.luaj.api.TableProxy
+ */
+public abstract class MapProxy extends LuaTable {
+	/**
+	 * The map we are proxying
+	 */
+	protected final Map<Object, Object> map;
+
+	/**
+	 * The most traversals to keep iterators for. Others fall back to searching for the key.
+	 */
+	private static final int ITERATORS = 4;
+
+	/**
+	 * The iterators of recent traversals, keyed by the last key they returned
+	 */
+	private final Map<Object, Iterator<Map.Entry<Object, Object>>> iterators = new LinkedHashMap<Object, Iterator<Map.Entry<Object, Object>>>(8, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Iterator<Map.Entry<Object, Object>>> eldest) {
+			return size() > ITERATORS;
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	public MapProxy(Map<?, ?> map) {
+		this.map = (Map<Object, Object>) map;
+	}
+
+	/**
+	 * Convert a key of this map to a Lua value
+	 *
+	 * @param key The key to convert
+	 * @return The converted key
+	 */
+	protected abstract LuaValue keyToLua(Object key);
+
+	/**
+	 * Convert a Lua value to a key of this map
+	 *
+	 * @param key The value to convert. This will never be {@code nil}
+	 * @return The converted key or {@code null} if the value is not of the correct type
+	 */
+	protected abstract Object keyFromLua(LuaValue key);
+
+	/**
+	 * Convert a value of this map to a Lua value
+	 *
+	 * @param value The value to convert
+	 * @return The converted value
+	 */
+	protected abstract LuaValue valueToLua(Object value);
+
+	/**
+	 * Convert a Lua value to a value of this map
+	 *
+	 * @param value The value to convert. This will never be {@code nil}
+	 * @return The converted value
+	 * @throws LuaError If the value is not of the correct type
+	 */
+	protected abstract Object valueFromLua(LuaValue value);
+
+	/**
+	 * Get the underlying map
+	 *
+	 * @return The map this table proxies
+	 */
+	public Map<Object, Object> getMap() {
+		return map;
+	}
+
+	@Override
+	public LuaValue rawget(int key) {
+		return rawget(LuaInteger.valueOf(key));
+	}
+
+	@Override
+	public LuaValue rawget(LuaValue key) {
+		if (key.isnil()) return NIL;
+
+		Object converted = keyFromLua(key);
+		if (converted == null) return NIL;
+
+		Object value = map.get(converted);
+		return value == null ? NIL : valueToLua(value);
+	}
+
+	@Override
+	public void rawset(int key, LuaValue value) {
+		rawset(LuaInteger.valueOf(key), value);
+	}
+
+	@Override
+	public void rawset(LuaValue key, LuaValue value) {
+		if (key.isnil()) throw new LuaError("table index is nil");
+
+		Object converted = keyFromLua(key);
+		if (converted == null) throw new LuaError("invalid key " + key.tojstring());
+
+		if (value.isnil()) {
+			// Remove the current key of a traversal through its iterator, so it can continue
+			Iterator<Map.Entry<Object, Object>> iterator = iterators.get(converted);
+			if (iterator == null) {
+				map.remove(converted);
+			} else {
+				try {
+					iterator.remove();
+				} catch (ConcurrentModificationException e) {
+					iterators.remove(converted);
+					map.remove(converted);
+				}
+			}
+		} else {
+			map.put(converted, valueFromLua(value));
+		}
+	}
+
+	@Override
+	public int length() {
+		return map.size();
+	}
+
+	@Override
+	public int maxn() {
+		return map.size();
+	}
+
+	@Override
+	public int keyCount() {
+		return map.size();
+	}
+
+	@Override
+	public Varargs next(LuaValue key) {
+		if (key.isnil()) return next(map.entrySet().iterator());
+
+		Object search = keyFromLua(key);
+		if (search == null) throw new LuaError("invalid key to 'next'");
+
+		Iterator<Map.Entry<Object, Object>> iterator = iterators.remove(search);
+		if (iterator == null) return next(find(search));
+
+		try {
+			return next(iterator);
+		} catch (ConcurrentModificationException e) {
+			// The map was changed elsewhere, so continue from a new iterator
+			return next(find(search));
+		}
+	}
+
+	/**
+	 * Get the next entry from an iterator, and store the iterator under its key
+	 *
+	 * @param iterator The iterator to advance
+	 * @return The next key and value, or {@code nil} if there are none
+	 */
+	private Varargs next(Iterator<Map.Entry<Object, Object>> iterator) {
+		while (iterator.hasNext()) {
+			Map.Entry<Object, Object> entry = iterator.next();
+			Object key = entry.getKey(), value = entry.getValue();
+			if (key == null || value == null) continue;
+
+			iterators.put(key, iterator);
+			return varargsOf(keyToLua(key), valueToLua(value));
+		}
+
+		return NIL;
+	}
+
+	/**
+	 * Create an iterator positioned after a key
+	 *
+	 * @param key The key to search for
+	 * @return The iterator, whose next entry follows the key
+	 * @throws LuaError If the key is not in the map
+	 */
+	private Iterator<Map.Entry<Object, Object>> find(Object key) {
+		Iterator<Map.Entry<Object, Object>> iterator = map.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (key.equals(iterator.next().getKey())) return iterator;
+		}
+
+		throw new LuaError("invalid key to 'next'");
+	}
+}
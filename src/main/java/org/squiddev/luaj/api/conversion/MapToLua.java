@@ -0,0 +1,114 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+
+import java.lang.reflect.Type;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+
+/**
+ * Converts a {@link java.util.Map} into a {@link org.luaj.vm2.LuaTable}.
+ *
+ * The key and value converters are picked when generating, and the table's hash part is presized.
+ * Entries with a {@code null} key are skipped.
+ */
+public class MapToLua implements IInjector<LuaClass> {
+	protected final Type key;
+	protected final Type value;
+
+	protected final IInjector<LuaClass> keyConverter;
+	protected final IInjector<LuaClass> valueConverter;
+
+	public MapToLua(Type key, IInjector<LuaClass> keyConverter, Type value, IInjector<LuaClass> valueConverter) {
+		this.key = key;
+		this.value = value;
+		this.keyConverter = keyConverter;
+		this.valueConverter = valueConverter;
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		klass.getHelper(
+			"toLua:java/util/Map<" + key + ", " + value + ">", "toLua",
+			"(Ljava/util/Map;)" + CLASS_LUAVALUE,
+			new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					writeHelper(mv, klass);
+				}
+			}
+		).inject(mv);
+	}
+
+	/**
+	 * Write the body of the conversion method
+	 *
+	 * @param mv    The visitor to write to
+	 * @param klass The class we are generating
+	 */
+	protected void writeHelper(MethodVisitor mv, LuaClass klass) {
+		Label notNull = new Label();
+		Label loop = new Label();
+		Label finish = new Label();
+
+		// if(map == null) return LuaValue.NIL;
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitJumpInsn(IFNONNULL, notNull);
+		mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NIL", CLASS_LUAVALUE);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(notNull);
+
+		// LuaTable table = new LuaTable(0, map.size());
+		mv.visitTypeInsn(NEW, TYPE_LUATABLE);
+		mv.visitInsn(DUP);
+		mv.visitInsn(ICONST_0);
+		mv.visitVarInsn(ALOAD, 0);
+		MAP_SIZE.inject(mv);
+		mv.visitMethodInsn(INVOKESPECIAL, TYPE_LUATABLE, "<init>", "(II)V", false);
+		mv.visitVarInsn(ASTORE, 1);
+
+		// Iterator iterator = map.entrySet().iterator();
+		mv.visitVarInsn(ALOAD, 0);
+		MAP_ENTRY_SET.inject(mv);
+		COLLECTION_ITERATOR.inject(mv);
+		mv.visitVarInsn(ASTORE, 2);
+
+		// while(iterator.hasNext())
+		mv.visitLabel(loop);
+		mv.visitVarInsn(ALOAD, 2);
+		ITERATOR_HAS_NEXT.inject(mv);
+		mv.visitJumpInsn(IFEQ, finish);
+
+		// Map.Entry entry = iterator.next();
+		mv.visitVarInsn(ALOAD, 2);
+		ITERATOR_NEXT.inject(mv);
+		mv.visitTypeInsn(CHECKCAST, "java/util/Map$Entry");
+		mv.visitVarInsn(ASTORE, 3);
+
+		// Object key = entry.getKey(); if(key == null) continue;
+		mv.visitVarInsn(ALOAD, 3);
+		ENTRY_GET_KEY.inject(mv);
+		mv.visitInsn(DUP);
+		mv.visitVarInsn(ASTORE, 4);
+		mv.visitJumpInsn(IFNULL, loop);
+
+		// table.rawset(convert(key), convert(entry.getValue()))
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitVarInsn(ALOAD, 4);
+		keyConverter.inject(mv, klass);
+		mv.visitVarInsn(ALOAD, 3);
+		ENTRY_GET_VALUE.inject(mv);
+		valueConverter.inject(mv, klass);
+		TABLE_RAWSET.inject(mv);
+
+		mv.visitJumpInsn(GOTO, loop);
+
+		mv.visitLabel(finish);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitInsn(ARETURN);
+	}
+}
@@ -0,0 +1,205 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.squiddev.luaj.api.builder.IClassGenerator;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+import org.squiddev.luaj.api.utils.TypeUtils;
+import org.squiddev.luaj.api.validation.ILuaValidator;
+import org.squiddev.luaj.api.validation.ValidationHelpers;
+import org.squiddev.luaj.api.validation.ValidatorCache;
+
+import java.lang.reflect.Type;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+
+/**
+ * Wraps a {@link java.util.List} or {@link java.util.Map} in a live proxy table.
+ *
+ * This generates a subclass of {@link ListProxy} or {@link MapProxy} for each element type,
+ * using the {@link Converter}'s injectors for the conversion methods.
+ */
+public class ProxyToLua implements IInjector<LuaClass> {
+	private static final String LIST_PROXY = org.objectweb.asm.Type.getInternalName(ListProxy.class);
+	private static final String MAP_PROXY = org.objectweb.asm.Type.getInternalName(MapProxy.class);
+
+	protected final boolean isMap;
+
+	protected final Type key;
+	protected final IInjector<LuaClass> keyToLua;
+	protected final IInjector<LuaClass> keyFromLua;
+
+	protected final Type value;
+	protected final IInjector<LuaClass> valueToLua;
+	protected final IInjector<LuaClass> valueFromLua;
+
+	/**
+	 * Create a converter for a list
+	 *
+	 * @param value        The element type
+	 * @param valueToLua   Converts elements to Lua
+	 * @param valueFromLua Converts elements from Lua. If {@code null}, the table is read only
+	 */
+	public ProxyToLua(Type value, IInjector<LuaClass> valueToLua, IInjector<LuaClass> valueFromLua) {
+		this.isMap = false;
+		this.key = null;
+		this.keyToLua = null;
+		this.keyFromLua = null;
+
+		this.value = value;
+		this.valueToLua = valueToLua;
+		this.valueFromLua = valueFromLua;
+	}
+
+	/**
+	 * Create a converter for a map
+	 *
+	 * @param key          The key type
+	 * @param keyToLua     Converts keys to Lua
+	 * @param keyFromLua   Converts keys from Lua
+	 * @param value        The value type
+	 * @param valueToLua   Converts values to Lua
+	 * @param valueFromLua Converts values from Lua. If {@code null}, the table is read only
+	 */
+	public ProxyToLua(
+		Type key, IInjector<LuaClass> keyToLua, IInjector<LuaClass> keyFromLua,
+		Type value, IInjector<LuaClass> valueToLua, IInjector<LuaClass> valueFromLua
+	) {
+		this.isMap = true;
+		this.key = key;
+		this.keyToLua = keyToLua;
+		this.keyFromLua = keyFromLua;
+
+		this.value = value;
+		this.valueToLua = valueToLua;
+		this.valueFromLua = valueFromLua;
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		String key = isMap ? "proxy:java/util/Map<" + this.key + ", " + value + ">" : "proxy:java/util/List<" + value + ">";
+		String name = klass.getExtraClass(key, "Proxy", new IClassGenerator() {
+			@Override
+			public byte[] generate(String name, LuaClass klass) {
+				return writeClass(name, klass);
+			}
+		});
+
+		mv.visitMethodInsn(INVOKESTATIC, name, "wrap", "(" + getCollectionType() + ")" + CLASS_LUAVALUE, false);
+	}
+
+	protected String getCollectionType() {
+		return isMap ? "Ljava/util/Map;" : "Ljava/util/List;";
+	}
+
+	/**
+	 * Write the proxy class
+	 *
+	 * @param name  The name of the class
+	 * @param klass The class we are generating for
+	 * @return The class's bytes
+	 */
+	protected byte[] writeClass(String name, LuaClass klass) {
+		String parent = isMap ? MAP_PROXY : LIST_PROXY;
+		String collection = getCollectionType();
+		ILuaValidator validator = ValidatorCache.getValidator(klass.validator);
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER, name, null, parent, null);
+
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "(" + collection + ")V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitMethodInsn(INVOKESPECIAL, parent, "<init>", "(" + collection + ")V", false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		// Wrap the collection, returning nil if it is null
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "wrap", "(" + collection + ")" + CLASS_LUAVALUE, null, null);
+			mv.visitCode();
+
+			Label notNull = new Label();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitJumpInsn(IFNONNULL, notNull);
+			mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NIL", CLASS_LUAVALUE);
+			mv.visitInsn(ARETURN);
+
+			mv.visitLabel(notNull);
+			mv.visitTypeInsn(NEW, name);
+			mv.visitInsn(DUP);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", "(" + collection + ")V", false);
+			mv.visitInsn(ARETURN);
+
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		if (isMap) {
+			writeToLua(writer, "keyToLua", keyToLua, klass);
+			writeToLua(writer, "valueToLua", valueToLua, klass);
+			writeFromLua(writer, "valueFromLua", value, valueFromLua, validator, klass);
+
+			// Invalid keys return null rather than throwing
+			MethodVisitor mv = writer.visitMethod(ACC_PROTECTED, "keyFromLua", "(" + CLASS_LUAVALUE + ")Ljava/lang/Object;", null, null);
+			mv.visitCode();
+
+			Label onError = new Label();
+			mv.visitVarInsn(ALOAD, 1);
+			ValidationHelpers.validate(mv, validator, TypeUtils.getRawType(key), onError);
+			keyFromLua.inject(mv, klass);
+			mv.visitInsn(ARETURN);
+
+			mv.visitLabel(onError);
+			mv.visitInsn(POP);
+			mv.visitInsn(ACONST_NULL);
+			mv.visitInsn(ARETURN);
+
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		} else {
+			writeToLua(writer, "toLua", valueToLua, klass);
+			writeFromLua(writer, "fromLua", value, valueFromLua, validator, klass);
+		}
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private static void writeToLua(ClassWriter writer, String name, IInjector<LuaClass> converter, LuaClass klass) {
+		MethodVisitor mv = writer.visitMethod(ACC_PROTECTED, name, "(Ljava/lang/Object;)" + CLASS_LUAVALUE, null, null);
+		mv.visitCode();
+
+		mv.visitVarInsn(ALOAD, 1);
+		converter.inject(mv, klass);
+		mv.visitInsn(ARETURN);
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void writeFromLua(ClassWriter writer, String name, Type type, IInjector<LuaClass> converter, ILuaValidator validator, LuaClass klass) {
+		MethodVisitor mv = writer.visitMethod(ACC_PROTECTED, name, "(" + CLASS_LUAVALUE + ")Ljava/lang/Object;", null, null);
+		mv.visitCode();
+
+		if (converter == null) {
+			ValidationHelpers.throwError(mv, "table is read only");
+		} else {
+			mv.visitVarInsn(ALOAD, 1);
+			ValidationHelpers.validate(mv, validator, TypeUtils.getRawType(type), (String) null);
+			converter.inject(mv, klass);
+			mv.visitInsn(ARETURN);
+		}
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+}
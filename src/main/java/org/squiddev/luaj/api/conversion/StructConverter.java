@@ -0,0 +1,271 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.luaj.vm2.LuaString;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.builder.BuilderException;
+import org.squiddev.luaj.api.builder.IClassGenerator;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+import org.squiddev.luaj.api.utils.TinyMethod;
+import org.squiddev.luaj.api.utils.TypeUtils;
+import org.squiddev.luaj.api.validation.ILuaValidator;
+import org.squiddev.luaj.api.validation.ValidationHelpers;
+import org.squiddev.luaj.api.validation.ValidatorCache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+import static org.squiddev.luaj.api.utils.AsmUtils.constantOpcode;
+
+/**
+ * Converts a {@link org.squiddev.luaj.api.LuaStruct} to and from a {@link org.luaj.vm2.LuaTable}.
+ *
+ * A class is generated for each struct, with a {@link LuaString} constant for each field's key and
+ * static {@code toLua} and {@code fromLua} methods. Fields are accessed directly, with no reflection.
+ *
+ * @see org.squiddev.luaj.api.LuaStruct
+ */
+public class StructConverter implements IInjector<LuaClass> {
+	private static final TinyMethod STRING_VALUE_OF = new TinyMethod(LuaString.class, "valueOf", String.class);
+	private static final String CLASS_LUASTRING = Type.getDescriptor(LuaString.class);
+
+	/**
+	 * The struct we are converting
+	 */
+	protected final Class<?> type;
+
+	/**
+	 * The converter used for each field
+	 */
+	protected final Converter converter;
+
+	/**
+	 * If we are converting to Lua rather than from it
+	 */
+	protected final boolean toLua;
+
+	public StructConverter(Class<?> type, Converter converter, boolean toLua) {
+		this.type = type;
+		this.converter = converter;
+		this.toLua = toLua;
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		String name = klass.getExtraClass("struct:" + type.getName(), "Struct", new IClassGenerator() {
+			@Override
+			public byte[] generate(String name, LuaClass klass) {
+				return writeClass(name, klass);
+			}
+		});
+
+		if (toLua) {
+			mv.visitMethodInsn(INVOKESTATIC, name, "toLua", "(" + Type.getDescriptor(type) + ")" + CLASS_LUAVALUE, false);
+		} else {
+			mv.visitMethodInsn(INVOKESTATIC, name, "fromLua", "(" + CLASS_LUAVALUE + ")" + Type.getDescriptor(type), false);
+		}
+	}
+
+	/**
+	 * Check if a struct can be created from a table
+	 *
+	 * @param type The struct's class
+	 * @return If the struct has a public constructor with no arguments
+	 */
+	public static boolean canConstruct(Class<?> type) {
+		try {
+			return Modifier.isPublic(type.getConstructor().getModifiers()) && !Modifier.isAbstract(type.getModifiers());
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Get the fields stored in the struct's table
+	 *
+	 * @param type The struct's class
+	 * @return All public, non-static and non-transient fields
+	 */
+	public static List<Field> getFields(Class<?> type) {
+		List<Field> fields = new ArrayList<>();
+		for (Field field : type.getFields()) {
+			int modifiers = field.getModifiers();
+			if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) fields.add(field);
+		}
+
+		return fields;
+	}
+
+	/**
+	 * Write the struct's class
+	 *
+	 * @param name  The name of the class
+	 * @param klass The class we are generating for
+	 * @return The class's bytes
+	 */
+	protected byte[] writeClass(String name, LuaClass klass) {
+		List<Field> fields = getFields(type);
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+
+		// Intern each key once
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+			mv.visitCode();
+
+			for (int i = 0; i < fields.size(); i++) {
+				writer.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "KEY_" + i, CLASS_LUASTRING, null, null).visitEnd();
+
+				mv.visitLdcInsn(fields.get(i).getName());
+				STRING_VALUE_OF.inject(mv);
+				mv.visitFieldInsn(PUTSTATIC, name, "KEY_" + i, CLASS_LUASTRING);
+			}
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		writeToLua(writer, name, fields, klass);
+		if (canConstruct(type)) writeFromLua(writer, name, fields, klass);
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Write the method to convert the struct to a table
+	 *
+	 * @param writer The class to write to
+	 * @param name   The name of the class
+	 * @param fields The struct's fields
+	 * @param klass  The class we are generating for
+	 */
+	protected void writeToLua(ClassWriter writer, String name, List<Field> fields, LuaClass klass) {
+		String owner = Type.getInternalName(type);
+
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "toLua", "(" + Type.getDescriptor(type) + ")" + CLASS_LUAVALUE, null, null);
+		mv.visitCode();
+
+		// if(struct == null) return LuaValue.NIL;
+		Label notNull = new Label();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitJumpInsn(IFNONNULL, notNull);
+		mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NIL", CLASS_LUAVALUE);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(notNull);
+
+		// LuaTable table = new LuaTable(0, fields);
+		mv.visitTypeInsn(NEW, TYPE_LUATABLE);
+		mv.visitInsn(DUP);
+		mv.visitInsn(ICONST_0);
+		constantOpcode(mv, fields.size());
+		mv.visitMethodInsn(INVOKESPECIAL, TYPE_LUATABLE, "<init>", "(II)V", false);
+		mv.visitVarInsn(ASTORE, 1);
+
+		for (int i = 0; i < fields.size(); i++) {
+			Field field = fields.get(i);
+			IInjector<LuaClass> fieldConverter = converter.getValueToLua(field.getGenericType());
+			if (fieldConverter == null) {
+				throw new BuilderException("Cannot convert field " + field.getName() + " of " + type.getName() + " to LuaValue", klass);
+			}
+
+			// table.rawset(KEY_i, convert(struct.field))
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitFieldInsn(GETSTATIC, name, "KEY_" + i, CLASS_LUASTRING);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, owner, field.getName(), Type.getDescriptor(field.getType()));
+			fieldConverter.inject(mv, klass);
+			TABLE_RAWSET.inject(mv);
+		}
+
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitInsn(ARETURN);
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Write the method to create a struct from a table
+	 *
+	 * @param writer The class to write to
+	 * @param name   The name of the class
+	 * @param fields The struct's fields
+	 * @param klass  The class we are generating for
+	 */
+	protected void writeFromLua(ClassWriter writer, String name, List<Field> fields, LuaClass klass) {
+		String owner = Type.getInternalName(type);
+		ILuaValidator validator = ValidatorCache.getValidator(klass.validator);
+
+		MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "fromLua", "(" + CLASS_LUAVALUE + ")" + Type.getDescriptor(type), null, null);
+		mv.visitCode();
+
+		// if(value.isnil()) return null;
+		Label notNil = new Label();
+		mv.visitVarInsn(ALOAD, 0);
+		VALUE_ISNIL.inject(mv);
+		mv.visitJumpInsn(IFEQ, notNil);
+		mv.visitInsn(ACONST_NULL);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(notNil);
+
+		// LuaTable table = value.checktable();
+		mv.visitVarInsn(ALOAD, 0);
+		VALUE_CHECKTABLE.inject(mv);
+		mv.visitVarInsn(ASTORE, 1);
+
+		// Struct struct = new Struct();
+		mv.visitTypeInsn(NEW, owner);
+		mv.visitInsn(DUP);
+		mv.visitMethodInsn(INVOKESPECIAL, owner, "<init>", "()V", false);
+		mv.visitVarInsn(ASTORE, 2);
+
+		for (int i = 0; i < fields.size(); i++) {
+			Field field = fields.get(i);
+			if (Modifier.isFinal(field.getModifiers())) continue;
+
+			IInjector<LuaClass> fieldConverter = converter.getFromLua(field.getGenericType());
+			if (fieldConverter == null) {
+				throw new BuilderException("Cannot convert LuaValue to field " + field.getName() + " of " + type.getName(), klass);
+			}
+
+			// LuaValue item = table.rawget(KEY_i); if(item.isnil()) continue;
+			Label next = new Label();
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitFieldInsn(GETSTATIC, name, "KEY_" + i, CLASS_LUASTRING);
+			TABLE_RAWGET.inject(mv);
+			mv.visitVarInsn(ASTORE, 3);
+
+			mv.visitVarInsn(ALOAD, 3);
+			VALUE_ISNIL.inject(mv);
+			mv.visitJumpInsn(IFNE, next);
+
+			// struct.field = convert(item);
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitVarInsn(ALOAD, 3);
+			if (ValidationHelpers.canValidate(validator, field.getType())) {
+				String expected = validator.getName(TypeUtils.unbox(field.getType()));
+				ValidationHelpers.validate(mv, validator, field.getType(), "Expected " + expected + " for field " + field.getName());
+			}
+			fieldConverter.inject(mv, klass);
+			mv.visitFieldInsn(PUTFIELD, owner, field.getName(), Type.getDescriptor(field.getType()));
+
+			mv.visitLabel(next);
+		}
+
+		mv.visitVarInsn(ALOAD, 2);
+		mv.visitInsn(ARETURN);
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+}
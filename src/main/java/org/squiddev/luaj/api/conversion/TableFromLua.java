@@ -0,0 +1,197 @@
+package org.squiddev.luaj.api.conversion;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.builder.IInjector;
+import org.squiddev.luaj.api.builder.tree.LuaClass;
+import org.squiddev.luaj.api.utils.AsmUtils;
+import org.squiddev.luaj.api.utils.TinyMethod;
+import org.squiddev.luaj.api.utils.TypeUtils;
+import org.squiddev.luaj.api.validation.ILuaValidator;
+import org.squiddev.luaj.api.validation.ValidationHelpers;
+import org.squiddev.luaj.api.validation.ValidatorCache;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.*;
+
+/**
+ * Converts the array part of a {@link org.luaj.vm2.LuaTable} into a Java array or collection.
+ *
+ * The element converter is picked when generating. If the table's elements are all stored in its
+ * array part then they are copied from it directly, otherwise we fall back to {@link org.luaj.vm2.LuaTable#rawget(int)}.
+ *
+ * Each element is validated with the class's {@link ILuaValidator}
+ *
+ * @see ConversionHelpers#getArrayPart(org.luaj.vm2.LuaTable, int)
+ */
+public class TableFromLua implements IInjector<LuaClass> {
+	private static final TinyMethod GET_ARRAY_PART = new TinyMethod(ConversionHelpers.class, "getArrayPart", org.luaj.vm2.LuaTable.class, int.class);
+	private static final TinyMethod BAD_ELEMENT = new TinyMethod(ConversionHelpers.class, "badElement", String.class, int.class);
+
+	/**
+	 * The type we produce. This is either an array, {@link java.util.ArrayList} or {@link java.util.HashSet}
+	 */
+	protected final Class<?> type;
+
+	/**
+	 * The type of each element
+	 */
+	protected final java.lang.reflect.Type element;
+
+	/**
+	 * Converts each element from a {@link org.luaj.vm2.LuaValue}
+	 */
+	protected final IInjector<LuaClass> converter;
+
+	public TableFromLua(Class<?> type, java.lang.reflect.Type element, IInjector<LuaClass> converter) {
+		this.type = type;
+		this.element = element;
+		this.converter = converter;
+	}
+
+	@Override
+	public void inject(MethodVisitor mv, LuaClass klass) {
+		klass.getHelper(
+			"fromLua:" + type.getName() + "<" + element + ">", "fromLua",
+			"(" + CLASS_LUAVALUE + ")" + Type.getDescriptor(type),
+			new IInjector<LuaClass>() {
+				@Override
+				public void inject(MethodVisitor mv, LuaClass klass) {
+					writeHelper(mv, klass);
+				}
+			}
+		).inject(mv);
+	}
+
+	/**
+	 * Write the body of the conversion method
+	 *
+	 * @param mv    The visitor to write to
+	 * @param klass The class we are generating
+	 */
+	protected void writeHelper(MethodVisitor mv, LuaClass klass) {
+		String typeName = Type.getInternalName(type);
+		Label notNil = new Label();
+		Label slowPath = new Label();
+		Label finish = new Label();
+
+		// if(value.isnil()) return null;
+		mv.visitVarInsn(ALOAD, 0);
+		VALUE_ISNIL.inject(mv);
+		mv.visitJumpInsn(IFEQ, notNil);
+		mv.visitInsn(ACONST_NULL);
+		mv.visitInsn(ARETURN);
+		mv.visitLabel(notNil);
+
+		// LuaTable table = value.checktable(); int length = table.length();
+		mv.visitVarInsn(ALOAD, 0);
+		VALUE_CHECKTABLE.inject(mv);
+		mv.visitInsn(DUP);
+		mv.visitVarInsn(ASTORE, 1);
+		TABLE_LENGTH.inject(mv);
+		mv.visitVarInsn(ISTORE, 2);
+
+		// Create the result
+		if (type.isArray()) {
+			mv.visitVarInsn(ILOAD, 2);
+			AsmUtils.newArray(mv, type.getComponentType());
+		} else {
+			mv.visitTypeInsn(NEW, typeName);
+			mv.visitInsn(DUP);
+			mv.visitVarInsn(ILOAD, 2);
+			mv.visitMethodInsn(INVOKESPECIAL, typeName, "<init>", "(I)V", false);
+		}
+		mv.visitVarInsn(ASTORE, 3);
+
+		// LuaValue[] array = ConversionHelpers.getArrayPart(table, length);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitVarInsn(ILOAD, 2);
+		GET_ARRAY_PART.inject(mv);
+		mv.visitInsn(DUP);
+		mv.visitVarInsn(ASTORE, 4);
+		mv.visitJumpInsn(IFNULL, slowPath);
+
+		// Copy from the array part
+		writeLoop(mv, klass, true, finish);
+
+		// Copy using rawget
+		mv.visitLabel(slowPath);
+		writeLoop(mv, klass, false, finish);
+
+		mv.visitLabel(finish);
+		mv.visitVarInsn(ALOAD, 3);
+		mv.visitInsn(ARETURN);
+	}
+
+	/**
+	 * Write a loop over each element
+	 *
+	 * @param mv        The visitor to write to
+	 * @param klass     The class we are generating
+	 * @param fromArray Read directly from the array part rather than using rawget
+	 * @param finish    The label to jump to when finished
+	 */
+	protected void writeLoop(MethodVisitor mv, LuaClass klass, boolean fromArray, Label finish) {
+		Label loop = new Label();
+		Label onError = new Label();
+
+		ILuaValidator validator = ValidatorCache.getValidator(klass.validator);
+		Class<?> elementType = TypeUtils.getRawType(element);
+
+		// for(int i = 0; i < length; i++)
+		mv.visitInsn(ICONST_0);
+		mv.visitVarInsn(ISTORE, 5);
+
+		mv.visitLabel(loop);
+		mv.visitVarInsn(ILOAD, 5);
+		mv.visitVarInsn(ILOAD, 2);
+		mv.visitJumpInsn(IF_ICMPGE, finish);
+
+		// Load the result and index for storing
+		mv.visitVarInsn(ALOAD, 3);
+		if (type.isArray()) mv.visitVarInsn(ILOAD, 5);
+
+		if (fromArray) {
+			// array[i], which is null if there is a hole
+			Label notNull = new Label();
+			mv.visitVarInsn(ALOAD, 4);
+			mv.visitVarInsn(ILOAD, 5);
+			mv.visitInsn(AALOAD);
+			mv.visitInsn(DUP);
+			mv.visitJumpInsn(IFNONNULL, notNull);
+			mv.visitInsn(POP);
+			mv.visitFieldInsn(GETSTATIC, TYPE_LUAVALUE, "NIL", CLASS_LUAVALUE);
+			mv.visitLabel(notNull);
+		} else {
+			// table.rawget(i + 1)
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitVarInsn(ILOAD, 5);
+			mv.visitInsn(ICONST_1);
+			mv.visitInsn(IADD);
+			TABLE_RAWGET_INT.inject(mv);
+		}
+
+		ValidationHelpers.validate(mv, validator, elementType, onError);
+		converter.inject(mv, klass);
+
+		if (type.isArray()) {
+			mv.visitInsn(Type.getType(type.getComponentType()).getOpcode(IASTORE));
+		} else {
+			COLLECTION_ADD.inject(mv);
+			mv.visitInsn(POP);
+		}
+
+		mv.visitIincInsn(5, 1);
+		mv.visitJumpInsn(GOTO, loop);
+
+		// throw ConversionHelpers.badElement(name, i + 1);
+		mv.visitLabel(onError);
+		mv.visitLdcInsn(ValidationHelpers.canValidate(validator, elementType) ? validator.getName(TypeUtils.unbox(elementType)) : "anything");
+		mv.visitVarInsn(ILOAD, 5);
+		mv.visitInsn(ICONST_1);
+		mv.visitInsn(IADD);
+		BAD_ELEMENT.inject(mv);
+		mv.visitInsn(ATHROW);
+	}
+}
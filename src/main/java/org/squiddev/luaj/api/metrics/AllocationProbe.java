@@ -0,0 +1,155 @@
+package org.squiddev.luaj.api.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated by the current thread during calls to a function, using
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ *
+ * The generated wrapper calls {@link #begin(FunctionMetrics, int)} before converting the arguments,
+ * {@link #call()} and {@link #returned()} around the Java method, and then {@link #end()} or {@link #abort()}.
+ * Each thread keeps a stack of the functions it is in, so nested calls are measured correctly: the allocations of
+ * nested functions are included in the Java method's cost.
+ *
+ * Reading the allocated bytes is relatively expensive, so only a random sample of calls are measured. If the JVM
+ * does not support measuring allocations then nothing is recorded.
+ */
+public final class AllocationProbe {
+	private static final com.sun.management.ThreadMXBean threads = getThreads();
+
+	private static final ThreadLocal<AllocationProbe> probes = new ThreadLocal<AllocationProbe>() {
+		@Override
+		protected AllocationProbe initialValue() {
+			return new AllocationProbe(Thread.currentThread());
+		}
+	};
+
+	private final long thread;
+	private int seed;
+
+	private int depth = 0;
+	private FunctionMetrics[] metrics = new FunctionMetrics[8];
+	private long[] start = new long[8];
+	private long[] call = new long[8];
+	private long[] returned = new long[8];
+
+	private AllocationProbe(Thread thread) {
+		this.thread = thread.getId();
+		this.seed = System.identityHashCode(thread) | 1;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreads() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (!threads.isThreadAllocatedMemorySupported()) return null;
+			if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+			return threads;
+		} catch (RuntimeException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Check if allocations can be measured on this JVM
+	 *
+	 * @return If allocations will be recorded
+	 */
+	public static boolean isSupported() {
+		return threads != null;
+	}
+
+	/**
+	 * Start a call to a function, deciding whether it should be measured.
+	 *
+	 * @param metrics The metrics to record to
+	 * @param rate    Measure one in this many calls. 0 or less disables measuring.
+	 */
+	public static void begin(FunctionMetrics metrics, int rate) {
+		AllocationProbe probe = probes.get();
+		int depth = probe.depth;
+		if (depth == probe.metrics.length) probe.grow();
+
+		boolean sample = threads != null && rate > 0 && (rate == 1 || probe.next() % rate == 0);
+		probe.metrics[depth] = sample ? metrics : null;
+		if (sample) probe.start[depth] = probe.read();
+		probe.depth = depth + 1;
+	}
+
+	/**
+	 * The arguments have been converted, and the Java method is about to be called
+	 */
+	public static void call() {
+		AllocationProbe probe = probes.get();
+		int depth = probe.depth - 1;
+		if (probe.metrics[depth] != null) probe.call[depth] = probe.read();
+	}
+
+	/**
+	 * The Java method has returned, and its result is about to be converted
+	 */
+	public static void returned() {
+		AllocationProbe probe = probes.get();
+		int depth = probe.depth - 1;
+		if (probe.metrics[depth] != null) probe.returned[depth] = probe.read();
+	}
+
+	/**
+	 * The call completed successfully, so record its allocations
+	 */
+	public static void end() {
+		AllocationProbe probe = probes.get();
+		int depth = --probe.depth;
+		FunctionMetrics metrics = probe.metrics[depth];
+		if (metrics == null) return;
+
+		probe.metrics[depth] = null;
+		long end = probe.read();
+		long target = probe.returned[depth] - probe.call[depth];
+		long conversion = end - probe.start[depth] - target;
+		metrics.allocated(conversion, target);
+	}
+
+	/**
+	 * The call threw an exception, so discard its measurements
+	 */
+	public static void abort() {
+		AllocationProbe probe = probes.get();
+		probe.metrics[--probe.depth] = null;
+	}
+
+	private long read() {
+		return threads.getThreadAllocatedBytes(thread);
+	}
+
+	private int next() {
+		// Xorshift, so each thread can sample without contention
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+		return x & Integer.MAX_VALUE;
+	}
+
+	private void grow() {
+		int size = metrics.length * 2;
+
+		FunctionMetrics[] metrics = new FunctionMetrics[size];
+		System.arraycopy(this.metrics, 0, metrics, 0, depth);
+		this.metrics = metrics;
+
+		start = copy(start, size);
+		call = copy(call, size);
+		returned = copy(returned, size);
+	}
+
+	private long[] copy(long[] original, int size) {
+		long[] copy = new long[size];
+		System.arraycopy(original, 0, copy, 0, depth);
+		return copy;
+	}
+}
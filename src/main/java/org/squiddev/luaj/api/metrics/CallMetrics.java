@@ -0,0 +1,153 @@
+package org.squiddev.luaj.api.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts calls and errors, records the latency of successful calls in a {@link LatencyHistogram}, and totals
+ * the allocations of sampled calls.
+ *
+ * @see MetricsRegistry
+ */
+public final class CallMetrics implements FunctionMetrics {
+	private final Class<?> api;
+	private final String function;
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder time = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private final LongAdder samples = new LongAdder();
+	private final LongAdder conversionBytes = new LongAdder();
+	private final LongAdder targetBytes = new LongAdder();
+
+	public CallMetrics(Class<?> api, String function) {
+		this.api = api;
+		this.function = function;
+	}
+
+	@Override
+	public void success(long elapsed) {
+		calls.increment();
+		time.add(elapsed);
+		latency.record(elapsed);
+	}
+
+	@Override
+	public void failure() {
+		calls.increment();
+		errors.increment();
+	}
+
+	@Override
+	public void allocated(long conversion, long target) {
+		samples.increment();
+		conversionBytes.add(conversion);
+		targetBytes.add(target);
+	}
+
+	/**
+	 * Take a copy of the current metrics
+	 *
+	 * @return The snapshot
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(
+			api, function, calls.sum(), errors.sum(), time.sum(), latency.snapshot(),
+			samples.sum(), conversionBytes.sum(), targetBytes.sum()
+		);
+	}
+
+	/**
+	 * An immutable copy of a function's metrics
+	 */
+	public static final class Snapshot {
+		/**
+		 * The API's class
+		 */
+		public final Class<?> api;
+
+		/**
+		 * The function's name
+		 */
+		public final String function;
+
+		/**
+		 * The number of calls, including those which failed
+		 */
+		public final long calls;
+
+		/**
+		 * The number of calls which threw an exception
+		 */
+		public final long errors;
+
+		/**
+		 * The total time spent in the Java method by successful calls, in nanoseconds
+		 */
+		public final long time;
+
+		/**
+		 * The latency of the Java method in successful calls, in nanoseconds. This excludes converting values.
+		 */
+		public final LatencyHistogram.Snapshot latency;
+
+		/**
+		 * The number of calls whose allocations were measured
+		 */
+		public final long samples;
+
+		/**
+		 * The bytes allocated converting arguments and results, across all samples
+		 */
+		public final long conversionBytes;
+
+		/**
+		 * The bytes allocated by the Java method, across all samples
+		 */
+		public final long targetBytes;
+
+		public Snapshot(
+			Class<?> api, String function, long calls, long errors, long time, LatencyHistogram.Snapshot latency,
+			long samples, long conversionBytes, long targetBytes
+		) {
+			this.api = api;
+			this.function = function;
+			this.calls = calls;
+			this.errors = errors;
+			this.time = time;
+			this.latency = latency;
+			this.samples = samples;
+			this.conversionBytes = conversionBytes;
+			this.targetBytes = targetBytes;
+		}
+
+		/**
+		 * Get the average bytes allocated converting arguments and results
+		 *
+		 * @return The bytes allocated per call, or 0 if no calls were sampled
+		 */
+		public long getConversionBytes() {
+			return samples == 0 ? 0 : conversionBytes / samples;
+		}
+
+		/**
+		 * Get the average bytes allocated by the Java method
+		 *
+		 * @return The bytes allocated per call, or 0 if no calls were sampled
+		 */
+		public long getTargetBytes() {
+			return samples == 0 ? 0 : targetBytes / samples;
+		}
+
+		@Override
+		public String toString() {
+			String result = api.getName() + "." + function + ": calls=" + calls + ", errors=" + errors + ", time=" + time + "ns"
+				+ ", p50=" + latency.getPercentile(50) + "ns, p99=" + latency.getPercentile(99) + "ns, max=" + latency.getMax() + "ns";
+			if (samples > 0) {
+				result += ", conversion=" + getConversionBytes() + "B/call, target=" + getTargetBytes() + "B/call";
+			}
+			return result;
+		}
+	}
+}
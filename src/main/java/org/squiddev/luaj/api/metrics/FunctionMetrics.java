@@ -0,0 +1,31 @@
+package org.squiddev.luaj.api.metrics;
+
+/**
+ * Receives the calls to one instrumented function. This is called from the generated wrapper, so must be
+ * thread safe and cheap.
+ *
+ * @see org.squiddev.luaj.api.Instrumented
+ */
+public interface FunctionMetrics {
+	/**
+	 * Record a call which completed successfully
+	 *
+	 * @param elapsed The time spent in the Java method in nanoseconds. This excludes converting the arguments
+	 *                and result.
+	 */
+	void success(long elapsed);
+
+	/**
+	 * Record a call which threw an exception
+	 */
+	void failure();
+
+	/**
+	 * Record the bytes allocated by a sampled call which completed successfully
+	 *
+	 * @param conversion The bytes allocated by the wrapper, converting arguments and the result
+	 * @param target     The bytes allocated by the Java method, including any functions it calls
+	 * @see AllocationProbe
+	 */
+	void allocated(long conversion, long target);
+}
@@ -0,0 +1,111 @@
+package org.squiddev.luaj.api.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with a fixed relative precision.
+ *
+ * Each power of two is split into {@link #SUB_BUCKETS} linear buckets, so values are recorded to within 12.5%
+ * of their actual value, from 1 nanosecond up to {@link Long#MAX_VALUE}. Recording a value is a single atomic
+ * increment.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = getIndex(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Record a value
+	 *
+	 * @param value The value to record. Negative values are treated as 0
+	 */
+	public void record(long value) {
+		counts.incrementAndGet(getIndex(Math.max(0, value)));
+	}
+
+	/**
+	 * Take a copy of the current counts
+	 *
+	 * @return The snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) copy[i] = counts.get(i);
+		return new Snapshot(copy);
+	}
+
+	private static int getIndex(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long getLowerBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+
+		int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+		int sub = index % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+	}
+
+	/**
+	 * An immutable copy of a histogram
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long total;
+
+		private Snapshot(long[] counts) {
+			this.counts = counts;
+
+			long total = 0;
+			for (long count : counts) total += count;
+			this.total = total;
+		}
+
+		/**
+		 * Get the number of values recorded
+		 *
+		 * @return The number of values
+		 */
+		public long getCount() {
+			return total;
+		}
+
+		/**
+		 * Get the value below which a fraction of values fall
+		 *
+		 * @param percentile The percentile, between 0 and 100
+		 * @return The lower bound of the bucket containing this percentile, or 0 if nothing was recorded
+		 */
+		public long getPercentile(double percentile) {
+			if (total == 0) return 0;
+
+			long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= target) return getLowerBound(i);
+			}
+
+			return getLowerBound(counts.length - 1);
+		}
+
+		/**
+		 * Get the largest value recorded
+		 *
+		 * @return The lower bound of the highest bucket with a value, or 0 if nothing was recorded
+		 */
+		public long getMax() {
+			for (int i = counts.length - 1; i >= 0; i--) {
+				if (counts[i] > 0) return getLowerBound(i);
+			}
+
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package org.squiddev.luaj.api.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The default {@link MetricsSink}, which keeps {@link CallMetrics} for every function so they can be exported.
+ */
+public class MetricsRegistry implements MetricsSink {
+	private final List<CallMetrics> metrics = new CopyOnWriteArrayList<>();
+
+	@Override
+	public FunctionMetrics create(Class<?> api, String function) {
+		CallMetrics created = new CallMetrics(api, function);
+		metrics.add(created);
+		return created;
+	}
+
+	/**
+	 * Take a copy of the metrics of every function
+	 *
+	 * @return The metrics of each function, in the order they were created
+	 */
+	public List<CallMetrics.Snapshot> snapshot() {
+		List<CallMetrics.Snapshot> snapshots = new ArrayList<>(metrics.size());
+		for (CallMetrics metric : metrics) snapshots.add(metric.snapshot());
+		return snapshots;
+	}
+}
@@ -0,0 +1,18 @@
+package org.squiddev.luaj.api.metrics;
+
+/**
+ * Creates the metrics for each instrumented function. Implement this to send metrics to another system.
+ *
+ * @see org.squiddev.luaj.api.builder.BuilderSettings#metrics
+ * @see MetricsRegistry
+ */
+public interface MetricsSink {
+	/**
+	 * Create the metrics for a function. This is called once for each function, when its API's wrapper is loaded.
+	 *
+	 * @param api      The API's class
+	 * @param function The function's name
+	 * @return The metrics to record calls with
+	 */
+	FunctionMetrics create(Class<?> api, String function);
+}
@@ -4,8 +4,22 @@ import org.luaj.vm2.LuaValue;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 import org.squiddev.luaj.api.Alias;
+import org.squiddev.luaj.api.Batched;
+import org.squiddev.luaj.api.Blocking;
+import org.squiddev.luaj.api.Cached;
+import org.squiddev.luaj.api.Context;
+import org.squiddev.luaj.api.Default;
+import org.squiddev.luaj.api.Deferred;
 import org.squiddev.luaj.api.Field;
+import org.squiddev.luaj.api.Instrumented;
 import org.squiddev.luaj.api.LuaAPI;
+import org.squiddev.luaj.api.MainThread;
+import org.squiddev.luaj.api.MethodCall;
+import org.squiddev.luaj.api.Parallel;
+import org.squiddev.luaj.api.ReadOnly;
+import org.squiddev.luaj.api.Synchronized;
+import org.squiddev.luaj.api.TableProxy;
+import org.squiddev.luaj.api.Writes;
 import org.squiddev.luaj.api.builder.BuilderException;
 import org.squiddev.luaj.api.builder.IInjector;
 import org.squiddev.luaj.api.builder.tree.LuaArgument;
@@ -13,6 +27,7 @@ import org.squiddev.luaj.api.builder.tree.LuaClass;
 import org.squiddev.luaj.api.builder.tree.LuaField;
 import org.squiddev.luaj.api.builder.tree.LuaMethod;
 import org.squiddev.luaj.api.setters.Setter;
+import org.squiddev.luaj.api.utils.TypeUtils;
 import org.squiddev.luaj.api.validation.ValidationClass;
 
 import java.util.Collections;
@@ -34,6 +49,13 @@ public class DefaultTransformers extends Transformer {
 			}
 		});
 
+		addMethodTransformer(TableProxy.class, new ITransformer<LuaMethod, TableProxy>() {
+			@Override
+			public void transform(LuaMethod target, TableProxy annotation) {
+				target.returnsProxy = true;
+			}
+		});
+
 		addClassTransformer(LuaAPI.class, new ITransformer<LuaClass, LuaAPI>() {
 			@Override
 			public void transform(LuaClass target, LuaAPI annotation) {
@@ -44,6 +66,134 @@ public class DefaultTransformers extends Transformer {
 			}
 		});
 
+		addClassTransformer(MethodCall.class, new ITransformer<LuaClass, MethodCall>() {
+			@Override
+			public void transform(LuaClass target, MethodCall annotation) {
+				target.methodCall = true;
+				target.validateSelf = annotation.validate();
+			}
+		});
+		addMethodTransformer(MethodCall.class, new ITransformer<LuaMethod, MethodCall>() {
+			@Override
+			public void transform(LuaMethod target, MethodCall annotation) {
+				target.methodCall = true;
+				target.validateSelf = annotation.validate();
+			}
+		});
+
+		addClassTransformer(Blocking.class, new ITransformer<LuaClass, Blocking>() {
+			@Override
+			public void transform(LuaClass target, Blocking annotation) {
+				target.blocking = true;
+			}
+		});
+		addMethodTransformer(Blocking.class, new ITransformer<LuaMethod, Blocking>() {
+			@Override
+			public void transform(LuaMethod target, Blocking annotation) {
+				target.blocking = true;
+			}
+		});
+
+		addClassTransformer(MainThread.class, new ITransformer<LuaClass, MainThread>() {
+			@Override
+			public void transform(LuaClass target, MainThread annotation) {
+				target.mainThread = true;
+			}
+		});
+		addMethodTransformer(MainThread.class, new ITransformer<LuaMethod, MainThread>() {
+			@Override
+			public void transform(LuaMethod target, MainThread annotation) {
+				target.mainThread = true;
+			}
+		});
+
+		addClassTransformer(Synchronized.class, new ITransformer<LuaClass, Synchronized>() {
+			@Override
+			public void transform(LuaClass target, Synchronized annotation) {
+				target.synchronize = true;
+			}
+		});
+		addMethodTransformer(Synchronized.class, new ITransformer<LuaMethod, Synchronized>() {
+			@Override
+			public void transform(LuaMethod target, Synchronized annotation) {
+				target.locking = LuaMethod.Locking.MONITOR;
+				target.stripe = annotation.stripe();
+			}
+		});
+		addMethodTransformer(ReadOnly.class, new ITransformer<LuaMethod, ReadOnly>() {
+			@Override
+			public void transform(LuaMethod target, ReadOnly annotation) {
+				target.locking = annotation.optimistic() ? LuaMethod.Locking.OPTIMISTIC : LuaMethod.Locking.READ;
+			}
+		});
+		addMethodTransformer(Writes.class, new ITransformer<LuaMethod, Writes>() {
+			@Override
+			public void transform(LuaMethod target, Writes annotation) {
+				target.locking = LuaMethod.Locking.WRITE;
+			}
+		});
+
+		addClassTransformer(Batched.class, new ITransformer<LuaClass, Batched>() {
+			@Override
+			public void transform(LuaClass target, Batched annotation) {
+				target.batched = true;
+			}
+		});
+		addMethodTransformer(Batched.class, new ITransformer<LuaMethod, Batched>() {
+			@Override
+			public void transform(LuaMethod target, Batched annotation) {
+				target.batched = true;
+			}
+		});
+
+		addClassTransformer(Parallel.class, new ITransformer<LuaClass, Parallel>() {
+			@Override
+			public void transform(LuaClass target, Parallel annotation) {
+				target.parallel = true;
+			}
+		});
+		addMethodTransformer(Parallel.class, new ITransformer<LuaMethod, Parallel>() {
+			@Override
+			public void transform(LuaMethod target, Parallel annotation) {
+				target.parallel = true;
+			}
+		});
+
+		addClassTransformer(Instrumented.class, new ITransformer<LuaClass, Instrumented>() {
+			@Override
+			public void transform(LuaClass target, Instrumented annotation) {
+				target.instrumented = true;
+				target.allocations = annotation.allocations();
+			}
+		});
+		addMethodTransformer(Instrumented.class, new ITransformer<LuaMethod, Instrumented>() {
+			@Override
+			public void transform(LuaMethod target, Instrumented annotation) {
+				target.instrumented = true;
+				target.allocations |= annotation.allocations();
+			}
+		});
+
+		addMethodTransformer(Cached.class, new ITransformer<LuaMethod, Cached>() {
+			@Override
+			public void transform(LuaMethod target, Cached annotation) {
+				if (annotation.size() <= 0) throw new BuilderException("Cache size must be positive", target);
+				if (annotation.ttl() < 0) throw new BuilderException("Cache lifetime cannot be negative", target);
+
+				target.cacheSize = annotation.size();
+				target.cacheTtl = annotation.ttl();
+				target.cacheShared = annotation.shared();
+			}
+		});
+
+		addMethodTransformer(Deferred.class, new ITransformer<LuaMethod, Deferred>() {
+			@Override
+			public void transform(LuaMethod target, Deferred annotation) {
+				target.deferred = true;
+				target.batch = annotation.batch().isEmpty() ? null : annotation.batch();
+			}
+		});
+
 		addClassTransformer(ValidationClass.class, new ITransformer<LuaClass, ValidationClass>() {
 			@Override
 			public void transform(LuaClass target, ValidationClass annotation) {
@@ -63,6 +213,21 @@ public class DefaultTransformers extends Transformer {
 			}
 		});
 
+		addArgumentTransformer(Context.class, new ITransformer<LuaArgument, Context>() {
+			@Override
+			public void transform(LuaArgument target, Context annotation) {
+				target.context = true;
+			}
+		});
+
+		addArgumentTransformer(Default.class, new ITransformer<LuaArgument, Default>() {
+			@Override
+			public void transform(LuaArgument target, Default annotation) {
+				target.defaultValue = parseDefault(target, annotation.value());
+				target.nullable = true;
+			}
+		});
+
 		addFieldTransformer(Setter.class, new ITransformer<LuaField, Setter>() {
 			@Override
 			public void transform(LuaField target, Setter annotation) {
@@ -92,9 +257,9 @@ public class DefaultTransformers extends Transformer {
 						// If it isn't an array or if it is and the array type isn't a subclass of LuaValue
 						if (!type.isArray() || !LuaValue.class.isAssignableFrom(type.getComponentType())) {
 							// Check if we have a converter
-							IInjector<LuaClass> converter = klass.settings.converter.getToLua(type);
+							IInjector<LuaClass> converter = klass.settings.converter.getToLua(target.field.getGenericType());
 							if (converter == null) {
-								throw new BuilderException("Cannot convert " + type.getName() + " to LuaValue for ", klass);
+								throw new BuilderException("Cannot convert " + TypeUtils.getName(target.field.getGenericType()) + " to LuaValue for ", klass);
 							}
 
 							converter.inject(mv, klass);
@@ -117,4 +282,43 @@ public class DefaultTransformers extends Transformer {
 			}
 		});
 	}
+
+	/**
+	 * Parse the default value of an argument
+	 *
+	 * @param argument The argument to parse for
+	 * @param value    The value to parse
+	 * @return The parsed value, of the argument's boxed type
+	 * @see Default
+	 */
+	protected static Object parseDefault(LuaArgument argument, String value) {
+		Class<?> type = argument.parameter.getType();
+		try {
+			if (type.equals(String.class)) {
+				return value;
+			} else if (type.equals(boolean.class)) {
+				if (!value.equals("true") && !value.equals("false")) throw new IllegalArgumentException(value);
+				return Boolean.valueOf(value);
+			} else if (type.equals(byte.class)) {
+				return Byte.valueOf(value);
+			} else if (type.equals(short.class)) {
+				return Short.valueOf(value);
+			} else if (type.equals(char.class)) {
+				if (value.length() != 1) throw new IllegalArgumentException(value);
+				return value.charAt(0);
+			} else if (type.equals(int.class)) {
+				return Integer.valueOf(value);
+			} else if (type.equals(long.class)) {
+				return Long.valueOf(value);
+			} else if (type.equals(float.class)) {
+				return Float.valueOf(value);
+			} else if (type.equals(double.class)) {
+				return Double.valueOf(value);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new BuilderException("Cannot parse default value '" + value + "' as " + type.getName(), argument, e);
+		}
+
+		throw new BuilderException("Cannot have a default value for " + type.getName(), argument);
+	}
 }
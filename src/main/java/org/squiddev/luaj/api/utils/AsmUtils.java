@@ -2,6 +2,7 @@ package org.squiddev.luaj.api.utils;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
 import org.squiddev.luaj.api.builder.BuilderException;
@@ -53,6 +54,83 @@ public class AsmUtils {
 		}
 	}
 
+	/**
+	 * Create a new array. This expects the length on the stack
+	 *
+	 * @param mv        The {@link MethodVisitor}
+	 * @param component The component type of the array
+	 */
+	public static void newArray(MethodVisitor mv, Class<?> component) {
+		if (!component.isPrimitive()) {
+			mv.visitTypeInsn(ANEWARRAY, Type.getInternalName(component));
+			return;
+		}
+
+		int type;
+		switch (Type.getType(component).getSort()) {
+			case Type.BOOLEAN:
+				type = T_BOOLEAN;
+				break;
+			case Type.CHAR:
+				type = T_CHAR;
+				break;
+			case Type.BYTE:
+				type = T_BYTE;
+				break;
+			case Type.SHORT:
+				type = T_SHORT;
+				break;
+			case Type.INT:
+				type = T_INT;
+				break;
+			case Type.FLOAT:
+				type = T_FLOAT;
+				break;
+			case Type.LONG:
+				type = T_LONG;
+				break;
+			case Type.DOUBLE:
+				type = T_DOUBLE;
+				break;
+			default:
+				throw new IllegalArgumentException("Cannot create array of " + component);
+		}
+
+		mv.visitIntInsn(NEWARRAY, type);
+	}
+
+	/**
+	 * Box the value on the top of the stack, if it is a primitive
+	 *
+	 * @param mv   The {@link MethodVisitor}
+	 * @param type The type of the value
+	 */
+	public static void box(MethodVisitor mv, Class<?> type) {
+		if (!type.isPrimitive()) return;
+
+		Type boxed = Type.getType(TypeUtils.box(type));
+		mv.visitMethodInsn(INVOKESTATIC, boxed.getInternalName(), "valueOf", "(" + Type.getDescriptor(type) + ")" + boxed.getDescriptor(), false);
+	}
+
+	/**
+	 * Cast the object on the top of the stack to a type, unboxing it if the type is a primitive
+	 *
+	 * @param mv   The {@link MethodVisitor}
+	 * @param type The type to convert to
+	 */
+	public static void unbox(MethodVisitor mv, Class<?> type) {
+		if (type.equals(Object.class)) return;
+
+		if (!type.isPrimitive()) {
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+			return;
+		}
+
+		String boxed = Type.getInternalName(TypeUtils.box(type));
+		mv.visitTypeInsn(CHECKCAST, boxed);
+		mv.visitMethodInsn(INVOKEVIRTUAL, boxed, type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+	}
+
 	/**
 	 * Validate a generated class
 	 *
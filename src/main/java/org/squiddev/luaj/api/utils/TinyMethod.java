@@ -18,6 +18,7 @@ public class TinyMethod {
 	public final String signature;
 
 	public final Boolean isStatic;
+	public final boolean isInterface;
 	public final int flags;
 
 	/**
@@ -30,10 +31,25 @@ public class TinyMethod {
 	 * @param flags     Flags this method has
 	 */
 	public TinyMethod(String className, String name, String signature, boolean isStatic, int flags) {
+		this(className, name, signature, isStatic, false, flags);
+	}
+
+	/**
+	 * Construct a TinyMethod
+	 *
+	 * @param className   The class name the method is in
+	 * @param name        The name of the method
+	 * @param signature   The signature of the method ()V
+	 * @param isStatic    If the method is static
+	 * @param isInterface If the method is declared on an interface
+	 * @param flags       Flags this method has
+	 */
+	public TinyMethod(String className, String name, String signature, boolean isStatic, boolean isInterface, int flags) {
 		this.className = className;
 		this.name = name;
 		this.signature = signature;
 		this.isStatic = isStatic;
+		this.isInterface = isInterface;
 		this.flags = flags & ~ACC_ABSTRACT;
 	}
 
@@ -54,7 +70,10 @@ public class TinyMethod {
 	 * @param m The method to load
 	 */
 	public TinyMethod(Method m) {
-		this(Type.getInternalName(m.getDeclaringClass()), m.getName(), Type.getMethodDescriptor(m), Modifier.isStatic(m.getModifiers()), m.getModifiers());
+		this(
+			Type.getInternalName(m.getDeclaringClass()), m.getName(), Type.getMethodDescriptor(m),
+			Modifier.isStatic(m.getModifiers()), m.getDeclaringClass().isInterface(), m.getModifiers()
+		);
 	}
 
 	/**
@@ -90,7 +109,13 @@ public class TinyMethod {
 	}
 
 	public void inject(MethodVisitor mv) {
-		mv.visitMethodInsn(isStatic ? INVOKESTATIC : INVOKEVIRTUAL, className, name, signature, false);
+		if (isStatic) {
+			mv.visitMethodInsn(INVOKESTATIC, className, name, signature, isInterface);
+		} else if (isInterface) {
+			mv.visitMethodInsn(INVOKEINTERFACE, className, name, signature, true);
+		} else {
+			mv.visitMethodInsn(INVOKEVIRTUAL, className, name, signature, false);
+		}
 	}
 
 	public MethodVisitor create(ClassVisitor cv) {
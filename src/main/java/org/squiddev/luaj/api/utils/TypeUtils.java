@@ -0,0 +1,161 @@
+package org.squiddev.luaj.api.utils;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * Utilities for inspecting generic types
+ */
+public class TypeUtils {
+	private static final Map<Class<?>, Class<?>> PRIMITIVES = new HashMap<>();
+	private static final Map<Class<?>, Class<?>> BOXES = new HashMap<>();
+
+	static {
+		PRIMITIVES.put(Boolean.class, boolean.class);
+		PRIMITIVES.put(Byte.class, byte.class);
+		PRIMITIVES.put(Short.class, short.class);
+		PRIMITIVES.put(Character.class, char.class);
+		PRIMITIVES.put(Integer.class, int.class);
+		PRIMITIVES.put(Long.class, long.class);
+		PRIMITIVES.put(Float.class, float.class);
+		PRIMITIVES.put(Double.class, double.class);
+
+		for (Map.Entry<Class<?>, Class<?>> entry : PRIMITIVES.entrySet()) BOXES.put(entry.getValue(), entry.getKey());
+
+		// Optionals behave like boxed types, with empty instead of null
+		PRIMITIVES.put(OptionalInt.class, int.class);
+		PRIMITIVES.put(OptionalLong.class, long.class);
+		PRIMITIVES.put(OptionalDouble.class, double.class);
+	}
+
+	/**
+	 * Get the primitive type of a boxed type or primitive {@link java.util.Optional}
+	 *
+	 * @param type The type to unbox
+	 * @return The primitive type, or {@code type} if it is not a boxed type
+	 */
+	public static Class<?> unbox(Class<?> type) {
+		Class<?> primitive = PRIMITIVES.get(type);
+		return primitive == null ? type : primitive;
+	}
+
+	/**
+	 * Get the boxed type of a primitive
+	 *
+	 * @param type The type to box
+	 * @return The boxed type, or {@code type} if it is not a primitive
+	 */
+	public static Class<?> box(Class<?> type) {
+		Class<?> boxed = BOXES.get(type);
+		return boxed == null ? type : boxed;
+	}
+
+	/**
+	 * Check if a type is a boxed primitive or primitive {@link java.util.Optional}
+	 *
+	 * @param type The type to check
+	 * @return If this type is a boxed primitive
+	 */
+	public static boolean isBoxed(Class<?> type) {
+		return PRIMITIVES.containsKey(type);
+	}
+
+	/**
+	 * Get the erasure of a type
+	 *
+	 * @param type The type to erase
+	 * @return The raw class of this type
+	 */
+	public static Class<?> getRawType(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		} else if (type instanceof ParameterizedType) {
+			return getRawType(((ParameterizedType) type).getRawType());
+		} else if (type instanceof GenericArrayType) {
+			return Array.newInstance(getRawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+		} else if (type instanceof WildcardType) {
+			Type[] bounds = ((WildcardType) type).getUpperBounds();
+			return bounds.length == 0 ? Object.class : getRawType(bounds[0]);
+		} else if (type instanceof TypeVariable) {
+			Type[] bounds = ((TypeVariable<?>) type).getBounds();
+			return bounds.length == 0 ? Object.class : getRawType(bounds[0]);
+		}
+
+		return Object.class;
+	}
+
+	/**
+	 * Get a readable name for a type
+	 *
+	 * @param type The type to get the name of
+	 * @return The type's name
+	 */
+	public static String getName(Type type) {
+		return type instanceof Class ? ((Class<?>) type).getName() : type.toString();
+	}
+
+	/**
+	 * Find the type argument of a parent class or interface.
+	 *
+	 * For instance, {@code resolveArgument(ArrayList<String>, Collection.class, 0)} will return {@code String}.
+	 *
+	 * @param type   The type to search from
+	 * @param target The parent class whose arguments we want
+	 * @param index  The index of the type argument
+	 * @return The resolved type, or {@link Object} if it cannot be found
+	 */
+	public static Type resolveArgument(Type type, Class<?> target, int index) {
+		Type result = findArgument(type, target, index);
+		if (result == null) return Object.class;
+
+		// Strip "? extends T" to T, as we only ever read from these
+		if (result instanceof WildcardType) {
+			Type[] bounds = ((WildcardType) result).getUpperBounds();
+			result = bounds.length == 0 ? Object.class : bounds[0];
+		}
+
+		if (result instanceof TypeVariable) return getRawType(result);
+		return result;
+	}
+
+	private static Type findArgument(Type type, Class<?> target, int index) {
+		Class<?> raw = getRawType(type);
+		if (!target.isAssignableFrom(raw)) return null;
+
+		if (raw.equals(target)) {
+			return type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[index] : null;
+		}
+
+		Type parent = raw.getGenericSuperclass();
+		if (parent != null && target.isAssignableFrom(getRawType(parent))) {
+			return substitute(findArgument(parent, target, index), type, raw);
+		}
+
+		for (Type iface : raw.getGenericInterfaces()) {
+			if (target.isAssignableFrom(getRawType(iface))) {
+				return substitute(findArgument(iface, target, index), type, raw);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Replace a type variable declared on {@code raw} with the argument given in {@code type}
+	 *
+	 * @param result The type to substitute
+	 * @param type   The type we are looking at
+	 * @param raw    The erasure of {@code type}
+	 * @return The substituted type
+	 */
+	private static Type substitute(Type result, Type type, Class<?> raw) {
+		if (result instanceof TypeVariable && type instanceof ParameterizedType) {
+			TypeVariable<?>[] variables = raw.getTypeParameters();
+			for (int i = 0; i < variables.length; i++) {
+				if (variables[i].equals(result)) return ((ParameterizedType) type).getActualTypeArguments()[i];
+			}
+		}
+
+		return result;
+	}
+}
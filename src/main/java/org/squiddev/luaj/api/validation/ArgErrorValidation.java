@@ -27,10 +27,18 @@ public class ArgErrorValidation extends DefaultLuaValidator {
 			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "checklong", "()J", false);
 			mv.visitInsn(POP2);
 			return false;
-		} else if (type.equals(String.class)) {
+		} else if (type.equals(String.class) || type.isEnum()) {
 			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "checkstring", "()Lorg/luaj/vm2/LuaString;", false);
 			mv.visitInsn(POP);
 			return false;
+		} else if (isTable(type)) {
+			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "checktable", "()Lorg/luaj/vm2/LuaTable;", false);
+			mv.visitInsn(POP);
+			return false;
+		} else if (isFunction(type)) {
+			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "checkfunction", "()Lorg/luaj/vm2/LuaFunction;", false);
+			mv.visitInsn(POP);
+			return false;
 		} else {
 			return super.addValidation(mv, type);
 		}
@@ -6,8 +6,12 @@ import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
+import org.squiddev.luaj.api.LuaStruct;
 import org.squiddev.luaj.api.builder.BuilderException;
+import org.squiddev.luaj.api.conversion.EnumConverter;
+import org.squiddev.luaj.api.conversion.FunctionAdapter;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -22,13 +26,14 @@ public class DefaultLuaValidator implements ILuaValidator {
 
 	@Override
 	public boolean shouldValidate(Class<?> type) {
-		if (type.equals(LuaValue.class) || type.equals(Varargs.class)) return false;
+		if (type.equals(LuaValue.class) || type.equals(Varargs.class) || type.equals(Object.class)) return false;
 
 		if (
 			type.equals(boolean.class) || type.equals(long.class) ||
 				type.equals(byte.class) || type.equals(int.class) || type.equals(char.class) || type.equals(short.class) ||
 				type.equals(String.class) ||
-				type.equals(float.class) || type.equals(double.class) || LuaValue.class.isAssignableFrom(type)
+				type.equals(float.class) || type.equals(double.class) || LuaValue.class.isAssignableFrom(type) ||
+				isTable(type) || isFunction(type) || type.isEnum()
 			) {
 			return true;
 		}
@@ -46,10 +51,14 @@ public class DefaultLuaValidator implements ILuaValidator {
 			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "isnumber", "()Z", false);
 		} else if (type.equals(long.class)) {
 			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "islong", "()Z", false);
-		} else if (type.equals(String.class)) {
+		} else if (type.equals(String.class) || type.isEnum()) {
 			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "isstring", "()Z", false);
 		} else if (LuaValue.class.isAssignableFrom(type)) {
 			mv.visitTypeInsn(INSTANCEOF, Type.getInternalName(type));
+		} else if (isTable(type)) {
+			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "istable", "()Z", false);
+		} else if (isFunction(type)) {
+			mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/LuaValue", "isfunction", "()Z", false);
 		} else {
 			throw new BuilderException("Cannot validate " + type.getName());
 		}
@@ -66,9 +75,34 @@ public class DefaultLuaValidator implements ILuaValidator {
 			return type.getSimpleName().toLowerCase().replace("lua", "");
 		}
 
+		if (isTable(type)) return "table";
+		if (isFunction(type)) return "function";
+		if (type.isEnum()) return EnumConverter.getNames(type);
+
 		return "anything";
 	}
 
+	/**
+	 * Check if this type is converted from a table
+	 *
+	 * @param type The type to check
+	 * @return If this type is an array, collection or {@link LuaStruct}
+	 */
+	protected static boolean isTable(Class<?> type) {
+		return type.isArray() || Collection.class.isAssignableFrom(type) || type.isAnnotationPresent(LuaStruct.class);
+	}
+
+	/**
+	 * Check if this type is converted from a function
+	 *
+	 * @param type The type to check
+	 * @return If this type is a functional interface
+	 * @see FunctionAdapter
+	 */
+	protected static boolean isFunction(Class<?> type) {
+		return FunctionAdapter.getFunctionalMethod(type) != null;
+	}
+
 	static {
 		Map<Class<?>, String> classNames = CLASS_NAMES = new HashMap<>();
 		classNames.put(boolean.class, "boolean");
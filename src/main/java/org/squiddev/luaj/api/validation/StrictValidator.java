@@ -22,10 +22,14 @@ public class StrictValidator extends DefaultLuaValidator {
 				type.equals(float.class) || type.equals(double.class) || type.equals(long.class)
 			) {
 			mv.visitTypeInsn(INSTANCEOF, "org/luaj/vm2/LuaNumber");
-		} else if (type.equals(String.class)) {
+		} else if (type.equals(String.class) || type.isEnum()) {
 			mv.visitTypeInsn(INSTANCEOF, "org/luaj/vm2/LuaString");
 		} else if (LuaValue.class.isAssignableFrom(type)) {
 			mv.visitTypeInsn(INSTANCEOF, Type.getInternalName(type));
+		} else if (isTable(type)) {
+			mv.visitTypeInsn(INSTANCEOF, "org/luaj/vm2/LuaTable");
+		} else if (isFunction(type)) {
+			mv.visitTypeInsn(INSTANCEOF, "org/luaj/vm2/LuaFunction");
 		} else {
 			throw new BuilderException("Cannot validate " + type.getName());
 		}
@@ -0,0 +1,85 @@
+package org.squiddev.luaj.api.validation;
+
+import org.luaj.vm2.LuaValue;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.squiddev.luaj.api.utils.TypeUtils;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.squiddev.luaj.api.builder.BuilderConstants.TYPE_LUAERROR;
+
+/**
+ * Helpers for injecting validation outside of a function's arguments
+ */
+public final class ValidationHelpers {
+	/**
+	 * Check if a type can be validated. Boxed types are validated as their primitive type.
+	 *
+	 * Unlike {@link ILuaValidator#shouldValidate(Class)}, this will not throw on unknown types.
+	 *
+	 * @param validator The validator to use
+	 * @param type      The type to check
+	 * @return If the type should be validated
+	 */
+	public static boolean canValidate(ILuaValidator validator, Class<?> type) {
+		type = TypeUtils.unbox(type);
+		return (type.isPrimitive() || type.equals(String.class) || type.isEnum() || LuaValue.class.isAssignableFrom(type)) && validator.shouldValidate(type);
+	}
+
+	/**
+	 * Validate the {@link LuaValue} on the top of the stack, leaving it on the stack
+	 *
+	 * If validation fails, it jumps to {@code onError} with the value still on the stack.
+	 *
+	 * @param mv        The visitor to write to
+	 * @param validator The validator to use
+	 * @param type      The type to validate against
+	 * @param onError   The label to jump to on failure
+	 * @see #canValidate(ILuaValidator, Class)
+	 */
+	public static void validate(MethodVisitor mv, ILuaValidator validator, Class<?> type, Label onError) {
+		if (!canValidate(validator, type)) return;
+
+		mv.visitInsn(DUP);
+		if (validator.addValidation(mv, TypeUtils.unbox(type))) mv.visitJumpInsn(IFEQ, onError);
+	}
+
+	/**
+	 * Validate the {@link LuaValue} on the top of the stack, leaving it on the stack
+	 *
+	 * If validation fails, a {@link org.luaj.vm2.LuaError} is thrown
+	 *
+	 * @param mv        The visitor to write to
+	 * @param validator The validator to use
+	 * @param type      The type to validate against
+	 * @param message   The error message to throw, or {@code null} to generate it from the validator
+	 */
+	public static void validate(MethodVisitor mv, ILuaValidator validator, Class<?> type, String message) {
+		if (!canValidate(validator, type)) return;
+
+		Label onError = new Label();
+		Label finish = new Label();
+
+		validate(mv, validator, type, onError);
+		mv.visitJumpInsn(GOTO, finish);
+
+		mv.visitLabel(onError);
+		throwError(mv, message == null ? "Expected " + validator.getName(TypeUtils.unbox(type)) : message);
+
+		mv.visitLabel(finish);
+	}
+
+	/**
+	 * Throw a {@link org.luaj.vm2.LuaError}
+	 *
+	 * @param mv      The visitor to write to
+	 * @param message The message to throw
+	 */
+	public static void throwError(MethodVisitor mv, String message) {
+		mv.visitTypeInsn(NEW, TYPE_LUAERROR);
+		mv.visitInsn(DUP);
+		mv.visitLdcInsn(message);
+		mv.visitMethodInsn(INVOKESPECIAL, TYPE_LUAERROR, "<init>", "(Ljava/lang/String;)V", false);
+		mv.visitInsn(ATHROW);
+	}
+}
@@ -0,0 +1,151 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link Batched} functions can be called over a list of arguments
+ */
+@RunWith(Parameterized.class)
+public class BatchedFunctions {
+	private final APIClassLoader<?> loader;
+	private final LuaTable env;
+
+	public BatchedFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+		env = JsePlatform.standardGlobals();
+		loader.makeInstance(new Vectors()).bind(env);
+		loader.makeInstance(new Partial()).bind(env);
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaValue run(String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	@Test
+	public void batch() {
+		LuaValue result = run("return vectors.batch.length({{3, 4}, {6, 8}, {0, 0}})");
+		assertEquals(3, result.length());
+		assertEquals(5, result.get(1).todouble(), 0);
+		assertEquals(10, result.get(2).todouble(), 0);
+		assertEquals(0, result.get(3).todouble(), 0);
+
+		// Aliases share the batch form
+		assertEquals(10, run("return vectors.batch.len({{6, 8}})[1]").todouble(), 0);
+	}
+
+	@Test
+	public void singleArguments() {
+		LuaValue result = run("return vectors.batch.double({1, 2, 3})");
+		assertEquals(6, result.get(3).toint());
+	}
+
+	@Test
+	public void nilResults() {
+		LuaValue result = run("return vectors.batch.name({1, 2, 4})");
+		assertEquals(3, result.get("n").toint());
+		assertEquals("odd", result.get(1).tojstring());
+		assertTrue(result.get(2).isnil());
+		assertTrue(result.get(3).isnil());
+
+		assertEquals(0, run("return vectors.batch.name({}).n").toint());
+	}
+
+	@Test
+	public void varargs() {
+		// Arguments are reused between calls, so shorter calls must not see earlier values
+		LuaValue result = run("return vectors.batch.count({{'a', 1, 2, 3}, {'b', 1}, 'c', {'d', 1, 2}})");
+		assertEquals("a3", result.get(1).tojstring());
+		assertEquals("b1", result.get(2).tojstring());
+		assertEquals("c0", result.get(3).tojstring());
+		assertEquals("d2", result.get(4).tojstring());
+	}
+
+	@Test
+	public void errors() {
+		ExpectException.expect(LuaError.class, "Bad call #2: Expected number, number", true, new Runnable() {
+			@Override
+			public void run() {
+				BatchedFunctions.this.run("return vectors.batch.length({{3, 4}, {'x'}})");
+			}
+		});
+	}
+
+	@Test
+	public void methods() {
+		assertTrue(run("return partial.batch.batched").isfunction());
+		assertTrue(run("return partial.batch.normal").isnil());
+		assertTrue(run("return partial.normal").isfunction());
+	}
+
+	@Test
+	public void conflict() {
+		ExpectException.expect(BuilderException.class, "Cannot add batch functions as 'batch' is already a function", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new Conflict()).getTable();
+			}
+		});
+	}
+
+	@LuaAPI("vectors")
+	@Batched
+	public static class Vectors {
+		@LuaFunction({"length", "len"})
+		public double length(double x, double y) {
+			return Math.sqrt(x * x + y * y);
+		}
+
+		@LuaFunction("double")
+		public int twice(int x) {
+			return x * 2;
+		}
+
+		@LuaFunction
+		public String name(int x) {
+			return x % 2 == 0 ? null : "odd";
+		}
+
+		@LuaFunction
+		public String count(String prefix, Varargs rest) {
+			return prefix + rest.narg();
+		}
+	}
+
+	@LuaAPI("partial")
+	public static class Partial {
+		@LuaFunction
+		@Batched
+		public int batched(int x) {
+			return x;
+		}
+
+		@LuaFunction
+		public int normal(int x) {
+			return x;
+		}
+	}
+
+	@LuaAPI
+	public static class Conflict {
+		@LuaFunction
+		@Batched
+		public void batch() {
+		}
+	}
+}
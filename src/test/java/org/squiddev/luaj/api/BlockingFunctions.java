@@ -0,0 +1,247 @@
+package org.squiddev.luaj.api;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.*;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link Blocking} functions run on another thread
+ */
+@RunWith(Parameterized.class)
+public class BlockingFunctions {
+	private final APIClassLoader<?> loader;
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	public BlockingFunctions(APIClassLoader<?> loader) {
+		// Use our own loader, as the settings are changed
+		this.loader = Loaders.create(loader);
+		this.loader.getSettings().blockingExecutor = executor;
+	}
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private static LuaThread coroutine(LuaTable env, String code) {
+		try {
+			return new LuaThread(LoadState.load(new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8)), "test", env), env);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void mainThread() {
+		LuaTable table = loader.makeInstance(new Store()).getTable();
+		assertEquals(5, table.get("add").call(LuaValue.valueOf(2), LuaValue.valueOf(3)).toint());
+		assertNotEquals(Thread.currentThread().getName(), table.get("thread").call().tojstring());
+
+		// Non-blocking functions run on the calling thread
+		assertEquals(Thread.currentThread().getName(), table.get("now").call().tojstring());
+	}
+
+	@Test
+	public void errors() {
+		final LuaTable table = loader.makeInstance(new Store()).getTable();
+		ExpectException.expect(LuaError.class, "Expected number, number", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("add").call(LuaValue.valueOf(2));
+			}
+		});
+	}
+
+	@Test
+	public void converted() {
+		final Store store = new Store();
+		final LuaTable table = loader.makeInstance(store).getTable();
+
+		// Arguments are converted on the calling thread, so invalid ones never reach the executor
+		LuaTable values = LuaValue.listOf(new LuaValue[]{LuaValue.valueOf(1), LuaValue.valueOf("two")});
+		final LuaValue invalid = values;
+		ExpectException.expect(LuaError.class, "number", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("sum").call(invalid);
+			}
+		});
+		assertEquals(0, ((ThreadPoolExecutor) executor).getTaskCount());
+
+		values.rawset(2, LuaValue.valueOf(2));
+		assertEquals(3, table.get("sum").call(values).toint());
+		assertEquals(1, ((ThreadPoolExecutor) executor).getTaskCount());
+
+		// Java exceptions are converted to Lua errors on the calling thread
+		ExpectException.expect(LuaError.class, "Cannot fail", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("fail").call();
+			}
+		});
+	}
+
+	@Test
+	public void coroutines() throws InterruptedException {
+		Store store = new Store();
+		store.latch = new CountDownLatch(1);
+
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(store).bind(env);
+
+		LuaThread thread = coroutine(env, "local x = store.await() return x");
+		assertEquals(LuaValue.TRUE, thread.resume(LuaValue.NONE).arg1());
+		assertEquals("suspended", thread.getStatus());
+
+		// Wait for the call to finish before resuming
+		store.latch.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		Varargs result = thread.resume(LuaValue.NONE);
+		assertEquals("dead", thread.getStatus());
+		assertEquals("done", result.arg(2).tojstring());
+	}
+
+	@Test
+	public void limits() throws InterruptedException {
+		loader.getSettings().blockingConcurrency = 1;
+		loader.getSettings().blockingQueue = 1;
+
+		Limited limited = new Limited();
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(limited).bind(env);
+
+		// One running, one queued and one rejected
+		LuaThread first = coroutine(env, "return limited.await()");
+		LuaThread second = coroutine(env, "return limited.await()");
+		LuaThread third = coroutine(env, "return limited.await()");
+
+		first.resume(LuaValue.NONE);
+		second.resume(LuaValue.NONE);
+		Varargs result = third.resume(LuaValue.NONE);
+		assertEquals(LuaValue.FALSE, result.arg1());
+		assertTrue(result.arg(2).tojstring().contains("Too many blocking calls"));
+
+		// The queued call runs once the first has finished
+		limited.latch.countDown();
+		assertTrue(limited.calls.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void context() {
+		ExpectException.expect(BuilderException.class, "Cannot use @Context arguments in blocking functions", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new WithContext());
+			}
+		});
+	}
+
+	@Test
+	public void callbacks() {
+		ExpectException.expect(BuilderException.class, "Cannot use functional interface arguments in blocking functions", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new WithCallback());
+			}
+		});
+	}
+
+	@LuaAPI("store")
+	public static class Store {
+		CountDownLatch latch;
+
+		@LuaFunction
+		@Blocking
+		public int add(int a, int b) {
+			return a + b;
+		}
+
+		@LuaFunction
+		@Blocking
+		public String thread() {
+			return Thread.currentThread().getName();
+		}
+
+		@LuaFunction
+		@Blocking
+		public String await() throws InterruptedException {
+			latch.await();
+			return "done";
+		}
+
+		@LuaFunction
+		@Blocking
+		public int sum(List<Integer> values) {
+			int total = 0;
+			for (int value : values) total += value;
+			return total;
+		}
+
+		@LuaFunction
+		@Blocking
+		public void fail() {
+			throw new IllegalStateException("Cannot fail");
+		}
+
+		@LuaFunction
+		public String now() {
+			return Thread.currentThread().getName();
+		}
+	}
+
+	@LuaAPI("limited")
+	@Blocking
+	public static class Limited {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final CountDownLatch calls = new CountDownLatch(2);
+
+		@LuaFunction
+		public void await() throws InterruptedException {
+			latch.await();
+			calls.countDown();
+		}
+	}
+
+	@LuaAPI
+	public static class WithContext {
+		@LuaFunction
+		@Blocking
+		public String name(@Context String name) {
+			return name;
+		}
+	}
+
+	@LuaAPI
+	public static class WithCallback {
+		@LuaFunction
+		@Blocking
+		public int call(IntSupplier callback) {
+			return callback.getAsInt();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the results of {@link Cached} functions are reused
+ */
+@RunWith(Parameterized.class)
+public class CachedFunctions {
+	private final APIClassLoader<?> loader;
+
+	public CachedFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private static LuaValue run(LuaTable env, String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	@Test
+	public void cached() {
+		Paths paths = new Paths();
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(paths).bind(env);
+
+		assertEquals(7, run(env, "local x for i = 1, 10 do x = paths.distance(1, 2, 'a') end return x").toint());
+		assertEquals(1, paths.calls);
+
+		// Different arguments are different keys
+		assertEquals(8, run(env, "local x = paths.distance(2, 2, 'a') return x").toint());
+		assertEquals(9, run(env, "local x = paths.distance(1, 2, 'aa') return x").toint());
+		assertEquals(3, paths.calls);
+	}
+
+	@Test
+	public void invalidate() {
+		Paths paths = new Paths();
+		LuaObject object = loader.makeInstance(paths);
+		LuaValue distance = object.getTable().get("distance");
+
+		LuaValue[] args = {LuaValue.valueOf(1), LuaValue.valueOf(2), LuaValue.valueOf("a")};
+		distance.invoke(args);
+		distance.invoke(args);
+		assertEquals(1, paths.calls);
+
+		object.invalidate();
+		distance.invoke(args);
+		assertEquals(2, paths.calls);
+	}
+
+	@Test
+	public void evicts() {
+		Paths paths = new Paths();
+		LuaValue lookup = loader.makeInstance(paths).getTable().get("lookup");
+
+		lookup.call(LuaValue.valueOf(1));
+		lookup.call(LuaValue.valueOf(2));
+		lookup.call(LuaValue.valueOf(1));
+		lookup.call(LuaValue.valueOf(3));
+		assertEquals(3, paths.calls);
+
+		// 2 was least recently used, and so evicted
+		lookup.call(LuaValue.valueOf(1));
+		assertEquals(3, paths.calls);
+		lookup.call(LuaValue.valueOf(2));
+		assertEquals(4, paths.calls);
+	}
+
+	@Test
+	public void expires() throws InterruptedException {
+		Paths paths = new Paths();
+		LuaValue time = loader.makeInstance(paths).getTable().get("time");
+
+		time.call();
+		time.call();
+		assertEquals(1, paths.calls);
+
+		Thread.sleep(30);
+		time.call();
+		assertEquals(2, paths.calls);
+	}
+
+	@Test
+	public void shared() {
+		Paths first = new Paths();
+		Paths second = new Paths();
+		LuaObject object = loader.makeInstance(first);
+		object.invalidate();
+
+		assertEquals(4, object.getTable().get("square").call(LuaValue.valueOf(2)).toint());
+		assertEquals(4, loader.makeInstance(second).getTable().get("square").call(LuaValue.valueOf(2)).toint());
+		assertEquals(1, first.calls);
+		assertEquals(0, second.calls);
+	}
+
+	@Test
+	public void errors() {
+		final Paths paths = new Paths();
+		final LuaValue distance = loader.makeInstance(paths).getTable().get("distance");
+
+		for (int i = 0; i < 2; i++) {
+			ExpectException.expect(LuaError.class, "Expected number, number, string", true, new Runnable() {
+				@Override
+				public void run() {
+					distance.call(LuaValue.valueOf(1));
+				}
+			});
+		}
+
+		ExpectException.expect(BuilderException.class, "Cached functions must return a value", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new Invalid());
+			}
+		});
+	}
+
+	@LuaAPI("paths")
+	public static class Paths {
+		public int calls;
+
+		@LuaFunction
+		@Cached
+		public int distance(int x, int y, String name) {
+			calls++;
+			return x + y * 2 + name.length() * 2;
+		}
+
+		@LuaFunction
+		@Cached(size = 2)
+		public int lookup(int x) {
+			calls++;
+			return x;
+		}
+
+		@LuaFunction
+		@Cached(ttl = 10)
+		public long time() {
+			calls++;
+			return System.nanoTime();
+		}
+
+		@LuaFunction
+		@Cached(shared = true)
+		public int square(int x) {
+			calls++;
+			return x * x;
+		}
+	}
+
+	@LuaAPI
+	public static class Invalid {
+		@LuaFunction
+		@Cached
+		public void set(int x) {
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests collections and maps are converted to tables
+ */
+@RunWith(Parameterized.class)
+public class CollectionReturns {
+	private LuaTable table;
+
+	public CollectionReturns(APIClassLoader loader) {
+		table = loader.makeInstance(new EmbedClass()).getTable();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	@Test
+	public void randomAccessList() {
+		LuaTable result = (LuaTable) table.get("arrayList").invoke().arg1();
+		assertEquals(3, result.length());
+		assertEquals(1, result.get(1).toint());
+		assertEquals(4, result.get(2).toint());
+		assertEquals(9, result.get(3).toint());
+	}
+
+	@Test
+	public void sequentialList() {
+		LuaTable result = (LuaTable) table.get("linkedList").invoke().arg1();
+		assertEquals(2, result.length());
+		assertEquals("hello", result.get(1).tojstring());
+		assertEquals("world", result.get(2).tojstring());
+	}
+
+	@Test
+	public void set() {
+		LuaTable result = (LuaTable) table.get("set").invoke().arg1();
+		assertEquals(2, result.length());
+		assertEquals(1.5, result.get(1).todouble(), 0);
+		assertEquals(2.5, result.get(2).todouble(), 0);
+	}
+
+	@Test
+	public void map() {
+		LuaTable result = (LuaTable) table.get("map").invoke().arg1();
+		assertEquals(1, result.get("a").toint());
+		assertEquals(2, result.get("b").toint());
+		assertEquals(LuaValue.NIL, result.get("c"));
+	}
+
+	@Test
+	public void nested() {
+		LuaTable result = (LuaTable) table.get("nested").invoke().arg1();
+		assertEquals(2, result.get("a").get(2).toint());
+
+		result = (LuaTable) table.get("arrays").invoke().arg1();
+		assertEquals("x", result.get(1).get(1).tojstring());
+	}
+
+	@Test
+	public void nullCollection() {
+		assertEquals(LuaValue.NIL, table.get("nullList").invoke().arg1());
+	}
+
+	@LuaAPI
+	public static class EmbedClass {
+		@LuaFunction
+		public List<Integer> arrayList() {
+			return Arrays.asList(1, 4, 9);
+		}
+
+		@LuaFunction
+		public List<String> linkedList() {
+			return new LinkedList<>(Arrays.asList("hello", "world"));
+		}
+
+		@LuaFunction
+		public Set<Double> set() {
+			return new LinkedHashSet<>(Arrays.asList(1.5, 2.5));
+		}
+
+		@LuaFunction
+		public Map<String, Integer> map() {
+			Map<String, Integer> map = new HashMap<>();
+			map.put("a", 1);
+			map.put("b", 2);
+			map.put(null, 3);
+			return map;
+		}
+
+		@LuaFunction
+		public Map<String, ? extends List<Integer>> nested() {
+			return Collections.singletonMap("a", Arrays.asList(1, 2));
+		}
+
+		@LuaFunction
+		public Collection<String[]> arrays() {
+			return Collections.singletonList(new String[]{"x"});
+		}
+
+		@LuaFunction
+		public List<Integer> nullList() {
+			return null;
+		}
+	}
+}
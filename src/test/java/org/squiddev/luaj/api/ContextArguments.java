@@ -0,0 +1,150 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.*;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link Context} arguments are provided from the calling environment
+ */
+@RunWith(Parameterized.class)
+public class ContextArguments {
+	private final LuaTable first;
+	private final LuaTable second;
+
+	public ContextArguments(APIClassLoader loader) {
+		// One table shared between both environments
+		LuaObject api = loader.makeInstance(new EmbedClass());
+
+		first = JsePlatform.standardGlobals();
+		api.bind(first);
+		LuaContext.set(first, Session.class, new Session("first"));
+
+		second = JsePlatform.standardGlobals();
+		api.bind(second);
+		LuaContext.set(second, Session.class, new Session("second"));
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	/**
+	 * Run some code in an environment. Note, functions must not be tail called
+	 * as they are removed from the call stack.
+	 */
+	private static LuaValue run(LuaTable env, String code) {
+		try {
+			return LoadState.load(new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8)), "test", env).call();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void objects() {
+		assertEquals("first", run(first, "local x = context.session() return x").tojstring());
+		assertEquals("second", run(second, "local x = context.session() return x").tojstring());
+	}
+
+	@Test
+	public void environment() {
+		assertEquals(first, run(first, "local x = context.env() return x"));
+		assertEquals(second, run(second, "local x = context.env() return x"));
+
+		// Through a library function
+		assertEquals(second, run(second, "return select(2, pcall(context.env))"));
+	}
+
+	@Test
+	public void notArguments() {
+		assertEquals("first:3", run(first, "local x = context.add(1, 2) return x").tojstring());
+
+		ExpectException.expect(LuaError.class, "Expected number, number", true, new Runnable() {
+			@Override
+			public void run() {
+				ContextArguments.run(first, "local x = context.add(1) return x");
+			}
+		});
+	}
+
+	@Test
+	public void threads() {
+		assertEquals(LuaValue.TRUE, run(first, "local x = context.thread() return x"));
+		assertEquals(LuaValue.FALSE, run(first, "return coroutine.wrap(context.thread)()"));
+	}
+
+	@Test
+	public void tailCalls() {
+		// The closure's frame is removed, but the chunk calling it is in the same environment
+		assertEquals("second", run(second, "local function f() return context.session() end local x = f() return x").tojstring());
+
+		// Tail calls from the chunk itself, or calls from Java, have no environment, rather than using the last globals
+		ExpectException.expect(LuaError.class, "Cannot find the calling environment", true, new Runnable() {
+			@Override
+			public void run() {
+				ContextArguments.run(first, "return context.session()");
+			}
+		});
+		ExpectException.expect(LuaError.class, "Cannot find the calling environment", true, new Runnable() {
+			@Override
+			public void run() {
+				first.get("context").get("session").call();
+			}
+		});
+	}
+
+	@Test
+	public void missing() {
+		final LuaTable env = JsePlatform.standardGlobals();
+		env.set("context", first.get("context"));
+
+		ExpectException.expect(LuaError.class, "No " + Session.class.getName() + " context for this environment", true, new Runnable() {
+			@Override
+			public void run() {
+				ContextArguments.run(env, "local x = context.session() return x");
+			}
+		});
+	}
+
+	public static class Session {
+		public final String name;
+
+		public Session(String name) {
+			this.name = name;
+		}
+	}
+
+	@LuaAPI("context")
+	public static class EmbedClass {
+		@LuaFunction
+		public String session(@Context Session session) {
+			return session.name;
+		}
+
+		@LuaFunction
+		public LuaValue env(@Context LuaValue env) {
+			return env;
+		}
+
+		@LuaFunction
+		public String add(int a, @Context Session session, @Context LuaTable env, int b) {
+			return session.name + ":" + (a + b);
+		}
+
+		@LuaFunction
+		public boolean thread(@Context LuaThread thread) {
+			return LuaThread.isMainThread(thread);
+		}
+	}
+}
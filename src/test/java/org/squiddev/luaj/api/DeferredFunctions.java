@@ -0,0 +1,252 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link Deferred} functions are buffered until flushed
+ */
+@RunWith(Parameterized.class)
+public class DeferredFunctions {
+	private final APIClassLoader<?> loader;
+
+	public DeferredFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private static LuaValue run(LuaTable env, String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	@Test
+	public void deferred() {
+		World world = new World();
+		LuaObject object = loader.makeInstance(world);
+		LuaTable env = JsePlatform.standardGlobals();
+		object.bind(env);
+
+		run(env, "for i = 1, 3 do world.set(i, i * 2, 'stone') end world.place(4, 8, 'dirt')");
+		assertEquals(0, world.blocks.size());
+
+		object.flush();
+		assertEquals(4, world.blocks.size());
+		assertEquals("1,2=stone", world.blocks.get(0));
+		assertEquals("4,8=dirt", world.blocks.get(3));
+
+		// Calls are only applied once
+		object.flush();
+		assertEquals(4, world.blocks.size());
+	}
+
+	@Test
+	public void copiesArguments() {
+		World world = new World();
+		LuaObject object = loader.makeInstance(world);
+		LuaTable env = JsePlatform.standardGlobals();
+		object.bind(env);
+
+		// Calls with many arguments share the interpreter's stack
+		run(env, "for i = 1, 3 do world.put(i, i, i, 'stone' .. i) end");
+
+		// Tables are converted when called, not when flushed
+		run(env, "local p = { 1, 2 } world.fill(p) p[1] = 99");
+
+		object.flush();
+		assertEquals(4, world.blocks.size());
+		assertEquals("1,1,1=stone1", world.blocks.get(0));
+		assertEquals("2,2,2=stone2", world.blocks.get(1));
+		assertEquals("3,3,3=stone3", world.blocks.get(2));
+		assertEquals("fill [1, 2]", world.blocks.get(3));
+	}
+
+	@Test
+	public void ordered() {
+		World world = new World();
+		LuaObject object = loader.makeInstance(world);
+		LuaTable env = JsePlatform.standardGlobals();
+		object.bind(env);
+
+		run(env, "world.set(1, 1, 'a') world.fill({ 1 }) world.emit(1, 1) world.emit(2, 1) world.set(2, 2, 'b') world.emit(3, 1)");
+
+		object.flush();
+		assertEquals(3, world.blocks.size());
+		assertEquals("1,1=a", world.blocks.get(0));
+		assertEquals("fill [1]", world.blocks.get(1));
+		assertEquals("2,2=b", world.blocks.get(2));
+
+		// Consecutive calls are batched together
+		assertEquals(2, world.batches);
+		assertEquals(1, world.particles.length);
+	}
+
+	@Test
+	public void validates() {
+		World world = new World();
+		final LuaObject object = loader.makeInstance(world);
+
+		ExpectException.expect(LuaError.class, "Expected number, number, string", true, new Runnable() {
+			@Override
+			public void run() {
+				object.getTable().get("set").call(LuaValue.valueOf(1), LuaValue.valueOf("x"));
+			}
+		});
+
+		object.flush();
+		assertEquals(0, world.blocks.size());
+	}
+
+	@Test
+	public void batch() {
+		World world = new World();
+		LuaObject object = loader.makeInstance(world);
+		LuaTable env = JsePlatform.standardGlobals();
+		object.bind(env);
+
+		run(env, "for i = 1, 100 do world.emit(i / 2, i) end");
+		assertEquals(0, world.batches);
+
+		object.flush();
+		assertEquals(1, world.batches);
+		assertEquals(100, world.particles.length);
+		assertEquals(50, world.particles[99], 0);
+		assertEquals(100, world.counts[99]);
+
+		// Empty buffers do not call the batch method
+		object.flush();
+		assertEquals(1, world.batches);
+	}
+
+	@Test
+	public void threads() throws InterruptedException {
+		World world = new World();
+		LuaObject object = loader.makeInstance(world);
+
+		// Tables are created lazily, so must be created before being shared between threads
+		final LuaValue emit = object.getTable().get("emit");
+
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 50; j++) emit.call(LuaValue.valueOf(j), LuaValue.valueOf(1));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) thread.join();
+
+		// Calls from every thread share one buffer
+		object.flush();
+		assertTrue(world.batches >= 1);
+		assertEquals(200, world.emitted);
+	}
+
+	@Test
+	public void coroutines() {
+		World world = new World();
+		LuaObject object = loader.makeInstance(world);
+		LuaTable env = JsePlatform.standardGlobals();
+		object.bind(env);
+
+		// Each coroutine runs on its own Java thread, but calls are still applied in the order they were made
+		run(env, "local a = coroutine.wrap(function() world.set(1, 1, 'a') coroutine.yield() world.set(3, 3, 'a') end)\n" +
+			"local b = coroutine.wrap(function() world.set(2, 2, 'b') coroutine.yield() world.set(4, 4, 'b') end)\n" +
+			"a() b() a() b()");
+
+		object.flush();
+		assertEquals(Arrays.asList("1,1=a", "2,2=b", "3,3=a", "4,4=b"), world.blocks);
+	}
+
+	@Test
+	public void invalid() {
+		ExpectException.expect(BuilderException.class, "Deferred functions must return void", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new Returns());
+			}
+		});
+
+		ExpectException.expect(BuilderException.class, "Cannot find batch method", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new MissingBatch());
+			}
+		});
+	}
+
+	@LuaAPI("world")
+	public static class World {
+		public final List<String> blocks = new ArrayList<>();
+		public double[] particles;
+		public int[] counts;
+		public int batches;
+		public int emitted;
+
+		@LuaFunction({"set", "place"})
+		@Deferred
+		public void set(int x, int y, String block) {
+			blocks.add(x + "," + y + "=" + block);
+		}
+
+		@LuaFunction
+		@Deferred
+		public void put(int x, int y, int z, String block) {
+			blocks.add(x + "," + y + "," + z + "=" + block);
+		}
+
+		@LuaFunction
+		@Deferred
+		public void fill(int[] points) {
+			blocks.add("fill " + Arrays.toString(points));
+		}
+
+		@LuaFunction
+		@Deferred(batch = "emitAll")
+		public void emit(double x, int count) {
+			throw new IllegalStateException("Should be batched");
+		}
+
+		public void emitAll(double[] x, int[] count) {
+			particles = x;
+			counts = count;
+			batches++;
+			emitted += x.length;
+		}
+	}
+
+	@LuaAPI
+	public static class Returns {
+		@LuaFunction
+		@Deferred
+		public int set(int x) {
+			return x;
+		}
+	}
+
+	@LuaAPI
+	public static class MissingBatch {
+		@LuaFunction
+		@Deferred(batch = "setAll")
+		public void set(int x) {
+		}
+	}
+}
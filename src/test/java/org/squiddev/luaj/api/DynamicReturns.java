@@ -0,0 +1,130 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests values returned as {@link Object} or an interface are converted using their runtime type
+ */
+@RunWith(Parameterized.class)
+public class DynamicReturns {
+	private final APIClassLoader<?> loader;
+	private LuaTable table;
+
+	public DynamicReturns(APIClassLoader<?> loader) {
+		this.loader = loader;
+		table = loader.makeInstance(new EmbedClass()).getTable();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaValue get(Object value) {
+		return table.get("get").call(LuaValue.userdataOf(value));
+	}
+
+	@Test
+	public void inline() {
+		assertEquals("hello", get("hello").tojstring());
+		assertEquals(2, get(2).toint());
+		assertEquals(2.5, get(2.5).todouble(), 0);
+		assertEquals(LuaValue.TRUE, get(true));
+		assertEquals(LuaValue.NIL, table.get("get").call(LuaValue.NIL));
+		assertEquals(LuaValue.NIL, table.get("nothing").call());
+	}
+
+	@Test
+	public void cached() {
+		// Exceed the cache size, and repeat to check entries are reordered correctly
+		for (int i = 0; i < 3; i++) {
+			assertEquals(3L, get(3L).tolong());
+			assertEquals(4, get((short) 4).toint());
+			assertEquals(1.5, get(new BigDecimal("1.5")).todouble(), 0);
+			assertEquals("abc", get(new StringBuilder("abc")).tojstring());
+			assertEquals(3, get(new int[]{1, 2, 3}).length());
+			assertEquals(65, get('A').toint());
+		}
+	}
+
+	@Test
+	public void tables() {
+		LuaValue list = get(Arrays.asList("a", 2, Collections.singletonMap("b", 3)));
+		assertEquals("a", list.get(1).tojstring());
+		assertEquals(2, list.get(2).toint());
+		assertEquals(3, list.get(3).get("b").toint());
+
+		LuaValue array = get(new Object[]{"a", 1});
+		assertEquals(2, array.length());
+	}
+
+	@Test
+	public void apis() {
+		assertTrue(get(new EmbedClass()).get("get").isfunction());
+	}
+
+	@Test
+	public void interfaces() {
+		assertEquals("hello", table.get("sequence").call(LuaValue.valueOf("hello")).tojstring());
+		assertEquals("world", table.get("sequence").call(LuaValue.valueOf("world!")).tojstring());
+	}
+
+	@Test
+	public void unknown() {
+		ExpectException.expect(LuaError.class, "Cannot convert java.lang.Thread to a Lua value", true, new Runnable() {
+			@Override
+			public void run() {
+				get(new Thread());
+			}
+		});
+	}
+
+	@Test
+	public void unconvertible() {
+		// Types without any registered converters fail when generating, rather than when called
+		ExpectException.expect(BuilderException.class, "Cannot convert java.lang.Thread to LuaValue", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new Unconvertible());
+			}
+		});
+	}
+
+	@LuaAPI
+	public static class Unconvertible {
+		@LuaFunction
+		public Thread thread() {
+			return Thread.currentThread();
+		}
+	}
+
+	@LuaAPI
+	public static class EmbedClass {
+		@LuaFunction
+		public Object get(LuaValue value) {
+			return value.isnil() ? null : value.touserdata();
+		}
+
+		@LuaFunction
+		public Object nothing() {
+			return null;
+		}
+
+		@LuaFunction
+		public CharSequence sequence(String value) {
+			return value.endsWith("!") ? new StringBuilder(value).deleteCharAt(value.length() - 1) : value;
+		}
+	}
+}
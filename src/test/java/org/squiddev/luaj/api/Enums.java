@@ -0,0 +1,132 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests enums are converted to and from their names
+ */
+@RunWith(Parameterized.class)
+public class Enums {
+	private LuaTable table;
+
+	public Enums(APIClassLoader loader) {
+		table = loader.makeInstance(new EmbedClass()).getTable();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	@Test
+	public void toLua() {
+		assertEquals("NORTH", table.get("get").call(LuaValue.valueOf(0)).tojstring());
+		assertEquals("WEST", table.get("get").call(LuaValue.valueOf(3)).tojstring());
+		assertEquals(LuaValue.NIL, table.get("get").call(LuaValue.valueOf(-1)));
+	}
+
+	@Test
+	public void fromLua() {
+		for (Direction direction : Direction.values()) {
+			assertEquals(direction.ordinal(), table.get("ordinal").call(LuaValue.valueOf(direction.name())).toint());
+		}
+
+		// Substrings do not start at offset 0
+		assertEquals(2, table.get("ordinal").call(LuaValue.valueOf("xxSOUTHxx").substring(2, 7)).toint());
+	}
+
+	@Test
+	public void noDiscriminator() {
+		// No single byte distinguishes these names
+		for (Pair pair : Pair.values()) {
+			assertEquals(pair.name(), table.get("pair").call(LuaValue.valueOf(pair.name())).tojstring());
+		}
+
+		ExpectException.expect(LuaError.class, "Expected AA|AB|BA", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("pair").call(LuaValue.valueOf("BB"));
+			}
+		});
+	}
+
+	@Test
+	public void collections() {
+		LuaTable list = LuaValue.listOf(new LuaValue[]{LuaValue.valueOf("EAST"), LuaValue.valueOf("NORTH")});
+		assertEquals("[EAST, NORTH]", table.get("list").call(list).tojstring());
+	}
+
+	@Test
+	public void invalidName() {
+		ExpectException.expect(LuaError.class, "Expected NORTH|EAST|SOUTH|WEST", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("ordinal").call(LuaValue.valueOf("NORTHS"));
+			}
+		});
+
+		// Same length and discriminating byte as SOUTH
+		ExpectException.expect(LuaError.class, "Expected NORTH|EAST|SOUTH|WEST", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("ordinal").call(LuaValue.valueOf("SOUTT"));
+			}
+		});
+	}
+
+	@Test
+	public void invalidType() {
+		ExpectException.expect(LuaError.class, "Expected NORTH|EAST|SOUTH|WEST", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("ordinal").call(LuaValue.TRUE);
+			}
+		});
+	}
+
+	public enum Direction {
+		NORTH,
+		EAST,
+		SOUTH,
+		WEST,
+	}
+
+	public enum Pair {
+		AA,
+		AB,
+		BA,
+	}
+
+	@LuaAPI
+	public static class EmbedClass {
+		@LuaFunction
+		public Pair pair(Pair pair) {
+			return pair;
+		}
+
+		@LuaFunction
+		public Direction get(int ordinal) {
+			return ordinal < 0 ? null : Direction.values()[ordinal];
+		}
+
+		@LuaFunction
+		public int ordinal(Direction direction) {
+			return direction.ordinal();
+		}
+
+		@LuaFunction
+		public String list(List<Direction> directions) {
+			return directions.toString();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests Lua functions can be passed as functional interfaces
+ */
+@RunWith(Parameterized.class)
+public class FunctionArguments {
+	private final LuaTable env;
+
+	public FunctionArguments(APIClassLoader loader) {
+		env = JsePlatform.debugGlobals();
+		loader.makeInstance(new Functions()).bind(env);
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaValue run(String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	@Test
+	public void runnable() {
+		assertEquals(3, run("local x = 0 functions.times(3, function() x = x + 1 end) return x").toint());
+	}
+
+	@Test
+	public void primitives() {
+		assertEquals(2, run("return functions.count(function(x) return x % 2 == 0 end)").toint());
+		assertEquals(0, run("return functions.count(function(x) end)").toint());
+	}
+
+	@Test
+	public void generics() {
+		assertEquals(5, run("return functions.length(function(x) return #x end)").toint());
+		assertEquals(10, run("return functions.sum(function(a, b, c, d) return a + b + c + d end)").toint());
+	}
+
+	@Test
+	public void validation() {
+		ExpectException.expect(LuaError.class, "Expected number, function", true, new Runnable() {
+			@Override
+			public void run() {
+				FunctionArguments.this.run("functions.times(3, 'x')");
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "Expected number from callback", true, new Runnable() {
+			@Override
+			public void run() {
+				FunctionArguments.this.run("functions.length(function() return 'x' end)");
+			}
+		});
+	}
+
+	public interface Adder {
+		int add(int a, int b, int c, int d);
+	}
+
+	@LuaAPI("functions")
+	public static class Functions {
+		@LuaFunction
+		public void times(int times, Runnable action) {
+			for (int i = 0; i < times; i++) action.run();
+		}
+
+		@LuaFunction
+		public int count(IntPredicate predicate) {
+			int count = 0;
+			for (int i = 1; i <= 4; i++) {
+				if (predicate.test(i)) count++;
+			}
+			return count;
+		}
+
+		@LuaFunction
+		public int length(Function<String, Integer> length) {
+			return length.apply("hello");
+		}
+
+		@LuaFunction
+		public int sum(Adder adder) {
+			return adder.add(1, 2, 3, 4);
+		}
+	}
+}
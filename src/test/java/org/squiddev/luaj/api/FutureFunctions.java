@@ -0,0 +1,162 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.*;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests functions returning futures yield the calling coroutine
+ */
+@RunWith(Parameterized.class)
+public class FutureFunctions {
+	private final LuaTable env;
+	private final Futures futures = new Futures();
+	private final ConcurrentLinkedQueue<LuaThread> scheduled = new ConcurrentLinkedQueue<>();
+
+	public FutureFunctions(APIClassLoader loader) {
+		env = JsePlatform.standardGlobals();
+		loader.makeInstance(futures).bind(env);
+		LuaContext.set(env, ResumeScheduler.class, new ResumeScheduler() {
+			@Override
+			public void schedule(LuaThread coroutine) {
+				scheduled.add(coroutine);
+			}
+		});
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaThread coroutine(String code) {
+		try {
+			LuaValue function = LoadState.load(new ByteArrayInputStream(code.getBytes("UTF-8")), "test", env);
+			return new LuaThread(function, env);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void completed() {
+		futures.next = CompletableFuture.completedFuture("done");
+		assertEquals("done", env.get("futures").get("fetch").call().tojstring());
+	}
+
+	@Test
+	public void yields() {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		futures.next = future;
+
+		LuaThread thread = coroutine("local x = futures.fetch() return x .. '!'");
+		Varargs result = thread.resume(LuaValue.NONE);
+		assertEquals(LuaValue.TRUE, result.arg1());
+		assertTrue(LuaFutures.isWaiting(result.subargs(2)));
+		assertEquals("suspended", thread.getStatus());
+
+		// Resuming early yields again
+		result = thread.resume(LuaValue.NONE);
+		assertTrue(LuaFutures.isWaiting(result.subargs(2)));
+		assertEquals("suspended", thread.getStatus());
+		assertTrue(scheduled.isEmpty());
+
+		future.complete("done");
+		assertSame(thread, scheduled.poll());
+
+		result = thread.resume(LuaValue.NONE);
+		assertEquals(LuaValue.TRUE, result.arg1());
+		assertEquals("done!", result.arg(2).tojstring());
+		assertEquals("dead", thread.getStatus());
+	}
+
+	@Test
+	public void wrapped() {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		futures.next = future;
+
+		// Iterators see the marker rather than an empty value
+		LuaThread thread = coroutine("local f = coroutine.wrap(function() coroutine.yield(futures.fetch()) end) return f()");
+		Varargs result = thread.resume(LuaValue.NONE);
+		assertTrue(LuaFutures.isWaiting(result.subargs(2)));
+
+		// The inner coroutine is the one waiting
+		future.complete("done");
+		LuaThread waiting = scheduled.poll();
+		assertNotSame(thread, waiting);
+		assertEquals("suspended", waiting.getStatus());
+	}
+
+	@Test
+	public void errors() {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		futures.next = future;
+
+		LuaThread thread = coroutine("local x = futures.fetch() return x");
+		thread.resume(LuaValue.NONE);
+
+		future.completeExceptionally(new IllegalStateException("Not found"));
+		Varargs result = scheduled.poll().resume(LuaValue.NONE);
+		assertEquals(LuaValue.FALSE, result.arg1());
+		assertTrue(result.arg(2).tojstring().contains("Not found"));
+	}
+
+	@Test
+	public void conversion() {
+		futures.list = CompletableFuture.supplyAsync(new Supplier<List<Integer>>() {
+			@Override
+			public List<Integer> get() {
+				return Arrays.asList(1, 2, 3);
+			}
+		});
+
+		// The main thread cannot yield so blocks instead
+		LuaValue result = env.get("futures").get("list").call();
+		assertEquals(3, result.length());
+		assertEquals(2, result.get(2).toint());
+
+		futures.nothing = CompletableFuture.runAsync(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, ForkJoinPool.commonPool());
+		assertEquals(0, env.get("futures").get("nothing").invoke().narg());
+	}
+
+	@LuaAPI("futures")
+	public static class Futures {
+		CompletionStage<String> next;
+		CompletableFuture<List<Integer>> list;
+		CompletableFuture<Void> nothing;
+
+		@LuaFunction
+		public CompletionStage<String> fetch() {
+			return next;
+		}
+
+		@LuaFunction("list")
+		public CompletableFuture<List<Integer>> getList() {
+			return list;
+		}
+
+		@LuaFunction("nothing")
+		public CompletableFuture<Void> getNothing() {
+			return nothing;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.metrics.AllocationProbe;
+import org.squiddev.luaj.api.metrics.CallMetrics;
+import org.squiddev.luaj.api.metrics.LatencyHistogram;
+import org.squiddev.luaj.api.metrics.MetricsRegistry;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests calls to {@link Instrumented} functions are recorded
+ */
+@RunWith(Parameterized.class)
+public class InstrumentedFunctions {
+	private final APIClassLoader<?> loader;
+
+	public InstrumentedFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private static LuaValue run(LuaTable env, String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	private CallMetrics.Snapshot getMetrics(Class<?> api, String function) {
+		for (CallMetrics.Snapshot snapshot : ((MetricsRegistry) loader.getSettings().metrics).snapshot()) {
+			if (snapshot.api == api && snapshot.function.equals(function)) return snapshot;
+		}
+
+		return null;
+	}
+
+	@Test
+	public void counts() {
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(new Counted()).bind(env);
+
+		CallMetrics.Snapshot before = getMetrics(Counted.class, "add");
+		assertNotNull(before);
+
+		assertEquals(3, run(env, "local x for i = 1, 10 do x = counted.add(1, 2) end return x").toint());
+		assertEquals("a", run(env, "local x = counted.over('a') return x").tojstring());
+		assertEquals(2, run(env, "local x = counted.over(2) return x").toint());
+
+		CallMetrics.Snapshot after = getMetrics(Counted.class, "add");
+		assertEquals(10, after.calls - before.calls);
+		assertEquals(0, after.errors - before.errors);
+		assertEquals(10, after.latency.getCount() - before.latency.getCount());
+
+		// Overloads share the same metrics
+		assertTrue(getMetrics(Counted.class, "over").calls >= 2);
+	}
+
+	@Test
+	public void latency() {
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(new Counted()).bind(env);
+		run(env, "values = {} for i = 1, 200000 do values[i] = i end");
+
+		CallMetrics.Snapshot before = getMetrics(Counted.class, "size");
+		long start = System.nanoTime();
+		assertEquals(200000, run(env, "return counted.size(values)").toint());
+		long elapsed = System.nanoTime() - start;
+		CallMetrics.Snapshot after = getMetrics(Counted.class, "size");
+
+		// Converting the table takes far longer than the method itself
+		assertEquals(1, after.calls - before.calls);
+		assertTrue(after.time - before.time < elapsed / 2);
+	}
+
+	@Test
+	public void errors() {
+		final LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(new Counted()).bind(env);
+		CallMetrics.Snapshot before = getMetrics(Counted.class, "fail");
+
+		for (int i = 0; i < 3; i++) {
+			ExpectException.expect(LuaError.class, "Failed", true, new Runnable() {
+				@Override
+				public void run() {
+					InstrumentedFunctions.run(env, "local x = counted.fail() return x");
+				}
+			});
+		}
+
+		CallMetrics.Snapshot after = getMetrics(Counted.class, "fail");
+		assertEquals(3, after.calls - before.calls);
+		assertEquals(3, after.errors - before.errors);
+	}
+
+	@Test
+	public void optIn() {
+		loader.makeInstance(new Partial()).getTable();
+		assertNotNull(getMetrics(Partial.class, "counted"));
+		assertNull(getMetrics(Partial.class, "normal"));
+
+		loader.getSettings().instrument = true;
+		try {
+			loader.makeInstance(new Everything()).getTable();
+		} finally {
+			loader.getSettings().instrument = false;
+		}
+		assertNotNull(getMetrics(Everything.class, "normal"));
+	}
+
+	@Test
+	public void allocations() {
+		Assume.assumeTrue(AllocationProbe.isSupported());
+
+		final LuaTable env = JsePlatform.standardGlobals();
+		loader.getSettings().allocationSampling = 1;
+		try {
+			loader.makeInstance(new Allocating()).bind(env);
+		} finally {
+			loader.getSettings().allocationSampling = 64;
+		}
+
+		assertEquals(ARRAY, run(env, "local x for i = 1, 5 do x = allocating.allocate() end return x").toint());
+		assertEquals(ARRAY, run(env, "local x = allocating.outer(allocating.allocate) return x").toint());
+
+		// Failed calls are not sampled, and do not break later calls
+		ExpectException.expect(LuaError.class, "Failed", true, new Runnable() {
+			@Override
+			public void run() {
+				InstrumentedFunctions.run(env, "local x = allocating.outer(allocating.fail) return x");
+			}
+		});
+		assertEquals(ARRAY, run(env, "local x = allocating.allocate() return x").toint());
+
+		CallMetrics.Snapshot allocate = getMetrics(Allocating.class, "allocate");
+		assertEquals(7, allocate.samples);
+		assertTrue(allocate.getTargetBytes() >= ARRAY);
+		assertTrue(allocate.getConversionBytes() < ARRAY);
+
+		// Nested calls are included in the target's cost
+		CallMetrics.Snapshot outer = getMetrics(Allocating.class, "outer");
+		assertEquals(1, outer.samples);
+		assertTrue(outer.getTargetBytes() >= ARRAY);
+
+		// Failed calls are not recorded
+		assertEquals(0, getMetrics(Allocating.class, "fail").samples);
+	}
+
+	@Test
+	public void histogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) histogram.record(i * 1000);
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(100, snapshot.getCount());
+		assertEquals(50000, snapshot.getPercentile(50), 50000 * 0.125);
+		assertEquals(99000, snapshot.getPercentile(99), 99000 * 0.125);
+		assertEquals(100000, snapshot.getMax(), 100000 * 0.125);
+		assertEquals(0, new LatencyHistogram().snapshot().getPercentile(50));
+	}
+
+	@LuaAPI("counted")
+	@Instrumented
+	public static class Counted {
+		@LuaFunction
+		public int add(int a, int b) {
+			return a + b;
+		}
+
+		@LuaFunction
+		public String over(String a) {
+			return a;
+		}
+
+		@LuaFunction
+		public int over(int a) {
+			return a;
+		}
+
+		@LuaFunction
+		public int fail() {
+			throw new LuaError("Failed");
+		}
+
+		@LuaFunction
+		public int size(List<Integer> values) {
+			return values.size();
+		}
+	}
+
+	private static final int ARRAY = 1 << 16;
+
+	@LuaAPI("allocating")
+	@Instrumented(allocations = true)
+	public static class Allocating {
+		@LuaFunction
+		public int allocate() {
+			return new byte[ARRAY].length;
+		}
+
+		@LuaFunction
+		public LuaValue outer(LuaValue function) {
+			return function.call();
+		}
+
+		@LuaFunction
+		public int fail() {
+			throw new LuaError("Failed");
+		}
+	}
+
+	@LuaAPI
+	public static class Partial {
+		@LuaFunction
+		@Instrumented
+		public void counted() {
+		}
+
+		@LuaFunction
+		public void normal() {
+		}
+	}
+
+	@LuaAPI
+	public static class Everything {
+		@LuaFunction
+		public void normal() {
+		}
+	}
+}
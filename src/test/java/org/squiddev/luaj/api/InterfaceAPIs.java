@@ -0,0 +1,140 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests wrappers are generated for annotated interfaces and base classes, and shared between implementations
+ */
+@RunWith(Parameterized.class)
+public class InterfaceAPIs {
+	private final APIClassLoader loader;
+
+	public InterfaceAPIs(APIClassLoader loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	@Test
+	public void interfaces() {
+		LuaObject square = loader.makeInstance(new Square(2));
+		LuaObject circle = loader.makeInstance(new Circle(1));
+		assertSame(square.getClass(), circle.getClass());
+
+		assertEquals(4, square.getTable().get("area").call().todouble(), 0);
+		assertEquals(Math.PI, circle.getTable().get("area").call().todouble(), 1e-9);
+		assertEquals("circle", circle.getTable().get("describe").call().tojstring());
+		assertEquals("square", square.getTable().get("describe").call().tojstring());
+	}
+
+	@Test
+	public void abstractClasses() {
+		LuaObject dog = loader.makeInstance(new Dog());
+		LuaObject cat = loader.makeInstance(new Cat());
+		assertSame(dog.getClass(), cat.getClass());
+
+		assertEquals("woof", dog.getTable().get("sound").call().tojstring());
+		assertEquals("meow", cat.getTable().get("sound").call().tojstring());
+		assertEquals(4, cat.getTable().get("legs").call().toint());
+	}
+
+	@Test
+	public void returned() {
+		LuaTable table = loader.makeInstance(new Shapes()).getTable();
+		assertEquals(9, table.get("square").call(LuaValue.valueOf(3)).get("area").call().todouble(), 0);
+		assertEquals("circle", table.get("any").call(LuaValue.FALSE).get("describe").call().tojstring());
+	}
+
+	@LuaAPI
+	public interface Shape {
+		@LuaFunction
+		double area();
+
+		@LuaFunction
+		String describe();
+	}
+
+	public static class Square implements Shape {
+		private final double side;
+
+		public Square(double side) {
+			this.side = side;
+		}
+
+		@Override
+		public double area() {
+			return side * side;
+		}
+
+		@Override
+		public String describe() {
+			return "square";
+		}
+	}
+
+	public static final class Circle implements Shape {
+		private final double radius;
+
+		public Circle(double radius) {
+			this.radius = radius;
+		}
+
+		@Override
+		public double area() {
+			return Math.PI * radius * radius;
+		}
+
+		@Override
+		public String describe() {
+			return "circle";
+		}
+	}
+
+	@LuaAPI
+	public static abstract class Animal {
+		@LuaFunction
+		public abstract String sound();
+
+		@LuaFunction
+		public int legs() {
+			return 4;
+		}
+	}
+
+	public static class Dog extends Animal {
+		@Override
+		public String sound() {
+			return "woof";
+		}
+	}
+
+	public static class Cat extends Animal {
+		@Override
+		public String sound() {
+			return "meow";
+		}
+	}
+
+	@LuaAPI
+	public static class Shapes {
+		@LuaFunction
+		public Square square(double side) {
+			return new Square(side);
+		}
+
+		@LuaFunction
+		public Object any(boolean square) {
+			return square ? new Square(1) : new Circle(1);
+		}
+	}
+}
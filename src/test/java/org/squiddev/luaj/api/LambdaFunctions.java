@@ -0,0 +1,102 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.squiddev.luaj.api.builder.APIBuilder;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntPredicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests functions registered from lambdas and method references
+ */
+@RunWith(Parameterized.class)
+public class LambdaFunctions {
+	private final APIClassLoader<?> loader;
+
+	public LambdaFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private static double dist(double a, double b) {
+		return Math.abs(a - b);
+	}
+
+	@Test
+	public void functions() {
+		final int[] calls = {0};
+		LuaTable table = new APIBuilder(loader)
+			.function("dist", (DoubleBinaryOperator) LambdaFunctions::dist)
+			.function("max", (DoubleBinaryOperator) Math::max)
+			.function("even", (IntPredicate) x -> x % 2 == 0)
+			.function("greet", Greeter.class, name -> "Hello " + name)
+			.function("call", (Runnable) () -> calls[0]++)
+			.build();
+
+		assertEquals(3, table.get("dist").call(LuaValue.valueOf(1), LuaValue.valueOf(4)).todouble(), 0);
+		assertEquals(4, table.get("max").call(LuaValue.valueOf(1), LuaValue.valueOf(4)).todouble(), 0);
+		assertEquals(LuaValue.TRUE, table.get("even").call(LuaValue.valueOf(2)));
+		assertEquals("Hello world", table.get("greet").call(LuaValue.valueOf("world")).tojstring());
+
+		table.get("call").call();
+		assertEquals(1, calls[0]);
+
+		// The wrapper is shared between implementations
+		assertSame(table.get("dist").getClass(), table.get("max").getClass());
+	}
+
+	@Test
+	public void varargs() {
+		LuaTable table = new APIBuilder(loader)
+			.function("count", Counter.class, args -> args.narg())
+			.build();
+
+		assertEquals(3, table.get("count").invoke(LuaValue.varargsOf(LuaValue.TRUE, LuaValue.NIL, LuaValue.ONE)).arg1().toint());
+	}
+
+	@Test
+	public void validation() {
+		final LuaTable table = new APIBuilder(loader)
+			.function("dist", (DoubleBinaryOperator) LambdaFunctions::dist)
+			.build();
+
+		ExpectException.expect(LuaError.class, "Expected number, number", new Runnable() {
+			@Override
+			public void run() {
+				table.get("dist").call(LuaValue.valueOf("x"));
+			}
+		});
+	}
+
+	@Test
+	public void errors() {
+		ExpectException.expect(BuilderException.class, "Cannot add x as it does not implement a functional interface", new Runnable() {
+			@Override
+			public void run() {
+				new APIBuilder(loader).function("x", new Object());
+			}
+		});
+	}
+
+	public interface Greeter {
+		String greet(String name);
+	}
+
+	public interface Counter {
+		int count(Varargs args);
+	}
+}
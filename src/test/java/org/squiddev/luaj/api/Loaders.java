@@ -10,8 +10,10 @@ import org.squiddev.luaj.api.builder.tree.LuaClass;
  * Holds all the loaders required
  */
 public final class Loaders {
-	private static final APIClassLoader[] loaders = new APIClassLoader[]{
-		new APIClassLoader<LuaObjectWrapper>(LuaObjectWrapper.class) {
+	private static final APIClassLoader[] loaders = new APIClassLoader[]{createJoined(), createSplit()};
+
+	private static APIClassLoader createJoined() {
+		return new APIClassLoader<LuaObjectWrapper>(LuaObjectWrapper.class) {
 			{
 				settings.verify = true;
 			}
@@ -28,8 +30,11 @@ public final class Loaders {
 			public String toString() {
 				return "JoinedClassBuilder";
 			}
-		},
-		new APIClassLoader<LuaObject>(LuaObject.class) {
+		};
+	}
+
+	private static APIClassLoader createSplit() {
+		return new APIClassLoader<LuaObject>(LuaObject.class) {
 			{
 				settings.verify = true;
 			}
@@ -46,8 +51,21 @@ public final class Loaders {
 			public String toString() {
 				return "SplitClassBuilder";
 			}
-		}
-	};
+		};
+	}
+
+	/**
+	 * Create a new loader using the same builder as a shared one. Use this when changing the settings,
+	 * so other tests are not affected.
+	 *
+	 * @param loader The shared loader
+	 * @return The new loader
+	 */
+	public static APIClassLoader create(APIClassLoader loader) {
+		if (loader == loaders[0]) return createJoined();
+		if (loader == loaders[1]) return createSplit();
+		throw new IllegalArgumentException("Unknown loader " + loader);
+	}
 
 	public static APIClassLoader[][] getLoaderArgs() {
 		APIClassLoader[][] args = new APIClassLoader[loaders.length][];
@@ -0,0 +1,224 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link Synchronized}, {@link ReadOnly} and {@link Writes} functions hold the correct locks
+ */
+@RunWith(Parameterized.class)
+public class LockedFunctions {
+	private final APIClassLoader<?> loader;
+
+	public LockedFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	/**
+	 * Call a function from several threads at once
+	 */
+	private static void parallel(int threads, final Callable<Void> body) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] futures = new Future<?>[threads];
+			for (int i = 0; i < threads; i++) futures[i] = executor.submit(body);
+			for (Future<?> future : futures) future.get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void synchronize() throws Exception {
+		Counter counter = new Counter();
+		final LuaValue increment = loader.makeInstance(counter).getTable().get("increment");
+
+		parallel(4, new Callable<Void>() {
+			@Override
+			public Void call() {
+				for (int i = 0; i < 1000; i++) increment.call();
+				return null;
+			}
+		});
+
+		assertEquals(4000, counter.count);
+	}
+
+	@Test
+	public void striped() throws Exception {
+		Counter counter = new Counter();
+		final LuaValue add = loader.makeInstance(counter).getTable().get("add");
+
+		parallel(4, new Callable<Void>() {
+			@Override
+			public Void call() {
+				for (int i = 0; i < 1000; i++) add.call(LuaValue.valueOf("key" + (i % 8)));
+				return null;
+			}
+		});
+
+		for (int i = 0; i < 8; i++) assertEquals(500, (int) counter.keys.get("key" + i));
+	}
+
+	@Test
+	public void readWrite() throws Exception {
+		final LuaTable table = loader.makeInstance(new Point()).getTable();
+		final LuaValue set = table.get("set");
+
+		parallel(4, new Callable<Void>() {
+			@Override
+			public Void call() {
+				for (int i = 0; i < 500; i++) {
+					set.call(LuaValue.valueOf(i));
+					assertTrue(table.get("consistent").call().toboolean());
+					assertTrue(table.get("optimistic").call().toboolean());
+				}
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void sharedInstance() throws Exception {
+		// Wrapping the same instance twice shares its locks
+		Point point = new Point();
+		final LuaValue set = loader.makeInstance(point).getTable().get("set");
+		final LuaValue consistent = loader.makeInstance(point).getTable().get("consistent");
+
+		parallel(4, new Callable<Void>() {
+			@Override
+			public Void call() {
+				for (int i = 0; i < 500; i++) {
+					set.call(LuaValue.valueOf(i));
+					assertTrue(consistent.call().toboolean());
+				}
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void sharedReads() throws Exception {
+		final Point point = new Point();
+		final LuaValue await = loader.makeInstance(point).getTable().get("await");
+		point.latch = new CountDownLatch(2);
+
+		// Both readers must hold the lock at once for either to finish
+		parallel(2, new Callable<Void>() {
+			@Override
+			public Void call() {
+				assertTrue(await.call().toboolean());
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void mixed() {
+		ExpectException.expect(BuilderException.class, "Cannot use @Synchronized with @ReadOnly or @Writes in the same API", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new Mixed());
+			}
+		});
+
+		ExpectException.expect(BuilderException.class, "Optimistic read functions must return a value", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new OptimisticVoid());
+			}
+		});
+	}
+
+	@LuaAPI
+	@Synchronized
+	public static class Counter {
+		public int count;
+		public final ConcurrentHashMap<String, Integer> keys = new ConcurrentHashMap<>();
+
+		@LuaFunction
+		public void increment() {
+			int value = count;
+			Thread.yield();
+			count = value + 1;
+		}
+
+		@LuaFunction
+		@Synchronized(stripe = 1)
+		public void add(String key) {
+			Integer value = keys.get(key);
+			Thread.yield();
+			keys.put(key, value == null ? 1 : value + 1);
+		}
+	}
+
+	@LuaAPI
+	public static class Point {
+		public int x, y;
+		public CountDownLatch latch;
+
+		@LuaFunction
+		@Writes
+		public void set(int value) {
+			x = value;
+			Thread.yield();
+			y = value;
+		}
+
+		@LuaFunction
+		@ReadOnly
+		public boolean consistent() {
+			int x = this.x;
+			Thread.yield();
+			return x == y;
+		}
+
+		@LuaFunction
+		@ReadOnly(optimistic = true)
+		public boolean optimistic() {
+			return x == y;
+		}
+
+		@LuaFunction
+		@ReadOnly
+		public boolean await() throws InterruptedException {
+			latch.countDown();
+			return latch.await(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@LuaAPI
+	public static class Mixed {
+		@LuaFunction
+		@Synchronized
+		public void a() {
+		}
+
+		@LuaFunction
+		@Writes
+		public void b() {
+		}
+	}
+
+	@LuaAPI
+	public static class OptimisticVoid {
+		@LuaFunction
+		@ReadOnly(optimistic = true)
+		public void read() {
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.*;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link MainThread} functions are queued onto the main thread
+ */
+@RunWith(Parameterized.class)
+public class MainThreadFunctions {
+	/**
+	 * The queue is read when the wrapper is first loaded, so it must be shared between tests
+	 */
+	private static final MainThreadQueue queue = new MainThreadQueue();
+
+	private final APIClassLoader<?> loader;
+	private final LuaTable env;
+	private final Game game = new Game();
+
+	public MainThreadFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+		loader.getSettings().mainThreadExecutor = queue;
+
+		env = JsePlatform.standardGlobals();
+		loader.makeInstance(game).bind(env);
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaThread coroutine(String code) {
+		try {
+			return new LuaThread(LoadState.load(new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8)), "test", env), env);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void coroutines() {
+		queue.drain();
+
+		LuaThread first = coroutine("local x = game.add(1, 2) return x");
+		LuaThread second = coroutine("local x = game.add(3, 4) return x");
+		first.resume(LuaValue.NONE);
+		second.resume(LuaValue.NONE);
+		assertEquals(0, game.calls);
+		assertEquals(2, queue.size());
+
+		// Both calls are run in one batch
+		assertEquals(2, queue.drain());
+		assertEquals(2, game.calls);
+		assertEquals(Thread.currentThread(), game.thread);
+
+		assertEquals(3, first.resume(LuaValue.NONE).arg(2).toint());
+		assertEquals(7, second.resume(LuaValue.NONE).arg(2).toint());
+	}
+
+	@Test
+	public void direct() {
+		// Calls from the main thread are not queued
+		queue.drain();
+		assertEquals(3, env.get("game").get("add").call(LuaValue.valueOf(1), LuaValue.valueOf(2)).toint());
+		assertEquals(0, queue.size());
+
+		// Other functions are never queued
+		assertEquals("x", env.get("game").get("echo").call(LuaValue.valueOf("x")).tojstring());
+	}
+
+	@Test
+	public void workers() throws Exception {
+		final LuaValue add = env.get("game").get("add");
+		ExecutorService worker = Executors.newSingleThreadExecutor();
+		try {
+			queue.drain();
+			Future<LuaValue> result = worker.submit(() -> add.call(LuaValue.valueOf(2), LuaValue.valueOf(3)));
+
+			// The worker blocks until we run its call
+			while (!result.isDone()) {
+				queue.drain();
+				Thread.sleep(1);
+			}
+
+			assertEquals(5, result.get().toint());
+			assertEquals(Thread.currentThread(), game.thread);
+		} finally {
+			worker.shutdown();
+		}
+	}
+
+	@Test
+	public void errors() {
+		queue.drain();
+
+		LuaThread thread = coroutine("return game.fail()");
+		thread.resume(LuaValue.NONE);
+		queue.drain();
+
+		Varargs result = thread.resume(LuaValue.NONE);
+		assertEquals(LuaValue.FALSE, result.arg1());
+		assertTrue(result.arg(2).tojstring().contains("Not on this tick"));
+	}
+
+	@Test
+	public void converted() {
+		queue.drain();
+
+		// Invalid arguments are rejected without queueing the call
+		LuaThread thread = coroutine("return game.sum({ 1, 'two' })");
+		Varargs result = thread.resume(LuaValue.NONE);
+		assertEquals(LuaValue.FALSE, result.arg1());
+		assertEquals(0, queue.size());
+
+		// Arguments are converted when called, so later changes are not seen
+		thread = coroutine("local values = { 1, 2 } local x = game.sum(values) values[2] = 10 return x");
+		thread.resume(LuaValue.NONE);
+		assertEquals(1, queue.size());
+		queue.drain();
+
+		result = thread.resume(LuaValue.NONE);
+		assertEquals(LuaValue.TRUE, result.arg1());
+		assertEquals(3, result.arg(2).toint());
+	}
+
+	@Test
+	public void invalid() {
+		ExpectException.expect(BuilderException.class, "Functions cannot be both blocking and run on the main thread", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new Both());
+			}
+		});
+
+		ExpectException.expect(BuilderException.class, "Main thread functions require BuilderSettings.mainThreadExecutor to be set", true, new Runnable() {
+			@Override
+			public void run() {
+				APIClassLoader.createLoader().makeInstance(new Game());
+			}
+		});
+
+		ExpectException.expect(BuilderException.class, "Cannot use functional interface arguments in main thread functions", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new WithCallback());
+			}
+		});
+	}
+
+	@LuaAPI("game")
+	public static class Game {
+		int calls;
+		Thread thread;
+
+		@LuaFunction
+		@MainThread
+		public int add(int a, int b) {
+			calls++;
+			thread = Thread.currentThread();
+			return a + b;
+		}
+
+		@LuaFunction
+		@MainThread
+		public void fail() {
+			throw new LuaError("Not on this tick");
+		}
+
+		@LuaFunction
+		@MainThread
+		public int sum(List<Integer> values) {
+			int total = 0;
+			for (int value : values) total += value;
+			return total;
+		}
+
+		@LuaFunction
+		public String echo(String value) {
+			return value;
+		}
+	}
+
+	@LuaAPI
+	public static class Both {
+		@LuaFunction
+		@MainThread
+		@Blocking
+		public void both() {
+		}
+	}
+
+	@LuaAPI
+	public static class WithCallback {
+		@LuaFunction
+		@MainThread
+		public int call(IntSupplier callback) {
+			return callback.getAsInt();
+		}
+	}
+}
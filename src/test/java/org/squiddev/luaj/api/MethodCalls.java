@@ -0,0 +1,132 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests functions called with method call syntax skip the first argument
+ */
+@RunWith(Parameterized.class)
+public class MethodCalls {
+	private final LuaTable env;
+
+	public MethodCalls(APIClassLoader loader) {
+		env = JsePlatform.debugGlobals();
+		loader.makeInstance(new Methods()).bind(env);
+		loader.makeInstance(new Mixed()).bind(env);
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaValue run(String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	@Test
+	public void methods() {
+		assertEquals(5, run("return methods:add(2, 3)").toint());
+		assertEquals("methods", run("return methods:name()").tojstring());
+		assertEquals(10, run("return methods:many(1, 2, 3, 4)").toint());
+	}
+
+	@Test
+	public void varargs() {
+		assertEquals(2, run("return methods:rest(1, 'a', 'b')").toint());
+	}
+
+	@Test
+	public void overloads() {
+		assertEquals("int", run("return methods:over(1)").tojstring());
+		assertEquals("string", run("return methods:over('a')").tojstring());
+	}
+
+	@Test
+	public void perMethod() {
+		assertEquals(3, run("return mixed:method(3)").toint());
+		assertEquals(3, run("return mixed.normal(3)").toint());
+		assertEquals(3, run("return mixed.unchecked(nil, 3)").toint());
+	}
+
+	@Test
+	public void validatesSelf() {
+		ExpectException.expect(LuaError.class, "Expected table for self, use ':' to call this function", true, new Runnable() {
+			@Override
+			public void run() {
+				MethodCalls.this.run("return methods.add(2, 3)");
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "Expected number, number", true, new Runnable() {
+			@Override
+			public void run() {
+				MethodCalls.this.run("return methods:add(2)");
+			}
+		});
+	}
+
+	@LuaAPI("methods")
+	@MethodCall
+	public static class Methods {
+		@LuaFunction
+		public int add(int a, int b) {
+			return a + b;
+		}
+
+		@LuaFunction
+		public String name() {
+			return "methods";
+		}
+
+		@LuaFunction
+		public int many(int a, int b, int c, int d) {
+			return a + b + c + d;
+		}
+
+		@LuaFunction
+		public int rest(int a, Varargs rest) {
+			return rest.narg();
+		}
+
+		@LuaFunction
+		public String over(int a) {
+			return "int";
+		}
+
+		@LuaFunction
+		public String over(String a) {
+			return "string";
+		}
+	}
+
+	@LuaAPI("mixed")
+	public static class Mixed {
+		@LuaFunction
+		@MethodCall
+		public int method(int a) {
+			return a;
+		}
+
+		@LuaFunction
+		public int normal(int a) {
+			return a;
+		}
+
+		@LuaFunction
+		@MethodCall(validate = false)
+		public int unchecked(int a) {
+			return a;
+		}
+	}
+}
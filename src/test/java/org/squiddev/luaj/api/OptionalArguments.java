@@ -0,0 +1,124 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests boxed, {@link java.util.Optional} and {@link Default} arguments
+ */
+@RunWith(Parameterized.class)
+public class OptionalArguments {
+	private final APIClassLoader loader;
+	private LuaTable table;
+
+	public OptionalArguments(APIClassLoader loader) {
+		this.loader = loader;
+		table = loader.makeInstance(new EmbedClass()).getTable();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	@Test
+	public void boxed() {
+		assertEquals("1:2.5:true", table.get("boxed").call(LuaValue.valueOf(1), LuaValue.valueOf(2.5), LuaValue.TRUE).tojstring());
+		assertEquals("null:null:null", table.get("boxed").call().tojstring());
+		assertEquals("null:3.0:null", table.get("boxed").call(LuaValue.NIL, LuaValue.valueOf(3)).tojstring());
+	}
+
+	@Test
+	public void optionals() {
+		assertEquals("OptionalInt[1]:OptionalDouble[2.5]", table.get("optionals").call(LuaValue.valueOf(1), LuaValue.valueOf(2.5)).tojstring());
+		assertEquals("OptionalInt.empty:OptionalDouble.empty", table.get("optionals").call().tojstring());
+	}
+
+	@Test
+	public void defaults() {
+		assertEquals("5:2.5:true:x:-1:c", table.get("defaults").call(LuaValue.valueOf(5)).tojstring());
+		assertEquals(
+			"5:1.0:false:y:7:d",
+			table.get("defaults").invoke(LuaValue.varargsOf(new LuaValue[]{
+				LuaValue.valueOf(5), LuaValue.valueOf(1), LuaValue.FALSE, LuaValue.valueOf("y"), LuaValue.valueOf(7), LuaValue.valueOf('d')
+			})).arg1().tojstring()
+		);
+	}
+
+	@Test
+	public void nullableRequired() {
+		// Nullable arguments before required ones can be nil, but must be given
+		assertEquals("null:2", table.get("leading").call(LuaValue.NIL, LuaValue.valueOf(2)).tojstring());
+	}
+
+	@Test
+	public void validation() {
+		ExpectException.expect(LuaError.class, "Expected number, number, boolean", new Runnable() {
+			@Override
+			public void run() {
+				table.get("boxed").call(LuaValue.valueOf("foo"));
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "Expected number, number, boolean, string, number, number", new Runnable() {
+			@Override
+			public void run() {
+				table.get("defaults").call(LuaValue.valueOf(1), LuaValue.valueOf("foo"));
+			}
+		});
+	}
+
+	@Test
+	public void invalidDefault() {
+		ExpectException.expect(BuilderException.class, "Cannot parse default value 'foo' as int", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new InvalidDefault());
+			}
+		});
+	}
+
+	@LuaAPI
+	public static class EmbedClass {
+		@LuaFunction
+		public String boxed(Integer a, Double b, Boolean c) {
+			return a + ":" + b + ":" + c;
+		}
+
+		@LuaFunction
+		public String optionals(OptionalInt a, OptionalDouble b) {
+			return a + ":" + b;
+		}
+
+		@LuaFunction
+		public String defaults(
+			int a, @Default("2.5") double b, @Default("true") boolean c, @Default("x") String d,
+			@Default("-1") long e, @Default("c") char f
+		) {
+			return a + ":" + b + ":" + c + ":" + d + ":" + e + ":" + f;
+		}
+
+		@LuaFunction
+		public String leading(Integer a, int b) {
+			return a + ":" + b;
+		}
+	}
+
+	@LuaAPI
+	public static class InvalidDefault {
+		@LuaFunction
+		public void invalid(@Default("foo") int a) {
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests overloaded methods are chosen by the number and type of arguments
+ */
+@RunWith(Parameterized.class)
+public class Overloads {
+	private final APIClassLoader loader;
+	private LuaTable table;
+
+	public Overloads(APIClassLoader loader) {
+		this.loader = loader;
+		table = loader.makeInstance(new EmbedClass()).getTable();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private String call(String name, LuaValue... args) {
+		return table.get(name).invoke(LuaValue.varargsOf(args)).arg1().tojstring();
+	}
+
+	@Test
+	public void byCount() {
+		assertEquals("none", call("add"));
+		assertEquals("int:1", call("add", LuaValue.valueOf(1)));
+		assertEquals("int,int:3", call("add", LuaValue.valueOf(1), LuaValue.valueOf(2)));
+	}
+
+	@Test
+	public void byType() {
+		assertEquals("int:1", call("add", LuaValue.valueOf(1)));
+		assertEquals("double:1.5", call("add", LuaValue.valueOf(1.5)));
+		assertEquals("string:foo", call("add", LuaValue.valueOf("foo")));
+		assertEquals("string,string:ab", call("add", LuaValue.valueOf("a"), LuaValue.valueOf("b")));
+	}
+
+	@Test
+	public void varargs() {
+		assertEquals("int,varargs:2", call("add", LuaValue.valueOf(1), LuaValue.valueOf(2), LuaValue.valueOf(3)));
+		assertEquals("string:a", call("add", LuaValue.valueOf("a"), LuaValue.TRUE, LuaValue.TRUE));
+	}
+
+	@Test
+	public void optional() {
+		assertEquals("table:null", call("get", new LuaTable()));
+		assertEquals("table:2", call("get", new LuaTable(), LuaValue.valueOf(2)));
+		assertEquals("boolean", call("get", LuaValue.TRUE));
+	}
+
+	@Test
+	public void aliases() {
+		assertEquals("boolean", call("fetch", LuaValue.TRUE));
+	}
+
+	@Test
+	public void noMatch() {
+		ExpectException.expect(LuaError.class, "Expected (table, number) or (boolean)", new Runnable() {
+			@Override
+			public void run() {
+				call("get", LuaValue.valueOf("foo"));
+			}
+		});
+	}
+
+	@Test
+	public void mismatchedNames() {
+		ExpectException.expect(BuilderException.class, "Overloads must have the same names as", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new MismatchedNames());
+			}
+		});
+	}
+
+	@LuaAPI
+	public static class EmbedClass {
+		@LuaFunction
+		public String add() {
+			return "none";
+		}
+
+		@LuaFunction
+		public String add(int a) {
+			return "int:" + a;
+		}
+
+		@LuaFunction
+		public String add(double a) {
+			return "double:" + a;
+		}
+
+		@LuaFunction
+		public String add(String a) {
+			return "string:" + a;
+		}
+
+		@LuaFunction
+		public String add(int a, int b) {
+			return "int,int:" + (a + b);
+		}
+
+		@LuaFunction
+		public String add(String a, String b) {
+			return "string,string:" + a + b;
+		}
+
+		@LuaFunction
+		public String add(int a, Varargs rest) {
+			return "int,varargs:" + rest.narg();
+		}
+
+		@LuaFunction
+		@Alias("fetch")
+		public String get(LuaTable table, Integer index) {
+			return "table:" + index;
+		}
+
+		@LuaFunction
+		@Alias("fetch")
+		public String get(boolean value) {
+			return "boolean";
+		}
+	}
+
+	@LuaAPI
+	public static class MismatchedNames {
+		@LuaFunction
+		public void get(int a) {
+		}
+
+		@LuaFunction({"get", "fetch"})
+		public void get(String a) {
+		}
+	}
+}
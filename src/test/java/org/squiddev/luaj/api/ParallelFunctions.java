@@ -0,0 +1,239 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link Parallel} functions are split across several threads
+ */
+@RunWith(Parameterized.class)
+public class ParallelFunctions {
+	private final APIClassLoader<?> loader;
+
+	public ParallelFunctions(APIClassLoader<?> loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private static LuaValue run(LuaTable env, String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	@Test
+	public void parallel() {
+		final Noise noise = new Noise();
+		ForkJoinPool pool = new ForkJoinPool(4, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("parallel-test-" + thread.getPoolIndex());
+				return thread;
+			}
+		}, null, false);
+
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(noise).bind(env);
+
+		loader.getSettings().parallelPool = pool;
+		try {
+			LuaValue result = run(env, "local args = {} for i = 1, 1000 do args[i] = {i, 2} end return noise.parallel.sample(args)");
+			assertEquals(1000, result.length());
+			assertEquals(1000, result.get("n").toint());
+			for (int i = 1; i <= 1000; i++) assertEquals(i * 2, result.get(i).toint());
+
+			assertFalse(noise.threads.isEmpty());
+			// The calling thread may run some of the calls while it waits
+			String caller = Thread.currentThread().getName();
+			for (String thread : noise.threads) assertTrue(thread, thread.startsWith("parallel-test-") || thread.equals(caller));
+
+			// Single arguments and empty lists
+			assertEquals(9, run(env, "return noise.parallel.square({1, 2, 3})[3]").toint());
+			assertEquals(0, run(env, "return #noise.parallel.square({})").toint());
+		} finally {
+			loader.getSettings().parallelPool = null;
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void errors() {
+		final LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(new Noise()).bind(env);
+
+		ExpectException.expect(LuaError.class, "Bad call #3: Expected number, number", true, new Runnable() {
+			@Override
+			public void run() {
+				ParallelFunctions.run(env, "return noise.parallel.sample({{1, 2}, {1, 2}, {1}, {1}})");
+			}
+		});
+
+		// Every element is validated before any call is made
+		final Failing failing = new Failing();
+		loader.makeInstance(failing).bind(env);
+		ExpectException.expect(LuaError.class, "Bad call #2: Expected number", true, new Runnable() {
+			@Override
+			public void run() {
+				ParallelFunctions.run(env, "return failing.parallel.check({1, 'foo', 3})");
+			}
+		});
+		assertEquals(0, failing.calls.get());
+
+		// Java exceptions are thrown on the calling thread
+		ExpectException.expect(IllegalArgumentException.class, "Cannot check 2", true, new Runnable() {
+			@Override
+			public void run() {
+				ParallelFunctions.run(env, "return failing.parallel.check({1, 2, 3})");
+			}
+		});
+		assertEquals(3, failing.calls.get());
+
+		ExpectException.expect(BuilderException.class, "Cannot use @Context arguments in parallel functions", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new WithContext()).getTable();
+			}
+		});
+
+		ExpectException.expect(BuilderException.class, "Cannot use functional interface arguments in parallel functions", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new WithCallback()).getTable();
+			}
+		});
+
+		ExpectException.expect(BuilderException.class, "Cannot use functional interface arguments in parallel functions", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeInstance(new WithCallbacks()).getTable();
+			}
+		});
+	}
+
+	@LuaAPI("noise")
+	@Parallel
+	public static class Noise {
+		public final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		@LuaFunction
+		public int sample(int x, int y) {
+			threads.add(Thread.currentThread().getName());
+			return x * y;
+		}
+
+		@LuaFunction
+		public int square(int x) {
+			return x * x;
+		}
+	}
+
+	@Test
+	public void converted() {
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(new Converted()).bind(env);
+
+		LuaValue result = run(env, "return converted.parallel.sum({{{1, 2}}, {{3, 4, 5}}, {{}}})");
+		assertEquals(3, result.get(1).toint());
+		assertEquals(12, result.get(2).toint());
+		assertEquals(0, result.get(3).toint());
+	}
+
+	@Test
+	public void cached() {
+		Converted converted = new Converted();
+		LuaTable env = JsePlatform.standardGlobals();
+		loader.makeInstance(converted).bind(env);
+
+		LuaValue result = run(env, "return converted.parallel.twice({1, 2, 1, 2})");
+		for (int i = 1; i <= 4; i++) assertEquals(((i - 1) % 2 + 1) * 2, result.get(i).toint());
+
+		// Calls are captured before any are made, so repeated elements are not cached yet
+		assertEquals(4, converted.calls.get());
+
+		result = run(env, "return converted.parallel.twice({1, 2})");
+		assertEquals(2, result.get(1).toint());
+		assertEquals(4, result.get(2).toint());
+		assertEquals(4, converted.calls.get());
+	}
+
+	@LuaAPI("failing")
+	@Parallel
+	public static class Failing {
+		public final AtomicInteger calls = new AtomicInteger();
+
+		@LuaFunction
+		public int check(int x) {
+			calls.incrementAndGet();
+			if (x == 2) throw new IllegalArgumentException("Cannot check " + x);
+			return x;
+		}
+	}
+
+	@LuaAPI("converted")
+	@Parallel
+	public static class Converted {
+		public final AtomicInteger calls = new AtomicInteger();
+
+		@LuaFunction
+		public int sum(List<Integer> values) {
+			int total = 0;
+			for (int value : values) total += value;
+			return total;
+		}
+
+		@LuaFunction
+		@Cached
+		public int twice(int x) {
+			calls.incrementAndGet();
+			return x * 2;
+		}
+	}
+
+	@LuaAPI
+	public static class WithContext {
+		@LuaFunction
+		@Parallel
+		public int thread(@Context LuaTable env) {
+			return 0;
+		}
+	}
+
+	@LuaAPI
+	public static class WithCallback {
+		@LuaFunction
+		@Parallel
+		public int call(IntSupplier callback) {
+			return callback.getAsInt();
+		}
+	}
+
+	@LuaAPI
+	public static class WithCallbacks {
+		@LuaFunction
+		@Parallel
+		public int call(List<IntSupplier> callbacks) {
+			return callbacks.size();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests Java interfaces can be implemented by Lua tables
+ */
+@RunWith(Parameterized.class)
+public class Proxies {
+	private final APIClassLoader<?> loader;
+	private final LuaTable env;
+
+	public Proxies(APIClassLoader<?> loader) {
+		this.loader = loader;
+		env = JsePlatform.debugGlobals();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaTable run(String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call().checktable();
+	}
+
+	@Test
+	public void calls() {
+		Plugin plugin = loader.makeProxy(Plugin.class, run(
+			"local ticks = 0 return {\n" +
+				"tick = function(dt) ticks = ticks + dt end,\n" +
+				"ticks = function() return ticks end,\n" +
+				"enabled = function() return ticks > 1 end,\n" +
+				"join = function(a, b, c, d) return a .. b .. c .. tostring(d) end,\n" +
+				"items = function() return { 'a', 'b' } end,\n" +
+				"}"
+		));
+
+		assertFalse(plugin.enabled());
+		plugin.tick(0.5);
+		plugin.tick(1);
+		assertEquals(1.5, plugin.ticks(), 0);
+		assertTrue(plugin.enabled());
+
+		assertEquals("ab1true", plugin.join("a", "b", 1, true));
+		assertEquals(Arrays.asList("a", "b"), plugin.items());
+	}
+
+	@Test
+	public void shared() {
+		LuaTable table = run("return { ticks = function() return 2 end }");
+		assertSame(loader.makeProxy(Plugin.class, table).getClass(), loader.makeProxy(Plugin.class, new LuaTable()).getClass());
+		assertEquals(2, loader.makeProxy(Plugin.class, table).ticks(), 0);
+	}
+
+	@Test
+	public void methodCalls() {
+		Counter counter = loader.makeProxy(Counter.class, run(
+			"return { count = 0, increment = function(self, by) self.count = self.count + by return self.count end }"
+		));
+
+		assertEquals(2, counter.increment(2));
+		assertEquals(5, counter.increment(3));
+	}
+
+	@Test
+	public void errors() {
+		final Plugin plugin = loader.makeProxy(Plugin.class, run("return { ticks = function() return 'x' end }"));
+
+		ExpectException.expect(LuaError.class, "Expected number from ticks", true, new Runnable() {
+			@Override
+			public void run() {
+				plugin.ticks();
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "attempt to call nil", true, new Runnable() {
+			@Override
+			public void run() {
+				plugin.tick(1);
+			}
+		});
+
+		ExpectException.expect(BuilderException.class, "Cannot create a proxy for java.lang.Object as it is not an interface", new Runnable() {
+			@Override
+			public void run() {
+				loader.makeProxy(Object.class, new LuaTable());
+			}
+		});
+	}
+
+	public interface Plugin {
+		void tick(double dt);
+
+		double ticks();
+
+		boolean enabled();
+
+		String join(String a, String b, int c, boolean d);
+
+		List<String> items();
+	}
+
+	@MethodCall
+	public interface Counter {
+		int increment(int by);
+	}
+}
@@ -0,0 +1,130 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+import org.squiddev.luaj.api.builder.BuilderException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests static functions and shared tables
+ */
+@RunWith(Parameterized.class)
+public class StaticFunctions {
+	private final APIClassLoader loader;
+
+	public StaticFunctions(APIClassLoader loader) {
+		this.loader = loader;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	@Test
+	public void mixed() {
+		LuaTable table = loader.makeInstance(new Mixed(3)).getTable();
+		assertEquals(5, table.get("add").call(LuaValue.valueOf(2), LuaValue.valueOf(3)).toint());
+		assertEquals(6, table.get("scale").call(LuaValue.valueOf(2)).toint());
+	}
+
+	@Test
+	public void shared() {
+		LuaObject api = loader.makeStatic(Utilities.class);
+		assertSame(api, loader.makeStatic(Utilities.class));
+		assertSame(api.getTable(), loader.makeStatic(Utilities.class).getTable());
+
+		LuaTable table = api.getTable();
+		assertEquals(5, table.get("add").call(LuaValue.valueOf(2), LuaValue.valueOf(3)).toint());
+		assertEquals("ab", table.get("concat").call(LuaValue.valueOf("a"), LuaValue.valueOf("b")).tojstring());
+		assertEquals(2, table.getmetatable().get("__len").call(table).toint());
+	}
+
+	@Test
+	public void readOnly() {
+		final LuaTable table = loader.makeStatic(Utilities.class).getTable();
+
+		ExpectException.expect(LuaError.class, "table is read only", new Runnable() {
+			@Override
+			public void run() {
+				table.set("add", LuaValue.NIL);
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "table is read only", new Runnable() {
+			@Override
+			public void run() {
+				table.rawset(1, LuaValue.TRUE);
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "table is read only", new Runnable() {
+			@Override
+			public void run() {
+				table.setmetatable(new LuaTable());
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "table is read only", new Runnable() {
+			@Override
+			public void run() {
+				table.getmetatable().set("__index", new LuaTable());
+			}
+		});
+
+		assertTrue(table.get("add").isfunction());
+	}
+
+	@Test
+	public void instanceMethods() {
+		ExpectException.expect(BuilderException.class, "Cannot create a static API as scale is not static", true, new Runnable() {
+			@Override
+			public void run() {
+				loader.makeStatic(Mixed.class);
+			}
+		});
+	}
+
+	@LuaAPI
+	public static class Mixed {
+		private final int factor;
+
+		public Mixed(int factor) {
+			this.factor = factor;
+		}
+
+		@LuaFunction
+		public static int add(int a, int b) {
+			return a + b;
+		}
+
+		@LuaFunction
+		public int scale(int a) {
+			return a * factor;
+		}
+	}
+
+	@LuaAPI
+	public static class Utilities {
+		@LuaFunction
+		public static int add(int a, int b) {
+			return a + b;
+		}
+
+		@LuaFunction
+		public static String concat(String a, String b) {
+			return a + b;
+		}
+
+		@LuaFunction("__len")
+		public static int length(LuaValue self) {
+			return 2;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link LuaStruct} classes are converted to and from tables
+ */
+@RunWith(Parameterized.class)
+public class Structs {
+	private LuaTable table;
+
+	public Structs(APIClassLoader loader) {
+		table = loader.makeInstance(new EmbedClass()).getTable();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	@Test
+	public void toLua() {
+		LuaTable result = (LuaTable) table.get("get").call();
+		assertEquals("point", result.get("name").tojstring());
+		assertEquals(1, result.get("x").toint());
+		assertEquals(2.5, result.get("y").todouble(), 0);
+		assertEquals(3, result.get("tags").length());
+		assertEquals("b", result.get("tags").get(2).tojstring());
+		assertEquals(LuaValue.NIL, result.get("ignored"));
+
+		assertEquals(7, result.get("child").get("x").toint());
+		assertEquals(LuaValue.NIL, result.get("child").get("child"));
+	}
+
+	@Test
+	public void fromLua() {
+		LuaTable point = new LuaTable();
+		point.set("name", "hello");
+		point.set("x", 3);
+		point.set("y", 4.5);
+		point.set("tags", LuaValue.listOf(new LuaValue[]{LuaValue.valueOf("a")}));
+
+		LuaTable child = new LuaTable();
+		child.set("x", 5);
+		point.set("child", child);
+
+		assertEquals("hello:3:4.5:[a]:5", table.get("describe").call(point).tojstring());
+	}
+
+	@Test
+	public void defaults() {
+		assertEquals("null:0:0.0:null:null", table.get("describe").call(new LuaTable()).tojstring());
+	}
+
+	@Test
+	public void invalidField() {
+		ExpectException.expect(LuaError.class, "Expected number for field x", true, new Runnable() {
+			@Override
+			public void run() {
+				LuaTable point = new LuaTable();
+				point.set("x", "foo");
+				table.get("describe").call(point);
+			}
+		});
+	}
+
+	@Test
+	public void invalidTable() {
+		ExpectException.expect(LuaError.class, "Expected table", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("describe").call(LuaValue.valueOf(1));
+			}
+		});
+	}
+
+	@LuaStruct
+	public static class Point {
+		public String name;
+		public int x;
+		public double y;
+		public List<String> tags;
+		public Point child;
+
+		public transient int ignored = 2;
+	}
+
+	@LuaAPI
+	public static class EmbedClass {
+		@LuaFunction
+		public Point get() {
+			Point child = new Point();
+			child.x = 7;
+
+			Point point = new Point();
+			point.name = "point";
+			point.x = 1;
+			point.y = 2.5;
+			point.tags = Arrays.asList("a", "b", "c");
+			point.child = child;
+			return point;
+		}
+
+		@LuaFunction
+		public String describe(Point point) {
+			if (point == null) return "null";
+			return point.name + ":" + point.x + ":" + point.y + ":" + point.tags + ":" + (point.child == null ? null : point.child.x);
+		}
+	}
+}
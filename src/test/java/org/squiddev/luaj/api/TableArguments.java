@@ -0,0 +1,129 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests tables are converted to arrays and collections
+ */
+@RunWith(Parameterized.class)
+public class TableArguments {
+	private LuaTable table;
+
+	public TableArguments(APIClassLoader loader) {
+		table = loader.makeInstance(new EmbedClass()).getTable();
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private static LuaTable list(LuaValue... values) {
+		return LuaValue.listOf(values);
+	}
+
+	@Test
+	public void primitiveArrays() {
+		assertEquals(6, table.get("sumInt").call(list(LuaValue.valueOf(1), LuaValue.valueOf(2), LuaValue.valueOf(3))).toint());
+		assertEquals(4, table.get("sumDouble").call(list(LuaValue.valueOf(1.5), LuaValue.valueOf(2.5))).todouble(), 0);
+		assertEquals(0, table.get("sumInt").call(new LuaTable()).toint());
+	}
+
+	@Test
+	public void stringArray() {
+		assertEquals("a,b", table.get("join").call(list(LuaValue.valueOf("a"), LuaValue.valueOf("b"))).tojstring());
+	}
+
+	@Test
+	public void collections() {
+		assertEquals("[1, 2, 3]", table.get("list").call(list(LuaValue.valueOf(1), LuaValue.valueOf(2), LuaValue.valueOf(3))).tojstring());
+		assertEquals(2, table.get("set").call(list(LuaValue.valueOf("a"), LuaValue.valueOf("b"), LuaValue.valueOf("a"))).toint());
+	}
+
+	@Test
+	public void hashPart() {
+		// Elements stored in the hash part rather than the array part
+		LuaTable sparse = new LuaTable(0, 4);
+		sparse.rawset(3, LuaValue.valueOf(3));
+		sparse.rawset(2, LuaValue.valueOf(2));
+		sparse.rawset(1, LuaValue.valueOf(1));
+
+		assertEquals(6, table.get("sumInt").call(sparse).toint());
+		assertEquals("[1, 2, 3]", table.get("list").call(sparse).tojstring());
+	}
+
+	@Test
+	public void invalidElements() {
+		ExpectException.expect(LuaError.class, "Expected number at index 2", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("sumInt").call(list(LuaValue.valueOf(1), LuaValue.valueOf("foo")));
+			}
+		});
+
+		ExpectException.expect(LuaError.class, "Expected string at index 1", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("set").call(list(LuaValue.TRUE));
+			}
+		});
+	}
+
+	@Test
+	public void invalidTable() {
+		ExpectException.expect(LuaError.class, "Expected table", true, new Runnable() {
+			@Override
+			public void run() {
+				table.get("sumInt").call(LuaValue.valueOf(1));
+			}
+		});
+	}
+
+	@LuaAPI
+	public static class EmbedClass {
+		@LuaFunction
+		public int sumInt(int[] values) {
+			int sum = 0;
+			for (int value : values) sum += value;
+			return sum;
+		}
+
+		@LuaFunction
+		public double sumDouble(double[] values) {
+			double sum = 0;
+			for (double value : values) sum += value;
+			return sum;
+		}
+
+		@LuaFunction
+		public String join(String[] values) {
+			StringBuilder builder = new StringBuilder();
+			for (String value : values) {
+				if (builder.length() > 0) builder.append(",");
+				builder.append(value);
+			}
+			return builder.toString();
+		}
+
+		@LuaFunction
+		public String list(List<Integer> values) {
+			return values.toString();
+		}
+
+		@LuaFunction
+		public int set(Set<String> values) {
+			return values.size();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package org.squiddev.luaj.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.squiddev.luaj.api.builder.APIClassLoader;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link TableProxy} tables read and write through to the collection
+ */
+@RunWith(Parameterized.class)
+public class TableProxies {
+	private final EmbedClass embed = new EmbedClass();
+	private LuaTable env;
+
+	public TableProxies(APIClassLoader loader) {
+		env = JsePlatform.standardGlobals();
+		loader.makeInstance(embed).bind(env);
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Object[] getLoaders() {
+		return Loaders.getLoaderArgs();
+	}
+
+	private LuaValue run(String code) {
+		return env.get("loadstring").call(LuaValue.valueOf(code)).call();
+	}
+
+	@Test
+	public void listRead() {
+		embed.list.addAll(Arrays.asList(1, 2, 3));
+
+		assertEquals(3, run("return #proxy.list()").toint());
+		assertEquals(2, run("return proxy.list()[2]").toint());
+		assertEquals(LuaValue.NIL, run("return proxy.list()[4]"));
+		assertEquals(6, run("local x = 0 for _, v in ipairs(proxy.list()) do x = x + v end return x").toint());
+		assertEquals(6, run("local x = 0 for _, v in pairs(proxy.list()) do x = x + v end return x").toint());
+	}
+
+	@Test
+	public void listWrite() {
+		embed.list.addAll(Arrays.asList(1, 2, 3));
+
+		run("local l = proxy.list() l[1] = 5 l[4] = 7 table.insert(l, 9)");
+		assertEquals(Arrays.asList(5, 2, 3, 7, 9), embed.list);
+
+		run("local l = proxy.list() l[#l] = nil table.remove(l, 1)");
+		assertEquals(Arrays.asList(2, 3, 7), embed.list);
+
+		ExpectException.expect(LuaError.class, "Expected number", true, new Runnable() {
+			@Override
+			public void run() {
+				TableProxies.this.run("proxy.list()[1] = 'hello'");
+			}
+		});
+	}
+
+	@Test
+	public void listWriteEmpty() {
+		run("local l = proxy.list() l[0] = nil l[1] = nil");
+		assertEquals(Collections.<Integer>emptyList(), embed.list);
+	}
+
+	@Test
+	public void listHoles() {
+		embed.list.addAll(Arrays.asList(1, 2, 3));
+		ExpectException.expect(LuaError.class, "cannot set index 2 to nil", true, new Runnable() {
+			@Override
+			public void run() {
+				TableProxies.this.run("proxy.list()[2] = nil");
+			}
+		});
+		assertEquals(Arrays.asList(1, 2, 3), embed.list);
+
+		// Nulls from Java end iteration
+		embed.list.set(1, null);
+		assertEquals(1, run("local x = 0 for _ in ipairs(proxy.list()) do x = x + 1 end return x").toint());
+		assertEquals(1, run("local x = 0 for _ in pairs(proxy.list()) do x = x + 1 end return x").toint());
+	}
+
+	@Test
+	public void mapRead() {
+		embed.map.put("a", "b");
+		embed.map.put("c", "d");
+
+		assertEquals("b", run("return proxy.map().a").tojstring());
+		assertEquals(LuaValue.NIL, run("return proxy.map().e"));
+		assertEquals(2, run("local x = 0 for k, v in pairs(proxy.map()) do x = x + 1 end return x").toint());
+	}
+
+	@Test
+	public void mapWrite() {
+		embed.map.put("a", "b");
+
+		run("local m = proxy.map() m.a = nil m.c = 'd'");
+		assertEquals(Collections.singletonMap("c", "d"), embed.map);
+	}
+
+	@Test
+	public void mapClear() {
+		for (int i = 0; i < 10; i++) embed.map.put("k" + i, "v" + i);
+
+		assertEquals(10, run("local m, x = proxy.map(), 0 for k in pairs(m) do m[k] = nil x = x + 1 end return x").toint());
+		assertTrue(embed.map.isEmpty());
+	}
+
+	@Test
+	public void mapNested() {
+		for (int i = 0; i < 10; i++) embed.map.put("k" + i, "v" + i);
+
+		assertEquals(100, run("local m, x = proxy.map(), 0 for k in pairs(m) do for k2 in pairs(m) do x = x + 1 end end return x").toint());
+
+		// Clearing other keys continues the outer traversal
+		assertEquals(1, run("local m, x = proxy.map(), 0 for k in pairs(m) do x = x + 1 for k2 in pairs(m) do if k2 ~= k then m[k2] = nil end end end return x").toint());
+		assertEquals(1, embed.map.size());
+	}
+
+	@Test
+	public void readOnly() {
+		embed.apis.add(new EmbedClass());
+
+		assertTrue(run("return proxy.apis()[1].list").isfunction());
+		ExpectException.expect(LuaError.class, "table is read only", true, new Runnable() {
+			@Override
+			public void run() {
+				TableProxies.this.run("proxy.apis()[1] = {}");
+			}
+		});
+	}
+
+	@LuaAPI("proxy")
+	public static class EmbedClass {
+		public final List<Integer> list = new ArrayList<>();
+		public final Map<String, String> map = new HashMap<>();
+		public final List<EmbedClass> apis = new ArrayList<>();
+
+		@LuaFunction
+		@TableProxy
+		public List<Integer> list() {
+			return list;
+		}
+
+		@LuaFunction
+		@TableProxy
+		public Map<String, String> map() {
+			return map;
+		}
+
+		@LuaFunction
+		@TableProxy
+		public List<EmbedClass> apis() {
+			return apis;
+		}
+	}
+}